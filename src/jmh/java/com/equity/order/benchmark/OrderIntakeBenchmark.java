@@ -0,0 +1,95 @@
+package com.equity.order.benchmark;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.RestTemplate;
+
+import com.equity.order.OrderApplication;
+import com.equity.order.book.OrderBook;
+import com.equity.order.book.OrderBookRepository;
+import com.equity.order.book.OrderBookService;
+import com.equity.order.book.OrderBookService.Order;
+import com.equity.order.history.OrderHistory;
+import com.equity.order.history.OrderHistoryRepository;
+import com.equity.order.item.Side;
+
+// order intake and history writes against the embedded h2 of a running context
+// order item fetches are answered in process, every invocation uses new locations
+// so the item cache does not hide the fetch path
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class OrderIntakeBenchmark {
+
+	@Param({ "1", "100" })
+	private int items;
+
+	private final AtomicLong nextItem = new AtomicLong();
+
+	private ConfigurableApplicationContext context;
+	private OrderBookService orderBookService;
+	private OrderHistoryRepository orderHistoryRepository;
+	private OrderBook orderBook;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		context = SpringApplication.run(OrderApplication.class, "--server.port=0",
+				"--logging.level.root=WARN");
+
+		context.getBean(RestTemplate.class).setRequestFactory(new StubOrderItems());
+		orderBookService = context.getBean(OrderBookService.class);
+		orderHistoryRepository = context.getBean(OrderHistoryRepository.class);
+		orderBook = context.getBean(OrderBookRepository.class)
+				.save(OrderBook.builder().instrument("/instruments/benchmark").build());
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		context.close();
+	}
+
+	@Benchmark
+	public ResponseEntity<?> addOrderHistory() {
+		final List<Order.Item> itemList = new ArrayList<>(items);
+		for (int i = 0; i < items; i++) {
+			itemList.add(Order.Item.builder()
+					.location("http://localhost/limitOrders/" + nextItem.incrementAndGet())
+					.build());
+		}
+
+		return orderBookService.addOrderHistory(orderBook,
+				Order.builder().itemList(itemList).build());
+	}
+
+	@Benchmark
+	public Iterable<OrderHistory> saveAll() {
+		final List<OrderHistory> orderHistories = new ArrayList<>(items);
+		for (int i = 0; i < items; i++) {
+			orderHistories.add(OrderHistory.builder().orderBookId(orderBook.getId())
+					.orderBookVersion(orderBook.getVersion())
+					.itemType(OrderHistory.ItemType.LIMIT_ORDER)
+					.itemId(nextItem.incrementAndGet()).side(Side.BUY).quantity(10)
+					.price(new BigDecimal("20.50")).itemCreatedDate(new Date()).build());
+		}
+
+		return orderHistoryRepository.saveAll(orderHistories);
+	}
+}
@@ -0,0 +1,56 @@
+package com.equity.order.benchmark;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.equity.order.book.OrderBook;
+import com.equity.order.history.OrderHistoryService.OrderHistory.OrderItem;
+import com.equity.order.history.OrderItemReader;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+// parsing and serialization on the order path, no spring context needed
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class OrderItemBenchmark {
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	private String orderItem;
+	private OrderBook orderBook;
+	private String orderBookJson;
+
+	@Setup
+	public void setup() throws JsonProcessingException {
+		orderItem = StubOrderItems.limitOrder("http://localhost/limitOrders/42");
+		orderBook = OrderBook.builder().id(42L).instrument("/instruments/123")
+				.status(OrderBook.Status.OPEN).createdDate(new Date())
+				.updatedDate(new Date()).version(3L).build();
+		orderBookJson = objectMapper.writeValueAsString(orderBook);
+	}
+
+	@Benchmark
+	public OrderItem buildOrderItem() {
+		return OrderItemReader.read(orderItem);
+	}
+
+	@Benchmark
+	public String writeOrderBook() throws JsonProcessingException {
+		return objectMapper.writeValueAsString(orderBook);
+	}
+
+	@Benchmark
+	public OrderBook buildOrderBook() throws IOException {
+		return objectMapper.readValue(orderBookJson, OrderBook.class);
+	}
+}
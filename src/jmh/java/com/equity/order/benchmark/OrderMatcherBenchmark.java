@@ -0,0 +1,72 @@
+package com.equity.order.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.equity.order.item.Side;
+import com.equity.order.matching.Fills;
+import com.equity.order.matching.MatchOrder;
+import com.equity.order.matching.OrderMatcher;
+
+// the matcher alone, as its instrument writer drives it, no spring context needed
+// the book is kept at a steady depth so every invocation sees the same ladder
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class OrderMatcherBenchmark {
+
+	private static final int SCALE = 2;
+	private static final long BEST_BID = 2050;
+	private static final long BEST_ASK = 2051;
+
+	@Param({ "1", "100" })
+	private int depth;
+
+	private final MatchOrder order = new MatchOrder();
+
+	private OrderMatcher matcher;
+	private long nextId;
+
+	@Setup(Level.Iteration)
+	public void setup() {
+		matcher = new OrderMatcher(SCALE);
+		nextId = 0;
+		for (int i = 0; i < depth; i++) {
+			submit(Side.BUY, BEST_BID - i, 10);
+			submit(Side.SELL, BEST_ASK + i, 10);
+		}
+	}
+
+	// joins the best bid and is canceled straight away
+	@Benchmark
+	public int submitAndCancel() {
+		submit(Side.BUY, BEST_BID, 5);
+		return matcher.cancel(nextId, 5);
+	}
+
+	// takes one off the best ask and puts it back at the end of the queue
+	@Benchmark
+	public int submitCrossing() {
+		final int filled = submit(Side.BUY, BEST_ASK, 1).filledQuantity();
+		submit(Side.SELL, BEST_ASK, filled);
+		return filled;
+	}
+
+	private Fills submit(Side side, long price, int quantity) {
+		order.setId(++nextId);
+		order.setSide(side);
+		order.setPrice(price);
+		order.setQuantity(quantity);
+		order.setTimestamp(System.nanoTime());
+		return matcher.submit(order);
+	}
+}
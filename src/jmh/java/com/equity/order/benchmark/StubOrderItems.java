@@ -0,0 +1,55 @@
+package com.equity.order.benchmark;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+
+// answers order item fetches in process, single items and /search/ids batches
+final class StubOrderItems implements ClientHttpRequestFactory {
+
+	private static final String BATCH = "/search/ids?ids=";
+
+	// even ids buy and odd ids sell at the same price, so consecutive items cross
+	static String limitOrder(String location) {
+		final String id = location.substring(location.lastIndexOf('/') + 1);
+		final String side = Long.parseLong(id) % 2 == 0 ? "BUY" : "SELL";
+		return "{\"side\":\"" + side + "\",\"quantity\":10,\"price\":20.50,"
+				+ "\"createdDate\":\"2019-08-20T10:15:30.123+0000\","
+				+ "\"_links\":{\"self\":{\"href\":\"" + location + "\"},\"limitOrder\":"
+				+ "{\"href\":\"" + location + "\"}}}";
+	}
+
+	@Override
+	public MockClientHttpRequest createRequest(URI uri, HttpMethod httpMethod)
+			throws IOException {
+		final String url = uri.toString();
+		final String body;
+		if (url.contains(BATCH)) {
+			final String collection = url.substring(0, url.indexOf(BATCH));
+			body = "{\"_embedded\":{\"limitOrders\":["
+					+ Arrays.stream(url.substring(url.indexOf(BATCH) + BATCH.length()).split(","))
+							.map(id -> limitOrder(collection + "/" + id))
+							.collect(Collectors.joining(","))
+					+ "]}}";
+		} else {
+			body = limitOrder(url);
+		}
+
+		final MockClientHttpResponse response = new MockClientHttpResponse(
+				body.getBytes(StandardCharsets.UTF_8), HttpStatus.OK);
+		response.getHeaders().setContentType(MediaType.APPLICATION_JSON_UTF8);
+
+		final MockClientHttpRequest request = new MockClientHttpRequest(httpMethod, uri);
+		request.setResponse(response);
+		return request;
+	}
+}
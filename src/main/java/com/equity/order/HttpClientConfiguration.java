@@ -0,0 +1,99 @@
+package com.equity.order;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.boot.actuate.metrics.web.client.RestTemplateExchangeTags;
+import org.springframework.boot.actuate.metrics.web.client.RestTemplateExchangeTagsProvider;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+// pooled keep-alive client behind every order item fetch
+// per call latency is recorded by boot as http.client.requests since the template
+// comes from the builder, pool usage is published as httpclient.pool.*
+// items are fetched by their full location, ids in the path are tagged as {id} and
+// queries are left out so there is one uri tag per collection, not per item
+@Configuration
+@EnableConfigurationProperties(HttpClientProperties.class)
+public class HttpClientConfiguration {
+
+	@Bean(destroyMethod = "close")
+	public PoolingHttpClientConnectionManager connectionManager(
+			HttpClientProperties properties, MeterRegistry meterRegistry) {
+		final PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+		connectionManager.setMaxTotal(properties.getMaxTotal());
+		connectionManager.setDefaultMaxPerRoute(properties.getMaxPerRoute());
+		connectionManager.setValidateAfterInactivity(
+				(int) properties.getValidateAfterInactivity().toMillis());
+
+		Gauge.builder("httpclient.pool.leased", connectionManager,
+				manager -> manager.getTotalStats().getLeased())
+				.description("connections in use").register(meterRegistry);
+		Gauge.builder("httpclient.pool.pending", connectionManager,
+				manager -> manager.getTotalStats().getPending())
+				.description("requests waiting for a connection").register(meterRegistry);
+		Gauge.builder("httpclient.pool.available", connectionManager,
+				manager -> manager.getTotalStats().getAvailable())
+				.description("idle connections kept alive").register(meterRegistry);
+		Gauge.builder("httpclient.pool.max", connectionManager,
+				manager -> manager.getTotalStats().getMax()).register(meterRegistry);
+
+		return connectionManager;
+	}
+
+	@Bean(destroyMethod = "close")
+	public CloseableHttpClient httpClient(PoolingHttpClientConnectionManager connectionManager,
+			HttpClientProperties properties) {
+		final long keepAlive = properties.getKeepAlive().toMillis();
+
+		return HttpClients.custom().setConnectionManager(connectionManager)
+				.setDefaultRequestConfig(RequestConfig.custom()
+						.setConnectTimeout((int) properties.getConnectTimeout().toMillis())
+						.setSocketTimeout((int) properties.getReadTimeout().toMillis())
+						.setConnectionRequestTimeout(
+								(int) properties.getConnectionRequestTimeout().toMillis())
+						.build())
+				.setKeepAliveStrategy((response, context) -> {
+					final long duration = DefaultConnectionKeepAliveStrategy.INSTANCE
+							.getKeepAliveDuration(response, context);
+					return duration > 0 ? duration : keepAlive;
+				}).evictExpiredConnections()
+				.evictIdleConnections(properties.getEvictIdleAfter().toMillis(),
+						TimeUnit.MILLISECONDS)
+				.build();
+	}
+
+	@Bean
+	public RestTemplateExchangeTagsProvider restTemplateExchangeTagsProvider() {
+		return (urlTemplate, request, response) -> Arrays.asList(
+				RestTemplateExchangeTags.method(request),
+				RestTemplateExchangeTags.uri(uriOf(request.getURI().getPath())),
+				RestTemplateExchangeTags.status(response),
+				RestTemplateExchangeTags.clientName(request));
+	}
+
+	// /limitOrders/123 -> /limitOrders/{id}
+	private static String uriOf(String path) {
+		return path == null ? null : path.replaceAll("/\\d+(?=/|$)", "/{id}");
+	}
+
+	@Bean
+	public RestTemplate restTemplate(RestTemplateBuilder restTemplateBuilder,
+			CloseableHttpClient httpClient) {
+		return restTemplateBuilder
+				.requestFactory(() -> new HttpComponentsClientHttpRequestFactory(httpClient))
+				.build();
+	}
+}
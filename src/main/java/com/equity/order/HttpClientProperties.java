@@ -0,0 +1,26 @@
+package com.equity.order;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+
+// client used to fetch order items, sized for order intake peaks
+@Data
+@ConfigurationProperties("order.http")
+public class HttpClientProperties {
+
+	private int maxTotal = 200;
+	private int maxPerRoute = 50;
+
+	private Duration connectTimeout = Duration.ofSeconds(1);
+	private Duration readTimeout = Duration.ofSeconds(5);
+	// how long to wait for a pooled connection before failing
+	private Duration connectionRequestTimeout = Duration.ofMillis(500);
+
+	// used when the server does not send a keep-alive header
+	private Duration keepAlive = Duration.ofSeconds(30);
+	private Duration evictIdleAfter = Duration.ofSeconds(30);
+	private Duration validateAfterInactivity = Duration.ofSeconds(2);
+}
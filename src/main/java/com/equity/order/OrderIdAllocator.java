@@ -0,0 +1,43 @@
+package com.equity.order;
+
+import java.io.Serializable;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.StatelessSession;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.springframework.stereotype.Component;
+
+// hands out ids from the same generators the entities use, for rows that are
+// written without going through jpa
+@Component
+public class OrderIdAllocator {
+
+	private final SessionFactoryImplementor sessionFactory;
+
+	public OrderIdAllocator(EntityManagerFactory entityManagerFactory) {
+		this.sessionFactory = entityManagerFactory.unwrap(SessionFactoryImplementor.class);
+	}
+
+	// the sequence is only hit once per block
+	public long[] next(Class<?> entity, int count) {
+		final long[] ids = new long[count];
+		if (count == 0) {
+			return ids;
+		}
+
+		final IdentifierGenerator generator = sessionFactory
+				.getIdentifierGenerator(entity.getName());
+		try (StatelessSession session = sessionFactory.openStatelessSession()) {
+			for (int i = 0; i < count; i++) {
+				final Serializable id = generator
+						.generate((SharedSessionContractImplementor) session, null);
+				ids[i] = ((Number) id).longValue();
+			}
+		}
+		return ids;
+	}
+
+}
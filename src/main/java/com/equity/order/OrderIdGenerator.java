@@ -0,0 +1,49 @@
+package com.equity.order;
+
+import java.io.Serializable;
+import java.util.Properties;
+
+import org.hibernate.MappingException;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+// ids of every entity come from one database sequence in blocks
+// each block is handed out in memory so inserts do not wait on the sequence and
+// two entities can never get the same id, unlike the nano time ids before
+// a sharded node adds order.id.offset to every id so nodes never share ids
+public class OrderIdGenerator extends SequenceStyleGenerator {
+
+	public static final String NAME = "orderId";
+	public static final String STRATEGY = "com.equity.order.OrderIdGenerator";
+
+	public static final String SEQUENCE = "order_id_seq";
+	public static final int BLOCK_SIZE = 100;
+	// entities drawing from the sequence, each holds its own block: order book,
+	// order history, execution, limit order, market order and order intake
+	public static final int ENTITIES = 6;
+	// hibernate setting, added to every value of the sequence
+	public static final String OFFSET = "order.id.offset";
+
+	private long offset;
+
+	@Override
+	public void configure(Type type, Properties params, ServiceRegistry serviceRegistry)
+			throws MappingException {
+		params.putIfAbsent(SEQUENCE_PARAM, SEQUENCE);
+		params.putIfAbsent(INCREMENT_PARAM, String.valueOf(BLOCK_SIZE));
+		params.putIfAbsent(OPT_PARAM, "pooled-lo");
+		final Object offset = serviceRegistry.getService(ConfigurationService.class)
+				.getSettings().get(OFFSET);
+		this.offset = offset != null ? Long.parseLong(offset.toString()) : 0;
+		super.configure(type, params, serviceRegistry);
+	}
+
+	@Override
+	public Serializable generate(SharedSessionContractImplementor session, Object object) {
+		final Serializable id = super.generate(session, object);
+		return offset == 0 ? id : ((Number) id).longValue() + offset;
+	}
+}
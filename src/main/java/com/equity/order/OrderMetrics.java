@@ -0,0 +1,90 @@
+package com.equity.order;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import org.springframework.stereotype.Component;
+
+import com.equity.order.book.OrderBook;
+import com.equity.order.history.OrderHistory;
+import com.equity.order.risk.RiskReason;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+// one timer per stage of the order pipeline under order.stage, tagged by stage, with
+// histograms so percentiles can be aggregated off /actuator/prometheus
+// books and history events are counted by status, orders rejected before their book
+// by reason
+@Component
+public class OrderMetrics {
+
+	public static final String BOOK_LOOKUP = "book.lookup";
+	public static final String RISK = "risk";
+	public static final String ITEM_FETCH = "item.fetch";
+	public static final String ITEM_PARSE = "item.parse";
+	public static final String MATCH = "match";
+	public static final String STORE = "store";
+	public static final String HISTORY_READ = "history.read";
+	public static final String HISTORY_VIEW = "history.view";
+	public static final String HISTORY_SERIALIZE = "history.serialize";
+
+	private final MeterRegistry meterRegistry;
+	private final Map<String, Timer> stages = new ConcurrentHashMap<>();
+	private final Map<OrderBook.Status, Counter> orderBooks = new EnumMap<>(
+			OrderBook.Status.class);
+	private final Map<OrderHistory.Status, Counter> orderHistories = new EnumMap<>(
+			OrderHistory.Status.class);
+	private final Map<RiskReason, Counter> rejections = new EnumMap<>(RiskReason.class);
+
+	public OrderMetrics(MeterRegistry meterRegistry) {
+		this.meterRegistry = meterRegistry;
+		for (OrderBook.Status status : OrderBook.Status.values()) {
+			orderBooks.put(status, Counter.builder("order.books").tag("status", status.name())
+					.register(meterRegistry));
+		}
+		for (OrderHistory.Status status : OrderHistory.Status.values()) {
+			orderHistories.put(status, Counter.builder("order.history.events")
+					.tag("status", status.name()).register(meterRegistry));
+		}
+		for (RiskReason reason : RiskReason.values()) {
+			rejections.put(reason, Counter.builder("order.risk.rejected")
+					.tag("reason", reason.name()).register(meterRegistry));
+		}
+	}
+
+	public Timer stage(String stage) {
+		return stages.computeIfAbsent(stage,
+				key -> Timer.builder("order.stage").tag("stage", key)
+						.publishPercentileHistogram().register(meterRegistry));
+	}
+
+	public <T> T time(String stage, Supplier<T> supplier) {
+		return stage(stage).record(supplier);
+	}
+
+	public Timer.Sample start() {
+		return Timer.start(meterRegistry);
+	}
+
+	public void stop(Timer.Sample sample, String stage) {
+		sample.stop(stage(stage));
+	}
+
+	// a book that was opened or closed
+	public void orderBook(OrderBook.Status status) {
+		orderBooks.get(status).increment();
+	}
+
+	public void rejected(RiskReason reason) {
+		rejections.get(reason).increment();
+	}
+
+	public void recorded(Iterable<OrderHistory> recorded) {
+		recorded.forEach(orderHistory -> orderHistories.get(orderHistory.getStatus())
+				.increment());
+	}
+}
@@ -0,0 +1,25 @@
+package com.equity.order.bar;
+
+import java.math.BigDecimal;
+import java.util.Date;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// trades of one instrument from start until the next bar, vwap is of this bar only
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class Bar {
+	private Date start;
+	private BigDecimal open;
+	private BigDecimal high;
+	private BigDecimal low;
+	private BigDecimal close;
+	private long volume;
+	private int trades;
+	private BigDecimal vwap;
+}
@@ -0,0 +1,235 @@
+package com.equity.order.bar;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+
+// the last bars of one instrument at one resolution, a ring of slots indexed by bar
+// start, bars that leave the window of the newest one go to the spill when there is
+// one, oldest first, an execution for a bar that already left the window is dropped
+public class BarSeries {
+
+	private final Resolution resolution;
+	private final int capacity;
+	private final BarSpill spill;
+
+	private final long[] starts;
+	private final BigDecimal[] opens;
+	private final BigDecimal[] highs;
+	private final BigDecimal[] lows;
+	private final BigDecimal[] closes;
+	private final BigDecimal[] notionals;
+	private final long[] volumes;
+	private final int[] trades;
+
+	private long latest = Long.MIN_VALUE;
+
+	public BarSeries(Resolution resolution, int capacity, BarSpill spill) {
+		this.resolution = resolution;
+		this.capacity = capacity;
+		this.spill = spill;
+		this.starts = new long[capacity];
+		this.opens = new BigDecimal[capacity];
+		this.highs = new BigDecimal[capacity];
+		this.lows = new BigDecimal[capacity];
+		this.closes = new BigDecimal[capacity];
+		this.notionals = new BigDecimal[capacity];
+		this.volumes = new long[capacity];
+		this.trades = new int[capacity];
+	}
+
+	// false when the bar is older than the ring
+	public synchronized boolean add(long time, BigDecimal price, long quantity) {
+		final long start = resolution.startOf(time);
+		if (latest != Long.MIN_VALUE
+				&& start <= latest - capacity * resolution.getMillis()) {
+			return false;
+		}
+
+		if (latest != Long.MIN_VALUE && start > latest) {
+			sweep(start);
+		}
+
+		// every bar left is in the window, so a taken slot holds this one
+		final int slot = (int) Math.floorMod(start / resolution.getMillis(), capacity);
+		if (trades[slot] == 0) {
+			starts[slot] = start;
+			opens[slot] = price;
+			highs[slot] = price;
+			lows[slot] = price;
+			notionals[slot] = BigDecimal.ZERO;
+			volumes[slot] = 0;
+			trades[slot] = 0;
+		} else {
+			highs[slot] = highs[slot].max(price);
+			lows[slot] = lows[slot].min(price);
+		}
+
+		closes[slot] = price;
+		notionals[slot] = notionals[slot].add(price.multiply(BigDecimal.valueOf(quantity)));
+		volumes[slot] += quantity;
+		trades[slot]++;
+		latest = Math.max(latest, start);
+		return true;
+	}
+
+	// bars starting in the range, both inclusive, oldest first, at most limit of them
+	// the spilled ones first, then the ones still in the ring
+	public List<Bar> get(long from, long to, int limit) {
+		final List<Bar> bars = spill != null ? spill.read(from, to, limit) : new ArrayList<>();
+		final long spilled = spill != null ? spill.getLast() : Long.MIN_VALUE;
+
+		synchronized (this) {
+			if (latest == Long.MIN_VALUE) {
+				return bars;
+			}
+			final long millis = resolution.getMillis();
+			// whatever is older was spilled or pushed out
+			final long lower = Math.max(Math.max(from, spilled + 1),
+					latest - (capacity - 1) * millis);
+			long start = resolution.startOf(lower);
+			if (start < lower) {
+				start += millis;
+			}
+			for (; start <= Math.min(to, latest) && bars.size() < limit; start += millis) {
+				final int slot = (int) Math.floorMod(start / millis, capacity);
+				if (trades[slot] > 0 && starts[slot] == start) {
+					bars.add(bar(slot));
+				}
+			}
+		}
+		return bars;
+	}
+
+	// every bar in the ring but the newest goes to the spill, oldest first, the newest
+	// may still take trades and comes back from a snapshot or the history
+	public void flush() {
+		if (spill == null) {
+			return;
+		}
+		synchronized (this) {
+			final List<Integer> slots = new ArrayList<>();
+			for (int slot = 0; slot < capacity; slot++) {
+				if (trades[slot] > 0 && starts[slot] < latest) {
+					slots.add(slot);
+				}
+			}
+			slots.sort(Comparator.comparingLong(slot -> starts[slot]));
+			for (int slot : slots) {
+				spill.write(bar(slot), notionals[slot]);
+			}
+		}
+	}
+
+	// the spill is kept
+	public synchronized void clear() {
+		Arrays.fill(trades, 0);
+		latest = Long.MIN_VALUE;
+	}
+
+	// newest start, then every bar in the ring
+	public synchronized void writeTo(DataOutput out) throws IOException {
+		out.writeLong(latest);
+		int bars = 0;
+		for (int trade : trades) {
+			if (trade > 0) {
+				bars++;
+			}
+		}
+		out.writeInt(bars);
+		for (int slot = 0; slot < capacity; slot++) {
+			if (trades[slot] > 0) {
+				out.writeLong(starts[slot]);
+				writeDecimal(out, opens[slot]);
+				writeDecimal(out, highs[slot]);
+				writeDecimal(out, lows[slot]);
+				writeDecimal(out, closes[slot]);
+				writeDecimal(out, notionals[slot]);
+				out.writeLong(volumes[slot]);
+				out.writeInt(trades[slot]);
+			}
+		}
+	}
+
+	// replaces the ring, a bar that no longer fits a ring of another capacity is dropped
+	public synchronized void readFrom(DataInput in) throws IOException {
+		clear();
+		latest = in.readLong();
+		final int bars = in.readInt();
+		for (int i = 0; i < bars; i++) {
+			final long start = in.readLong();
+			final BigDecimal open = readDecimal(in);
+			final BigDecimal high = readDecimal(in);
+			final BigDecimal low = readDecimal(in);
+			final BigDecimal close = readDecimal(in);
+			final BigDecimal notional = readDecimal(in);
+			final long volume = in.readLong();
+			final int trade = in.readInt();
+
+			final int slot = (int) Math.floorMod(start / resolution.getMillis(), capacity);
+			if (start <= latest - capacity * resolution.getMillis()
+					|| trades[slot] > 0 && starts[slot] > start) {
+				continue;
+			}
+			starts[slot] = start;
+			opens[slot] = open;
+			highs[slot] = high;
+			lows[slot] = low;
+			closes[slot] = close;
+			notionals[slot] = notional;
+			volumes[slot] = volume;
+			trades[slot] = trade;
+		}
+	}
+
+	// the bars that leave the window when the newest one starts at start, from the
+	// oldest in the window up, a gap longer than the ring walks the ring once
+	private void sweep(long start) {
+		final long millis = resolution.getMillis();
+		final long end = Math.min(latest, start - capacity * millis);
+		for (long old = latest - (capacity - 1) * millis; old <= end; old += millis) {
+			final int slot = (int) Math.floorMod(old / millis, capacity);
+			if (trades[slot] > 0 && starts[slot] == old) {
+				if (spill != null) {
+					spill.write(bar(slot), notionals[slot]);
+				}
+				trades[slot] = 0;
+			}
+		}
+	}
+
+	public Resolution getResolution() {
+		return resolution;
+	}
+
+	private Bar bar(int slot) {
+		return Bar.builder().start(new Date(starts[slot])).open(opens[slot])
+				.high(highs[slot]).low(lows[slot]).close(closes[slot]).volume(volumes[slot])
+				.trades(trades[slot])
+				.vwap(notionals[slot].divide(BigDecimal.valueOf(volumes[slot]),
+						MathContext.DECIMAL64))
+				.build();
+	}
+
+	static void writeDecimal(DataOutput out, BigDecimal value) throws IOException {
+		final byte[] unscaled = value.unscaledValue().toByteArray();
+		out.writeInt(value.scale());
+		out.writeShort(unscaled.length);
+		out.write(unscaled);
+	}
+
+	static BigDecimal readDecimal(DataInput in) throws IOException {
+		final int scale = in.readInt();
+		final byte[] unscaled = new byte[in.readUnsignedShort()];
+		in.readFully(unscaled);
+		return new BigDecimal(new BigInteger(unscaled), scale);
+	}
+}
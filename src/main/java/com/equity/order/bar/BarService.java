@@ -0,0 +1,240 @@
+package com.equity.order.bar;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.UnsupportedEncodingException;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.net.URLEncoder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.format.annotation.DateTimeFormat.ISO;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.equity.order.book.OrderBook;
+import com.equity.order.history.OrderHistory;
+
+import lombok.extern.log4j.Log4j2;
+
+// 1s, 1m and 1h ohlcv bars and the running vwap per instrument, rolled up from the
+// executions as their history is stored, the same entries the projection folds
+// the rings and the vwap go into snapshots and are rebuilt from the history replayed
+// after them at startup, finished bars still in the rings are spilled on shutdown,
+// queries never read the executions
+@RestController
+@RequestMapping("/bars")
+@Log4j2
+public class BarService {
+
+	private static final int MAX_BARS = 10000;
+
+	private final Map<String, Instrument> instruments = new ConcurrentHashMap<>();
+	private final int capacity;
+	private final Path spillDirectory;
+
+	public BarService(@Value("${order.bars.capacity:3600}") int capacity,
+			@Value("${order.bars.spill.enabled:false}") boolean spill,
+			@Value("${order.bars.spill.directory:bars}") String spillDirectory) {
+		this.capacity = capacity;
+		this.spillDirectory = spill ? Paths.get(spillDirectory) : null;
+	}
+
+	// entries must be applied in the order they were appended
+	public void apply(OrderBook orderBook, Iterable<OrderHistory> orderHistories) {
+		orderHistories.forEach(orderHistory -> apply(orderBook, orderHistory));
+	}
+
+	public void apply(OrderBook orderBook, OrderHistory orderHistory) {
+		if (orderHistory.getStatus() != OrderHistory.Status.EXECUTED
+				|| orderHistory.getPrice() == null || orderHistory.getQuantity() == null) {
+			return;
+		}
+
+		final Date traded = orderHistory.getItemCreatedDate() != null
+				? orderHistory.getItemCreatedDate()
+				: orderHistory.getCreatedDate();
+		instruments.computeIfAbsent(orderBook.getInstrument(), Instrument::new).add(
+				orderHistory.getItemId(),
+				traded != null ? traded.getTime() : System.currentTimeMillis(),
+				orderHistory.getPrice(), orderHistory.getQuantity());
+	}
+
+	// bars starting in the range, both inclusive, oldest first
+	@GetMapping
+	public ResponseEntity<List<Bar>> findAll(@RequestParam String instrument,
+			@RequestParam(defaultValue = "1m") String resolution,
+			@RequestParam(required = false) @DateTimeFormat(iso = ISO.DATE_TIME) Date from,
+			@RequestParam(required = false) @DateTimeFormat(iso = ISO.DATE_TIME) Date to,
+			@RequestParam(defaultValue = "1000") int size) {
+		final Resolution barResolution = Resolution.of(resolution);
+		if (barResolution == null || size <= 0) {
+			return ResponseEntity.badRequest().build();
+		}
+
+		final Instrument bars = instruments.get(instrument);
+		if (bars == null) {
+			return ResponseEntity.ok(new ArrayList<>());
+		}
+		return ResponseEntity.ok(bars.series.get(barResolution).get(
+				from != null ? from.getTime() : 0,
+				to != null ? to.getTime() : Long.MAX_VALUE, Math.min(size, MAX_BARS)));
+	}
+
+	// everything traded in the instrument since startup
+	@GetMapping("/vwap")
+	public ResponseEntity<Vwap> vwap(@RequestParam String instrument) {
+		final Instrument bars = instruments.get(instrument);
+		if (bars == null) {
+			return ResponseEntity.notFound().build();
+		}
+		return ResponseEntity.ok(bars.vwap());
+	}
+
+	// rings and vwap of one instrument, on its writer
+	public void writeTo(String instrument, DataOutput out) throws IOException {
+		final Instrument bars = instruments.get(instrument);
+		out.writeBoolean(bars != null);
+		if (bars != null) {
+			bars.writeTo(out);
+		}
+	}
+
+	// replaces the rings and vwap of one instrument, its spilled bars stay
+	public void readFrom(String instrument, DataInput in) throws IOException {
+		if (in.readBoolean()) {
+			instruments.computeIfAbsent(instrument, Instrument::new).readFrom(in);
+		}
+	}
+
+	// empties the rings and the vwap of every instrument, the spills are kept
+	public void clear() {
+		instruments.values().forEach(Instrument::clear);
+	}
+
+	@PreDestroy
+	public void stop() {
+		for (Instrument instrument : instruments.values()) {
+			instrument.series.values().forEach(BarSeries::flush);
+			for (BarSpill spill : instrument.spills) {
+				try {
+					spill.close();
+				} catch (IOException e) {
+					log.warn("Could not close bars of {}", instrument.instrument, e);
+				}
+			}
+		}
+	}
+
+	private class Instrument {
+		private final String instrument;
+		private final Map<Resolution, BarSeries> series = new EnumMap<>(Resolution.class);
+		private final List<BarSpill> spills = new ArrayList<>();
+
+		private long volume;
+		private BigDecimal notional = BigDecimal.ZERO;
+		// both entries of a trade matched inside a book come one after the other
+		private Long executionId;
+
+		private Instrument(String instrument) {
+			this.instrument = instrument;
+			for (Resolution resolution : Resolution.values()) {
+				final BarSpill spill = spillDirectory != null ? spill(resolution) : null;
+				if (spill != null) {
+					spills.add(spill);
+				}
+				series.put(resolution, new BarSeries(resolution, capacity, spill));
+			}
+		}
+
+		// a trade matched inside the book shows up once per side
+		private void add(Long executionId, long time, BigDecimal price, int quantity) {
+			if (executionId.equals(this.executionId)) {
+				return;
+			}
+			this.executionId = executionId;
+
+			for (BarSeries bars : series.values()) {
+				if (!bars.add(time, price, quantity)) {
+					log.debug("Execution of {} at {} is older than its {} bars", instrument,
+							time, bars.getResolution().getLabel());
+				}
+			}
+			synchronized (this) {
+				volume += quantity;
+				notional = notional.add(price.multiply(BigDecimal.valueOf(quantity)));
+			}
+		}
+
+		private synchronized void clear() {
+			series.values().forEach(BarSeries::clear);
+			volume = 0;
+			notional = BigDecimal.ZERO;
+			executionId = null;
+		}
+
+		private synchronized void writeTo(DataOutput out) throws IOException {
+			out.writeLong(volume);
+			BarSeries.writeDecimal(out, notional);
+			out.writeLong(executionId != null ? executionId : -1);
+			out.writeInt(series.size());
+			for (BarSeries bars : series.values()) {
+				out.writeUTF(bars.getResolution().getLabel());
+				bars.writeTo(out);
+			}
+		}
+
+		private synchronized void readFrom(DataInput in) throws IOException {
+			volume = in.readLong();
+			notional = BarSeries.readDecimal(in);
+			final long id = in.readLong();
+			executionId = id >= 0 ? id : null;
+			final int resolutions = in.readInt();
+			for (int i = 0; i < resolutions; i++) {
+				final Resolution resolution = Resolution.of(in.readUTF());
+				if (resolution == null) {
+					throw new IOException("unknown bar resolution");
+				}
+				series.get(resolution).readFrom(in);
+			}
+		}
+
+		private synchronized Vwap vwap() {
+			return Vwap.builder().instrument(instrument).volume(volume)
+					.vwap(volume > 0
+							? notional.divide(BigDecimal.valueOf(volume), MathContext.DECIMAL64)
+							: null)
+					.build();
+		}
+
+		// /instruments/abc -> %2Finstruments%2Fabc-1m.bars
+		private BarSpill spill(Resolution resolution) {
+			try {
+				Files.createDirectories(spillDirectory);
+				return new BarSpill(spillDirectory.resolve(URLEncoder.encode(instrument, "UTF-8")
+						+ "-" + resolution.getLabel() + ".bars"));
+			} catch (UnsupportedEncodingException e) {
+				throw new IllegalStateException(e);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+}
@@ -0,0 +1,163 @@
+package com.equity.order.bar;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import lombok.extern.log4j.Log4j2;
+
+// bars pushed out of the ring, one file per instrument and resolution
+// fixed size records in the order of their start, so a range is found by binary search:
+// start, open, high, low, close and notional as scale byte and unscaled long, volume,
+// trades
+// a bar that does not fit a record, or is not newer than the last one, is dropped,
+// bars replayed at startup come in again
+@Log4j2
+public class BarSpill implements AutoCloseable {
+
+	static final int RECORD = 8 + 5 * 9 + 8 + 4;
+
+	private final Path path;
+	private final FileChannel channel;
+	private final ByteBuffer record = ByteBuffer.allocate(RECORD);
+
+	private long records;
+	private long last = Long.MIN_VALUE;
+
+	public BarSpill(Path path) {
+		this.path = path;
+		try {
+			channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+					StandardOpenOption.WRITE);
+			// a record cut short by a crash is written again
+			records = channel.size() / RECORD;
+			channel.truncate(records * RECORD);
+			if (records > 0) {
+				last = startAt(records - 1);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	// start of the newest bar in the file
+	public synchronized long getLast() {
+		return last;
+	}
+
+	public synchronized void write(Bar bar, BigDecimal notional) {
+		final long start = bar.getStart().getTime();
+		if (start <= last) {
+			return;
+		}
+		if (!fits(bar.getOpen()) || !fits(bar.getHigh()) || !fits(bar.getLow())
+				|| !fits(bar.getClose()) || !fits(notional)) {
+			log.warn("Dropping bar {} at {} from {}, it does not fit a record", bar, start,
+					path);
+			return;
+		}
+
+		record.clear();
+		record.putLong(start);
+		put(bar.getOpen());
+		put(bar.getHigh());
+		put(bar.getLow());
+		put(bar.getClose());
+		put(notional);
+		record.putLong(bar.getVolume());
+		record.putInt(bar.getTrades());
+		record.flip();
+		try {
+			while (record.hasRemaining()) {
+				channel.write(record, records * RECORD + record.position());
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		records++;
+		last = start;
+	}
+
+	// bars starting in the range, both inclusive, oldest first, at most limit of them
+	public synchronized List<Bar> read(long from, long to, int limit) {
+		final List<Bar> bars = new ArrayList<>();
+		try {
+			// first record starting at or after from
+			long first = 0;
+			long end = records;
+			while (first < end) {
+				final long middle = (first + end) >>> 1;
+				if (startAt(middle) < from) {
+					first = middle + 1;
+				} else {
+					end = middle;
+				}
+			}
+
+			for (long i = first; i < records && bars.size() < limit; i++) {
+				read(i);
+				final long start = record.getLong();
+				if (start > to) {
+					break;
+				}
+				final BigDecimal open = get();
+				final BigDecimal high = get();
+				final BigDecimal low = get();
+				final BigDecimal close = get();
+				final BigDecimal notional = get();
+				final long volume = record.getLong();
+				bars.add(Bar.builder().start(new Date(start)).open(open).high(high).low(low)
+						.close(close).volume(volume).trades(record.getInt())
+						.vwap(notional.divide(BigDecimal.valueOf(volume),
+								MathContext.DECIMAL64))
+						.build());
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return bars;
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		channel.close();
+	}
+
+	private long startAt(long index) throws IOException {
+		read(index);
+		return record.getLong();
+	}
+
+	private void read(long index) throws IOException {
+		record.clear();
+		while (record.hasRemaining()) {
+			if (channel.read(record, index * RECORD + record.position()) < 0) {
+				throw new IOException("end of " + path);
+			}
+		}
+		record.flip();
+	}
+
+	private void put(BigDecimal value) {
+		record.put((byte) value.scale());
+		record.putLong(value.unscaledValue().longValue());
+	}
+
+	private BigDecimal get() {
+		final int scale = record.get();
+		return BigDecimal.valueOf(record.getLong(), scale);
+	}
+
+	private static boolean fits(BigDecimal value) {
+		return value.scale() >= Byte.MIN_VALUE && value.scale() <= Byte.MAX_VALUE
+				&& value.unscaledValue().bitLength() < 64;
+	}
+}
@@ -0,0 +1,37 @@
+package com.equity.order.bar;
+
+// bar lengths kept for every instrument
+public enum Resolution {
+	SECOND("1s", 1000L), MINUTE("1m", 60_000L), HOUR("1h", 3_600_000L);
+
+	private final String label;
+	private final long millis;
+
+	Resolution(String label, long millis) {
+		this.label = label;
+		this.millis = millis;
+	}
+
+	public String getLabel() {
+		return label;
+	}
+
+	public long getMillis() {
+		return millis;
+	}
+
+	// start of the bar the time falls in
+	public long startOf(long time) {
+		return time - Math.floorMod(time, millis);
+	}
+
+	// 1m -> MINUTE, null when there is no such bar
+	public static Resolution of(String label) {
+		for (Resolution resolution : values()) {
+			if (resolution.label.equals(label)) {
+				return resolution;
+			}
+		}
+		return null;
+	}
+}
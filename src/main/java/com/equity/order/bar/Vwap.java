@@ -0,0 +1,19 @@
+package com.equity.order.bar;
+
+import java.math.BigDecimal;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// volume weighted average price of everything traded in the instrument since start
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class Vwap {
+	private String instrument;
+	private long volume;
+	private BigDecimal vwap;
+}
@@ -5,12 +5,18 @@ import java.util.Date;
 import javax.persistence.Entity;
 import javax.persistence.EnumType;
 import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
 import javax.persistence.PrePersist;
 import javax.persistence.PreUpdate;
 import javax.persistence.Table;
+import javax.persistence.Version;
 import javax.validation.constraints.NotNull;
 
+import org.hibernate.annotations.GenericGenerator;
+
+import com.equity.order.OrderIdGenerator;
+
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -25,6 +31,8 @@ import lombok.NoArgsConstructor;
 public class OrderBook {
 
 	@Id
+	@GeneratedValue(generator = OrderIdGenerator.NAME)
+	@GenericGenerator(name = OrderIdGenerator.NAME, strategy = OrderIdGenerator.STRATEGY)
 	private Long id;
 	@NotNull
 	private String instrument;
@@ -35,13 +43,16 @@ public class OrderBook {
 	private Date createdDate;
 	private Date updatedDate;
 
+	// history entries reference the book by id and version
+	@Version
+	private Long version;
+
 	public enum Status {
 		OPEN, CLOSED
 	}
 
 	@PrePersist
 	void prePersist() {
-		this.id = System.nanoTime(); // quick id generation
 		this.status = Status.OPEN;
 		this.createdDate = new Date();
 		this.updatedDate = createdDate;
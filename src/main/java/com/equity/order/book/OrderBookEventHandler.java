@@ -0,0 +1,45 @@
+package com.equity.order.book;
+
+import java.util.Collections;
+
+import org.springframework.data.rest.core.annotation.HandleAfterCreate;
+import org.springframework.data.rest.core.annotation.HandleAfterSave;
+import org.springframework.data.rest.core.annotation.RepositoryEventHandler;
+import org.springframework.stereotype.Component;
+
+import com.equity.order.OrderMetrics;
+import com.equity.order.replication.ReplicationService;
+
+// closing a book goes through spring data rest, so release its matcher here and
+// cancel what still rested on it
+@Component
+@RepositoryEventHandler
+public class OrderBookEventHandler {
+
+	private final OrderBookService orderBookService;
+	private final OrderMetrics orderMetrics;
+	private final ReplicationService replicationService;
+
+	public OrderBookEventHandler(OrderBookService orderBookService, OrderMetrics orderMetrics,
+			ReplicationService replicationService) {
+		this.orderBookService = orderBookService;
+		this.orderMetrics = orderMetrics;
+		this.replicationService = replicationService;
+	}
+
+	@HandleAfterCreate
+	public void afterCreate(OrderBook orderBook) {
+		orderMetrics.orderBook(orderBook.getStatus());
+		replicationService.books(Collections.singletonList(orderBook));
+	}
+
+	@HandleAfterSave
+	public void afterSave(OrderBook orderBook) {
+		replicationService.books(Collections.singletonList(orderBook));
+		if (orderBook.getStatus() == OrderBook.Status.CLOSED) {
+			orderMetrics.orderBook(OrderBook.Status.CLOSED);
+			// queued behind any order still being matched on this book
+			orderBookService.close(orderBook);
+		}
+	}
+}
@@ -0,0 +1,16 @@
+package com.equity.order.book;
+
+import java.util.List;
+
+import com.equity.order.execution.Execution;
+import com.equity.order.history.OrderHistory;
+
+// told about every append to a book, on the writer of its instrument right after it
+// is stored, so it sees fills and cancels whoever caused them
+// must not block, anything slow is handed to another thread
+public interface OrderBookListener {
+
+	void recorded(OrderBook orderBook, List<Execution> executions,
+			List<OrderHistory> recorded);
+
+}
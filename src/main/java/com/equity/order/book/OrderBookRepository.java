@@ -1,5 +1,6 @@
 package com.equity.order.book;
 
+import java.util.List;
 import java.util.Optional;
 
 import org.springframework.data.repository.CrudRepository;
@@ -9,4 +10,6 @@ import com.equity.order.book.OrderBook.Status;
 public interface OrderBookRepository extends CrudRepository<OrderBook, Long> {
 
 	public Optional<OrderBook> findByIdAndStatus(Long id, Status status);
+
+	public List<OrderBook> findByInstrumentAndStatus(String instrument, Status status);
 }
\ No newline at end of file
@@ -1,22 +1,50 @@
 package com.equity.order.book;
 
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import org.springframework.data.rest.webmvc.RepositoryRestController;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
-import org.springframework.web.client.RestTemplate;
 
+import com.equity.order.OrderMetrics;
+import com.equity.order.bar.BarService;
+import com.equity.order.execution.Execution;
+import com.equity.order.history.OrderBookProjection;
+import com.equity.order.history.OrderBookState;
+import com.equity.order.history.OrderEventStore;
 import com.equity.order.history.OrderHistory;
-import com.equity.order.history.OrderHistoryRepository;
+import com.equity.order.history.OrderHistoryService.OrderHistory.OrderItem;
+import com.equity.order.history.OrderItemReader;
+import com.equity.order.item.Side;
+import com.equity.order.marketdata.MarketDataService;
+import com.equity.order.matching.MatchResult;
+import com.equity.order.matching.MatchingService;
+import com.equity.order.matching.RestingOrder;
+import com.equity.order.replication.ReplicationService;
+import com.equity.order.risk.RiskReason;
+import com.equity.order.risk.RiskRejection;
+import com.equity.order.risk.RiskService;
+import com.equity.order.sequencer.SequencerService;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import io.micrometer.core.instrument.Timer;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -32,17 +60,43 @@ public class OrderBookService {
 	public final static String ENTITIES = "orderBooks";
 
 	private final OrderBookRepository orderBookRepository;
-	private final OrderHistoryRepository orderHistoryRepository;
+	private final OrderEventStore orderEventStore;
+	private final MatchingService matchingService;
+	private final SequencerService sequencerService;
+	private final OrderBookProjection orderBookProjection;
+	private final MarketDataService marketDataService;
+	private final OrderMetrics orderMetrics;
+	private final ReplicationService replicationService;
+	private final BarService barService;
+	private final RiskService riskService;
+	private final List<OrderBookListener> listeners = new CopyOnWriteArrayList<>();
 
 	// both will init at somewhere else for specific usage
 	private static final ObjectMapper objectMapper = new ObjectMapper();
-	private final RestTemplate restTemplate;
+	private final OrderItemResolver orderItemResolver;
 
 	public OrderBookService(OrderBookRepository orderBookRepository,
-			OrderHistoryRepository orderHistoryRepository, RestTemplate restTemplate) {
+			OrderEventStore orderEventStore, MatchingService matchingService,
+			SequencerService sequencerService, OrderItemResolver orderItemResolver,
+			OrderBookProjection orderBookProjection, MarketDataService marketDataService,
+			OrderMetrics orderMetrics, ReplicationService replicationService,
+			BarService barService, RiskService riskService) {
 		this.orderBookRepository = orderBookRepository;
-		this.orderHistoryRepository = orderHistoryRepository;
-		this.restTemplate = restTemplate;
+		this.orderEventStore = orderEventStore;
+		this.matchingService = matchingService;
+		this.sequencerService = sequencerService;
+		this.orderItemResolver = orderItemResolver;
+		this.orderBookProjection = orderBookProjection;
+		this.marketDataService = marketDataService;
+		this.orderMetrics = orderMetrics;
+		this.replicationService = replicationService;
+		this.barService = barService;
+		this.riskService = riskService;
+	}
+
+	// listeners register themselves, so they may depend on this service
+	public void addListener(OrderBookListener listener) {
+		listeners.add(listener);
 	}
 
 	// another service to
@@ -54,13 +108,15 @@ public class OrderBookService {
 			@RequestBody Order order)
 			throws NumberFormatException, JsonProcessingException {
 
-		log.info("Adding orders {} to {}", order, orderBookId);
+		// the whole order is only rendered when debugging
+		log.debug("Adding orders {} to {}", order, orderBookId);
 
 		// find only OPEN status order book
 		// right now just throw not present can throw better error
-		final OrderBook orderBook = orderBookRepository
-				.findByIdAndStatus(Long.parseLong(orderBookId), OrderBook.Status.OPEN)
-				.orElse(null);
+		final OrderBook orderBook = orderMetrics.time(OrderMetrics.BOOK_LOOKUP,
+				() -> orderBookRepository
+						.findByIdAndStatus(Long.parseLong(orderBookId), OrderBook.Status.OPEN)
+						.orElse(null));
 
 		return addOrderHistory(orderBook, order);
 	}
@@ -71,43 +127,369 @@ public class OrderBookService {
 			@RequestBody Order order)
 			throws NumberFormatException, JsonProcessingException {
 
-		log.info("Adding executions {} to {}", order, orderBookId);
+		log.debug("Adding executions {} to {}", order, orderBookId);
 
 		// find only CLOSED status order book
 		// right now just throw not present can throw better error
-		final OrderBook orderBook = orderBookRepository
-				.findByIdAndStatus(Long.parseLong(orderBookId), OrderBook.Status.CLOSED)
-				.orElse(null);
+		final OrderBook orderBook = orderMetrics.time(OrderMetrics.BOOK_LOOKUP,
+				() -> orderBookRepository
+						.findByIdAndStatus(Long.parseLong(orderBookId), OrderBook.Status.CLOSED)
+						.orElse(null));
 
 		return addOrderHistory(orderBook, order);
 	}
 
-	public ResponseEntity<?> addOrderHistory(OrderBook orderBook, Order order)
-			throws JsonProcessingException {
+	// takes what is left of a resting limit order off an open book
+	@DeleteMapping("/{orderBookId}/orders/{orderId}")
+	public ResponseEntity<?> cancelOrder(@PathVariable Long orderBookId,
+			@PathVariable Long orderId) {
+
+		log.info("Canceling {} on {}", orderId, orderBookId);
+
+		final OrderBook orderBook = orderBookRepository
+				.findByIdAndStatus(orderBookId, OrderBook.Status.OPEN).orElse(null);
+		if (orderBook == null) {
+			return ResponseEntity.badRequest().build();
+		}
+
+		return cancelOrder(orderBook, orderId) != null ? ResponseEntity.noContent().build()
+				: ResponseEntity.notFound().build();
+	}
+
+	// quantity down keeps the order in its place, a new price sends it to the back
+	@PatchMapping(value = "/{orderBookId}/orders/{orderId}",
+			consumes = MediaType.APPLICATION_JSON_UTF8_VALUE)
+	public ResponseEntity<?> amendOrder(@PathVariable Long orderBookId,
+			@PathVariable Long orderId, @RequestBody Amendment amendment) {
+
+		log.info("Amending {} on {} to {}", orderId, orderBookId, amendment);
+
+		final OrderBook orderBook = orderBookRepository
+				.findByIdAndStatus(orderBookId, OrderBook.Status.OPEN).orElse(null);
+		if (orderBook == null) {
+			return ResponseEntity.badRequest().build();
+		}
+
+		try {
+			return amendOrder(orderBook, orderId, amendment.getPrice(),
+					amendment.getQuantity()) != null ? ResponseEntity.noContent().build()
+							: ResponseEntity.notFound().build();
+		} catch (IllegalArgumentException e) {
+			log.info("Rejected amendment of {}: {}", orderId, e.getMessage());
+			return ResponseEntity.badRequest().build();
+		}
+	}
+
+	// state folded from the book history as it was appended
+	@GetMapping("/{orderBookId}/state")
+	public ResponseEntity<OrderBookState> getState(@PathVariable Long orderBookId) {
+		final OrderBookState state = orderBookProjection.get(orderBookId);
+		if (state != null) {
+			return ResponseEntity.ok(state);
+		}
+
+		return orderBookRepository.existsById(orderBookId)
+				? ResponseEntity.ok(OrderBookState.builder().orderBookId(orderBookId).build())
+				: ResponseEntity.notFound().build();
+	}
+
+	public ResponseEntity<?> addOrderHistory(OrderBook orderBook, Order order) {
 		if (orderBook == null) {
 			return ResponseEntity.badRequest().build();
 		}
 
-		// just to not throw at lambda
-		// can use a throwing function at lambda
-		final String orderBookString = objectMapper.writeValueAsString(orderBook);
+		// remote fetches and parsing stay on the request thread, only the writes are
+		// sequenced
+		final List<String> locations = order.itemList.stream().map(Order.Item::getLocation)
+				.collect(Collectors.toList());
+		if (!locations.stream().allMatch(OrderHistory::isItem)) {
+			log.info("Rejected locations {} on {}", locations, orderBook.getId());
+			return ResponseEntity.badRequest().build();
+		}
+		final List<String> items = orderMetrics.time(OrderMetrics.ITEM_FETCH,
+				() -> orderItemResolver.resolve(locations));
+
+		final List<OrderItem> orderItems = orderMetrics.time(OrderMetrics.ITEM_PARSE, () -> {
+			final List<OrderItem> parsed = new ArrayList<>(items.size());
+			for (int i = 0; i < items.size(); i++) {
+				final OrderItem orderItem = OrderItemReader.read(items.get(i));
+				// a self link we could not record from is replaced by the location asked for
+				if (!OrderHistory.isItem(orderItem.getLocation())) {
+					orderItem.setLocation(locations.get(i));
+				}
+				parsed.add(orderItem);
+			}
+			return parsed;
+		});
 
-		// can be rest api call, using repo for this demo only
-		orderHistoryRepository.saveAll((List<OrderHistory>) order.itemList.stream()
-				.map(orderItem -> OrderHistory.builder().orderBook(orderBookString)
-						.orderItem(get(orderItem.location)).build())
-				.collect(Collectors.toList()));
+		final List<MatchResult> matchResults = addOrder(orderBook, orderItems);
+
+		// none of the order is on the book, it can be sent again as it is once fixed
+		final List<RiskRejection> rejections = new ArrayList<>();
+		for (int i = 0; i < matchResults.size(); i++) {
+			if (matchResults.get(i).getRejected() != null) {
+				rejections.add(RiskRejection.builder().location(locations.get(i))
+						.reason(matchResults.get(i).getRejected()).build());
+			}
+		}
+		if (!rejections.isEmpty()) {
+			log.info("Rejected {} on {}", rejections, orderBook.getId());
+			return ResponseEntity.unprocessableEntity().body(rejections);
+		}
 
 		// normally rest association returns no content
 		return ResponseEntity.noContent().build();
 	}
 
+	// order items already at hand, what each of them did to the book in the same order
+	// rejected items never reach the book, the others go on as if they came alone
+	public List<MatchResult> addOrderItems(OrderBook orderBook, List<OrderItem> orderItems) {
+		return addOrderItems(orderBook, orderItems, false);
+	}
+
+	// the items of one order, when any of them is rejected none of them reach the book
+	// and the others come back as NONE
+	public List<MatchResult> addOrder(OrderBook orderBook, List<OrderItem> orderItems) {
+		return addOrderItems(orderBook, orderItems, true);
+	}
+
+	private List<MatchResult> addOrderItems(OrderBook orderBook, List<OrderItem> orderItems,
+			boolean whole) {
+		final List<RiskReason> rejections = riskService.check(orderBook, orderItems, whole);
+		if (rejections != null && whole) {
+			return rejected(rejections);
+		}
+		return sequencerService.call(orderBook.getInstrument(),
+				() -> record(orderBook, orderItems, rejections, whole));
+	}
+
+	// runs on the writer of the book instrument, the position limits count what rests
+	// on the book so they are taken here
+	private List<MatchResult> record(OrderBook orderBook, List<OrderItem> orderItems,
+			List<RiskReason> checked, boolean whole) {
+		final List<RiskReason> rejections = riskService.reserve(orderBook, orderItems,
+				checked, orderItem -> matchingService.accepts(orderBook, orderItem), whole);
+		if (rejections == null) {
+			return record(orderBook, orderItems);
+		}
+		if (whole) {
+			return rejected(rejections);
+		}
+
+		final List<OrderItem> accepted = new ArrayList<>(orderItems.size());
+		for (int i = 0; i < orderItems.size(); i++) {
+			if (rejections.get(i) == null) {
+				accepted.add(orderItems.get(i));
+			}
+		}
+		final Iterator<MatchResult> matched = accepted.isEmpty()
+				? Collections.<MatchResult>emptyIterator()
+				: record(orderBook, accepted).iterator();
+
+		final List<MatchResult> matchResults = new ArrayList<>(orderItems.size());
+		for (RiskReason rejection : rejections) {
+			matchResults.add(
+					rejection != null ? MatchResult.rejected(rejection) : matched.next());
+		}
+		return matchResults;
+	}
+
+	// the others come back as NONE
+	private static List<MatchResult> rejected(List<RiskReason> rejections) {
+		return rejections.stream().map(
+				rejection -> rejection != null ? MatchResult.rejected(rejection) : MatchResult.NONE)
+				.collect(Collectors.toList());
+	}
+
+	// the canceled entry, null when the order is not resting on the book
+	public OrderHistory cancelOrder(OrderBook orderBook, Long orderId) {
+		return sequencerService.call(orderBook.getInstrument(),
+				() -> cancel(orderBook, orderId));
+	}
+
+	// what the amended order traded, null when it is not resting on the book
+	// a missing price or quantity stays as it is
+	public MatchResult amendOrder(OrderBook orderBook, Long orderId, BigDecimal price,
+			Integer quantity) {
+		return sequencerService.call(orderBook.getInstrument(),
+				() -> amend(orderBook, orderId, price, quantity));
+	}
+
+	// a book closed on its own, whatever still rests on it is canceled once the orders
+	// queued before the close are matched
+	public CompletableFuture<Void> close(OrderBook orderBook) {
+		return sequencerService.submit(orderBook.getInstrument(), () -> {
+			final List<RestingOrder> drained = matchingService.drain(orderBook);
+			if (!drained.isEmpty()) {
+				store(orderBook, new ArrayList<>(), stored -> drained.stream()
+						.map(resting -> OrderHistory.resting(orderBook, resting.getId(),
+								resting.getSide(), resting.getPrice(), resting.getQuantity(),
+								OrderHistory.Status.ORDER_CANCELED))
+						.collect(Collectors.toList()));
+			}
+			marketDataService.closed(orderBook);
+			riskService.closed(orderBook);
+			return null;
+		});
+	}
+
+	// runs on the writer of the book instrument
+	private OrderHistory cancel(OrderBook orderBook, Long orderId) {
+		final RestingOrder resting = matchingService.resting(orderBook, orderId);
+		if (resting == null) {
+			return null;
+		}
+
+		matchingService.cancel(orderBook, orderId);
+		final List<OrderHistory> recorded = store(orderBook, new ArrayList<>(),
+				stored -> Collections.singletonList(OrderHistory.resting(orderBook, orderId,
+						resting.getSide(), resting.getPrice(), resting.getQuantity(),
+						OrderHistory.Status.ORDER_CANCELED)));
+
+		marketDataService.publish(orderBook,
+				Collections.singletonList(level(resting.getSide(), resting.getPrice())),
+				Collections.singletonList(MatchResult.NONE));
+		return recorded.get(0);
+	}
+
+	// runs on the writer of the book instrument
+	private MatchResult amend(OrderBook orderBook, Long orderId, BigDecimal price,
+			Integer quantity) {
+		final RestingOrder resting = matchingService.resting(orderBook, orderId);
+		if (resting == null) {
+			return null;
+		}
+
+		final BigDecimal amendedPrice = price != null ? price : resting.getPrice();
+		final int amendedQuantity = quantity != null ? quantity : resting.getQuantity();
+		final MatchResult matchResult = matchingService.amend(orderBook, orderId,
+				amendedPrice, amendedQuantity);
+
+		store(orderBook, matchResult.getExecutions(), stored -> {
+			final List<OrderHistory> orderHistories = new ArrayList<>();
+			if (matchResult.getCanceledQuantity() > 0) {
+				orderHistories.add(OrderHistory.resting(orderBook, orderId,
+						resting.getSide(), resting.getPrice(),
+						matchResult.getCanceledQuantity(),
+						OrderHistory.Status.ORDER_CANCELED));
+			}
+			orderHistories.add(OrderHistory.resting(orderBook, orderId,
+					resting.getSide(), amendedPrice, amendedQuantity,
+					OrderHistory.Status.ORDER_AMENDED));
+			for (Execution execution : stored) {
+				orderHistories.add(OrderHistory.of(orderBook, execution, Side.BUY));
+				orderHistories.add(OrderHistory.of(orderBook, execution, Side.SELL));
+			}
+			return orderHistories;
+		});
+
+		// the level it left and the one it went to
+		marketDataService.publish(orderBook,
+				Arrays.asList(level(resting.getSide(), resting.getPrice()),
+						level(resting.getSide(), amendedPrice)),
+				Arrays.asList(MatchResult.NONE, matchResult));
+		return matchResult;
+	}
+
+	private static OrderItem level(Side side, BigDecimal price) {
+		return OrderItem.builder().side(side).price(price).build();
+	}
+
+	// runs on the writer of the book instrument
+	private List<MatchResult> record(OrderBook orderBook, List<OrderItem> orderItems) {
+		final List<MatchResult> matchResults = new ArrayList<>(orderItems.size());
+		final List<Execution> executions = new ArrayList<>();
+		try {
+			final Timer.Sample matching = orderMetrics.start();
+			for (OrderItem orderItem : orderItems) {
+				final MatchResult matchResult = matchingService.match(orderBook, orderItem);
+				matchResults.add(matchResult);
+				executions.addAll(matchResult.getExecutions());
+			}
+			orderMetrics.stop(matching, OrderMetrics.MATCH);
+
+			// each created order is followed by the executions it produced on open
+			// books, executions added to closed books have no matching side
+			// can be rest api call, using a store for this demo only
+			store(orderBook, executions, stored -> {
+				final List<OrderHistory> orderHistories = new ArrayList<>();
+				final Iterator<Execution> execution = stored.iterator();
+				for (int i = 0; i < orderItems.size(); i++) {
+					final OrderItem orderItem = orderItems.get(i);
+					final MatchResult matchResult = matchResults.get(i);
+					orderHistories.add(OrderHistory.of(orderBook, orderItem));
+
+					for (int j = 0; j < matchResult.getExecutions().size(); j++) {
+						final Execution next = execution.next();
+						orderHistories.add(OrderHistory.of(orderBook, next, Side.BUY));
+						orderHistories.add(OrderHistory.of(orderBook, next, Side.SELL));
+					}
+
+					if (matchResult.getCanceledQuantity() > 0) {
+						orderHistories.add(OrderHistory.canceled(orderBook, orderItem,
+								matchResult.getCanceledQuantity()));
+					}
+				}
+				return orderHistories;
+			});
+		} catch (RuntimeException e) {
+			// they never made it into the history, what they reserved is given back
+			riskService.release(orderItems);
+			throw e;
+		}
+
+		marketDataService.publish(orderBook, orderItems, matchResults);
+		return matchResults;
+	}
+
+	// the projection, the bars, the risk counters, the replicas and the listeners only
+	// see what was stored
+	private List<OrderHistory> store(OrderBook orderBook, List<Execution> executions,
+			Function<List<Execution>, List<OrderHistory>> history) {
+		return store(Collections.singletonList(orderBook), executions, history);
+	}
+
+	// one append for books of the same instrument, runs on the writer of that instrument
+	public List<OrderHistory> store(List<OrderBook> orderBooks, List<Execution> executions,
+			Function<List<Execution>, List<OrderHistory>> history) {
+		final List<OrderHistory> recorded = orderMetrics.time(OrderMetrics.STORE,
+				() -> orderEventStore.append(executions, history));
+		orderMetrics.recorded(recorded);
+		orderBookProjection.apply(recorded);
+		riskService.recorded(executions, recorded);
+		replicationService.replicate(executions, recorded);
+
+		for (OrderBook orderBook : orderBooks) {
+			final List<Execution> ofBook = orderBooks.size() == 1 ? executions
+					: executions.stream()
+							.filter(execution -> orderBook.getId()
+									.equals(execution.getOrderBookId()))
+							.collect(Collectors.toList());
+			final List<OrderHistory> recordedOfBook = orderBooks.size() == 1 ? recorded
+					: recorded.stream()
+							.filter(orderHistory -> orderBook.getId()
+									.equals(orderHistory.getOrderBookId()))
+							.collect(Collectors.toList());
+			barService.apply(orderBook, recordedOfBook);
+			for (OrderBookListener listener : listeners) {
+				listener.recorded(orderBook, ofBook, recordedOfBook);
+			}
+		}
+		return recorded;
+	}
+
 	// get full object of orders
-	// can do some optimization
 	public String get(String url) {
-		log.info("Get data from {}", url);
+		return orderItemResolver.get(url);
+	}
 
-		return restTemplate.getForObject(url, String.class);
+	@Data
+	@Builder
+	@NoArgsConstructor
+	@AllArgsConstructor
+	public static class Amendment {
+		private BigDecimal price;
+		private Integer quantity;
 	}
 
 	@Data
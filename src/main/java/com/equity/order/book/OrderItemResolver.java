@@ -0,0 +1,210 @@
+package com.equity.order.book;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.log4j.Log4j2;
+
+// resolves order item locations to their full objects
+// distinct locations are fetched concurrently, several items of the same
+// collection are fetched in one call through its /search/ids endpoint
+// order items are immutable so fetched objects are cached by location and never
+// invalidated, only evicted once the cache outgrows order.fetch.cache.max-weight
+@Component
+@Log4j2
+public class OrderItemResolver {
+
+	private static final Set<String> BATCHED = new HashSet<>(
+			Arrays.asList("limitOrders", "marketOrders", "executions"));
+
+	private static final ObjectMapper objectMapper = new ObjectMapper();
+
+	private final RestTemplate restTemplate;
+	private final Cache<String, String> cache;
+	private final ThreadPoolExecutor executor;
+	private final long timeoutMillis;
+	private final int batchSize;
+
+	public OrderItemResolver(RestTemplate restTemplate,
+			@Value("${order.fetch.threads:16}") int threads,
+			@Value("${order.fetch.queue-size:1024}") int queueSize,
+			@Value("${order.fetch.timeout-ms:5000}") long timeoutMillis,
+			@Value("${order.fetch.batch-size:100}") int batchSize,
+			@Value("${order.fetch.cache.max-weight:67108864}") long cacheMaxWeight,
+			MeterRegistry meterRegistry) {
+		this.restTemplate = restTemplate;
+		// weighed by characters, roughly the heap taken by the cached json
+		this.cache = Caffeine.newBuilder().maximumWeight(cacheMaxWeight)
+				.weigher((String location, String item) -> location.length() + item.length())
+				.recordStats().build();
+		CaffeineCacheMetrics.monitor(meterRegistry, cache, "orderItems");
+		this.timeoutMillis = timeoutMillis;
+		this.batchSize = batchSize;
+
+		final AtomicInteger count = new AtomicInteger();
+		// a full pool makes the caller fetch by itself instead of queueing forever
+		this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<>(queueSize), runnable -> {
+					final Thread thread = new Thread(runnable,
+							"order-item-fetch-" + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}, new ThreadPoolExecutor.CallerRunsPolicy());
+		this.executor.allowCoreThreadTimeOut(true);
+		Gauge.builder("order.fetch.queued", executor, pool -> pool.getQueue().size())
+				.register(meterRegistry);
+	}
+
+	// returns the objects in the same order as the given locations
+	public List<String> resolve(List<String> locations) {
+		final Map<String, CompletableFuture<String>> fetches = new HashMap<>();
+
+		final Map<String, List<String>> collections = new LinkedHashMap<>();
+		for (String location : new LinkedHashSet<>(locations)) {
+			final String cached = cache.getIfPresent(location);
+			if (cached != null) {
+				fetches.put(location, CompletableFuture.completedFuture(cached));
+				continue;
+			}
+
+			final String collection = collectionOf(location);
+			if (collection == null) {
+				fetches.put(location, fetch(location));
+			} else {
+				collections.computeIfAbsent(collection, key -> new ArrayList<>())
+						.add(location);
+			}
+		}
+
+		collections.forEach((collection, members) -> {
+			if (members.size() == 1) {
+				fetches.put(members.get(0), fetch(members.get(0)));
+				return;
+			}
+
+			for (int from = 0; from < members.size(); from += batchSize) {
+				final List<String> chunk = members.subList(from,
+						Math.min(from + batchSize, members.size()));
+				final CompletableFuture<Map<String, String>> batch = CompletableFuture
+						.supplyAsync(() -> getAll(collection, chunk), executor);
+
+				// anything missing from the batch falls back to a single fetch
+				chunk.forEach(location -> fetches.put(location,
+						batch.thenCompose(found -> found.containsKey(idOf(location))
+								? CompletableFuture.completedFuture(found.get(idOf(location)))
+								: fetch(location))));
+			}
+		});
+
+		final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		try {
+			final List<String> items = new ArrayList<>(locations.size());
+			for (String location : locations) {
+				final String item = await(fetches.get(location), deadline, location);
+				cache.put(location, item);
+				items.add(item);
+			}
+			return items;
+		} finally {
+			fetches.values().forEach(fetch -> fetch.cancel(true));
+		}
+	}
+
+	// get full object of orders, always remote
+	public String get(String url) {
+		log.info("Get data from {}", url);
+
+		return restTemplate.getForObject(url, String.class);
+	}
+
+	Map<String, String> getAll(String collection, List<String> locations) {
+		final String url = collection + "/search/ids?ids=" + locations.stream()
+				.map(OrderItemResolver::idOf).collect(Collectors.joining(","));
+
+		final Map<String, String> items = new HashMap<>();
+		try {
+			final JsonNode embedded = objectMapper.readTree(get(url)).path("_embedded");
+			embedded.elements().forEachRemaining(list -> list
+					.forEach(item -> items.put(
+							idOf(item.path("_links").path("self").path("href").asText()),
+							item.toString())));
+		} catch (IOException e) {
+			// single fetches will still be tried for every item
+			log.warn("Could not read batch from {}", url, e);
+		}
+		return items;
+	}
+
+	private CompletableFuture<String> fetch(String location) {
+		return CompletableFuture.supplyAsync(() -> get(location), executor);
+	}
+
+	private String await(CompletableFuture<String> fetch, long deadline, String location) {
+		try {
+			return fetch.get(Math.max(0, deadline - System.nanoTime()),
+					TimeUnit.NANOSECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ResourceAccessException("Interrupted getting " + location);
+		} catch (TimeoutException e) {
+			throw new ResourceAccessException("Timed out getting " + location);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	// http://host/limitOrders/123 -> http://host/limitOrders, null when not batchable
+	private static String collectionOf(String location) {
+		final int id = location.lastIndexOf('/');
+		final int collection = location.lastIndexOf('/', id - 1);
+		if (collection < 0 || !BATCHED.contains(location.substring(collection + 1, id))
+				|| !idOf(location).chars().allMatch(Character::isDigit)
+				|| idOf(location).isEmpty()) {
+			return null;
+		}
+		return location.substring(0, id);
+	}
+
+	private static String idOf(String location) {
+		return location.substring(location.lastIndexOf('/') + 1);
+	}
+
+	@PreDestroy
+	public void stop() {
+		executor.shutdownNow();
+	}
+}
@@ -5,14 +5,18 @@ import java.text.MessageFormat;
 import java.util.Date;
 
 import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
 import javax.persistence.PrePersist;
 import javax.persistence.PreUpdate;
 import javax.persistence.Table;
 import javax.validation.constraints.NotNull;
 
+import org.hibernate.annotations.GenericGenerator;
 import org.springframework.data.annotation.Immutable;
 
+import com.equity.order.OrderIdGenerator;
+
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -28,6 +32,8 @@ import lombok.NoArgsConstructor;
 public class Execution {
 
 	@Id
+	@GeneratedValue(generator = OrderIdGenerator.NAME)
+	@GenericGenerator(name = OrderIdGenerator.NAME, strategy = OrderIdGenerator.STRATEGY)
 	private Long id;
 	@NotNull
 	private Integer quantity;
@@ -36,9 +42,13 @@ public class Execution {
 
 	private Date createdDate;
 
+	// only set for executions produced by the matching engine
+	private Long orderBookId;
+	private Long buyOrderId;
+	private Long sellOrderId;
+
 	@PrePersist
 	void init() {
-		this.id = System.nanoTime(); // quick id generation
 		this.createdDate = new Date();
 	}
 
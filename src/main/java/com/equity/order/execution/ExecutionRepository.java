@@ -1,6 +1,15 @@
 package com.equity.order.execution;
 
+import java.util.Collection;
+import java.util.List;
+
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.data.rest.core.annotation.RestResource;
 
 public interface ExecutionRepository extends CrudRepository<Execution, Long> {
-}
\ No newline at end of file
+
+	// batch lookup for order item resolution, /search/ids?ids=1,2,3
+	@RestResource(path = "ids", rel = "ids")
+	public List<Execution> findByIdIn(@Param("ids") Collection<Long> ids);
+}
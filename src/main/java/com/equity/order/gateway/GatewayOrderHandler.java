@@ -0,0 +1,378 @@
+package com.equity.order.gateway;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.equity.order.book.OrderBook;
+import com.equity.order.book.OrderBookListener;
+import com.equity.order.book.OrderBookRepository;
+import com.equity.order.book.OrderBookService;
+import com.equity.order.execution.Execution;
+import com.equity.order.gateway.GatewayProtocol.CancelMessage;
+import com.equity.order.gateway.GatewayProtocol.NewOrderMessage;
+import com.equity.order.history.OrderHistory;
+import com.equity.order.history.OrderHistory.ItemType;
+import com.equity.order.history.OrderHistoryService.OrderHistory.OrderItem;
+import com.equity.order.history.OrderItemReader;
+import com.equity.order.item.LimitOrder;
+import com.equity.order.item.LimitOrderRepository;
+import com.equity.order.item.MarketOrder;
+import com.equity.order.item.MarketOrderRepository;
+import com.equity.order.item.Side;
+import com.equity.order.matching.MatchResult;
+
+import lombok.extern.log4j.Log4j2;
+
+// turns gateway messages into limit and market orders on their books
+// the orders are created and matched without a round trip through their rest
+// locations, each gets a NEW report, then a TRADE per fill on either side and a
+// CANCELED for a market remainder, or only a REJECTED one when the risk checks turn
+// it down
+// a cancel takes what is left of a resting order off its book and gets a CANCELED
+// report for it
+// fills and cancels are picked up from what the book writers store, so a gateway
+// order is told about them whoever traded against it or closed its book
+// messages and reports are handled on the single gateway worker thread, the writers
+// only look up the open orders and queue their reports behind it
+@Component
+@ConditionalOnProperty(name = "order.gateway.enabled", havingValue = "true")
+@Log4j2
+public class GatewayOrderHandler implements OrderBookListener {
+
+	private final OrderBookRepository orderBookRepository;
+	private final LimitOrderRepository limitOrderRepository;
+	private final MarketOrderRepository marketOrderRepository;
+	private final OrderBookService orderBookService;
+
+	private final NewOrderMessage newOrder = new NewOrderMessage();
+	private final CancelMessage cancel = new CancelMessage();
+
+	private final ExecutorService worker = Executors.newSingleThreadExecutor(runnable -> {
+		final Thread thread = new Thread(runnable, "gateway-worker");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	// open gateway orders by id, read by the writers and changed on the worker only
+	private final Map<Long, GatewayOrder> orders = new ConcurrentHashMap<>();
+
+	public GatewayOrderHandler(OrderBookRepository orderBookRepository,
+			LimitOrderRepository limitOrderRepository,
+			MarketOrderRepository marketOrderRepository, OrderBookService orderBookService) {
+		this.orderBookRepository = orderBookRepository;
+		this.limitOrderRepository = limitOrderRepository;
+		this.marketOrderRepository = marketOrderRepository;
+		this.orderBookService = orderBookService;
+		orderBookService.addListener(this);
+	}
+
+	// complete messages of a session, in the order they were read
+	public void submit(GatewaySession session, ByteBuffer messages) {
+		worker.execute(() -> handle(session, messages));
+	}
+
+	// the session is gone, its orders stay on their books without reports
+	public void closed(GatewaySession session) {
+		worker.execute(() -> orders.values().removeIf(order -> order.session == session));
+	}
+
+	private void handle(GatewaySession session, ByteBuffer messages) {
+		// new orders go to their books in batches, in the order they came in
+		final Map<Long, List<Integer>> byBook = new LinkedHashMap<>();
+		for (int offset = 0; offset < messages.limit(); offset += messages.getShort(offset)) {
+			switch (messages.get(offset + 2)) {
+			case GatewayProtocol.NEW_ORDER:
+				newOrder.wrap(messages, offset);
+				if (valid(newOrder)) {
+					byBook.computeIfAbsent(newOrder.orderBookId(), id -> new ArrayList<>())
+							.add(offset);
+				} else {
+					reject(session, newOrder.clientOrderId(), newOrder.orderBookId(),
+							GatewayProtocol.INVALID_ORDER);
+				}
+				break;
+			case GatewayProtocol.CANCEL:
+				cancel.wrap(messages, offset);
+				try {
+					cancelOrder(session, cancel);
+				} catch (RuntimeException e) {
+					log.error("Gateway cancel of {} failed", cancel.orderId(), e);
+					reject(session, cancel.clientOrderId(), cancel.orderBookId(),
+							GatewayProtocol.INVALID_ORDER);
+				}
+				break;
+			default:
+				break;
+			}
+		}
+
+		byBook.forEach((orderBookId, offsets) -> {
+			try {
+				addOrders(session, orderBookId, messages, offsets);
+			} catch (RuntimeException e) {
+				log.error("Gateway orders to {} failed", orderBookId, e);
+				for (int offset : offsets) {
+					newOrder.wrap(messages, offset);
+					reject(session, newOrder.clientOrderId(), orderBookId,
+							GatewayProtocol.INVALID_ORDER);
+				}
+			}
+		});
+		session.flush();
+	}
+
+	private void addOrders(GatewaySession session, Long orderBookId, ByteBuffer messages,
+			List<Integer> offsets) {
+		final OrderBook orderBook = orderBookRepository
+				.findByIdAndStatus(orderBookId, OrderBook.Status.OPEN).orElse(null);
+		if (orderBook == null) {
+			for (int offset : offsets) {
+				reject(session, newOrder.wrap(messages, offset).clientOrderId(), orderBookId,
+						GatewayProtocol.UNKNOWN_BOOK);
+			}
+			return;
+		}
+
+		// saved per collection so each takes one batch of ids and inserts
+		final List<LimitOrder> limitOrders = new ArrayList<>();
+		final List<MarketOrder> marketOrders = new ArrayList<>();
+		for (int offset : offsets) {
+			newOrder.wrap(messages, offset);
+			final Side side = GatewayProtocol.side(newOrder.side());
+			if (newOrder.orderType() == GatewayProtocol.LIMIT) {
+				limitOrders.add(LimitOrder.builder().side(side).quantity(newOrder.quantity())
+						.price(GatewayProtocol.price(newOrder.price())).build());
+			} else {
+				marketOrders.add(MarketOrder.builder().side(side)
+						.quantity(newOrder.quantity()).build());
+			}
+		}
+		limitOrderRepository.saveAll(limitOrders);
+		marketOrderRepository.saveAll(marketOrders);
+
+		// new orders carry no account, so gateway orders always use the default limits
+		final List<OrderItem> orderItems = new ArrayList<>(offsets.size());
+		int limit = 0;
+		int market = 0;
+		for (int offset : offsets) {
+			newOrder.wrap(messages, offset);
+			if (newOrder.orderType() == GatewayProtocol.LIMIT) {
+				final LimitOrder limitOrder = limitOrders.get(limit++);
+				orderItems.add(OrderItem.builder()
+						.location("/" + ItemType.LIMIT_ORDER.getCollection() + "/"
+								+ limitOrder.getId())
+						.side(limitOrder.getSide()).price(limitOrder.getPrice())
+						.quantity(limitOrder.getQuantity())
+						.createdDate(OrderItemReader.formatDate(limitOrder.getCreatedDate()))
+						.build());
+			} else {
+				final MarketOrder marketOrder = marketOrders.get(market++);
+				orderItems.add(OrderItem.builder()
+						.location("/" + ItemType.MARKET_ORDER.getCollection() + "/"
+								+ marketOrder.getId())
+						.side(marketOrder.getSide()).quantity(marketOrder.getQuantity())
+						.createdDate(OrderItemReader.formatDate(marketOrder.getCreatedDate()))
+						.build());
+			}
+		}
+
+		// known before they reach the book, their fills are reported once this batch
+		// is done
+		for (int i = 0; i < offsets.size(); i++) {
+			final OrderItem orderItem = orderItems.get(i);
+			orders.put(idOf(orderItem), new GatewayOrder(session,
+					newOrder.wrap(messages, offsets.get(i)).clientOrderId(),
+					orderItem.getQuantity()));
+		}
+
+		final List<MatchResult> matchResults;
+		try {
+			matchResults = orderBookService.addOrderItems(orderBook, orderItems);
+		} catch (RuntimeException e) {
+			orderItems.forEach(orderItem -> orders.remove(idOf(orderItem)));
+			throw e;
+		}
+
+		for (int i = 0; i < offsets.size(); i++) {
+			newOrder.wrap(messages, offsets.get(i));
+			final OrderItem orderItem = orderItems.get(i);
+			final long orderId = idOf(orderItem);
+			if (matchResults.get(i).getRejected() != null) {
+				orders.remove(orderId);
+				reject(session, newOrder.clientOrderId(), orderBookId,
+						GatewayProtocol.reason(matchResults.get(i).getRejected()));
+				continue;
+			}
+
+			session.executionReport(newOrder.clientOrderId(), orderId, orderBookId,
+					GatewayProtocol.NEW, GatewayProtocol.NONE,
+					GatewayProtocol.price(orderItem.getPrice()), orderItem.getQuantity(),
+					orderItem.getQuantity());
+		}
+	}
+
+	private void cancelOrder(GatewaySession session, CancelMessage cancel) {
+		final OrderBook orderBook = orderBookRepository
+				.findByIdAndStatus(cancel.orderBookId(), OrderBook.Status.OPEN).orElse(null);
+		if (orderBook == null) {
+			reject(session, cancel.clientOrderId(), cancel.orderBookId(),
+					GatewayProtocol.UNKNOWN_BOOK);
+			return;
+		}
+
+		// reported here under the id of the cancel, not by the writer
+		orders.remove(cancel.orderId());
+		final OrderHistory canceled = orderBookService.cancelOrder(orderBook,
+				cancel.orderId());
+		if (canceled == null) {
+			reject(session, cancel.clientOrderId(), cancel.orderBookId(),
+					GatewayProtocol.UNKNOWN_ORDER);
+			return;
+		}
+
+		session.executionReport(cancel.clientOrderId(), cancel.orderId(),
+				cancel.orderBookId(), GatewayProtocol.CANCELED, GatewayProtocol.NONE,
+				GatewayProtocol.price(canceled.getPrice()), canceled.getQuantity(), 0);
+	}
+
+	// on the writer, only appends that touch an open gateway order go to the worker
+	@Override
+	public void recorded(OrderBook orderBook, List<Execution> executions,
+			List<OrderHistory> recorded) {
+		if (orders.isEmpty() || !touches(executions, recorded)) {
+			return;
+		}
+		worker.execute(() -> report(orderBook.getId(), executions, recorded));
+	}
+
+	private boolean touches(List<Execution> executions, List<OrderHistory> recorded) {
+		for (Execution execution : executions) {
+			if (isOpen(execution.getBuyOrderId()) || isOpen(execution.getSellOrderId())) {
+				return true;
+			}
+		}
+		for (OrderHistory orderHistory : recorded) {
+			if (orderHistory.getStatus() == OrderHistory.Status.ORDER_CANCELED
+					&& isOpen(orderHistory.getItemId())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean isOpen(Long orderId) {
+		return orderId != null && orders.containsKey(orderId);
+	}
+
+	// in the order of the history, the order that traded is reported before the one
+	// it traded against
+	private void report(Long orderBookId, List<Execution> executions,
+			List<OrderHistory> recorded) {
+		final Map<Long, Execution> byId = new HashMap<>();
+		executions.forEach(execution -> byId.put(execution.getId(), execution));
+		final Set<GatewaySession> sessions = new HashSet<>();
+
+		Long aggressor = null;
+		Long executionId = null;
+		for (OrderHistory orderHistory : recorded) {
+			switch (orderHistory.getStatus()) {
+			case ORDER_CREATED:
+			case ORDER_AMENDED:
+				aggressor = orderHistory.getItemId();
+				break;
+			case ORDER_CANCELED:
+				report(sessions, orderHistory.getItemId(), orderBookId,
+						GatewayProtocol.CANCELED, GatewayProtocol.price(orderHistory.getPrice()),
+						orderHistory.getQuantity());
+				break;
+			case EXECUTED:
+				// a match is recorded once per side
+				final Execution execution = byId.get(orderHistory.getItemId());
+				if (execution == null || orderHistory.getItemId().equals(executionId)) {
+					break;
+				}
+				executionId = orderHistory.getItemId();
+				final boolean sellFirst = execution.getSellOrderId() != null
+						&& execution.getSellOrderId().equals(aggressor);
+				final long price = GatewayProtocol.price(execution.getPrice());
+				report(sessions,
+						sellFirst ? execution.getSellOrderId() : execution.getBuyOrderId(),
+						orderBookId, GatewayProtocol.TRADE, price, execution.getQuantity());
+				report(sessions,
+						sellFirst ? execution.getBuyOrderId() : execution.getSellOrderId(),
+						orderBookId, GatewayProtocol.TRADE, price, execution.getQuantity());
+				break;
+			default:
+				break;
+			}
+		}
+
+		sessions.forEach(GatewaySession::flush);
+	}
+
+	private void report(Set<GatewaySession> sessions, Long orderId, Long orderBookId,
+			byte type, long price, int quantity) {
+		final GatewayOrder order = orderId != null ? orders.get(orderId) : null;
+		if (order == null) {
+			return;
+		}
+
+		order.leaves -= quantity;
+		if (order.leaves <= 0 || !order.session.isOpen()) {
+			orders.remove(orderId);
+		}
+		if (order.session.isOpen()) {
+			order.session.executionReport(order.clientOrderId, orderId, orderBookId, type,
+					GatewayProtocol.NONE, price, quantity, Math.max(order.leaves, 0));
+			sessions.add(order.session);
+		}
+	}
+
+	private static boolean valid(NewOrderMessage newOrder) {
+		return GatewayProtocol.side(newOrder.side()) != null && newOrder.quantity() > 0
+				&& (newOrder.orderType() == GatewayProtocol.MARKET
+						|| newOrder.orderType() == GatewayProtocol.LIMIT && newOrder.price() > 0);
+	}
+
+	private static void reject(GatewaySession session, long clientOrderId, long orderBookId,
+			byte reason) {
+		session.executionReport(clientOrderId, 0, orderBookId, GatewayProtocol.REJECTED,
+				reason, 0, 0, 0);
+	}
+
+	private static long idOf(OrderItem orderItem) {
+		final String location = orderItem.getLocation();
+		return Long.parseLong(location.substring(location.lastIndexOf('/') + 1));
+	}
+
+	@PreDestroy
+	public void stop() {
+		worker.shutdown();
+	}
+
+	private static class GatewayOrder {
+		private final GatewaySession session;
+		private final long clientOrderId;
+		private int leaves;
+
+		private GatewayOrder(GatewaySession session, long clientOrderId, int leaves) {
+			this.session = session;
+			this.clientOrderId = clientOrderId;
+			this.leaves = leaves;
+		}
+	}
+}
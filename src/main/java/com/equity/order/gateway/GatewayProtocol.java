@@ -0,0 +1,224 @@
+package com.equity.order.gateway;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+
+import com.equity.order.item.Side;
+import com.equity.order.risk.RiskReason;
+
+// fixed layout binary messages, big endian
+// every message starts with [short length of the whole message][byte type]
+// prices are longs in units of 10^-4, message views read fields in place so
+// decoding allocates nothing
+public final class GatewayProtocol {
+
+	public static final int HEADER_LENGTH = 3;
+	public static final int PRICE_SCALE = 4;
+
+	// client to gateway
+	public static final byte NEW_ORDER = 1;
+	public static final byte CANCEL = 2;
+	// gateway to client
+	public static final byte EXECUTION_REPORT = 3;
+
+	public static final int NEW_ORDER_LENGTH = HEADER_LENGTH + 8 + 8 + 1 + 1 + 8 + 4;
+	public static final int CANCEL_LENGTH = HEADER_LENGTH + 8 + 8 + 8;
+	public static final int EXECUTION_REPORT_LENGTH = HEADER_LENGTH + 8 + 8 + 8 + 1 + 1 + 8
+			+ 4 + 4;
+
+	public static final byte BUY = 0;
+	public static final byte SELL = 1;
+
+	public static final byte LIMIT = 0;
+	public static final byte MARKET = 1;
+
+	// execution report types
+	public static final byte NEW = 0;
+	public static final byte TRADE = 1;
+	public static final byte CANCELED = 2;
+	public static final byte REJECTED = 3;
+
+	// reject reasons
+	public static final byte NONE = 0;
+	public static final byte UNKNOWN_BOOK = 1;
+	public static final byte INVALID_ORDER = 2;
+	public static final byte UNSUPPORTED = 3;
+	public static final byte UNKNOWN_ORDER = 4;
+	// turned down by the risk checks, see RiskReason
+	public static final byte MESSAGE_RATE = 5;
+	public static final byte MAX_QUANTITY = 6;
+	public static final byte MAX_NOTIONAL = 7;
+	public static final byte POSITION_LIMIT = 8;
+
+	private GatewayProtocol() {
+	}
+
+	public static byte reason(RiskReason reason) {
+		switch (reason) {
+		case MESSAGE_RATE:
+			return MESSAGE_RATE;
+		case MAX_QUANTITY:
+			return MAX_QUANTITY;
+		case MAX_NOTIONAL:
+			return MAX_NOTIONAL;
+		case POSITION_LIMIT:
+			return POSITION_LIMIT;
+		default:
+			return INVALID_ORDER;
+		}
+	}
+
+	// zero when the message type is unknown
+	public static int length(byte type) {
+		switch (type) {
+		case NEW_ORDER:
+			return NEW_ORDER_LENGTH;
+		case CANCEL:
+			return CANCEL_LENGTH;
+		case EXECUTION_REPORT:
+			return EXECUTION_REPORT_LENGTH;
+		default:
+			return 0;
+		}
+	}
+
+	public static Side side(byte side) {
+		return side == BUY ? Side.BUY : side == SELL ? Side.SELL : null;
+	}
+
+	public static byte side(Side side) {
+		return side == Side.BUY ? BUY : SELL;
+	}
+
+	public static BigDecimal price(long price) {
+		return BigDecimal.valueOf(price, PRICE_SCALE);
+	}
+
+	public static long price(BigDecimal price) {
+		return price != null
+				? price.movePointRight(PRICE_SCALE).longValueExact()
+				: 0;
+	}
+
+	public static void writeNewOrder(ByteBuffer buffer, long clientOrderId, long orderBookId,
+			byte side, byte orderType, long price, int quantity) {
+		buffer.putShort((short) NEW_ORDER_LENGTH).put(NEW_ORDER).putLong(clientOrderId)
+				.putLong(orderBookId).put(side).put(orderType).putLong(price).putInt(quantity);
+	}
+
+	public static void writeCancel(ByteBuffer buffer, long clientOrderId, long orderBookId,
+			long orderId) {
+		buffer.putShort((short) CANCEL_LENGTH).put(CANCEL).putLong(clientOrderId)
+				.putLong(orderBookId).putLong(orderId);
+	}
+
+	public static void writeExecutionReport(ByteBuffer buffer, long clientOrderId,
+			long orderId, long orderBookId, byte type, byte reason, long price, int quantity,
+			int leavesQuantity) {
+		buffer.putShort((short) EXECUTION_REPORT_LENGTH).put(EXECUTION_REPORT)
+				.putLong(clientOrderId).putLong(orderId).putLong(orderBookId).put(type)
+				.put(reason).putLong(price).putInt(quantity).putInt(leavesQuantity);
+	}
+
+	// views over a message in a buffer, wrap and read, nothing is copied
+	public static class NewOrderMessage {
+		private ByteBuffer buffer;
+		private int offset;
+
+		public NewOrderMessage wrap(ByteBuffer buffer, int offset) {
+			this.buffer = buffer;
+			this.offset = offset;
+			return this;
+		}
+
+		public long clientOrderId() {
+			return buffer.getLong(offset + HEADER_LENGTH);
+		}
+
+		public long orderBookId() {
+			return buffer.getLong(offset + HEADER_LENGTH + 8);
+		}
+
+		public byte side() {
+			return buffer.get(offset + HEADER_LENGTH + 16);
+		}
+
+		public byte orderType() {
+			return buffer.get(offset + HEADER_LENGTH + 17);
+		}
+
+		public long price() {
+			return buffer.getLong(offset + HEADER_LENGTH + 18);
+		}
+
+		public int quantity() {
+			return buffer.getInt(offset + HEADER_LENGTH + 26);
+		}
+	}
+
+	public static class CancelMessage {
+		private ByteBuffer buffer;
+		private int offset;
+
+		public CancelMessage wrap(ByteBuffer buffer, int offset) {
+			this.buffer = buffer;
+			this.offset = offset;
+			return this;
+		}
+
+		public long clientOrderId() {
+			return buffer.getLong(offset + HEADER_LENGTH);
+		}
+
+		public long orderBookId() {
+			return buffer.getLong(offset + HEADER_LENGTH + 8);
+		}
+
+		public long orderId() {
+			return buffer.getLong(offset + HEADER_LENGTH + 16);
+		}
+	}
+
+	public static class ExecutionReportMessage {
+		private ByteBuffer buffer;
+		private int offset;
+
+		public ExecutionReportMessage wrap(ByteBuffer buffer, int offset) {
+			this.buffer = buffer;
+			this.offset = offset;
+			return this;
+		}
+
+		public long clientOrderId() {
+			return buffer.getLong(offset + HEADER_LENGTH);
+		}
+
+		public long orderId() {
+			return buffer.getLong(offset + HEADER_LENGTH + 8);
+		}
+
+		public long orderBookId() {
+			return buffer.getLong(offset + HEADER_LENGTH + 16);
+		}
+
+		public byte type() {
+			return buffer.get(offset + HEADER_LENGTH + 24);
+		}
+
+		public byte reason() {
+			return buffer.get(offset + HEADER_LENGTH + 25);
+		}
+
+		public long price() {
+			return buffer.getLong(offset + HEADER_LENGTH + 26);
+		}
+
+		public int quantity() {
+			return buffer.getInt(offset + HEADER_LENGTH + 34);
+		}
+
+		public int leavesQuantity() {
+			return buffer.getInt(offset + HEADER_LENGTH + 38);
+		}
+	}
+}
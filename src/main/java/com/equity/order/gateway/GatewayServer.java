@@ -0,0 +1,157 @@
+package com.equity.order.gateway;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.log4j.Log4j2;
+
+// binary order entry next to the rest api, see GatewayProtocol
+// one selector thread does all socket io, complete messages are handed to the single
+// worker of GatewayOrderHandler so orders of a session are handled in the order they
+// were sent
+// listens only once the books are recovered, in the last lifecycle phase
+@Component
+@ConditionalOnProperty(name = "order.gateway.enabled", havingValue = "true")
+@Log4j2
+public class GatewayServer implements SmartLifecycle {
+
+	private final GatewayOrderHandler gatewayOrderHandler;
+	private final int port;
+	private final int bufferSize;
+
+	private Selector selector;
+	private ServerSocketChannel server;
+	private Thread selectorThread;
+	private volatile boolean running;
+
+	public GatewayServer(GatewayOrderHandler gatewayOrderHandler,
+			@Value("${order.gateway.port:9090}") int port,
+			@Value("${order.gateway.buffer-size:65536}") int bufferSize) {
+		this.gatewayOrderHandler = gatewayOrderHandler;
+		this.port = port;
+		this.bufferSize = bufferSize;
+	}
+
+	@Override
+	public void start() {
+		try {
+			selector = Selector.open();
+			server = ServerSocketChannel.open();
+			server.bind(new InetSocketAddress(port));
+			server.configureBlocking(false);
+			server.register(selector, SelectionKey.OP_ACCEPT);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		running = true;
+
+		selectorThread = new Thread(this::select, "gateway-selector");
+		selectorThread.setDaemon(true);
+		selectorThread.start();
+
+		log.info("Order gateway listening on {}", getPort());
+	}
+
+	public int getPort() {
+		return server.socket().getLocalPort();
+	}
+
+	private void select() {
+		while (running) {
+			try {
+				selector.select();
+				final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					final SelectionKey key = keys.next();
+					keys.remove();
+					if (!key.isValid()) {
+						continue;
+					}
+
+					if (key.isAcceptable()) {
+						accept();
+					} else {
+						final GatewaySession session = (GatewaySession) key.attachment();
+						if (key.isReadable()) {
+							read(session);
+						}
+						if (key.isValid() && key.isWritable()) {
+							session.flush();
+						}
+					}
+				}
+			} catch (IOException e) {
+				log.error("Order gateway selector failed", e);
+			}
+		}
+	}
+
+	private void accept() throws IOException {
+		final SocketChannel channel = server.accept();
+		if (channel == null) {
+			return;
+		}
+		channel.configureBlocking(false);
+		channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+		final SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+		final GatewaySession session = new GatewaySession(channel, key, bufferSize);
+		key.attach(session);
+		log.info("Gateway session {} connected", session);
+	}
+
+	private void read(GatewaySession session) {
+		final ByteBuffer messages;
+		try {
+			messages = session.read();
+		} catch (IOException e) {
+			log.info("Gateway session {} is gone", session, e);
+			session.close();
+			gatewayOrderHandler.closed(session);
+			return;
+		}
+
+		if (messages == null) {
+			session.close();
+			gatewayOrderHandler.closed(session);
+		} else if (messages.hasRemaining()) {
+			gatewayOrderHandler.submit(session, messages);
+		}
+	}
+
+	@Override
+	public boolean isRunning() {
+		return running;
+	}
+
+	@Override
+	public void stop() {
+		running = false;
+		selector.wakeup();
+		try {
+			selectorThread.join(1000);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		try {
+			for (SelectionKey key : selector.keys()) {
+				key.channel().close();
+			}
+			selector.close();
+		} catch (IOException e) {
+			log.warn("Could not close the order gateway", e);
+		}
+	}
+}
@@ -0,0 +1,121 @@
+package com.equity.order.gateway;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+import lombok.extern.log4j.Log4j2;
+
+// one client connection, reads happen on the selector thread only while reports
+// are written by the worker straight into the outbound buffer
+@Log4j2
+public class GatewaySession {
+
+	private final SocketChannel channel;
+	private final SelectionKey key;
+	private final ByteBuffer inbound;
+	private final ByteBuffer outbound;
+
+	public GatewaySession(SocketChannel channel, SelectionKey key, int bufferSize) {
+		this.channel = channel;
+		this.key = key;
+		this.inbound = ByteBuffer.allocateDirect(bufferSize);
+		this.outbound = ByteBuffer.allocateDirect(bufferSize);
+	}
+
+	// complete messages read so far, copied out in one piece for the worker
+	// null when the connection is gone or sent something that is not a message
+	ByteBuffer read() throws IOException {
+		if (channel.read(inbound) < 0) {
+			return null;
+		}
+
+		inbound.flip();
+		int end = 0;
+		while (inbound.limit() - end >= GatewayProtocol.HEADER_LENGTH) {
+			final int length = inbound.getShort(end);
+			final byte type = inbound.get(end + 2);
+			if (length != GatewayProtocol.length(type) || type == GatewayProtocol.EXECUTION_REPORT) {
+				log.warn("Closing gateway session {} on message type {} of {} bytes", this,
+						type, length);
+				return null;
+			}
+			if (inbound.limit() - end < length) {
+				break;
+			}
+			end += length;
+		}
+
+		final int limit = inbound.limit();
+		final ByteBuffer messages = ByteBuffer.allocate(end);
+		inbound.limit(end);
+		messages.put(inbound).flip();
+		inbound.limit(limit);
+		inbound.compact();
+		return messages;
+	}
+
+	public void executionReport(long clientOrderId, long orderId, long orderBookId,
+			byte type, byte reason, long price, int quantity, int leavesQuantity) {
+		synchronized (outbound) {
+			// a client that does not read its reports is not kept
+			if (outbound.remaining() < GatewayProtocol.EXECUTION_REPORT_LENGTH) {
+				log.warn("Closing gateway session {} with {} bytes unread", this,
+						outbound.position());
+				close();
+				return;
+			}
+			GatewayProtocol.writeExecutionReport(outbound, clientOrderId, orderId, orderBookId,
+					type, reason, price, quantity, leavesQuantity);
+		}
+	}
+
+	// whatever the socket does not take now is left to the selector
+	public void flush() {
+		synchronized (outbound) {
+			if (!channel.isOpen()) {
+				return;
+			}
+			outbound.flip();
+			try {
+				channel.write(outbound);
+			} catch (IOException e) {
+				log.info("Gateway session {} is gone", this, e);
+				close();
+				return;
+			} finally {
+				outbound.compact();
+			}
+
+			if (outbound.position() > 0 && key.isValid()) {
+				key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+				key.selector().wakeup();
+			} else if (key.isValid()) {
+				key.interestOps(SelectionKey.OP_READ);
+			}
+		}
+	}
+
+	public void close() {
+		key.cancel();
+		try {
+			channel.close();
+		} catch (IOException e) {
+			log.debug("Closing gateway session {}", this, e);
+		}
+	}
+
+	public boolean isOpen() {
+		return channel.isOpen();
+	}
+
+	@Override
+	public String toString() {
+		try {
+			return String.valueOf(channel.getRemoteAddress());
+		} catch (IOException e) {
+			return "closed";
+		}
+	}
+}
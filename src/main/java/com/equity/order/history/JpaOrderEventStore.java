@@ -0,0 +1,42 @@
+package com.equity.order.history;
+
+import java.util.List;
+import java.util.function.Function;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.equity.order.execution.Execution;
+import com.equity.order.execution.ExecutionRepository;
+
+// one transaction so executions and history go out as jdbc batches together
+@Component
+@ConditionalOnProperty(name = "order.journal.enabled", havingValue = "false", matchIfMissing = true)
+public class JpaOrderEventStore implements OrderEventStore {
+
+	private final ExecutionRepository executionRepository;
+	private final OrderHistoryRepository orderHistoryRepository;
+	private final TransactionTemplate transactionTemplate;
+
+	public JpaOrderEventStore(ExecutionRepository executionRepository,
+			OrderHistoryRepository orderHistoryRepository,
+			TransactionTemplate transactionTemplate) {
+		this.executionRepository = executionRepository;
+		this.orderHistoryRepository = orderHistoryRepository;
+		this.transactionTemplate = transactionTemplate;
+	}
+
+	@Override
+	public List<OrderHistory> append(List<Execution> executions,
+			Function<List<Execution>, List<OrderHistory>> history) {
+		// saving fills in the ids of the given entities
+		return transactionTemplate.execute(status -> {
+			executionRepository.saveAll(executions);
+			final List<OrderHistory> orderHistories = history.apply(executions);
+			orderHistoryRepository.saveAll(orderHistories);
+			return orderHistories;
+		});
+	}
+
+}
@@ -0,0 +1,165 @@
+package com.equity.order.history;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.stereotype.Component;
+
+import com.equity.order.history.OrderHistory.Status;
+
+// materialized state per order book, updated as history entries are appended
+// instead of folding /orderHistories on every read
+@Component
+public class OrderBookProjection {
+
+	private final Map<Long, Accumulator> accumulators = new ConcurrentHashMap<>();
+
+	// entries must be applied in the order they were appended
+	public void apply(Iterable<OrderHistory> orderHistories) {
+		orderHistories.forEach(this::apply);
+	}
+
+	public void apply(OrderHistory orderHistory) {
+		accumulators.computeIfAbsent(orderHistory.getOrderBookId(), Accumulator::new)
+				.apply(orderHistory);
+	}
+
+	// null when nothing was recorded for the book yet
+	public OrderBookState get(Long orderBookId) {
+		final Accumulator accumulator = accumulators.get(orderBookId);
+		return accumulator != null ? accumulator.state() : null;
+	}
+
+	public void clear() {
+		accumulators.clear();
+	}
+
+	// all books with recorded history
+	public Set<Long> getOrderBookIds() {
+		return accumulators.keySet();
+	}
+
+	public void writeTo(Long orderBookId, DataOutput out) throws IOException {
+		accumulators.get(orderBookId).writeTo(out);
+	}
+
+	// replaces whatever was folded for the book so far
+	public void readFrom(Long orderBookId, DataInput in) throws IOException {
+		final Accumulator accumulator = new Accumulator(orderBookId);
+		accumulator.readFrom(in);
+		accumulators.put(orderBookId, accumulator);
+	}
+
+	private static class Accumulator {
+		private final Long orderBookId;
+		private final long[] statusCounts = new long[Status.values().length];
+
+		private long orderedQuantity;
+		private long canceledQuantity;
+		private long filledQuantity;
+		private long executedQuantity;
+		private BigDecimal executedNotional = BigDecimal.ZERO;
+		private Long historyId;
+		// both entries of a trade matched inside the book come one after the other
+		private Long executionId;
+
+		private Accumulator(Long orderBookId) {
+			this.orderBookId = orderBookId;
+		}
+
+		private synchronized void apply(OrderHistory orderHistory) {
+			final long quantity = orderHistory.getQuantity() != null
+					? orderHistory.getQuantity()
+					: 0;
+
+			statusCounts[orderHistory.getStatus().ordinal()]++;
+			historyId = orderHistory.getId();
+
+			switch (orderHistory.getStatus()) {
+			case ORDER_CREATED:
+				orderedQuantity += quantity;
+				break;
+			case ORDER_CANCELED:
+				canceledQuantity += quantity;
+				break;
+			case EXECUTED:
+				// only what filled an order of the book, executions added to a closed book
+				// have no side
+				if (orderHistory.getSide() != null) {
+					filledQuantity += quantity;
+				}
+				// a trade matched inside the book shows up once per side
+				if (!orderHistory.getItemId().equals(executionId)) {
+					executedQuantity += quantity;
+					if (orderHistory.getPrice() != null) {
+						executedNotional = executedNotional
+								.add(orderHistory.getPrice().multiply(BigDecimal.valueOf(quantity)));
+					}
+				}
+				executionId = orderHistory.getItemId();
+				break;
+			case ORDER_AMENDED:
+				// the quantity it took off comes as a cancel of its own
+				break;
+			}
+		}
+
+		private synchronized void writeTo(DataOutput out) throws IOException {
+			out.writeInt(statusCounts.length);
+			for (long statusCount : statusCounts) {
+				out.writeLong(statusCount);
+			}
+			out.writeLong(orderedQuantity);
+			out.writeLong(canceledQuantity);
+			out.writeLong(filledQuantity);
+			out.writeLong(executedQuantity);
+			final byte[] unscaled = executedNotional.unscaledValue().toByteArray();
+			out.writeInt(executedNotional.scale());
+			out.writeShort(unscaled.length);
+			out.write(unscaled);
+			out.writeLong(historyId != null ? historyId : -1);
+		}
+
+		private synchronized void readFrom(DataInput in) throws IOException {
+			final int statuses = in.readInt();
+			for (int i = 0; i < statuses; i++) {
+				statusCounts[i] = in.readLong();
+			}
+			orderedQuantity = in.readLong();
+			canceledQuantity = in.readLong();
+			filledQuantity = in.readLong();
+			executedQuantity = in.readLong();
+			final int scale = in.readInt();
+			final byte[] unscaled = new byte[in.readUnsignedShort()];
+			in.readFully(unscaled);
+			executedNotional = new BigDecimal(new BigInteger(unscaled), scale);
+			final long id = in.readLong();
+			historyId = id >= 0 ? id : null;
+		}
+
+		private synchronized OrderBookState state() {
+			final Map<Status, Long> counts = new EnumMap<>(Status.class);
+			for (Status status : Status.values()) {
+				counts.put(status, statusCounts[status.ordinal()]);
+			}
+
+			return OrderBookState.builder().orderBookId(orderBookId)
+					.orderedQuantity(orderedQuantity).canceledQuantity(canceledQuantity)
+					.executedQuantity(executedQuantity)
+					.openQuantity(orderedQuantity - canceledQuantity - filledQuantity)
+					.vwap(executedQuantity > 0
+							? executedNotional.divide(BigDecimal.valueOf(executedQuantity),
+									MathContext.DECIMAL64)
+							: null)
+					.statusCounts(counts).historyId(historyId).build();
+		}
+	}
+}
@@ -0,0 +1,32 @@
+package com.equity.order.history;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// state of an order book as folded from its history
+// executed quantity is traded volume, each trade counted once, while open quantity
+// is what was ordered and is neither canceled nor filled yet
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(Include.NON_NULL)
+public class OrderBookState {
+	private Long orderBookId;
+	private long orderedQuantity;
+	private long canceledQuantity;
+	private long executedQuantity;
+	private long openQuantity;
+	private BigDecimal vwap;
+	private Map<OrderHistory.Status, Long> statusCounts;
+	// last history entry applied
+	private Long historyId;
+}
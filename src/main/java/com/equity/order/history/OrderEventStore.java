@@ -0,0 +1,15 @@
+package com.equity.order.history;
+
+import java.util.List;
+import java.util.function.Function;
+
+import com.equity.order.execution.Execution;
+
+// where executions and the history built from them are written
+// both go out as one unit, the history function gets the executions with their ids
+public interface OrderEventStore {
+
+	List<OrderHistory> append(List<Execution> executions,
+			Function<List<Execution>, List<OrderHistory>> history);
+
+}
@@ -1,24 +1,41 @@
 package com.equity.order.history;
 
+import java.math.BigDecimal;
 import java.text.MessageFormat;
 import java.util.Date;
 
 import javax.persistence.Entity;
 import javax.persistence.EnumType;
 import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
-import javax.persistence.Lob;
+import javax.persistence.Index;
 import javax.persistence.PrePersist;
 import javax.persistence.PreUpdate;
+import javax.persistence.Table;
 import javax.validation.constraints.NotNull;
 
+import org.hibernate.annotations.GenericGenerator;
+
+import com.equity.order.OrderIdGenerator;
+import com.equity.order.book.OrderBook;
+import com.equity.order.execution.Execution;
+import com.equity.order.history.OrderHistoryService.OrderHistory.OrderItem;
+import com.equity.order.item.Side;
+
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
 // this is the aggregate for orders in order book
+// the book is referenced by id and the version and status it had when the event was
+// recorded,
+// the order item is kept as plain columns instead of its fetched json
+// indexed for lookups by book, by order item and by the time it was recorded
 @Entity
+@Table(indexes = { @Index(columnList = "orderBookId, id"),
+		@Index(columnList = "itemType, itemId, id"), @Index(columnList = "createdDate, id") })
 @Data
 @Builder
 @NoArgsConstructor
@@ -26,14 +43,26 @@ import lombok.NoArgsConstructor;
 public class OrderHistory {
 
 	@Id
+	@GeneratedValue(generator = OrderIdGenerator.NAME)
+	@GenericGenerator(name = OrderIdGenerator.NAME, strategy = OrderIdGenerator.STRATEGY)
 	private Long id;
 
-	@Lob
-	@NotNull
-	private String orderBook;
-	@Lob
 	@NotNull
-	private String orderItem;
+	private Long orderBookId;
+	private Long orderBookVersion;
+	@Enumerated(EnumType.STRING)
+	private OrderBook.Status orderBookStatus;
+
+	@Enumerated(EnumType.STRING)
+	private ItemType itemType;
+	private Long itemId;
+	@Enumerated(EnumType.STRING)
+	private Side side;
+	private Integer quantity;
+	private BigDecimal price;
+	private Date itemCreatedDate;
+	// of an order, its risk counters are rebuilt from the history
+	private String account;
 
 	@Enumerated(EnumType.STRING)
 	private Status status;
@@ -42,15 +71,107 @@ public class OrderHistory {
 
 	// it takes single entry of immutable order event which can be processed to
 	// get the final state of an order book
+	// an amendment carries the new quantity and price of a resting order, whatever
+	// it took off is recorded as canceled right before it
 	public enum Status {
-		ORDER_CREATED, ORDER_CANCELED, EXECUTED
+		ORDER_CREATED, ORDER_CANCELED, EXECUTED, ORDER_AMENDED
+	}
+
+	// the rest collection each order item lives in
+	public enum ItemType {
+		LIMIT_ORDER("limitOrders"), MARKET_ORDER("marketOrders"), EXECUTION("executions");
+
+		private final String collection;
+
+		ItemType(String collection) {
+			this.collection = collection;
+		}
+
+		public String getCollection() {
+			return collection;
+		}
+
+		// http://host/limitOrders/123 -> LIMIT_ORDER
+		public static ItemType of(String location) {
+			final int id = location != null ? location.lastIndexOf('/') : -1;
+			if (id < 0) {
+				return null;
+			}
+			final String collection = location.substring(location.lastIndexOf('/', id - 1) + 1,
+					id);
+			for (ItemType itemType : values()) {
+				if (itemType.collection.equals(collection)) {
+					return itemType;
+				}
+			}
+			return null;
+		}
+	}
+
+	// a location names an order item when it ends in a known collection and a numeric id
+	public static boolean isItem(String location) {
+		if (ItemType.of(location) == null) {
+			return false;
+		}
+		final String id = location.substring(location.lastIndexOf('/') + 1);
+		return !id.isEmpty() && id.length() < 19 && id.chars().allMatch(Character::isDigit);
+	}
+
+	// executions attached to a book are recorded as executed, anything else as created
+	public static OrderHistory of(OrderBook orderBook, OrderItem orderItem) {
+		final String location = orderItem.getLocation();
+		if (!isItem(location)) {
+			throw new IllegalArgumentException(location + " is not an order item");
+		}
+		final ItemType itemType = ItemType.of(location);
+		return OrderHistory.builder().orderBookId(orderBook.getId())
+				.orderBookVersion(orderBook.getVersion())
+				.orderBookStatus(orderBook.getStatus()).itemType(itemType)
+				.status(itemType == ItemType.EXECUTION ? Status.EXECUTED : null)
+				.itemId(Long.valueOf(location.substring(location.lastIndexOf('/') + 1)))
+				.side(orderItem.getSide()).quantity(orderItem.getQuantity())
+				.price(orderItem.getPrice())
+				.itemCreatedDate(OrderItemReader.parseDate(orderItem.getCreatedDate()))
+				.account(orderItem.getAccount()).build();
+	}
+
+	// side is the side of the order on this book that was executed, executions matched
+	// inside a book are recorded once per side, allocations carry the side of the resting
+	// order they filled and executions added to a closed book have none
+	public static OrderHistory of(OrderBook orderBook, Execution execution, Side side) {
+		return OrderHistory.builder().orderBookId(orderBook.getId())
+				.orderBookVersion(orderBook.getVersion())
+				.orderBookStatus(orderBook.getStatus()).itemType(ItemType.EXECUTION)
+				.itemId(execution.getId()).side(side).quantity(execution.getQuantity())
+				.price(execution.getPrice()).itemCreatedDate(execution.getCreatedDate())
+				.status(Status.EXECUTED).build();
+	}
+
+	// the part of an order that will never be filled
+	public static OrderHistory canceled(OrderBook orderBook, OrderItem orderItem,
+			int quantity) {
+		final OrderHistory orderHistory = of(orderBook, orderItem);
+		orderHistory.setQuantity(quantity);
+		orderHistory.setStatus(Status.ORDER_CANCELED);
+		return orderHistory;
+	}
+
+	// a cancel or amendment of a limit order resting on the book
+	public static OrderHistory resting(OrderBook orderBook, Long limitOrderId, Side side,
+			BigDecimal price, int quantity, Status status) {
+		return OrderHistory.builder().orderBookId(orderBook.getId())
+				.orderBookVersion(orderBook.getVersion())
+				.orderBookStatus(orderBook.getStatus()).itemType(ItemType.LIMIT_ORDER)
+				.itemId(limitOrderId).side(side).quantity(quantity).price(price)
+				.status(status).build();
 	}
 
 	@PrePersist
 	void init() {
-		this.id = System.nanoTime(); // quick id generation
 		this.createdDate = new Date();
-		this.status = Status.ORDER_CREATED;
+		if (this.status == null) {
+			this.status = Status.ORDER_CREATED;
+		}
 	}
 
 	@PreUpdate
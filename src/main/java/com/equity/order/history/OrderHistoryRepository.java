@@ -1,6 +1,54 @@
 package com.equity.order.history;
 
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Stream;
+
+import javax.persistence.QueryHint;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.rest.core.annotation.RestResource;
 
 public interface OrderHistoryRepository extends CrudRepository<OrderHistory, Long> {
-}
\ No newline at end of file
+
+	// keyset page, the next page starts after the last id of this one
+	@RestResource(exported = false)
+	public List<OrderHistory> findByIdGreaterThanOrderByIdAsc(Long id, Pageable pageable);
+
+	// keyset page of one book, a seek on its index
+	@RestResource(exported = false)
+	public List<OrderHistory> findByOrderBookIdAndIdGreaterThanOrderByIdAsc(Long orderBookId,
+			Long id, Pageable pageable);
+
+	// keyset page of one book recorded in a time range
+	@RestResource(exported = false)
+	public List<OrderHistory> findByOrderBookIdAndCreatedDateBetweenAndIdGreaterThanOrderByIdAsc(
+			Long orderBookId, Date from, Date to, Long id, Pageable pageable);
+
+	// keyset page of everything recorded in a time range
+	@RestResource(exported = false)
+	public List<OrderHistory> findByCreatedDateBetweenAndIdGreaterThanOrderByIdAsc(Date from,
+			Date to, Long id, Pageable pageable);
+
+	// every entry of one order item
+	@RestResource(exported = false)
+	public List<OrderHistory> findByItemTypeAndItemIdOrderByIdAsc(OrderHistory.ItemType itemType,
+			Long itemId);
+
+	// cursor over the whole table, must be consumed inside a transaction
+	@RestResource(exported = false)
+	@QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "500"))
+	@Query("select h from OrderHistory h order by h.id")
+	public Stream<OrderHistory> streamAll();
+
+	// history of one book after an entry, must be consumed inside a transaction
+	@RestResource(exported = false)
+	@QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "500"))
+	public Stream<OrderHistory> streamByOrderBookIdAndIdGreaterThanOrderByIdAsc(
+			Long orderBookId, Long id);
+}
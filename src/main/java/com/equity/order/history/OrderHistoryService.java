@@ -1,28 +1,53 @@
 package com.equity.order.history;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
-import java.math.MathContext;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
+import java.util.stream.Stream;
 
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.rest.webmvc.RepositoryRestController;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.format.annotation.DateTimeFormat.ISO;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import com.equity.order.OrderMetrics;
 import com.equity.order.book.OrderBook;
+import com.equity.order.book.OrderBookRepository;
+import com.equity.order.history.OrderHistory.ItemType;
 import com.equity.order.history.OrderHistoryService.OrderHistory.OrderItem;
+import com.equity.order.item.Side;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.jayway.jsonpath.Configuration;
-import com.jayway.jsonpath.DocumentContext;
-import com.jayway.jsonpath.JsonPath;
-import com.jayway.jsonpath.Option;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import io.micrometer.core.instrument.Timer;
 
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -38,58 +63,225 @@ import lombok.extern.log4j.Log4j2;
 public class OrderHistoryService {
 
 	public final static String ENTITIES = "orderHistories";
+	public final static String NDJSON = "application/x-ndjson";
+
+	private static final int MAX_PAGE_SIZE = 1000;
+	private static final int STREAM_CHUNK_SIZE = 500;
+	// open ends of a date range
+	private static final Date MIN_DATE = new Date(0);
+	private static final Date MAX_DATE = new Date(Long.MAX_VALUE);
 
 	// will init at somewhere else for specific usage
 	private static final ObjectMapper objectMapper = new ObjectMapper();
+	// dates as iso strings like the rest of the api
+	private static final ObjectWriter ndjsonWriter = objectMapper
+			.writerFor(OrderHistory.class)
+			.without(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+			.without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
 
 	private final OrderHistoryRepository orderHistoryRepository;
+	private final OrderBookRepository orderBookRepository;
+	private final TransactionTemplate readOnlyTransaction;
+	private final OrderMetrics orderMetrics;
 
-	public OrderHistoryService(OrderHistoryRepository orderHistoryRepository) {
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	public OrderHistoryService(OrderHistoryRepository orderHistoryRepository,
+			OrderBookRepository orderBookRepository,
+			PlatformTransactionManager transactionManager, OrderMetrics orderMetrics) {
 		this.orderHistoryRepository = orderHistoryRepository;
+		this.orderBookRepository = orderBookRepository;
+		this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+		this.readOnlyTransaction.setReadOnly(true);
+		this.orderMetrics = orderMetrics;
 	}
 
 	// just to show a better data representation than default spring data rest
-	// no pagination for now
+	// keyset paged, the next page is linked in the response headers
+	// from and to narrow it to entries recorded in that range, both inclusive
 	@GetMapping
-	public ResponseEntity<List<OrderHistory>> findAll() {
+	public ResponseEntity<List<OrderHistory>> findAll(
+			@RequestParam(defaultValue = "0") long after,
+			@RequestParam(defaultValue = "100") int size,
+			@RequestParam(required = false) @DateTimeFormat(iso = ISO.DATE_TIME) Date from,
+			@RequestParam(required = false) @DateTimeFormat(iso = ISO.DATE_TIME) Date to) {
+
+		log.info("Getting order history after {}", after);
+
+		if (from == null && to == null) {
+			return page(size, pageable -> orderHistoryRepository
+					.findByIdGreaterThanOrderByIdAsc(after, pageable));
+		}
+		return page(size, pageable -> orderHistoryRepository
+				.findByCreatedDateBetweenAndIdGreaterThanOrderByIdAsc(orElse(from, MIN_DATE),
+						orElse(to, MAX_DATE), after, pageable));
+	}
+
+	// history of one book, a seek on its index instead of reading the whole table
+	@GetMapping("/orderBook/{orderBookId}")
+	public ResponseEntity<List<OrderHistory>> findByOrderBook(@PathVariable Long orderBookId,
+			@RequestParam(defaultValue = "0") long after,
+			@RequestParam(defaultValue = "100") int size,
+			@RequestParam(required = false) @DateTimeFormat(iso = ISO.DATE_TIME) Date from,
+			@RequestParam(required = false) @DateTimeFormat(iso = ISO.DATE_TIME) Date to) {
 
-		log.info("Getting order history");
+		log.info("Getting order history of book {} after {}", orderBookId, after);
 
-		return ResponseEntity.ok(StreamSupport
-				.stream(orderHistoryRepository.findAll().spliterator(), false)
-				.map(orderHistory -> OrderHistory.builder()
-						.orderBook(buildOrderBook(orderHistory.getOrderBook()))
-						.orderItem(buildOrderItem(orderHistory.getOrderItem()))
-						.entryDate(orderHistory.getCreatedDate()).build())
-				.collect(Collectors.toList()));
+		if (!orderBookRepository.existsById(orderBookId)) {
+			return ResponseEntity.notFound().build();
+		}
+		if (from == null && to == null) {
+			return page(size, pageable -> orderHistoryRepository
+					.findByOrderBookIdAndIdGreaterThanOrderByIdAsc(orderBookId, after,
+							pageable));
+		}
+		return page(size, pageable -> orderHistoryRepository
+				.findByOrderBookIdAndCreatedDateBetweenAndIdGreaterThanOrderByIdAsc(
+						orderBookId, orElse(from, MIN_DATE), orElse(to, MAX_DATE), after,
+						pageable));
 	}
 
-	// can also have like list all order item from order book
-	// /orderHistories/orderBook/123
+	// everything recorded for one order item, like /orderHistories/limitOrders/123
+	// an item has a handful of entries at most so it is not paged
+	@GetMapping("/{collection:limitOrders|marketOrders|executions}/{itemId}")
+	public ResponseEntity<List<OrderHistory>> findByOrderItem(@PathVariable String collection,
+			@PathVariable Long itemId) {
+
+		log.info("Getting order history of {} {}", collection, itemId);
+
+		final ItemType itemType = ItemType.of("/" + collection + "/" + itemId);
+		final List<com.equity.order.history.OrderHistory> orderHistories = orderMetrics
+				.time(OrderMetrics.HISTORY_READ, () -> orderHistoryRepository
+						.findByItemTypeAndItemIdOrderByIdAsc(itemType, itemId));
+
+		final String baseUrl = ServletUriComponentsBuilder.fromCurrentContextPath()
+				.toUriString();
+		return ResponseEntity.ok(orderMetrics.time(OrderMetrics.HISTORY_VIEW,
+				() -> toViews(orderHistories, baseUrl)));
+	}
+
+	// whole table as one json document per line, written while the cursor is read
+	// so memory stays flat however many entries there are
+	@GetMapping(produces = NDJSON)
+	public ResponseEntity<StreamingResponseBody> streamAll() {
+
+		log.info("Streaming order history");
+
+		final String baseUrl = ServletUriComponentsBuilder.fromCurrentContextPath()
+				.toUriString();
+
+		final StreamingResponseBody body = outputStream -> readOnlyTransaction
+				.execute(status -> {
+					try (Stream<com.equity.order.history.OrderHistory> rows = orderHistoryRepository
+							.streamAll()) {
+						final List<com.equity.order.history.OrderHistory> chunk = new ArrayList<>(
+								STREAM_CHUNK_SIZE);
+						final Iterator<com.equity.order.history.OrderHistory> iterator = rows
+								.iterator();
+						while (iterator.hasNext()) {
+							chunk.add(iterator.next());
+							if (chunk.size() == STREAM_CHUNK_SIZE || !iterator.hasNext()) {
+								final Timer.Sample sample = orderMetrics.start();
+								for (OrderHistory orderHistory : toViews(chunk, baseUrl)) {
+									ndjsonWriter.writeValue(outputStream, orderHistory);
+									outputStream.write('\n');
+								}
+								outputStream.flush();
+								orderMetrics.stop(sample, OrderMetrics.HISTORY_SERIALIZE);
+								chunk.clear();
+								// drop what was read so far from the persistence context
+								entityManager.clear();
+							}
+						}
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+					return null;
+				});
+
+		return ResponseEntity.ok().contentType(MediaType.valueOf(NDJSON)).body(body);
+	}
+
+	// one page of the query, linked to the next one when it came back full
+	private ResponseEntity<List<OrderHistory>> page(int size,
+			Function<Pageable, List<com.equity.order.history.OrderHistory>> query) {
+		final int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+		final List<com.equity.order.history.OrderHistory> orderHistories = orderMetrics
+				.time(OrderMetrics.HISTORY_READ, () -> query.apply(PageRequest.of(0, pageSize)));
+
+		final String baseUrl = ServletUriComponentsBuilder.fromCurrentContextPath()
+				.toUriString();
+
+		final ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+		if (orderHistories.size() == pageSize) {
+			response.header(HttpHeaders.LINK,
+					"<" + ServletUriComponentsBuilder.fromCurrentRequest()
+							.replaceQueryParam("after",
+									orderHistories.get(orderHistories.size() - 1).getId())
+							.replaceQueryParam("size", pageSize).toUriString()
+							+ ">; rel=\"next\"");
+		}
+
+		return response.body(orderMetrics.time(OrderMetrics.HISTORY_VIEW,
+				() -> toViews(orderHistories, baseUrl)));
+	}
+
+	private static Date orElse(Date date, Date other) {
+		return date != null ? date : other;
+	}
+
+	// books are looked up once per distinct id instead of once per entry
+	private List<OrderHistory> toViews(
+			List<com.equity.order.history.OrderHistory> orderHistories, String baseUrl) {
+		final Map<Long, OrderBook> orderBooks = new HashMap<>();
+		orderBookRepository.findAllById(orderHistories.stream()
+				.map(com.equity.order.history.OrderHistory::getOrderBookId)
+				.collect(Collectors.toSet()))
+				.forEach(orderBook -> orderBooks.put(orderBook.getId(), orderBook));
+
+		return orderHistories.stream()
+				.map(orderHistory -> toView(orderHistory,
+						orderBooks.get(orderHistory.getOrderBookId()), baseUrl))
+				.collect(Collectors.toList());
+	}
+
+	public OrderHistory toView(com.equity.order.history.OrderHistory orderHistory,
+			OrderBook orderBook, String baseUrl) {
+		final com.equity.order.history.OrderHistory.ItemType itemType = orderHistory
+				.getItemType();
+
+		return OrderHistory.builder().orderBook(asRecorded(orderHistory, orderBook))
+				.orderItem(OrderItem.builder()
+						.location(itemType != null ? baseUrl + "/" + itemType.getCollection()
+								+ "/" + orderHistory.getItemId() : null)
+						.quantity(orderHistory.getQuantity()).price(orderHistory.getPrice())
+						.side(orderHistory.getSide()).account(orderHistory.getAccount())
+						.createdDate(
+								OrderItemReader.formatDate(orderHistory.getItemCreatedDate()))
+						.build())
+				.status(orderHistory.getStatus()).entryDate(orderHistory.getCreatedDate())
+				.build();
+	}
 
-	public OrderBook buildOrderBook(String object) {
-		try {
-			return objectMapper.readValue(object, OrderBook.class);
-		} catch (IOException e) {
-			// do some logging
-			throw new RuntimeException();
+	// the book as it was when the entry was recorded, entries from before the status
+	// was kept show the current one
+	private static OrderBook asRecorded(com.equity.order.history.OrderHistory orderHistory,
+			OrderBook orderBook) {
+		if (orderBook == null) {
+			return null;
 		}
+		return OrderBook.builder().id(orderBook.getId()).instrument(orderBook.getInstrument())
+				.status(orderHistory.getOrderBookStatus() != null
+						? orderHistory.getOrderBookStatus()
+						: orderBook.getStatus())
+				.version(orderHistory.getOrderBookVersion())
+				.createdDate(orderBook.getCreatedDate()).build();
 	}
 
 	// do some unit test
 	public OrderItem buildOrderItem(String object) {
-		DocumentContext documentContext = JsonPath.using(
-				Configuration.builder().options(Option.SUPPRESS_EXCEPTIONS).build())
-				.parse(object);
-		// can customize object mapper to default big decimal instead of double
-		BigDecimal price = documentContext.read("$.price") != null
-				? new BigDecimal((Double) documentContext.read("$.price"),
-						MathContext.DECIMAL64)
-				: null;
-
-		return OrderItem.builder().location(documentContext.read("$._links.self.href"))
-				.quantity(documentContext.read("$.quantity")).price(price)
-				.createdDate(documentContext.read("$.createdDate")).build();
+		return OrderItemReader.read(object);
 	}
 
 	@Data
@@ -99,6 +291,7 @@ public class OrderHistoryService {
 	public static class OrderHistory {
 		private OrderBook orderBook;
 		private OrderItem orderItem;
+		private com.equity.order.history.OrderHistory.Status status;
 		private Date entryDate;
 
 		@Data
@@ -107,8 +300,11 @@ public class OrderHistoryService {
 		@NoArgsConstructor
 		public static class OrderItem {
 			private String location;
+			// the one whose limits the order counts against
+			private String account;
 			private Integer quantity;
 			private BigDecimal price;
+			private Side side;
 			// will have proper date format
 			private String createdDate;
 		}
@@ -0,0 +1,127 @@
+package com.equity.order.history;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.text.ParseException;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Date;
+
+import com.equity.order.history.OrderHistoryService.OrderHistory.OrderItem;
+import com.equity.order.item.Side;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.util.StdDateFormat;
+
+// reads a fetched order item once at write time
+// single pass over the tokens, only the fields we keep are materialized and prices
+// go straight from text to big decimal
+// dates use the same iso format spring data rest renders them with
+public final class OrderItemReader {
+
+	// thread safe, recycles its parser buffers per thread
+	private static final JsonFactory jsonFactory = new JsonFactory();
+
+	private static final DateTimeFormatter dateFormatter = DateTimeFormatter
+			.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
+
+	private OrderItemReader() {
+	}
+
+	public static OrderItem read(String object) {
+		final OrderItem orderItem = new OrderItem();
+
+		try (JsonParser parser = jsonFactory.createParser(object)) {
+			if (parser.nextToken() != JsonToken.START_OBJECT) {
+				return orderItem;
+			}
+
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				final String field = parser.getCurrentName();
+				final JsonToken value = parser.nextToken();
+
+				if (value == JsonToken.VALUE_NULL) {
+					continue;
+				}
+
+				switch (field) {
+				case "price":
+					orderItem.setPrice(parser.getDecimalValue());
+					break;
+				case "quantity":
+					orderItem.setQuantity(parser.getIntValue());
+					break;
+				case "account":
+					orderItem.setAccount(parser.getText());
+					break;
+				case "side":
+					orderItem.setSide(Side.valueOf(parser.getText()));
+					break;
+				case "createdDate":
+					orderItem.setCreatedDate(parser.getText());
+					break;
+				case "_links":
+					orderItem.setLocation(readSelf(parser));
+					break;
+				default:
+					parser.skipChildren();
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		return orderItem;
+	}
+
+	// _links.self.href, positioned on the start of _links
+	private static String readSelf(JsonParser parser) throws IOException {
+		String self = null;
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			final String link = parser.getCurrentName();
+			parser.nextToken();
+			if (!"self".equals(link)) {
+				parser.skipChildren();
+				continue;
+			}
+
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				final String field = parser.getCurrentName();
+				parser.nextToken();
+				if ("href".equals(field)) {
+					self = parser.getText();
+				} else {
+					parser.skipChildren();
+				}
+			}
+		}
+		return self;
+	}
+
+	public static Date parseDate(String date) {
+		if (date == null) {
+			return null;
+		}
+
+		try {
+			return Date.from(OffsetDateTime.parse(date, dateFormatter).toInstant());
+		} catch (DateTimeParseException e) {
+			// anything else jackson would have written
+			try {
+				return new StdDateFormat().parse(date);
+			} catch (ParseException parseException) {
+				throw new IllegalArgumentException(parseException);
+			}
+		}
+	}
+
+	public static String formatDate(Date date) {
+		return date != null
+				? dateFormatter.format(date.toInstant().atOffset(ZoneOffset.UTC))
+				: null;
+	}
+}
@@ -0,0 +1,66 @@
+package com.equity.order.intake;
+
+import java.util.Date;
+
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Lob;
+import javax.persistence.PrePersist;
+import javax.validation.constraints.NotNull;
+
+import org.hibernate.annotations.GenericGenerator;
+
+import com.equity.order.OrderIdGenerator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// an order accepted for asynchronous processing, its id is the tracking id
+// the order is kept as received so pending intakes can be picked up after a restart
+@Entity
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderIntake {
+
+	@Id
+	@GeneratedValue(generator = OrderIdGenerator.NAME)
+	@GenericGenerator(name = OrderIdGenerator.NAME, strategy = OrderIdGenerator.STRATEGY)
+	private Long id;
+
+	@NotNull
+	private Long orderBookId;
+
+	@JsonIgnore
+	@Lob
+	private String request;
+
+	@Enumerated(EnumType.STRING)
+	private Status status;
+	private String error;
+
+	private Date createdDate;
+	private Date completedDate;
+
+	// running while it is booked, rejected when the book is not open anymore, a
+	// location names no order item or the risk checks turned down some of its orders,
+	// which are named in error, failed on any other error
+	public enum Status {
+		PENDING, RUNNING, COMPLETED, REJECTED, FAILED
+	}
+
+	@PrePersist
+	void prePersist() {
+		this.createdDate = new Date();
+		if (this.status == null) {
+			this.status = Status.PENDING;
+		}
+	}
+}
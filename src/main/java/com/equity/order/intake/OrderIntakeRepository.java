@@ -0,0 +1,16 @@
+package com.equity.order.intake;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.rest.core.annotation.RepositoryRestResource;
+
+import com.equity.order.intake.OrderIntake.Status;
+
+// status is served by OrderIntakeService only
+@RepositoryRestResource(exported = false)
+public interface OrderIntakeRepository extends CrudRepository<OrderIntake, Long> {
+
+	public List<OrderIntake> findByStatusInOrderByIdAsc(Collection<Status> statuses);
+}
@@ -0,0 +1,240 @@
+package com.equity.order.intake;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.rest.webmvc.RepositoryRestController;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import com.equity.order.book.OrderBook;
+import com.equity.order.book.OrderBookRepository;
+import com.equity.order.book.OrderBookService;
+import com.equity.order.book.OrderBookService.Order;
+import com.equity.order.history.OrderHistory;
+import com.equity.order.history.OrderHistoryRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.log4j.Log4j2;
+
+// asynchronous variant of PUT /orderBooks/{id}/order, asked for with
+// Prefer: respond-async
+// the order is stored and queued, the request thread returns 202 with a tracking id
+// right away while workers do the book lookup, item fetches and writes
+// once the queue is full new orders get 429 with Retry-After instead of waiting
+// the type level mapping registers the handlers where OrderBookService.addOrders is,
+// so the Prefer header decides between the two, any request with a Prefer header
+// comes here and is handed back when none of its preferences is respond-async
+// an intake is marked running before it is booked, one found running after a restart
+// is only booked again when none of its orders made it to the book
+@RepositoryRestController
+@RequestMapping
+@Log4j2
+public class OrderIntakeService {
+
+	public final static String ENTITIES = "orderIntakes";
+	public final static String PREFER = "Prefer";
+	public final static String RESPOND_ASYNC = "respond-async";
+
+	private static final ObjectMapper objectMapper = new ObjectMapper();
+
+	private final OrderIntakeRepository orderIntakeRepository;
+	private final OrderBookRepository orderBookRepository;
+	private final OrderBookService orderBookService;
+	private final OrderHistoryRepository orderHistoryRepository;
+
+	private final ThreadPoolExecutor executor;
+	// queued plus running, taken before an intake is stored
+	private final Semaphore capacity;
+	private final long retryAfterSeconds;
+
+	public OrderIntakeService(OrderIntakeRepository orderIntakeRepository,
+			OrderBookRepository orderBookRepository, OrderBookService orderBookService,
+			OrderHistoryRepository orderHistoryRepository,
+			@Value("${order.intake.threads:8}") int threads,
+			@Value("${order.intake.queue-size:1024}") int queueSize,
+			@Value("${order.intake.retry-after-seconds:1}") long retryAfterSeconds,
+			MeterRegistry meterRegistry) {
+		this.orderIntakeRepository = orderIntakeRepository;
+		this.orderBookRepository = orderBookRepository;
+		this.orderBookService = orderBookService;
+		this.orderHistoryRepository = orderHistoryRepository;
+		this.retryAfterSeconds = retryAfterSeconds;
+		this.capacity = new Semaphore(threads + queueSize);
+
+		final AtomicInteger count = new AtomicInteger();
+		// unbounded here, the semaphore is what bounds it
+		this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<>(), runnable -> {
+					final Thread thread = new Thread(runnable,
+							"order-intake-" + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+		this.executor.allowCoreThreadTimeOut(true);
+
+		Gauge.builder("order.intake.queued", executor, e -> e.getQueue().size())
+				.register(meterRegistry);
+		Gauge.builder("order.intake.available", capacity, Semaphore::availablePermits)
+				.register(meterRegistry);
+	}
+
+	@PutMapping(path = "/" + OrderBookService.ENTITIES + "/{orderBookId}/order",
+			consumes = MediaType.APPLICATION_JSON_UTF8_VALUE,
+			headers = PREFER)
+	public ResponseEntity<?> addOrdersAsync(@PathVariable Long orderBookId,
+			@RequestHeader(PREFER) List<String> preferences, @RequestBody Order order)
+			throws IOException {
+		if (!respondAsync(preferences)) {
+			return orderBookService.addOrders(String.valueOf(orderBookId), order);
+		}
+		if (!capacity.tryAcquire()) {
+			return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+					.header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds))
+					.build();
+		}
+
+		final OrderIntake orderIntake;
+		try {
+			orderIntake = orderIntakeRepository.save(OrderIntake.builder()
+					.orderBookId(orderBookId).request(order.toJson()).build());
+		} catch (RuntimeException e) {
+			capacity.release();
+			throw e;
+		}
+		submit(orderIntake);
+
+		// the whole order is only rendered when debugging
+		log.debug("Queued orders {} to {} as {}", order, orderBookId, orderIntake.getId());
+
+		final URI location = ServletUriComponentsBuilder.fromCurrentContextPath()
+				.path("/" + ENTITIES + "/{id}").buildAndExpand(orderIntake.getId()).toUri();
+		return ResponseEntity.accepted().location(location).body(orderIntake);
+	}
+
+	@GetMapping("/" + ENTITIES + "/{id}")
+	public ResponseEntity<OrderIntake> getStatus(@PathVariable Long id) {
+		return orderIntakeRepository.findById(id).map(ResponseEntity::ok)
+				.orElse(ResponseEntity.notFound().build());
+	}
+
+	// a preference is a token with optional parameters, several go comma separated in
+	// one header or in several
+	static boolean respondAsync(List<String> preferences) {
+		return preferences.stream().flatMap(preference -> Arrays.stream(preference.split(",")))
+				.map(preference -> preference.split("[;=]", 2)[0].trim())
+				.anyMatch(RESPOND_ASYNC::equalsIgnoreCase);
+	}
+
+	// intakes stored before a restart, waits for capacity instead of rejecting
+	@EventListener(ApplicationReadyEvent.class)
+	public void resume() throws InterruptedException {
+		int resumed = 0;
+		for (OrderIntake orderIntake : orderIntakeRepository.findByStatusInOrderByIdAsc(
+				Arrays.asList(OrderIntake.Status.PENDING, OrderIntake.Status.RUNNING))) {
+			capacity.acquire();
+			submit(orderIntake);
+			resumed++;
+		}
+		if (resumed > 0) {
+			log.info("Resumed {} pending order intakes", resumed);
+		}
+	}
+
+	// the permit is given back once the intake is done
+	private void submit(OrderIntake orderIntake) {
+		executor.execute(() -> {
+			try {
+				process(orderIntake);
+			} finally {
+				capacity.release();
+			}
+		});
+	}
+
+	private void process(OrderIntake orderIntake) {
+		try {
+			final OrderBook orderBook = orderBookRepository
+					.findByIdAndStatus(orderIntake.getOrderBookId(), OrderBook.Status.OPEN)
+					.orElse(null);
+			if (orderBook == null) {
+				orderIntake.setStatus(OrderIntake.Status.REJECTED);
+				orderIntake.setError("order book is not open");
+			} else if (orderIntake.getStatus() == OrderIntake.Status.RUNNING
+					&& booked(orderIntake,
+							objectMapper.readValue(orderIntake.getRequest(), Order.class))) {
+				log.info("Order intake {} was booked before the restart", orderIntake.getId());
+				orderIntake.setStatus(OrderIntake.Status.COMPLETED);
+			} else {
+				orderIntake.setStatus(OrderIntake.Status.RUNNING);
+				orderIntakeRepository.save(orderIntake);
+				final ResponseEntity<?> response = orderBookService.addOrderHistory(orderBook,
+						objectMapper.readValue(orderIntake.getRequest(), Order.class));
+				if (response.getStatusCode() == HttpStatus.UNPROCESSABLE_ENTITY) {
+					orderIntake.setStatus(OrderIntake.Status.REJECTED);
+					orderIntake.setError(abbreviate(String.valueOf(response.getBody())));
+				} else if (response.getStatusCode() == HttpStatus.BAD_REQUEST) {
+					orderIntake.setStatus(OrderIntake.Status.REJECTED);
+					orderIntake.setError("order item locations are not valid");
+				} else {
+					orderIntake.setStatus(OrderIntake.Status.COMPLETED);
+				}
+			}
+		} catch (Exception e) {
+			log.warn("Order intake {} failed", orderIntake.getId(), e);
+			orderIntake.setStatus(OrderIntake.Status.FAILED);
+			orderIntake.setError(abbreviate(e.getMessage()));
+		}
+
+		orderIntake.setCompletedDate(new Date());
+		orderIntakeRepository.save(orderIntake);
+	}
+
+	// an order goes to its book in one append, so any of its items on the book means
+	// all of them are
+	private boolean booked(OrderIntake orderIntake, Order order) {
+		return order.getItemList().stream().map(Order.Item::getLocation)
+				.filter(OrderHistory::isItem)
+				.anyMatch(location -> orderHistoryRepository
+						.findByItemTypeAndItemIdOrderByIdAsc(OrderHistory.ItemType.of(location),
+								Long.valueOf(location.substring(location.lastIndexOf('/') + 1)))
+						.stream().anyMatch(orderHistory -> orderIntake.getOrderBookId()
+								.equals(orderHistory.getOrderBookId())));
+	}
+
+	// fits the default column length
+	private static String abbreviate(String message) {
+		return message != null && message.length() > 255 ? message.substring(0, 255)
+				: message;
+	}
+
+	@PreDestroy
+	public void stop() {
+		executor.shutdown();
+	}
+
+}
@@ -1,6 +1,15 @@
 package com.equity.order.item;
 
+import java.util.Collection;
+import java.util.List;
+
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.data.rest.core.annotation.RestResource;
 
 public interface LimitOrderRepository extends CrudRepository<LimitOrder, Long> {
-}
\ No newline at end of file
+
+	// batch lookup for order item resolution, /search/ids?ids=1,2,3
+	@RestResource(path = "ids", rel = "ids")
+	public List<LimitOrder> findByIdIn(@Param("ids") Collection<Long> ids);
+}
@@ -4,12 +4,19 @@ import java.text.MessageFormat;
 import java.util.Date;
 
 import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
 import javax.persistence.PrePersist;
 import javax.persistence.PreUpdate;
 import javax.persistence.Table;
 import javax.validation.constraints.NotNull;
 
+import org.hibernate.annotations.GenericGenerator;
+
+import com.equity.order.OrderIdGenerator;
+
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -24,6 +31,8 @@ import lombok.NoArgsConstructor;
 public class MarketOrder {
 
 	@Id
+	@GeneratedValue(generator = OrderIdGenerator.NAME)
+	@GenericGenerator(name = OrderIdGenerator.NAME, strategy = OrderIdGenerator.STRATEGY)
 	private Long id;
 
 	@NotNull
@@ -31,9 +40,15 @@ public class MarketOrder {
 	@NotNull
 	private Date createdDate;
 
+	// orders without side are recorded but never matched
+	@Enumerated(EnumType.STRING)
+	private Side side;
+
+	// risk limits are those of the account, the default ones without
+	private String account;
+
 	@PrePersist
 	void prePersist() {
-		this.id = System.nanoTime(); // quick id generation
 		this.createdDate = new Date();
 	}
 
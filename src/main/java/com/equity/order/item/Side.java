@@ -0,0 +1,9 @@
+package com.equity.order.item;
+
+public enum Side {
+	BUY, SELL;
+
+	public Side opposite() {
+		return this == BUY ? SELL : BUY;
+	}
+}
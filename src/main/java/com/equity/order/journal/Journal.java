@@ -0,0 +1,271 @@
+package com.equity.order.journal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import lombok.extern.log4j.Log4j2;
+
+// append only log of records in fixed size memory mapped segments
+// a record is [length][crc32][payload], a zero length marks the end of a segment,
+// positions are global, segment index * segment size + offset
+// appends are a copy into the mapped segment, a flusher thread forces segments to
+// disk and completes every commit waiting up to the forced position at once
+@Log4j2
+public class Journal implements Closeable {
+
+	private static final int HEADER = 8;
+	private static final String SUFFIX = ".journal";
+
+	private final Path directory;
+	private final int segmentSize;
+	private final long maxFlushDelayNanos;
+
+	private final Map<Long, CompletableFuture<Long>> commits = new TreeMap<>();
+	private final Thread flusher;
+	private final CRC32 crc = new CRC32();
+
+	private final List<MappedByteBuffer> unforced = new ArrayList<>();
+	private MappedByteBuffer segment;
+	private long segmentIndex;
+	private long position;
+	private long forced;
+	private volatile boolean running = true;
+
+	public Journal(Path directory, int segmentSize, long maxFlushDelay, TimeUnit unit) {
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		this.maxFlushDelayNanos = unit.toNanos(maxFlushDelay);
+
+		try {
+			Files.createDirectories(directory);
+			final List<Long> segments = segments();
+			segmentIndex = segments.isEmpty() ? 0 : segments.get(segments.size() - 1);
+			segment = map(segmentIndex);
+			position = scan(segment, segmentIndex * segmentSize, null);
+			if (!endsCleanly(segment)) {
+				// drop a torn tail so nothing after the next append looks like a record
+				log.warn("Truncating journal segment {} at {}", segmentIndex, position);
+				while (segment.hasRemaining()) {
+					segment.put((byte) 0);
+				}
+				segment.position((int) (position - segmentIndex * segmentSize));
+			}
+			forced = position;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		this.flusher = new Thread(this::flush, "journal-flusher");
+		this.flusher.setDaemon(true);
+		this.flusher.start();
+
+		log.info("Opened journal {} at position {}", directory, position);
+	}
+
+	// returns the position right after the record, pass it to commit to wait for it
+	public synchronized long append(ByteBuffer payload) {
+		final int length = payload.remaining();
+		if (length == 0 || length + HEADER > segmentSize - HEADER) {
+			throw new IllegalArgumentException("record of " + length + " bytes");
+		}
+
+		if (segment.remaining() < length + HEADER * 2) {
+			roll();
+		}
+
+		crc.reset();
+		crc.update(payload.duplicate());
+
+		// the crc goes before the length so a reader never sees a length without it
+		final int start = segment.position();
+		segment.putInt(start + 4, (int) crc.getValue());
+		segment.position(start + HEADER);
+		segment.put(payload);
+		segment.putInt(start, length);
+
+		position = segmentIndex * segmentSize + segment.position();
+		return position;
+	}
+
+	// completes once everything up to the position is on disk
+	public CompletableFuture<Long> commit(long upTo) {
+		synchronized (this) {
+			if (upTo <= forced) {
+				return CompletableFuture.completedFuture(forced);
+			}
+			return commits.computeIfAbsent(upTo, key -> new CompletableFuture<>());
+		}
+	}
+
+	public synchronized long position() {
+		return position;
+	}
+
+	// hands every record from the position on to the consumer with the position
+	// after it, stops at the first record that is missing or fails its crc
+	public long replay(long from, BiConsumer<Long, ByteBuffer> consumer) {
+		try {
+			long end = from;
+			for (long index : segments()) {
+				if ((index + 1) * segmentSize <= from) {
+					continue;
+				}
+
+				final ByteBuffer buffer = index == current() ? currentSegment() : map(index);
+				buffer.position((int) (Math.max(from, index * segmentSize) - index * segmentSize));
+				end = scan(buffer, index * segmentSize, consumer);
+
+				// a segment that does not end on a marker was cut short, nothing after it is valid
+				if (!endsCleanly(buffer)) {
+					log.warn("Journal segment {} is damaged at {}", index, end);
+					return end;
+				}
+			}
+			return end;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private synchronized long current() {
+		return segmentIndex;
+	}
+
+	private synchronized ByteBuffer currentSegment() {
+		return segment.duplicate();
+	}
+
+	private void roll() {
+		// the old segment is forced by the flusher before anything after it
+		unforced.add(segment);
+		segment.putInt(segment.position(), 0);
+		try {
+			segment = map(++segmentIndex);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		position = segmentIndex * segmentSize;
+	}
+
+	private void flush() {
+		while (running) {
+			final long upTo;
+			final MappedByteBuffer toForce;
+			final List<MappedByteBuffer> previous;
+			synchronized (this) {
+				upTo = position;
+				toForce = segment;
+				previous = new ArrayList<>(unforced);
+				unforced.clear();
+			}
+
+			if (upTo > forced) {
+				previous.forEach(MappedByteBuffer::force);
+				toForce.force();
+
+				final List<CompletableFuture<Long>> done = new ArrayList<>();
+				synchronized (this) {
+					forced = upTo;
+					final Iterator<Map.Entry<Long, CompletableFuture<Long>>> waiting = commits
+							.entrySet().iterator();
+					while (waiting.hasNext()) {
+						final Map.Entry<Long, CompletableFuture<Long>> commit = waiting.next();
+						if (commit.getKey() > upTo) {
+							break;
+						}
+						done.add(commit.getValue());
+						waiting.remove();
+					}
+				}
+				done.forEach(commit -> commit.complete(upTo));
+			} else {
+				// everything appended meanwhile is forced together on the next pass
+				LockSupport.parkNanos(maxFlushDelayNanos);
+			}
+		}
+	}
+
+	// reads records from the buffer position on, leaving the buffer after the last good one
+	private long scan(ByteBuffer buffer, long base, BiConsumer<Long, ByteBuffer> consumer) {
+		final CRC32 check = new CRC32();
+		while (buffer.remaining() >= HEADER) {
+			final int offset = buffer.position();
+			final int length = buffer.getInt(offset);
+			if (length <= 0 || length > buffer.remaining() - HEADER) {
+				break;
+			}
+
+			final ByteBuffer payload = buffer.duplicate();
+			payload.limit(offset + HEADER + length).position(offset + HEADER);
+			check.reset();
+			check.update(payload.duplicate());
+			if ((int) check.getValue() != buffer.getInt(offset + 4)) {
+				break;
+			}
+
+			buffer.position(offset + HEADER + length);
+			if (consumer != null) {
+				consumer.accept(base + buffer.position(), payload.slice());
+			}
+		}
+		return base + buffer.position();
+	}
+
+	private static boolean endsCleanly(ByteBuffer buffer) {
+		return buffer.remaining() < HEADER || buffer.getInt(buffer.position()) == 0
+				&& buffer.getInt(buffer.position() + 4) == 0;
+	}
+
+	private MappedByteBuffer map(long index) throws IOException {
+		try (FileChannel channel = FileChannel.open(
+				directory.resolve(String.format("%010d", index) + SUFFIX),
+				StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE)) {
+			return channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+		}
+	}
+
+	private List<Long> segments() throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.map(file -> file.getFileName().toString())
+					.filter(name -> name.endsWith(SUFFIX))
+					.map(name -> Long.valueOf(name.substring(0, name.length() - SUFFIX.length())))
+					.sorted().collect(Collectors.toList());
+		}
+	}
+
+	@Override
+	public void close() {
+		running = false;
+		try {
+			flusher.join(TimeUnit.SECONDS.toMillis(5));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		synchronized (this) {
+			segment.force();
+			forced = position;
+			commits.values().forEach(commit -> commit.complete(position));
+			commits.clear();
+		}
+	}
+}
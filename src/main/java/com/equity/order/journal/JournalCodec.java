@@ -0,0 +1,191 @@
+package com.equity.order.journal;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import com.equity.order.book.OrderBook;
+import com.equity.order.execution.Execution;
+import com.equity.order.history.OrderHistory;
+import com.equity.order.history.OrderHistory.ItemType;
+import com.equity.order.history.OrderHistory.Status;
+import com.equity.order.item.Side;
+
+// binary layout of one journal record, the executions and history of one append
+// nullable values are prefixed with a presence byte, enums are stored as ordinals
+public final class JournalCodec {
+
+	private JournalCodec() {
+	}
+
+	public static ByteBuffer encode(List<Execution> executions,
+			List<OrderHistory> orderHistories) {
+		final List<byte[]> accounts = new ArrayList<>(orderHistories.size());
+		int strings = 0;
+		for (OrderHistory orderHistory : orderHistories) {
+			final byte[] account = orderHistory.getAccount() != null
+					? orderHistory.getAccount().getBytes(StandardCharsets.UTF_8)
+					: null;
+			accounts.add(account);
+			strings += account != null ? account.length : 0;
+		}
+		final ByteBuffer buffer = ByteBuffer
+				.allocate(8 + executions.size() * 96 + orderHistories.size() * 112 + strings);
+
+		buffer.putInt(executions.size());
+		for (Execution execution : executions) {
+			buffer.putLong(execution.getId());
+			putInteger(buffer, execution.getQuantity());
+			putDecimal(buffer, execution.getPrice());
+			putDate(buffer, execution.getCreatedDate());
+			putLong(buffer, execution.getOrderBookId());
+			putLong(buffer, execution.getBuyOrderId());
+			putLong(buffer, execution.getSellOrderId());
+		}
+
+		buffer.putInt(orderHistories.size());
+		for (int i = 0; i < orderHistories.size(); i++) {
+			final OrderHistory orderHistory = orderHistories.get(i);
+			buffer.putLong(orderHistory.getId());
+			putLong(buffer, orderHistory.getOrderBookId());
+			putLong(buffer, orderHistory.getOrderBookVersion());
+			putEnum(buffer, orderHistory.getItemType());
+			putLong(buffer, orderHistory.getItemId());
+			putEnum(buffer, orderHistory.getSide());
+			putInteger(buffer, orderHistory.getQuantity());
+			putDecimal(buffer, orderHistory.getPrice());
+			putDate(buffer, orderHistory.getItemCreatedDate());
+			putEnum(buffer, orderHistory.getStatus());
+			putDate(buffer, orderHistory.getCreatedDate());
+			putEnum(buffer, orderHistory.getOrderBookStatus());
+			putBytes(buffer, accounts.get(i));
+		}
+
+		buffer.flip();
+		return buffer;
+	}
+
+	public static Record decode(ByteBuffer buffer) {
+		final int executionCount = buffer.getInt();
+		final List<Execution> executions = new ArrayList<>(executionCount);
+		for (int i = 0; i < executionCount; i++) {
+			executions.add(Execution.builder().id(buffer.getLong())
+					.quantity(getInteger(buffer)).price(getDecimal(buffer))
+					.createdDate(getDate(buffer)).orderBookId(getLong(buffer))
+					.buyOrderId(getLong(buffer)).sellOrderId(getLong(buffer)).build());
+		}
+
+		final int historyCount = buffer.getInt();
+		final List<OrderHistory> orderHistories = new ArrayList<>(historyCount);
+		for (int i = 0; i < historyCount; i++) {
+			orderHistories.add(OrderHistory.builder().id(buffer.getLong())
+					.orderBookId(getLong(buffer)).orderBookVersion(getLong(buffer))
+					.itemType(getEnum(buffer, ItemType.values())).itemId(getLong(buffer))
+					.side(getEnum(buffer, Side.values())).quantity(getInteger(buffer))
+					.price(getDecimal(buffer)).itemCreatedDate(getDate(buffer))
+					.status(getEnum(buffer, Status.values())).createdDate(getDate(buffer))
+					.orderBookStatus(getEnum(buffer, OrderBook.Status.values()))
+					.account(getString(buffer)).build());
+		}
+
+		return new Record(executions, orderHistories);
+	}
+
+	public static class Record {
+		private final List<Execution> executions;
+		private final List<OrderHistory> orderHistories;
+
+		public Record(List<Execution> executions, List<OrderHistory> orderHistories) {
+			this.executions = executions;
+			this.orderHistories = orderHistories;
+		}
+
+		public List<Execution> getExecutions() {
+			return executions;
+		}
+
+		public List<OrderHistory> getOrderHistories() {
+			return orderHistories;
+		}
+	}
+
+	private static void putLong(ByteBuffer buffer, Long value) {
+		buffer.put((byte) (value != null ? 1 : 0));
+		if (value != null) {
+			buffer.putLong(value);
+		}
+	}
+
+	private static Long getLong(ByteBuffer buffer) {
+		return buffer.get() != 0 ? buffer.getLong() : null;
+	}
+
+	private static void putInteger(ByteBuffer buffer, Integer value) {
+		buffer.put((byte) (value != null ? 1 : 0));
+		if (value != null) {
+			buffer.putInt(value);
+		}
+	}
+
+	private static Integer getInteger(ByteBuffer buffer) {
+		return buffer.get() != 0 ? buffer.getInt() : null;
+	}
+
+	private static void putDate(ByteBuffer buffer, Date value) {
+		putLong(buffer, value != null ? value.getTime() : null);
+	}
+
+	private static Date getDate(ByteBuffer buffer) {
+		final Long time = getLong(buffer);
+		return time != null ? new Date(time) : null;
+	}
+
+	// prices fit in a long unscaled value, anything wider is not a price
+	private static void putDecimal(ByteBuffer buffer, BigDecimal value) {
+		buffer.put((byte) (value != null ? 1 : 0));
+		if (value != null) {
+			buffer.put((byte) value.scale());
+			buffer.putLong(value.unscaledValue().longValueExact());
+		}
+	}
+
+	private static BigDecimal getDecimal(ByteBuffer buffer) {
+		if (buffer.get() == 0) {
+			return null;
+		}
+		final int scale = buffer.get();
+		return new BigDecimal(BigInteger.valueOf(buffer.getLong()), scale);
+	}
+
+	// length, -1 for none, then the utf-8 bytes
+	private static void putBytes(ByteBuffer buffer, byte[] value) {
+		buffer.putInt(value != null ? value.length : -1);
+		if (value != null) {
+			buffer.put(value);
+		}
+	}
+
+	private static String getString(ByteBuffer buffer) {
+		final int length = buffer.getInt();
+		if (length < 0) {
+			return null;
+		}
+		final byte[] value = new byte[length];
+		buffer.get(value);
+		return new String(value, StandardCharsets.UTF_8);
+	}
+
+	private static void putEnum(ByteBuffer buffer, Enum<?> value) {
+		buffer.put((byte) (value != null ? value.ordinal() : -1));
+	}
+
+	private static <E extends Enum<E>> E getEnum(ByteBuffer buffer, E[] values) {
+		final byte ordinal = buffer.get();
+		return ordinal >= 0 ? values[ordinal] : null;
+	}
+
+}
@@ -0,0 +1,25 @@
+package com.equity.order.journal;
+
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+// history and executions are written to the journal first, the jpa tables are
+// filled behind it and only serve reads
+@Configuration
+@ConditionalOnProperty(name = "order.journal.enabled", havingValue = "true")
+public class JournalConfiguration {
+
+	@Bean(destroyMethod = "close")
+	public Journal journal(@Value("${order.journal.directory:journal}") String directory,
+			@Value("${order.journal.segment-size:67108864}") int segmentSize,
+			@Value("${order.journal.flush-delay-us:200}") long flushDelay) {
+		return new Journal(Paths.get(directory), segmentSize, flushDelay,
+				TimeUnit.MICROSECONDS);
+	}
+
+}
@@ -0,0 +1,179 @@
+package com.equity.order.journal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import com.equity.order.execution.Execution;
+import com.equity.order.history.OrderHistory;
+import com.equity.order.journal.JournalCodec.Record;
+
+import lombok.extern.log4j.Log4j2;
+
+// copies journal records into the jpa tables on one thread in journal order
+// the position of the last copied record is kept next to the journal, anything
+// after it is copied again on startup and rows already there are skipped
+@Component
+@ConditionalOnProperty(name = "order.journal.enabled", havingValue = "true")
+@Log4j2
+public class JournalIndexer {
+
+	private static final String INSERT_EXECUTION = "insert into execution "
+			+ "(id, quantity, price, created_date, order_book_id, buy_order_id, sell_order_id) "
+			+ "values (?, ?, ?, ?, ?, ?, ?)";
+	private static final String INSERT_ORDER_HISTORY = "insert into order_history "
+			+ "(id, order_book_id, order_book_version, item_type, item_id, side, quantity, "
+			+ "price, item_created_date, status, created_date, order_book_status, account) "
+			+ "values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+	private final Journal journal;
+	private final JdbcTemplate jdbcTemplate;
+	private final NamedParameterJdbcTemplate namedJdbcTemplate;
+	private final MappedByteBuffer checkpoint;
+	private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+		final Thread thread = new Thread(runnable, "journal-indexer");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private volatile boolean failed;
+
+	public JournalIndexer(Journal journal, JdbcTemplate jdbcTemplate,
+			@Value("${order.journal.directory:journal}") String directory) {
+		this.journal = journal;
+		this.jdbcTemplate = jdbcTemplate;
+		this.namedJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+		this.checkpoint = map(Paths.get(directory, "index.checkpoint"));
+	}
+
+	// before the app is ready so recovery sees every record
+	@PostConstruct
+	public void catchUp() {
+		final long from = checkpoint.getLong(0);
+		final long[] count = new long[1];
+		final long to = journal.replay(from, (position, payload) -> {
+			insert(JournalCodec.decode(payload), true);
+			checkpoint.putLong(0, position);
+			count[0]++;
+		});
+		log.info("Indexed {} journal records from {} to {}", count[0], from, to);
+	}
+
+	// called in journal order, the record is only copied once it is on disk
+	public void index(long position, Record record) {
+		executor.execute(() -> {
+			// a gap would be skipped for good, stop and let the next startup catch up
+			if (failed) {
+				return;
+			}
+			try {
+				journal.commit(position).join();
+				insert(record, false);
+				checkpoint.putLong(0, position);
+			} catch (RuntimeException e) {
+				failed = true;
+				log.error("Stopped indexing the journal at {}", checkpoint.getLong(0), e);
+			}
+		});
+	}
+
+	private void insert(Record record, boolean skipExisting) {
+		List<Execution> executions = record.getExecutions();
+		List<OrderHistory> orderHistories = record.getOrderHistories();
+		if (skipExisting) {
+			final Set<Long> indexed = existing("execution",
+					executions.stream().map(Execution::getId).collect(Collectors.toList()));
+			executions = executions.stream().filter(e -> !indexed.contains(e.getId()))
+					.collect(Collectors.toList());
+			final Set<Long> recorded = existing("order_history", orderHistories.stream()
+					.map(OrderHistory::getId).collect(Collectors.toList()));
+			orderHistories = orderHistories.stream()
+					.filter(h -> !recorded.contains(h.getId())).collect(Collectors.toList());
+		}
+
+		if (!executions.isEmpty()) {
+			jdbcTemplate.batchUpdate(INSERT_EXECUTION, executions, executions.size(),
+					(statement, execution) -> {
+						statement.setLong(1, execution.getId());
+						statement.setObject(2, execution.getQuantity());
+						statement.setBigDecimal(3, execution.getPrice());
+						statement.setTimestamp(4, timestamp(execution.getCreatedDate()));
+						statement.setObject(5, execution.getOrderBookId());
+						statement.setObject(6, execution.getBuyOrderId());
+						statement.setObject(7, execution.getSellOrderId());
+					});
+		}
+		if (!orderHistories.isEmpty()) {
+			jdbcTemplate.batchUpdate(INSERT_ORDER_HISTORY, orderHistories,
+					orderHistories.size(), (statement, orderHistory) -> {
+						statement.setLong(1, orderHistory.getId());
+						statement.setObject(2, orderHistory.getOrderBookId());
+						statement.setObject(3, orderHistory.getOrderBookVersion());
+						statement.setString(4, name(orderHistory.getItemType()));
+						statement.setObject(5, orderHistory.getItemId());
+						statement.setString(6, name(orderHistory.getSide()));
+						statement.setObject(7, orderHistory.getQuantity());
+						statement.setBigDecimal(8, orderHistory.getPrice());
+						statement.setTimestamp(9, timestamp(orderHistory.getItemCreatedDate()));
+						statement.setString(10, name(orderHistory.getStatus()));
+						statement.setTimestamp(11, timestamp(orderHistory.getCreatedDate()));
+						statement.setString(12, name(orderHistory.getOrderBookStatus()));
+						statement.setString(13, orderHistory.getAccount());
+					});
+		}
+	}
+
+	private Set<Long> existing(String table, List<Long> ids) {
+		if (ids.isEmpty()) {
+			return new HashSet<>();
+		}
+		return new HashSet<>(namedJdbcTemplate.queryForList(
+				"select id from " + table + " where id in (:ids)",
+				new MapSqlParameterSource("ids", ids), Long.class));
+	}
+
+	private static String name(Enum<?> value) {
+		return value != null ? value.name() : null;
+	}
+
+	private static Timestamp timestamp(Date date) {
+		return date != null ? new Timestamp(date.getTime()) : null;
+	}
+
+	private static MappedByteBuffer map(Path path) {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			return channel.map(FileChannel.MapMode.READ_WRITE, 0, Long.BYTES);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@PreDestroy
+	public void stop() {
+		executor.shutdown();
+	}
+
+}
@@ -0,0 +1,66 @@
+package com.equity.order.journal;
+
+import java.util.Date;
+import java.util.List;
+import java.util.function.Function;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.equity.order.OrderIdAllocator;
+import com.equity.order.execution.Execution;
+import com.equity.order.history.OrderEventStore;
+import com.equity.order.history.OrderHistory;
+import com.equity.order.journal.JournalCodec.Record;
+
+// an append is a copy into the journal and a wait for the next group commit,
+// the rows show up in /orderHistories once the indexer has copied them
+@Component
+@ConditionalOnProperty(name = "order.journal.enabled", havingValue = "true")
+public class JournalOrderEventStore implements OrderEventStore {
+
+	private final Journal journal;
+	private final JournalIndexer journalIndexer;
+	private final OrderIdAllocator orderIdAllocator;
+
+	public JournalOrderEventStore(Journal journal, JournalIndexer journalIndexer,
+			OrderIdAllocator orderIdAllocator) {
+		this.journal = journal;
+		this.journalIndexer = journalIndexer;
+		this.orderIdAllocator = orderIdAllocator;
+	}
+
+	@Override
+	public List<OrderHistory> append(List<Execution> executions,
+			Function<List<Execution>, List<OrderHistory>> history) {
+		// what the entity callbacks would have set
+		final Date now = new Date();
+		final long[] executionIds = orderIdAllocator.next(Execution.class, executions.size());
+		for (int i = 0; i < executions.size(); i++) {
+			executions.get(i).setId(executionIds[i]);
+			executions.get(i).setCreatedDate(now);
+		}
+
+		final List<OrderHistory> orderHistories = history.apply(executions);
+		final long[] historyIds = orderIdAllocator.next(OrderHistory.class,
+				orderHistories.size());
+		for (int i = 0; i < orderHistories.size(); i++) {
+			final OrderHistory orderHistory = orderHistories.get(i);
+			orderHistory.setId(historyIds[i]);
+			orderHistory.setCreatedDate(now);
+			if (orderHistory.getStatus() == null) {
+				orderHistory.setStatus(OrderHistory.Status.ORDER_CREATED);
+			}
+		}
+
+		// the indexer has to see records in journal order
+		final long position;
+		synchronized (this) {
+			position = journal.append(JournalCodec.encode(executions, orderHistories));
+			journalIndexer.index(position, new Record(executions, orderHistories));
+		}
+		journal.commit(position).join();
+		return orderHistories;
+	}
+
+}
@@ -0,0 +1,22 @@
+package com.equity.order.marketdata;
+
+import java.math.BigDecimal;
+
+import com.equity.order.item.Side;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// total resting quantity at one price of a book, zero once the level is gone
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BookLevel {
+	private Long orderBookId;
+	private Side side;
+	private BigDecimal price;
+	private long quantity;
+}
@@ -0,0 +1,19 @@
+package com.equity.order.marketdata;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// every level of an open book, best first, level updates follow it
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BookSnapshot {
+	private Long orderBookId;
+	private List<BookLevel> bids;
+	private List<BookLevel> asks;
+}
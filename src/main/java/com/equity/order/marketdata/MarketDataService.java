@@ -0,0 +1,340 @@
+package com.equity.order.marketdata;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.equity.order.book.OrderBook;
+import com.equity.order.book.OrderBookRepository;
+import com.equity.order.execution.Execution;
+import com.equity.order.history.OrderHistoryService.OrderHistory.OrderItem;
+import com.equity.order.item.Side;
+import com.equity.order.matching.MatchResult;
+import com.equity.order.matching.MatchingService;
+import com.equity.order.matching.OrderMatcher;
+import com.equity.order.matching.Prices;
+import com.equity.order.sequencer.SequencerService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.extern.log4j.Log4j2;
+
+// server sent events per instrument, GET /marketData?instrument=/instruments/123
+// a subscriber first gets a snapshot of every open book of the instrument, then
+// level updates and executions as the books change
+// each update is serialized once on the writer and shared by all subscribers, level
+// updates of a subscriber that falls behind are conflated to the latest quantity
+// a plain controller, the spring data rest one has no converter for raw event data
+@RestController
+@Log4j2
+public class MarketDataService {
+
+	public static final String SNAPSHOT = "snapshot";
+	public static final String LEVEL = "level";
+	public static final String EXECUTION = "execution";
+	public static final String CLOSED = "closed";
+
+	private static final ObjectMapper objectMapper = new ObjectMapper();
+
+	private final Map<String, List<Subscriber>> subscribers = new ConcurrentHashMap<>();
+
+	private final OrderBookRepository orderBookRepository;
+	private final MatchingService matchingService;
+	private final SequencerService sequencerService;
+
+	private final ThreadPoolExecutor executor;
+	private final long timeoutMillis;
+	private final int backlog;
+
+	public MarketDataService(OrderBookRepository orderBookRepository,
+			MatchingService matchingService, SequencerService sequencerService,
+			@Value("${order.marketdata.threads:2}") int threads,
+			@Value("${order.marketdata.timeout-ms:0}") long timeoutMillis,
+			@Value("${order.marketdata.backlog:1024}") int backlog) {
+		this.orderBookRepository = orderBookRepository;
+		this.matchingService = matchingService;
+		this.sequencerService = sequencerService;
+		this.timeoutMillis = timeoutMillis;
+		this.backlog = backlog;
+
+		final AtomicInteger count = new AtomicInteger();
+		this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<>(), runnable -> {
+					final Thread thread = new Thread(runnable,
+							"market-data-" + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+		this.executor.allowCoreThreadTimeOut(true);
+	}
+
+	// zero timeout keeps the stream open until the client goes away
+	@GetMapping(path = "/marketData", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+	public SseEmitter subscribe(@RequestParam String instrument) {
+		final List<OrderBook> orderBooks = orderBookRepository
+				.findByInstrumentAndStatus(instrument, OrderBook.Status.OPEN);
+
+		final SseEmitter emitter = new SseEmitter(timeoutMillis);
+		final Subscriber subscriber = new Subscriber(emitter, executor, backlog);
+		emitter.onCompletion(() -> unsubscribe(instrument, subscriber));
+		emitter.onTimeout(() -> unsubscribe(instrument, subscriber));
+		emitter.onError(error -> unsubscribe(instrument, subscriber));
+
+		// on the writer so no update falls between the snapshot and the subscription
+		sequencerService.submit(instrument, () -> {
+			for (OrderBook orderBook : orderBooks) {
+				subscriber.offer(SNAPSHOT, json(snapshot(orderBook.getId())));
+			}
+			subscribers.computeIfAbsent(instrument, key -> new CopyOnWriteArrayList<>())
+					.add(subscriber);
+			return null;
+		});
+		return emitter;
+	}
+
+	// runs on the writer of the book instrument once the results are stored
+	public void publish(OrderBook orderBook, List<OrderItem> orderItems,
+			List<MatchResult> matchResults) {
+		final List<Subscriber> instrumentSubscribers = subscribers
+				.get(orderBook.getInstrument());
+		if (instrumentSubscribers == null || instrumentSubscribers.isEmpty()) {
+			return;
+		}
+
+		// the order side and price, and the other side at every price it filled at
+		final Set<Map.Entry<Side, BigDecimal>> touched = new LinkedHashSet<>();
+		final List<Execution> executions = new ArrayList<>();
+		for (int i = 0; i < orderItems.size(); i++) {
+			final OrderItem orderItem = orderItems.get(i);
+			if (orderItem.getSide() == null) {
+				continue;
+			}
+			for (Execution execution : matchResults.get(i).getExecutions()) {
+				touched.add(new SimpleImmutableEntry<>(orderItem.getSide().opposite(),
+						execution.getPrice()));
+				executions.add(execution);
+			}
+			if (orderItem.getPrice() != null) {
+				touched.add(new SimpleImmutableEntry<>(orderItem.getSide(), orderItem.getPrice()));
+			}
+		}
+		if (touched.isEmpty()) {
+			return;
+		}
+
+		final OrderMatcher matcher = matchingService.get(orderBook.getId());
+		final List<String> executionUpdates = executions.stream().map(this::json)
+				.collect(Collectors.toList());
+		final List<Map.Entry<String, String>> levelUpdates = new ArrayList<>(touched.size());
+		for (Map.Entry<Side, BigDecimal> level : touched) {
+			final long quantity = matcher != null
+					&& Prices.isTick(level.getValue(), matcher.getScale())
+							? matcher.quantityAt(level.getKey(),
+									Prices.toTicks(level.getValue(), matcher.getScale()))
+							: 0;
+			levelUpdates.add(new SimpleImmutableEntry<>(
+					orderBook.getId() + ":" + level.getKey() + ":"
+							+ level.getValue().stripTrailingZeros().toPlainString(),
+					json(BookLevel.builder().orderBookId(orderBook.getId())
+							.side(level.getKey()).price(level.getValue()).quantity(quantity)
+							.build())));
+		}
+
+		for (Subscriber subscriber : instrumentSubscribers) {
+			executionUpdates.forEach(update -> subscriber.offer(EXECUTION, update));
+			levelUpdates.forEach(update -> subscriber.conflate(update.getKey(), update.getValue()));
+		}
+	}
+
+	// runs on the writer once the matcher of the book is gone
+	public void closed(OrderBook orderBook) {
+		final List<Subscriber> instrumentSubscribers = subscribers
+				.get(orderBook.getInstrument());
+		if (instrumentSubscribers == null || instrumentSubscribers.isEmpty()) {
+			return;
+		}
+
+		final String update = json(Collections.singletonMap("orderBookId", orderBook.getId()));
+		for (Subscriber subscriber : instrumentSubscribers) {
+			subscriber.dropLevels(orderBook.getId() + ":");
+			subscriber.offer(CLOSED, update);
+		}
+	}
+
+	private BookSnapshot snapshot(Long orderBookId) {
+		final OrderMatcher matcher = matchingService.get(orderBookId);
+		return BookSnapshot.builder().orderBookId(orderBookId)
+				.bids(levels(orderBookId, matcher, Side.BUY))
+				.asks(levels(orderBookId, matcher, Side.SELL)).build();
+	}
+
+	private static List<BookLevel> levels(Long orderBookId, OrderMatcher matcher, Side side) {
+		if (matcher == null) {
+			return Collections.emptyList();
+		}
+		final List<BookLevel> levels = new ArrayList<>();
+		matcher.forEachLevel(side,
+				(price, quantity) -> levels.add(BookLevel.builder().orderBookId(orderBookId)
+						.side(side).price(Prices.toDecimal(price, matcher.getScale()))
+						.quantity(quantity).build()));
+		return levels;
+	}
+
+	private void unsubscribe(String instrument, Subscriber subscriber) {
+		final List<Subscriber> instrumentSubscribers = subscribers.get(instrument);
+		if (instrumentSubscribers != null) {
+			instrumentSubscribers.remove(subscriber);
+		}
+	}
+
+	private String json(Object update) {
+		try {
+			return objectMapper.writeValueAsString(update);
+		} catch (JsonProcessingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public int getSubscriberCount(String instrument) {
+		final List<Subscriber> instrumentSubscribers = subscribers.get(instrument);
+		return instrumentSubscribers != null ? instrumentSubscribers.size() : 0;
+	}
+
+	@PreDestroy
+	public void stop() {
+		subscribers.values().forEach(
+				instrumentSubscribers -> instrumentSubscribers.forEach(Subscriber::complete));
+		executor.shutdown();
+	}
+
+	// pending updates of one client, sent by the market data threads
+	// events are sent in order, at most backlog of them, while level updates only keep
+	// the latest per level and go out after the events pending with them
+	static class Subscriber {
+		private final SseEmitter emitter;
+		private final ThreadPoolExecutor executor;
+		private final int backlog;
+
+		private final List<String[]> events = new ArrayList<>();
+		private final Map<String, String> levels = new LinkedHashMap<>();
+		private boolean scheduled;
+		private boolean done;
+
+		Subscriber(SseEmitter emitter, ThreadPoolExecutor executor, int backlog) {
+			this.emitter = emitter;
+			this.executor = executor;
+			this.backlog = backlog;
+		}
+
+		void offer(String name, String data) {
+			synchronized (this) {
+				if (done) {
+					return;
+				}
+				// too far behind to catch up, the client reconnects for a new snapshot
+				if (events.size() >= backlog) {
+					log.warn("Dropping market data subscriber {} behind by {} events", this,
+							events.size());
+					done = true;
+				} else {
+					events.add(new String[] { name, data });
+				}
+			}
+			if (isDone()) {
+				complete();
+			} else {
+				schedule();
+			}
+		}
+
+		void conflate(String level, String data) {
+			synchronized (this) {
+				if (done) {
+					return;
+				}
+				levels.remove(level);
+				levels.put(level, data);
+			}
+			schedule();
+		}
+
+		synchronized void dropLevels(String prefix) {
+			levels.keySet().removeIf(level -> level.startsWith(prefix));
+		}
+
+		void complete() {
+			synchronized (this) {
+				done = true;
+			}
+			emitter.complete();
+		}
+
+		private synchronized boolean isDone() {
+			return done;
+		}
+
+		private void schedule() {
+			synchronized (this) {
+				if (scheduled) {
+					return;
+				}
+				scheduled = true;
+			}
+			executor.execute(this::flush);
+		}
+
+		private void flush() {
+			while (true) {
+				final List<String[]> pending = new ArrayList<>();
+				synchronized (this) {
+					if (done || events.isEmpty() && levels.isEmpty()) {
+						scheduled = false;
+						return;
+					}
+					pending.addAll(events);
+					events.clear();
+					levels.values().forEach(data -> pending.add(new String[] { LEVEL, data }));
+					levels.clear();
+				}
+
+				try {
+					for (String[] event : pending) {
+						emitter.send(SseEmitter.event().name(event[0]).data(event[1],
+								MediaType.APPLICATION_JSON));
+					}
+				} catch (IOException | IllegalStateException e) {
+					synchronized (this) {
+						done = true;
+						scheduled = false;
+					}
+					emitter.completeWithError(e);
+					return;
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,16 @@
+package com.equity.order.matching;
+
+// wall clock nanos since the epoch without allocating an Instant
+// anchored once, then advanced by the monotonic clock
+public final class EpochNanos {
+
+	private static final long OFFSET = System.currentTimeMillis() * 1_000_000L
+			- System.nanoTime();
+
+	private EpochNanos() {
+	}
+
+	public static long now() {
+		return OFFSET + System.nanoTime();
+	}
+}
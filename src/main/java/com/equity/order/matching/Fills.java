@@ -0,0 +1,64 @@
+package com.equity.order.matching;
+
+import java.util.Arrays;
+
+// fills of one submit as primitive columns, reused by its matcher
+// a fill is always priced at the resting order, in ticks of the book scale
+public class Fills {
+
+	private long[] buyOrderIds = new long[16];
+	private long[] sellOrderIds = new long[16];
+	private long[] prices = new long[16];
+	private int[] quantities = new int[16];
+	private int size;
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public long buyOrderId(int index) {
+		return buyOrderIds[index];
+	}
+
+	public long sellOrderId(int index) {
+		return sellOrderIds[index];
+	}
+
+	public long price(int index) {
+		return prices[index];
+	}
+
+	public int quantity(int index) {
+		return quantities[index];
+	}
+
+	public int filledQuantity() {
+		int filled = 0;
+		for (int i = 0; i < size; i++) {
+			filled += quantities[i];
+		}
+		return filled;
+	}
+
+	void clear() {
+		size = 0;
+	}
+
+	void add(long buyOrderId, long sellOrderId, long price, int quantity) {
+		if (size == quantities.length) {
+			buyOrderIds = Arrays.copyOf(buyOrderIds, size * 2);
+			sellOrderIds = Arrays.copyOf(sellOrderIds, size * 2);
+			prices = Arrays.copyOf(prices, size * 2);
+			quantities = Arrays.copyOf(quantities, size * 2);
+		}
+		buyOrderIds[size] = buyOrderId;
+		sellOrderIds[size] = sellOrderId;
+		prices[size] = price;
+		quantities[size] = quantity;
+		size++;
+	}
+}
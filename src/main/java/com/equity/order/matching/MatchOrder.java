@@ -0,0 +1,24 @@
+package com.equity.order.matching;
+
+import com.equity.order.item.Side;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// order item as seen by the matching engine
+// price is in ticks of the book scale and ignored for market orders
+// timestamp is epoch nanos of when it reached the matcher
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MatchOrder {
+	private long id;
+	private Side side;
+	private boolean market;
+	private long price;
+	private int quantity;
+	private long timestamp;
+}
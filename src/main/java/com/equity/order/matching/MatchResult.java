@@ -0,0 +1,33 @@
+package com.equity.order.matching;
+
+import java.util.Collections;
+import java.util.List;
+
+import com.equity.order.execution.Execution;
+import com.equity.order.risk.RiskReason;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// what an order did to the book
+// canceled quantity is the part of a market order that found nothing to fill
+// an order rejected by the risk checks never reached the book
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MatchResult {
+
+	public static final MatchResult NONE = new MatchResult(Collections.emptyList(), 0,
+			null);
+
+	private List<Execution> executions;
+	private int canceledQuantity;
+	private RiskReason rejected;
+
+	public static MatchResult rejected(RiskReason reason) {
+		return new MatchResult(Collections.emptyList(), 0, reason);
+	}
+}
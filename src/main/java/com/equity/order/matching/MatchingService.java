@@ -0,0 +1,316 @@
+package com.equity.order.matching;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Service;
+
+import com.equity.order.book.OrderBook;
+import com.equity.order.execution.Execution;
+import com.equity.order.history.OrderHistory;
+import com.equity.order.history.OrderHistory.ItemType;
+import com.equity.order.history.OrderHistoryService.OrderHistory.OrderItem;
+import com.equity.order.item.Side;
+
+import lombok.extern.log4j.Log4j2;
+
+// keeps one in memory matcher per open order book
+// matchers are created on the first order and dropped when the book is closed
+// prices become ticks of the instrument scale here and decimals again on the executions
+@Service
+@EnableConfigurationProperties(PriceProperties.class)
+@Log4j2
+public class MatchingService {
+
+	// how long a drained book is remembered, an order that read the book open before
+	// its close was committed is queued long before that
+	static final long DRAINED_MILLIS = 60_000;
+
+	private final Map<Long, OrderMatcher> matchers = new ConcurrentHashMap<>();
+	// books drained before their close is committed, orders still queued for them are
+	// canceled outright instead of resting on a book that is going away
+	// by drain time, oldest first, so the ones past DRAINED_MILLIS are dropped in order
+	private final Map<Long, Long> drained = new ConcurrentHashMap<>();
+	private final Deque<Long> drainOrder = new ArrayDeque<>();
+	private final PriceProperties priceProperties;
+
+	public MatchingService(PriceProperties priceProperties) {
+		this.priceProperties = priceProperties;
+	}
+
+	// matches an order item fetched from its location against the book
+	// returns the executions produced, not yet persisted
+	public MatchResult match(OrderBook orderBook, OrderItem orderItem) {
+		if (orderBook.getStatus() != OrderBook.Status.OPEN) {
+			return MatchResult.NONE;
+		}
+		if (drained.containsKey(orderBook.getId())) {
+			return MatchResult.builder().executions(new ArrayList<>())
+					.canceledQuantity(
+							orderItem.getQuantity() != null ? orderItem.getQuantity() : 0)
+					.build();
+		}
+
+		// a restored matcher keeps the scale it was snapshotted with
+		final OrderMatcher matcher = matcher(orderBook);
+		final int scale = matcher.getScale();
+		final MatchOrder order = toMatchOrder(orderItem, scale);
+		if (order == null) {
+			return MatchResult.NONE;
+		}
+
+		// the same order attached again would take the place of the one resting
+		if (matcher.isResting(order.getId())) {
+			log.warn("Order {} is already resting on {}", order.getId(), orderBook.getId());
+			return MatchResult.NONE;
+		}
+
+		final Fills fills = matcher.submit(order);
+		return MatchResult.builder().executions(executions(orderBook, fills, scale))
+				.canceledQuantity(
+						order.isMarket() ? order.getQuantity() - fills.filledQuantity() : 0)
+				.build();
+	}
+
+	// whether match puts the order on the book, orders off the tick grid or already
+	// resting there are only recorded, those for a drained book only canceled
+	public boolean accepts(OrderBook orderBook, OrderItem orderItem) {
+		if (orderBook.getStatus() != OrderBook.Status.OPEN
+				|| drained.containsKey(orderBook.getId()) || orderItem.getSide() == null
+				|| orderItem.getQuantity() == null || orderItem.getLocation() == null) {
+			return false;
+		}
+
+		return takes(orderBook, idOf(orderItem.getLocation()), orderItem.getPrice());
+	}
+
+	// the same for a created order in the history, replayed before the order itself, by
+	// the status the book had when it was recorded
+	public boolean accepted(OrderBook orderBook, OrderHistory orderHistory) {
+		if (orderHistory.getStatus() != OrderHistory.Status.ORDER_CREATED
+				|| orderHistory.getItemType() != ItemType.LIMIT_ORDER
+						&& orderHistory.getItemType() != ItemType.MARKET_ORDER
+				|| orderHistory.getSide() == null || orderHistory.getQuantity() == null
+				|| orderHistory.getOrderBookStatus() == OrderBook.Status.CLOSED) {
+			return false;
+		}
+		return takes(orderBook, orderHistory.getItemId(), orderHistory.getPrice());
+	}
+
+	// null when the order is not resting on the book
+	public RestingOrder resting(OrderBook orderBook, Long orderId) {
+		final OrderMatcher matcher = matchers.get(orderBook.getId());
+		if (matcher == null || !matcher.isResting(orderId)) {
+			return null;
+		}
+
+		return RestingOrder.builder().id(orderId).side(matcher.sideOf(orderId))
+				.price(Prices.toDecimal(matcher.priceOf(orderId), matcher.getScale()))
+				.quantity(matcher.remainingOf(orderId)).build();
+	}
+
+	// takes what is left of a resting order off the book, returns the quantity canceled
+	public int cancel(OrderBook orderBook, Long orderId) {
+		final OrderMatcher matcher = matchers.get(orderBook.getId());
+		return matcher == null ? 0 : matcher.cancel(orderId, Integer.MAX_VALUE);
+	}
+
+	// quantity can only go down, which keeps time priority, a new price loses it and
+	// may trade straight away, the canceled quantity is what the amendment took off
+	// throws before touching the book when the amendment is not valid
+	public MatchResult amend(OrderBook orderBook, Long orderId, BigDecimal price,
+			int quantity) {
+		final OrderMatcher matcher = matchers.get(orderBook.getId());
+		final int remaining = matcher == null ? 0 : matcher.remainingOf(orderId);
+		if (remaining == 0) {
+			throw new IllegalArgumentException(orderId + " is not resting");
+		}
+		if (quantity <= 0 || quantity > remaining) {
+			throw new IllegalArgumentException(
+					"Quantity of " + orderId + " can only go down from " + remaining);
+		}
+		if (!Prices.isTick(price, matcher.getScale())) {
+			throw new IllegalArgumentException(
+					"Price " + price + " is not a tick of scale " + matcher.getScale());
+		}
+
+		final long ticks = Prices.toTicks(price, matcher.getScale());
+		matcher.cancel(orderId, remaining - quantity);
+		final List<Execution> executions = ticks != matcher.priceOf(orderId)
+				? executions(orderBook, matcher.replace(orderId, ticks, EpochNanos.now()),
+						matcher.getScale())
+				: new ArrayList<>();
+		return MatchResult.builder().executions(executions)
+				.canceledQuantity(remaining - quantity).build();
+	}
+
+	public OrderMatcher get(Long orderBookId) {
+		return matchers.get(orderBookId);
+	}
+
+	// recovery only, on the writer of the book or before any order comes in
+	public void restore(Long orderBookId, OrderMatcher matcher) {
+		matchers.put(orderBookId, matcher);
+	}
+
+	public void clear() {
+		matchers.clear();
+		synchronized (drainOrder) {
+			drained.clear();
+			drainOrder.clear();
+		}
+	}
+
+	// hands a street fill to the resting orders of one side that take its price, the
+	// executions are at the fill price and not yet persisted
+	public List<Execution> allocate(OrderBook orderBook, Side side, BigDecimal price,
+			int quantity) {
+		final OrderMatcher matcher = matchers.get(orderBook.getId());
+		if (matcher == null || quantity <= 0) {
+			return new ArrayList<>();
+		}
+
+		// buyers take a fill at or below their limit, sellers at or above
+		final long ticks = Prices.toTicks(price, matcher.getScale(),
+				side == Side.BUY ? RoundingMode.CEILING : RoundingMode.FLOOR);
+		final Fills fills = matcher.allocate(side, ticks, quantity);
+		final List<Execution> executions = new ArrayList<>(fills.size());
+		for (int i = 0; i < fills.size(); i++) {
+			executions.add(Execution.builder().orderBookId(orderBook.getId())
+					.buyOrderId(side == Side.BUY ? fills.buyOrderId(i) : null)
+					.sellOrderId(side == Side.SELL ? fills.sellOrderId(i) : null).price(price)
+					.quantity(fills.quantity(i)).build());
+		}
+		return executions;
+	}
+
+	// drops the matcher of a book, what still rested on it in priority order
+	public List<RestingOrder> drain(OrderBook orderBook) {
+		final long now = System.currentTimeMillis();
+		synchronized (drainOrder) {
+			// a book drained again is only dropped with its last drain
+			while (!drainOrder.isEmpty() && drained.getOrDefault(drainOrder.peek(),
+					Long.MIN_VALUE) <= now - DRAINED_MILLIS) {
+				drained.remove(drainOrder.poll());
+			}
+			drained.put(orderBook.getId(), now);
+			drainOrder.add(orderBook.getId());
+		}
+		final OrderMatcher matcher = matchers.remove(orderBook.getId());
+		final List<RestingOrder> restingOrders = new ArrayList<>();
+		if (matcher == null) {
+			return restingOrders;
+		}
+
+		for (Side side : Side.values()) {
+			matcher.forEachResting(side,
+					(id, price, remaining) -> restingOrders.add(RestingOrder.builder().id(id)
+							.side(side).price(Prices.toDecimal(price, matcher.getScale()))
+							.quantity(remaining).build()));
+		}
+		log.info("Drained matcher of {}", orderBook.getId());
+		return restingOrders;
+	}
+
+	// applies a recorded order event to the book again, its fills are in the history
+	// already, executions and market order remainders leave the book as it is
+	public void replay(OrderBook orderBook, OrderHistory orderHistory) {
+		if (orderHistory.getItemType() != ItemType.LIMIT_ORDER
+				&& orderHistory.getItemType() != ItemType.MARKET_ORDER
+				|| orderHistory.getSide() == null || orderHistory.getQuantity() == null) {
+			return;
+		}
+
+		final OrderMatcher matcher = matcher(orderBook);
+		switch (orderHistory.getStatus()) {
+		case ORDER_CREATED:
+			final MatchOrder order = toMatchOrder(orderHistory.getItemId(),
+					orderHistory.getSide(), orderHistory.getPrice(), orderHistory.getQuantity(),
+					matcher.getScale());
+			if (order != null && !matcher.isResting(order.getId())) {
+				matcher.submit(order);
+			}
+			break;
+		case ORDER_CANCELED:
+			matcher.cancel(orderHistory.getItemId(), orderHistory.getQuantity());
+			break;
+		case ORDER_AMENDED:
+			if (orderHistory.getPrice() != null
+					&& Prices.isTick(orderHistory.getPrice(), matcher.getScale())) {
+				final long ticks = Prices.toTicks(orderHistory.getPrice(), matcher.getScale());
+				if (matcher.isResting(orderHistory.getItemId())
+						&& ticks != matcher.priceOf(orderHistory.getItemId())) {
+					matcher.replace(orderHistory.getItemId(), ticks, EpochNanos.now());
+				}
+			}
+			break;
+		default:
+			break;
+		}
+	}
+
+	public void close(Long orderBookId) {
+		if (matchers.remove(orderBookId) != null) {
+			log.info("Dropped matcher of {}", orderBookId);
+		}
+	}
+
+	private boolean takes(OrderBook orderBook, Long orderId, BigDecimal price) {
+		final OrderMatcher matcher = matchers.get(orderBook.getId());
+		final int scale = matcher != null ? matcher.getScale()
+				: priceProperties.scaleOf(orderBook.getInstrument());
+		return (price == null || Prices.isTick(price, scale))
+				&& (matcher == null || !matcher.isResting(orderId));
+	}
+
+	private OrderMatcher matcher(OrderBook orderBook) {
+		return matchers.computeIfAbsent(orderBook.getId(),
+				id -> new OrderMatcher(priceProperties.scaleOf(orderBook.getInstrument())));
+	}
+
+	private static List<Execution> executions(OrderBook orderBook, Fills fills, int scale) {
+		final List<Execution> executions = new ArrayList<>(fills.size());
+		for (int i = 0; i < fills.size(); i++) {
+			executions.add(Execution.builder().orderBookId(orderBook.getId())
+					.buyOrderId(fills.buyOrderId(i)).sellOrderId(fills.sellOrderId(i))
+					.price(Prices.toDecimal(fills.price(i), scale))
+					.quantity(fills.quantity(i)).build());
+		}
+		return executions;
+	}
+
+	// only limit and market orders with a side take part in matching
+	MatchOrder toMatchOrder(OrderItem orderItem, int scale) {
+		if (orderItem.getSide() == null || orderItem.getQuantity() == null
+				|| orderItem.getLocation() == null) {
+			return null;
+		}
+
+		return toMatchOrder(idOf(orderItem.getLocation()), orderItem.getSide(),
+				orderItem.getPrice(), orderItem.getQuantity(), scale);
+	}
+
+	// a limit price off the tick grid of the instrument is recorded but never matched
+	private static MatchOrder toMatchOrder(Long id, Side side, BigDecimal price, int quantity,
+			int scale) {
+		if (price != null && !Prices.isTick(price, scale)) {
+			log.warn("Price {} of {} is not a tick of scale {}", price, id, scale);
+			return null;
+		}
+
+		return MatchOrder.builder().id(id).side(side).market(price == null)
+				.price(price == null ? 0 : Prices.toTicks(price, scale)).quantity(quantity)
+				.timestamp(EpochNanos.now()).build();
+	}
+
+	private static Long idOf(String location) {
+		return Long.valueOf(location.substring(location.lastIndexOf('/') + 1));
+	}
+}
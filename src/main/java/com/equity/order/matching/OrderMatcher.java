@@ -0,0 +1,540 @@
+package com.equity.order.matching;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.equity.order.item.Side;
+
+// price-time priority matching for a single order book
+// prices are ticks of the book scale, each side is a sorted array of price levels
+// with the best level last, each level a fifo list so earlier orders at the same
+// price fill first
+// levels and resting orders are pooled, so a steady book matches without allocating
+// resting orders are indexed by id, a cancel is a lookup and an unlink
+// not thread safe, a matcher is only ever touched by its instrument sequencer
+public class OrderMatcher {
+
+	public static final long NO_PRICE = Long.MIN_VALUE;
+
+	private final int scale;
+	private final Ladder bids = new Ladder(Side.BUY);
+	private final Ladder asks = new Ladder(Side.SELL);
+	private final Index index = new Index();
+	private final Fills fills = new Fills();
+
+	private Level freeLevels;
+	private Resting freeResting;
+
+	public OrderMatcher(int scale) {
+		this.scale = scale;
+	}
+
+	public int getScale() {
+		return scale;
+	}
+
+	// market orders never rest, whatever is left after sweeping the book is dropped
+	// the returned fills are only valid until the next submit
+	public Fills submit(MatchOrder order) {
+		fills.clear();
+		if (order.getSide() == null || order.getQuantity() <= 0) {
+			return fills;
+		}
+
+		match(order.getId(), order.getSide(), order.isMarket(), order.getPrice(),
+				order.getQuantity(), order.getTimestamp());
+		return fills;
+	}
+
+	// takes up to quantity off a resting order, keeping its time priority, and drops
+	// it once nothing is left, returns the quantity taken
+	public int cancel(long id, int quantity) {
+		final Resting resting = index.get(id);
+		if (resting == null || quantity <= 0) {
+			return 0;
+		}
+
+		final int canceled = Math.min(quantity, resting.remaining);
+		resting.remaining -= canceled;
+		resting.level.quantity -= canceled;
+		if (resting.remaining == 0) {
+			remove(resting);
+		}
+		return canceled;
+	}
+
+	// moves a resting order to a new price at the back of its queue, it may trade
+	// straight away like a new order
+	// the returned fills are only valid until the next submit
+	public Fills replace(long id, long price, long timestamp) {
+		fills.clear();
+		final Resting resting = index.get(id);
+		if (resting == null) {
+			return fills;
+		}
+
+		final Side side = resting.level.ladder.side;
+		final int remaining = resting.remaining;
+		resting.level.quantity -= remaining;
+		remove(resting);
+		match(id, side, false, price, remaining, timestamp);
+		return fills;
+	}
+
+	// hands a street fill to the resting orders of one side that take its price, in
+	// priority order, the other order id of each fill is 0
+	// the returned fills are only valid until the next submit
+	public Fills allocate(Side side, long price, int quantity) {
+		fills.clear();
+		final Ladder ladder = ladder(side);
+		int remaining = quantity;
+
+		while (remaining > 0) {
+			final Level level = ladder.best();
+			if (level == null || !crosses(side.opposite(), price, level.price)) {
+				break;
+			}
+
+			while (remaining > 0 && level.head != null) {
+				final Resting resting = level.head;
+				final int filled = Math.min(remaining, resting.remaining);
+
+				if (side == Side.BUY) {
+					fills.add(resting.id, 0, price, filled);
+				} else {
+					fills.add(0, resting.id, price, filled);
+				}
+
+				remaining -= filled;
+				resting.remaining -= filled;
+				level.quantity -= filled;
+				if (resting.remaining == 0) {
+					index.remove(resting.id, resting);
+					level.unlink(resting);
+					release(resting);
+				}
+			}
+
+			if (level.head == null) {
+				ladder.removeBest();
+				release(level);
+			}
+		}
+
+		return fills;
+	}
+
+	public boolean isResting(long id) {
+		return index.get(id) != null;
+	}
+
+	// null when the order is not resting
+	public Side sideOf(long id) {
+		final Resting resting = index.get(id);
+		return resting == null ? null : resting.level.ladder.side;
+	}
+
+	// NO_PRICE when the order is not resting
+	public long priceOf(long id) {
+		final Resting resting = index.get(id);
+		return resting == null ? NO_PRICE : resting.level.price;
+	}
+
+	public int remainingOf(long id) {
+		final Resting resting = index.get(id);
+		return resting == null ? 0 : resting.remaining;
+	}
+
+	// NO_PRICE when the side is empty
+	public long bestBid() {
+		final Level level = bids.best();
+		return level == null ? NO_PRICE : level.price;
+	}
+
+	public long bestAsk() {
+		final Level level = asks.best();
+		return level == null ? NO_PRICE : level.price;
+	}
+
+	// total resting quantity at a price, zero when there is no such level
+	public long quantityAt(Side side, long price) {
+		final Level level = ladder(side).get(price);
+		return level == null ? 0 : level.quantity;
+	}
+
+	// total resting quantity per price, best first
+	public void forEachLevel(Side side, LevelConsumer consumer) {
+		final Ladder ladder = ladder(side);
+		for (int i = ladder.size - 1; i >= 0; i--) {
+			consumer.accept(ladder.prices[i], ladder.levels[i].quantity);
+		}
+	}
+
+	// resting orders in priority order
+	public void forEachResting(Side side, RestingConsumer consumer) {
+		final Ladder ladder = ladder(side);
+		for (int i = ladder.size - 1; i >= 0; i--) {
+			final Level level = ladder.levels[i];
+			for (Resting resting = level.head; resting != null; resting = resting.next) {
+				consumer.accept(resting.id, level.price, resting.remaining);
+			}
+		}
+	}
+
+	// scale, then resting orders of both sides in priority order
+	public void writeTo(DataOutput out) throws IOException {
+		out.writeInt(scale);
+		for (Ladder ladder : Arrays.asList(bids, asks)) {
+			out.writeInt(ladder.size);
+			for (int i = ladder.size - 1; i >= 0; i--) {
+				final Level level = ladder.levels[i];
+				out.writeLong(level.price);
+				out.writeInt(level.count);
+				for (Resting resting = level.head; resting != null; resting = resting.next) {
+					out.writeLong(resting.id);
+					out.writeInt(resting.remaining);
+					out.writeLong(resting.timestamp);
+				}
+			}
+		}
+	}
+
+	public static OrderMatcher readFrom(DataInput in) throws IOException {
+		final OrderMatcher matcher = new OrderMatcher(in.readInt());
+		for (Side side : Arrays.asList(Side.BUY, Side.SELL)) {
+			final int levels = in.readInt();
+			for (int i = 0; i < levels; i++) {
+				final long price = in.readLong();
+				final int orders = in.readInt();
+				for (int j = 0; j < orders; j++) {
+					matcher.rest(side, price, in.readLong(), in.readInt(), in.readLong());
+				}
+			}
+		}
+		return matcher;
+	}
+
+	private void match(long id, Side side, boolean market, long price, int quantity,
+			long timestamp) {
+		final Ladder opposite = ladder(side.opposite());
+		int remaining = quantity;
+
+		while (remaining > 0) {
+			final Level level = opposite.best();
+			if (level == null || !market && !crosses(side, price, level.price)) {
+				break;
+			}
+
+			while (remaining > 0 && level.head != null) {
+				final Resting resting = level.head;
+				final int filled = Math.min(remaining, resting.remaining);
+
+				if (side == Side.BUY) {
+					fills.add(id, resting.id, level.price, filled);
+				} else {
+					fills.add(resting.id, id, level.price, filled);
+				}
+
+				remaining -= filled;
+				resting.remaining -= filled;
+				level.quantity -= filled;
+				if (resting.remaining == 0) {
+					index.remove(resting.id, resting);
+					level.unlink(resting);
+					release(resting);
+				}
+			}
+
+			if (level.head == null) {
+				opposite.removeBest();
+				release(level);
+			}
+		}
+
+		if (remaining > 0 && !market) {
+			rest(side, price, id, remaining, timestamp);
+		}
+	}
+
+	private void rest(Side side, long price, long id, int quantity, long timestamp) {
+		final Ladder ladder = ladder(side);
+		Level level = ladder.get(price);
+		if (level == null) {
+			level = acquire(ladder, price);
+			ladder.add(level);
+		}
+		final Resting resting = acquire(id, quantity, timestamp);
+		level.append(resting);
+		index.put(id, resting);
+	}
+
+	// the caller takes the remaining quantity off the level
+	private void remove(Resting resting) {
+		final Level level = resting.level;
+		index.remove(resting.id, resting);
+		level.unlink(resting);
+		release(resting);
+		if (level.head == null) {
+			level.ladder.remove(level);
+			release(level);
+		}
+	}
+
+	private Ladder ladder(Side side) {
+		return side == Side.BUY ? bids : asks;
+	}
+
+	private static boolean crosses(Side side, long limit, long level) {
+		return side == Side.BUY ? limit >= level : limit <= level;
+	}
+
+	private Level acquire(Ladder ladder, long price) {
+		Level level = freeLevels;
+		if (level == null) {
+			level = new Level();
+		} else {
+			freeLevels = level.nextFree;
+			level.nextFree = null;
+		}
+		level.ladder = ladder;
+		level.price = price;
+		return level;
+	}
+
+	private void release(Level level) {
+		level.quantity = 0;
+		level.count = 0;
+		level.head = null;
+		level.tail = null;
+		level.ladder = null;
+		level.nextFree = freeLevels;
+		freeLevels = level;
+	}
+
+	private Resting acquire(long id, int quantity, long timestamp) {
+		Resting resting = freeResting;
+		if (resting == null) {
+			resting = new Resting();
+		} else {
+			freeResting = resting.next;
+			resting.next = null;
+		}
+		resting.id = id;
+		resting.remaining = quantity;
+		resting.timestamp = timestamp;
+		return resting;
+	}
+
+	private void release(Resting resting) {
+		resting.prev = null;
+		resting.level = null;
+		resting.next = freeResting;
+		freeResting = resting;
+	}
+
+	@FunctionalInterface
+	public interface LevelConsumer {
+		void accept(long price, long quantity);
+	}
+
+	@FunctionalInterface
+	public interface RestingConsumer {
+		void accept(long id, long price, int remaining);
+	}
+
+	// one side of the book, sorted so the best level is last and taking it is free
+	// bids ascend and asks descend
+	private static class Ladder {
+		private final Side side;
+		private long[] prices = new long[16];
+		private Level[] levels = new Level[16];
+		private int size;
+
+		private Ladder(Side side) {
+			this.side = side;
+		}
+
+		private Level best() {
+			return size == 0 ? null : levels[size - 1];
+		}
+
+		private void removeBest() {
+			levels[--size] = null;
+		}
+
+		private void remove(Level level) {
+			final int index = indexOf(level.price);
+			System.arraycopy(prices, index + 1, prices, index, size - index - 1);
+			System.arraycopy(levels, index + 1, levels, index, size - index - 1);
+			levels[--size] = null;
+		}
+
+		private Level get(long price) {
+			final int index = indexOf(price);
+			return index >= 0 ? levels[index] : null;
+		}
+
+		private void add(Level level) {
+			final int index = -indexOf(level.price) - 1;
+			if (size == levels.length) {
+				prices = Arrays.copyOf(prices, size * 2);
+				levels = Arrays.copyOf(levels, size * 2);
+			}
+			System.arraycopy(prices, index, prices, index + 1, size - index);
+			System.arraycopy(levels, index, levels, index + 1, size - index);
+			prices[index] = level.price;
+			levels[index] = level;
+			size++;
+		}
+
+		// binary search, -(insertion point) - 1 when missing
+		private int indexOf(long price) {
+			int low = 0;
+			int high = size - 1;
+			while (low <= high) {
+				final int middle = (low + high) >>> 1;
+				final int compare = side == Side.BUY ? Long.compare(prices[middle], price)
+						: Long.compare(price, prices[middle]);
+				if (compare < 0) {
+					low = middle + 1;
+				} else if (compare > 0) {
+					high = middle - 1;
+				} else {
+					return middle;
+				}
+			}
+			return -(low + 1);
+		}
+	}
+
+	// resting orders by id, open addressing with linear probing so lookups and
+	// removals allocate nothing
+	private static class Index {
+		private long[] ids = new long[64];
+		private Resting[] restings = new Resting[64];
+		private int size;
+
+		private Resting get(long id) {
+			final int mask = ids.length - 1;
+			for (int i = slot(id, mask); restings[i] != null; i = (i + 1) & mask) {
+				if (ids[i] == id) {
+					return restings[i];
+				}
+			}
+			return null;
+		}
+
+		private void put(long id, Resting resting) {
+			if ((size + 1) * 2 > ids.length) {
+				resize(ids.length * 2);
+			}
+			final int mask = ids.length - 1;
+			int i = slot(id, mask);
+			while (restings[i] != null) {
+				if (ids[i] == id) {
+					restings[i] = resting;
+					return;
+				}
+				i = (i + 1) & mask;
+			}
+			ids[i] = id;
+			restings[i] = resting;
+			size++;
+		}
+
+		// only while the id still points at this resting order, an id submitted twice
+		// is indexed at its latest
+		private void remove(long id, Resting resting) {
+			final int mask = ids.length - 1;
+			int i = slot(id, mask);
+			while (restings[i] != null && ids[i] != id) {
+				i = (i + 1) & mask;
+			}
+			if (restings[i] != resting) {
+				return;
+			}
+
+			restings[i] = null;
+			size--;
+			// shift back whatever probed past the freed slot
+			for (int j = (i + 1) & mask; restings[j] != null; j = (j + 1) & mask) {
+				final int home = slot(ids[j], mask);
+				if (j > i ? home <= i || home > j : home <= i && home > j) {
+					ids[i] = ids[j];
+					restings[i] = restings[j];
+					restings[j] = null;
+					i = j;
+				}
+			}
+		}
+
+		private void resize(int capacity) {
+			final long[] oldIds = ids;
+			final Resting[] oldRestings = restings;
+			ids = new long[capacity];
+			restings = new Resting[capacity];
+			size = 0;
+			for (int i = 0; i < oldIds.length; i++) {
+				if (oldRestings[i] != null) {
+					put(oldIds[i], oldRestings[i]);
+				}
+			}
+		}
+
+		private static int slot(long id, int mask) {
+			final long hash = id * 0x9E3779B97F4A7C15L;
+			return (int) (hash ^ (hash >>> 32)) & mask;
+		}
+	}
+
+	private static class Level {
+		private Ladder ladder;
+		private long price;
+		private long quantity;
+		private int count;
+		private Resting head;
+		private Resting tail;
+		private Level nextFree;
+
+		private void append(Resting resting) {
+			resting.level = this;
+			resting.prev = tail;
+			if (tail == null) {
+				head = resting;
+			} else {
+				tail.next = resting;
+			}
+			tail = resting;
+			quantity += resting.remaining;
+			count++;
+		}
+
+		// the caller takes the remaining quantity off the level
+		private void unlink(Resting resting) {
+			if (resting.prev == null) {
+				head = resting.next;
+			} else {
+				resting.prev.next = resting.next;
+			}
+			if (resting.next == null) {
+				tail = resting.prev;
+			} else {
+				resting.next.prev = resting.prev;
+			}
+			resting.prev = null;
+			resting.next = null;
+			count--;
+		}
+	}
+
+	private static class Resting {
+		private long id;
+		private int remaining;
+		private long timestamp;
+		private Level level;
+		private Resting prev;
+		private Resting next;
+	}
+}
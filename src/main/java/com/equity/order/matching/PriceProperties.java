@@ -0,0 +1,25 @@
+package com.equity.order.matching;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+
+// decimals each instrument is quoted in, prices finer than that are not matched
+@Data
+@ConfigurationProperties("order.price")
+public class PriceProperties {
+
+	// same as the decimal(19,2) price columns, finer ticks would not survive a save
+	private int scale = 2;
+
+	// per instrument location, e.g. order.price.scales[/instruments/1]=4
+	private Map<String, Integer> scales = new HashMap<>();
+
+	public int scaleOf(String instrument) {
+		final Integer instrumentScale = instrument == null ? null : scales.get(instrument);
+		return instrumentScale != null ? instrumentScale : scale;
+	}
+}
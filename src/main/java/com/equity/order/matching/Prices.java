@@ -0,0 +1,35 @@
+package com.equity.order.matching;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+// fixed point prices, a price is a long count of ticks of 10^-scale
+// matching only ever sees ticks, decimals are for the rest api and the tables
+public final class Prices {
+
+	private Prices() {
+	}
+
+	// exact, a price off the tick grid or out of range throws
+	public static long toTicks(BigDecimal price, int scale) {
+		return price.movePointRight(scale).longValueExact();
+	}
+
+	// the nearest tick in the given direction, for prices that need not be on the grid
+	public static long toTicks(BigDecimal price, int scale, RoundingMode roundingMode) {
+		return price.movePointRight(scale).setScale(0, roundingMode).longValueExact();
+	}
+
+	public static BigDecimal toDecimal(long ticks, int scale) {
+		return BigDecimal.valueOf(ticks, scale);
+	}
+
+	public static boolean isTick(BigDecimal price, int scale) {
+		try {
+			toTicks(price, scale);
+			return true;
+		} catch (ArithmeticException e) {
+			return false;
+		}
+	}
+}
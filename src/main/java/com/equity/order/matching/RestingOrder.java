@@ -0,0 +1,22 @@
+package com.equity.order.matching;
+
+import java.math.BigDecimal;
+
+import com.equity.order.item.Side;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// what is left of a limit order on the book
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RestingOrder {
+	private Long id;
+	private Side side;
+	private BigDecimal price;
+	private int quantity;
+}
@@ -0,0 +1,144 @@
+package com.equity.order.replication;
+
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.equity.order.OrderIdGenerator;
+import com.equity.order.book.OrderBook;
+import com.equity.order.execution.Execution;
+import com.equity.order.history.OrderHistory;
+import com.equity.order.shard.ShardIds;
+
+import lombok.extern.log4j.Log4j2;
+
+// writes what a replica applied into its own tables behind the books, on one thread
+// in stream order, with the ids the primary gave them
+// rows are merged by id so a bootstrap sent again changes nothing
+@Log4j2
+class ReplicaStore {
+
+	private static final String MERGE_ORDER_BOOK = "merge into order_book "
+			+ "(id, instrument, status, created_date, updated_date, version) key (id) "
+			+ "values (?, ?, ?, ?, ?, ?)";
+	private static final String MERGE_EXECUTION = "merge into execution "
+			+ "(id, quantity, price, created_date, order_book_id, buy_order_id, sell_order_id) "
+			+ "key (id) values (?, ?, ?, ?, ?, ?, ?)";
+	private static final String MERGE_ORDER_HISTORY = "merge into order_history "
+			+ "(id, order_book_id, order_book_version, item_type, item_id, side, quantity, "
+			+ "price, item_created_date, status, created_date, order_book_status, account) "
+			+ "key (id) values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+	private final JdbcTemplate jdbcTemplate;
+	private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+		final Thread thread = new Thread(runnable, "replica-store");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	// highest sequence value of any id written or referenced, only read once the
+	// executor is drained
+	private long maxId;
+
+	ReplicaStore(JdbcTemplate jdbcTemplate) {
+		this.jdbcTemplate = jdbcTemplate;
+	}
+
+	void book(OrderBook orderBook) {
+		executor.execute(() -> {
+			jdbcTemplate.update(MERGE_ORDER_BOOK, orderBook.getId(), orderBook.getInstrument(),
+					orderBook.getStatus().name(), timestamp(orderBook.getCreatedDate()),
+					timestamp(orderBook.getUpdatedDate()), orderBook.getVersion());
+			seen(orderBook.getId());
+		});
+	}
+
+	void events(List<Execution> executions, List<OrderHistory> orderHistories) {
+		executor.execute(() -> {
+			if (!executions.isEmpty()) {
+				jdbcTemplate.batchUpdate(MERGE_EXECUTION, executions, executions.size(),
+						(statement, execution) -> {
+							statement.setLong(1, execution.getId());
+							statement.setObject(2, execution.getQuantity());
+							statement.setBigDecimal(3, execution.getPrice());
+							statement.setTimestamp(4, timestamp(execution.getCreatedDate()));
+							statement.setObject(5, execution.getOrderBookId());
+							statement.setObject(6, execution.getBuyOrderId());
+							statement.setObject(7, execution.getSellOrderId());
+						});
+				executions.forEach(execution -> {
+					seen(execution.getId());
+					seen(execution.getBuyOrderId());
+					seen(execution.getSellOrderId());
+				});
+			}
+			if (!orderHistories.isEmpty()) {
+				jdbcTemplate.batchUpdate(MERGE_ORDER_HISTORY, orderHistories,
+						orderHistories.size(), (statement, orderHistory) -> {
+							statement.setLong(1, orderHistory.getId());
+							statement.setObject(2, orderHistory.getOrderBookId());
+							statement.setObject(3, orderHistory.getOrderBookVersion());
+							statement.setString(4, name(orderHistory.getItemType()));
+							statement.setObject(5, orderHistory.getItemId());
+							statement.setString(6, name(orderHistory.getSide()));
+							statement.setObject(7, orderHistory.getQuantity());
+							statement.setBigDecimal(8, orderHistory.getPrice());
+							statement.setTimestamp(9,
+									timestamp(orderHistory.getItemCreatedDate()));
+							statement.setString(10, name(orderHistory.getStatus()));
+							statement.setTimestamp(11, timestamp(orderHistory.getCreatedDate()));
+							statement.setString(12, name(orderHistory.getOrderBookStatus()));
+							statement.setString(13, orderHistory.getAccount());
+						});
+				orderHistories.forEach(orderHistory -> {
+					seen(orderHistory.getId());
+					seen(orderHistory.getItemId());
+				});
+			}
+		});
+	}
+
+	// waits for every row handed in so far, then moves the id sequence past them so
+	// ids handed out from here on are new
+	// the replica took no writes, its generator has not fetched a block yet, but
+	// the primary may have fetched a block for every entity after the highest id
+	// seen here, for orders never attached or intakes never replicated, so the
+	// sequence restarts at the block after the highest one seen plus one block for
+	// each entity
+	void promote() throws InterruptedException {
+		executor.shutdown();
+		if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+			throw new IllegalStateException("Replica rows are still being written");
+		}
+		// blocks start at 1, 101, 201 and so on
+		final long block = Math.max(maxId - 1, 0) / OrderIdGenerator.BLOCK_SIZE;
+		final long next = (block + 1 + OrderIdGenerator.ENTITIES)
+				* OrderIdGenerator.BLOCK_SIZE + 1;
+		jdbcTemplate.execute(
+				"alter sequence " + OrderIdGenerator.SEQUENCE + " restart with " + next);
+		log.info("Replica tables written up to {}, ids continue from {}", maxId, next);
+	}
+
+	private void seen(Long id) {
+		if (id != null) {
+			maxId = Math.max(maxId, id & ~(-1L << ShardIds.NODE_SHIFT));
+		}
+	}
+
+	void stop() {
+		executor.shutdown();
+	}
+
+	private static String name(Enum<?> value) {
+		return value != null ? value.name() : null;
+	}
+
+	private static Timestamp timestamp(Date date) {
+		return date != null ? new Timestamp(date.getTime()) : null;
+	}
+}
@@ -0,0 +1,44 @@
+package com.equity.order.replication;
+
+import java.io.IOException;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+// a replica only serves reads, anything it wrote on its own would be overwritten by
+// the primary or collide with it, promotion is the one write it takes
+public class ReplicaWriteFilter extends OncePerRequestFilter {
+
+	public static final String PROMOTE = "/replication/promote";
+
+	// looked up on first use, the filter is built before the rest of the app
+	private final ObjectProvider<ReplicationService> replicationService;
+
+	public ReplicaWriteFilter(ObjectProvider<ReplicationService> replicationService) {
+		this.replicationService = replicationService;
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+			FilterChain filterChain) throws ServletException, IOException {
+		final HttpMethod method = HttpMethod.resolve(request.getMethod());
+		if (method == HttpMethod.GET || method == HttpMethod.HEAD
+				|| method == HttpMethod.OPTIONS
+				|| PROMOTE.equals(request.getRequestURI()
+						.substring(request.getContextPath().length()))
+				|| !replicationService.getObject().isReplica()) {
+			filterChain.doFilter(request, response);
+			return;
+		}
+
+		response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value(),
+				"Replica takes no writes until promoted");
+	}
+}
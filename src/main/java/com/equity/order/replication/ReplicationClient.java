@@ -0,0 +1,137 @@
+package com.equity.order.replication;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+import lombok.extern.log4j.Log4j2;
+
+// replica side, follows one primary and hands every frame to the handler in order,
+// acknowledging it once handled
+// a lost connection is retried, the primary bootstraps the replica again
+@Log4j2
+class ReplicationClient {
+
+	interface Handler {
+		void handle(byte type, DataInputStream payload) throws IOException;
+	}
+
+	private final String host;
+	private final int port;
+	private final long reconnectDelay;
+	private final Handler handler;
+
+	private Thread thread;
+	private volatile Socket socket;
+	private volatile boolean running = true;
+	private volatile boolean connected;
+	private volatile long sequence = -1;
+
+	ReplicationClient(String primary, long reconnectDelay, Handler handler) {
+		final int colon = primary.lastIndexOf(':');
+		this.host = primary.substring(0, colon);
+		this.port = Integer.parseInt(primary.substring(colon + 1));
+		this.reconnectDelay = reconnectDelay;
+		this.handler = handler;
+	}
+
+	void start() {
+		thread = new Thread(this::follow, "replication-client");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	boolean isConnected() {
+		return connected;
+	}
+
+	// last frame handled
+	long getSequence() {
+		return sequence;
+	}
+
+	private void follow() {
+		while (running) {
+			try (Socket connection = new Socket()) {
+				connection.connect(new InetSocketAddress(host, port));
+				connection.setTcpNoDelay(true);
+				socket = connection;
+				connected = true;
+				log.info("Following primary {}:{}", host, port);
+				read(connection);
+			} catch (IOException | RuntimeException e) {
+				// a frame that could not be applied is fixed by the next bootstrap
+				if (running) {
+					log.warn("Lost primary {}:{}, retrying in {} ms", host, port,
+							reconnectDelay, e);
+				}
+			} finally {
+				connected = false;
+			}
+
+			try {
+				synchronized (this) {
+					if (running) {
+						wait(reconnectDelay);
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	// acknowledgements are flushed once nothing more is buffered to read
+	private void read(Socket connection) throws IOException {
+		final DataInputStream in = new DataInputStream(
+				new BufferedInputStream(connection.getInputStream(), 1 << 16));
+		final DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(connection.getOutputStream()));
+		while (running) {
+			final int length = in.readInt();
+			if (length < ReplicationProtocol.HEADER_LENGTH
+					|| length > ReplicationProtocol.MAX_LENGTH) {
+				throw new IOException("Bad frame length " + length);
+			}
+			final long frame = in.readLong();
+			final byte type = in.readByte();
+			final byte[] payload = new byte[length - ReplicationProtocol.HEADER_LENGTH];
+			in.readFully(payload);
+
+			handler.handle(type, new DataInputStream(new ByteArrayInputStream(payload)));
+			sequence = frame;
+			out.writeLong(frame);
+			if (in.available() == 0) {
+				out.flush();
+			}
+		}
+	}
+
+	// returns once the last frame read is handled, nothing is handled after it
+	void stop() {
+		synchronized (this) {
+			running = false;
+			notifyAll();
+		}
+		try {
+			if (socket != null) {
+				socket.close();
+			}
+		} catch (IOException e) {
+			log.warn("Could not close replication socket", e);
+		}
+		if (thread != null) {
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}
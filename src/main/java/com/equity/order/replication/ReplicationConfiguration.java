@@ -0,0 +1,18 @@
+package com.equity.order.replication;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(ReplicationProperties.class)
+public class ReplicationConfiguration {
+
+	@Bean
+	public FilterRegistrationBean<ReplicaWriteFilter> replicaWriteFilter(
+			ObjectProvider<ReplicationService> replicationService) {
+		return new FilterRegistrationBean<>(new ReplicaWriteFilter(replicationService));
+	}
+}
@@ -0,0 +1,42 @@
+package com.equity.order.replication;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+
+// a primary streams its order events to replicas that keep warm books, a replica
+// takes no writes until it is promoted
+@Data
+@ConfigurationProperties("order.replication")
+public class ReplicationProperties {
+
+	private Role role = Role.NONE;
+
+	// where a primary, or a replica once promoted, takes replicas
+	private int port = 9191;
+
+	// host:port of the primary a replica follows
+	private String primary = "localhost:9191";
+
+	private Ack ack = Ack.ASYNC;
+	// an append waits this long for a replica, then goes on without it
+	private Duration ackTimeout = Duration.ofSeconds(1);
+
+	private Duration reconnectDelay = Duration.ofSeconds(1);
+
+	// frames waiting to be sent to one replica, a replica further behind is dropped
+	// and bootstrapped again once it reconnects
+	private int queueSize = 65536;
+
+	public enum Role {
+		NONE, PRIMARY, REPLICA
+	}
+
+	// async returns once the primary has stored the events, replica also waits
+	// until one replica has applied them, when one is connected
+	public enum Ack {
+		ASYNC, REPLICA
+	}
+}
@@ -0,0 +1,76 @@
+package com.equity.order.replication;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Date;
+
+import com.equity.order.book.OrderBook;
+
+// frames from primary to replica, big endian
+// [int length of the rest][long sequence][byte type][payload]
+// the replica answers each frame it applied with its [long sequence]
+public final class ReplicationProtocol {
+
+	public static final int HEADER_LENGTH = 8 + 1;
+	public static final int MAX_LENGTH = 64 << 20;
+
+	// an order book was opened or changed, payload is the book
+	public static final byte BOOK = 1;
+	// an append, payload is a journal record of its executions and history
+	public static final byte EVENTS = 2;
+	// bootstrap of a replica, payload is the book, whether state follows, and the
+	// projection and matcher of the book as in a snapshot
+	public static final byte STATE = 3;
+	// bootstrap is over, everything after it is live
+	public static final byte CAUGHT_UP = 4;
+
+	private ReplicationProtocol() {
+	}
+
+	public static byte[] frame(long sequence, byte type, byte[] payload) {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(
+				4 + HEADER_LENGTH + payload.length);
+		try {
+			final DataOutputStream out = new DataOutputStream(bytes);
+			out.writeInt(HEADER_LENGTH + payload.length);
+			out.writeLong(sequence);
+			out.writeByte(type);
+			out.write(payload);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	public static void writeBook(DataOutput out, OrderBook orderBook) throws IOException {
+		out.writeLong(orderBook.getId());
+		out.writeUTF(orderBook.getInstrument());
+		out.writeByte(orderBook.getStatus().ordinal());
+		out.writeLong(orderBook.getVersion() != null ? orderBook.getVersion() : -1);
+		out.writeLong(time(orderBook.getCreatedDate()));
+		out.writeLong(time(orderBook.getUpdatedDate()));
+	}
+
+	public static OrderBook readBook(DataInput in) throws IOException {
+		final OrderBook orderBook = OrderBook.builder().id(in.readLong())
+				.instrument(in.readUTF()).status(OrderBook.Status.values()[in.readByte()])
+				.build();
+		final long version = in.readLong();
+		orderBook.setVersion(version >= 0 ? version : null);
+		orderBook.setCreatedDate(date(in.readLong()));
+		orderBook.setUpdatedDate(date(in.readLong()));
+		return orderBook;
+	}
+
+	private static long time(Date date) {
+		return date != null ? date.getTime() : -1;
+	}
+
+	private static Date date(long time) {
+		return time >= 0 ? new Date(time) : null;
+	}
+}
@@ -0,0 +1,248 @@
+package com.equity.order.replication;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import lombok.extern.log4j.Log4j2;
+
+// primary side, frames are numbered once and queued to every replica in that order
+// a replica that connects is registered before its bootstrap is copied, so whatever
+// the copy misses is in its queue, and sent after the copy
+@Log4j2
+class ReplicationServer {
+
+	private final int port;
+	private final int queueSize;
+	// state frames of every book, copied on their writers
+	private final Supplier<List<byte[]>> bootstrap;
+
+	private final List<Replica> replicas = new CopyOnWriteArrayList<>();
+	private final Object acks = new Object();
+	private long sequence;
+
+	private ServerSocket serverSocket;
+	private Thread acceptor;
+	private volatile boolean running = true;
+
+	ReplicationServer(int port, int queueSize, Supplier<List<byte[]>> bootstrap) {
+		this.port = port;
+		this.queueSize = queueSize;
+		this.bootstrap = bootstrap;
+	}
+
+	void start() throws IOException {
+		serverSocket = new ServerSocket();
+		serverSocket.setReuseAddress(true);
+		serverSocket.bind(new InetSocketAddress(port));
+		acceptor = new Thread(this::accept, "replication-acceptor");
+		acceptor.setDaemon(true);
+		acceptor.start();
+		log.info("Replication listening on {}", getPort());
+	}
+
+	int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	// the sequence of the frame, callers that append serially publish in order
+	synchronized long publish(byte type, byte[] payload) {
+		final long next = ++sequence;
+		if (replicas.isEmpty()) {
+			return next;
+		}
+		final byte[] frame = ReplicationProtocol.frame(next, type, payload);
+		for (Replica replica : replicas) {
+			if (!replica.queue.offer(frame)) {
+				log.warn("Replica {} is {} frames behind, dropping it", replica,
+						replica.queue.size());
+				replica.close();
+			}
+		}
+		return next;
+	}
+
+	synchronized long getSequence() {
+		return sequence;
+	}
+
+	int getReplicas() {
+		return replicas.size();
+	}
+
+	// true once any replica applied the frame, right away when none is live yet
+	// a replica still being bootstrapped may need the writer this is waiting on
+	boolean await(long frame, long timeoutMillis) throws InterruptedException {
+		final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		synchronized (acks) {
+			while (live() && !acked(frame)) {
+				final long remaining = deadline - System.nanoTime();
+				if (remaining <= 0) {
+					return false;
+				}
+				TimeUnit.NANOSECONDS.timedWait(acks, remaining);
+			}
+			return true;
+		}
+	}
+
+	private boolean live() {
+		for (Replica replica : replicas) {
+			if (replica.live) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean acked(long frame) {
+		for (Replica replica : replicas) {
+			if (replica.acked >= frame) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void accept() {
+		while (running) {
+			try {
+				final Socket socket = serverSocket.accept();
+				socket.setTcpNoDelay(true);
+				final Replica replica = new Replica(socket, queueSize);
+				final long from;
+				synchronized (this) {
+					replicas.add(replica);
+					from = sequence;
+				}
+				log.info("Replica {} connected at {}", replica, from);
+				replica.start(from, bootstrap.get());
+			} catch (IOException | RuntimeException e) {
+				if (running) {
+					log.error("Could not take a replica", e);
+				}
+			}
+		}
+	}
+
+	void stop() {
+		running = false;
+		try {
+			if (serverSocket != null) {
+				serverSocket.close();
+			}
+		} catch (IOException e) {
+			log.warn("Could not close replication socket", e);
+		}
+		replicas.forEach(Replica::close);
+	}
+
+	private class Replica {
+		private final Socket socket;
+		private final BlockingQueue<byte[]> queue;
+		private volatile long acked = -1;
+		private volatile boolean live;
+
+		private Replica(Socket socket, int queueSize) {
+			this.socket = socket;
+			this.queue = new ArrayBlockingQueue<>(queueSize);
+		}
+
+		// the bootstrap goes out under the last sequence it covers
+		private void start(long from, List<byte[]> states) {
+			final Thread sender = new Thread(() -> send(from, states),
+					"replication-sender-" + socket.getPort());
+			sender.setDaemon(true);
+			sender.start();
+			final Thread receiver = new Thread(this::receive,
+					"replication-acks-" + socket.getPort());
+			receiver.setDaemon(true);
+			receiver.start();
+		}
+
+		// frames are flushed once the queue runs dry, so a burst goes out together
+		private void send(long from, List<byte[]> states) {
+			try {
+				final DataOutputStream out = new DataOutputStream(
+						new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+				for (byte[] state : states) {
+					out.write(ReplicationProtocol.frame(from, ReplicationProtocol.STATE, state));
+				}
+				out.write(ReplicationProtocol.frame(from, ReplicationProtocol.CAUGHT_UP,
+						new byte[0]));
+				out.flush();
+				live = true;
+
+				while (running && !socket.isClosed()) {
+					byte[] frame = queue.poll();
+					if (frame == null) {
+						out.flush();
+						frame = queue.poll(100, TimeUnit.MILLISECONDS);
+						if (frame == null) {
+							continue;
+						}
+					}
+					out.write(frame);
+				}
+			} catch (IOException e) {
+				log.info("Replica {} is gone", this, e);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				close();
+			}
+		}
+
+		private void receive() {
+			try {
+				final DataInputStream in = new DataInputStream(
+						new BufferedInputStream(socket.getInputStream()));
+				while (true) {
+					final long frame = in.readLong();
+					synchronized (acks) {
+						acked = frame;
+						acks.notifyAll();
+					}
+				}
+			} catch (SocketException e) {
+				// closed by the sender
+			} catch (IOException e) {
+				log.info("Replica {} stopped acknowledging", this, e);
+			} finally {
+				close();
+			}
+		}
+
+		private void close() {
+			if (replicas.remove(this)) {
+				log.info("Replica {} disconnected", this);
+			}
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// closing anyway
+			}
+			// waiters may have nobody left to wait for
+			synchronized (acks) {
+				acks.notifyAll();
+			}
+		}
+
+		@Override
+		public String toString() {
+			return String.valueOf(socket.getRemoteSocketAddress());
+		}
+	}
+}
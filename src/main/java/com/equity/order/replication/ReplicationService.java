@@ -0,0 +1,340 @@
+package com.equity.order.replication;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.equity.order.bar.BarService;
+import com.equity.order.book.OrderBook;
+import com.equity.order.book.OrderBookRepository;
+import com.equity.order.execution.Execution;
+import com.equity.order.history.OrderBookProjection;
+import com.equity.order.history.OrderBookState;
+import com.equity.order.history.OrderHistory;
+import com.equity.order.journal.JournalCodec;
+import com.equity.order.matching.MatchingService;
+import com.equity.order.replication.ReplicationProperties.Ack;
+import com.equity.order.replication.ReplicationProperties.Role;
+import com.equity.order.risk.RiskService;
+import com.equity.order.sequencer.SequencerService;
+import com.equity.order.snapshot.SnapshotService;
+
+import lombok.extern.log4j.Log4j2;
+
+// hot failover, the primary ships every append and book change to its replicas
+// right after it is stored, a replica applies them on the writers of their
+// instruments to the same projection and matchers the primary keeps, and writes
+// them to its own tables behind that
+// entries a replica already has, from its bootstrap or a frame sent twice, are
+// skipped by the last history id applied to the book
+// promoting a replica stops following, and it takes writes from then on with
+// warm books and no replay
+@RestController
+@Log4j2
+public class ReplicationService {
+
+	private final ReplicationProperties properties;
+	private final OrderBookRepository orderBookRepository;
+	private final OrderBookProjection orderBookProjection;
+	private final MatchingService matchingService;
+	private final SequencerService sequencerService;
+	private final SnapshotService snapshotService;
+	private final BarService barService;
+	private final RiskService riskService;
+	private final JdbcTemplate jdbcTemplate;
+
+	private volatile Role role;
+
+	// primary, books the replicas were told about
+	private final Set<Long> announced = ConcurrentHashMap.newKeySet();
+	private volatile ReplicationServer server;
+
+	// replica, books as the primary last sent them
+	private final Map<Long, OrderBook> orderBooks = new ConcurrentHashMap<>();
+	private ReplicationClient client;
+	private ReplicaStore replicaStore;
+	private volatile boolean caughtUp;
+
+	public ReplicationService(ReplicationProperties properties,
+			OrderBookRepository orderBookRepository, OrderBookProjection orderBookProjection,
+			MatchingService matchingService, SequencerService sequencerService,
+			SnapshotService snapshotService, BarService barService, RiskService riskService,
+			JdbcTemplate jdbcTemplate) {
+		this.properties = properties;
+		this.orderBookRepository = orderBookRepository;
+		this.orderBookProjection = orderBookProjection;
+		this.matchingService = matchingService;
+		this.sequencerService = sequencerService;
+		this.snapshotService = snapshotService;
+		this.barService = barService;
+		this.riskService = riskService;
+		this.jdbcTemplate = jdbcTemplate;
+		this.role = properties.getRole();
+	}
+
+	// after recovery, which runs in an earlier lifecycle phase
+	@EventListener(ApplicationReadyEvent.class)
+	public synchronized void start() throws IOException {
+		if (role == Role.PRIMARY) {
+			serve();
+		} else if (role == Role.REPLICA) {
+			replicaStore = new ReplicaStore(jdbcTemplate);
+			client = new ReplicationClient(properties.getPrimary(),
+					properties.getReconnectDelay().toMillis(), this::apply);
+			client.start();
+		}
+	}
+
+	public boolean isReplica() {
+		return role == Role.REPLICA;
+	}
+
+	// a book was opened or changed, on a primary
+	public void books(Iterable<OrderBook> changed) {
+		if (server == null) {
+			return;
+		}
+		for (OrderBook orderBook : changed) {
+			announced.add(orderBook.getId());
+			server.publish(ReplicationProtocol.BOOK, book(orderBook));
+		}
+	}
+
+	// called right after an append is stored and applied to the projection, in the
+	// order the appends of a book were made
+	public void replicate(List<Execution> executions, List<OrderHistory> orderHistories) {
+		final ReplicationServer primary = server;
+		if (primary == null) {
+			return;
+		}
+
+		// books saved without going through the rest api are looked up once
+		final Set<Long> unknown = orderHistories.stream().map(OrderHistory::getOrderBookId)
+				.filter(id -> !announced.contains(id)).collect(Collectors.toSet());
+		if (!unknown.isEmpty()) {
+			books(orderBookRepository.findAllById(unknown));
+		}
+
+		final ByteBuffer record = JournalCodec.encode(executions, orderHistories);
+		final byte[] payload = new byte[record.remaining()];
+		record.get(payload);
+		final long frame = primary.publish(ReplicationProtocol.EVENTS, payload);
+
+		if (properties.getAck() == Ack.REPLICA) {
+			try {
+				if (!primary.await(frame, properties.getAckTimeout().toMillis())) {
+					log.warn("No replica acknowledged {} in {}, going on without", frame,
+							properties.getAckTimeout());
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	@GetMapping("/replication")
+	public ReplicationStatus getStatus() {
+		final ReplicationStatus.ReplicationStatusBuilder status = ReplicationStatus.builder()
+				.role(role);
+		if (server != null) {
+			status.sequence(server.getSequence()).replicas(server.getReplicas());
+		}
+		if (role == Role.REPLICA && client != null) {
+			status.sequence(client.getSequence()).connected(client.isConnected())
+					.caughtUp(caughtUp);
+		}
+		return status.build();
+	}
+
+	// the primary must be gone or fenced off before this is called
+	@PostMapping("/replication/promote")
+	public synchronized ResponseEntity<ReplicationStatus> promote()
+			throws IOException, InterruptedException {
+		if (role != Role.REPLICA) {
+			return ResponseEntity.status(HttpStatus.CONFLICT).body(getStatus());
+		}
+
+		final long started = System.nanoTime();
+		client.stop();
+		replicaStore.promote();
+		role = Role.PRIMARY;
+		announced.addAll(orderBooks.keySet());
+		serve();
+
+		log.info("Promoted to primary at {} in {} ms", client.getSequence(),
+				(System.nanoTime() - started) / 1_000_000);
+		return ResponseEntity.ok(getStatus());
+	}
+
+	private void serve() throws IOException {
+		final ReplicationServer replicationServer = new ReplicationServer(properties.getPort(),
+				properties.getQueueSize(), this::bootstrap);
+		replicationServer.start();
+		server = replicationServer;
+	}
+
+	// every book, with its state copied on the writer of its instrument
+	private List<byte[]> bootstrap() {
+		final Map<String, List<OrderBook>> byInstrument = new LinkedHashMap<>();
+		orderBookRepository.findAll().forEach(orderBook -> byInstrument
+				.computeIfAbsent(orderBook.getInstrument(), key -> new ArrayList<>())
+				.add(orderBook));
+
+		final List<byte[]> states = new ArrayList<>();
+		byInstrument.forEach((instrument, books) -> states
+				.addAll(sequencerService.call(instrument, () -> states(books))));
+		return states;
+	}
+
+	// runs on the writer of the instrument
+	private List<byte[]> states(List<OrderBook> books) throws IOException {
+		final List<byte[]> states = new ArrayList<>(books.size());
+		for (OrderBook orderBook : books) {
+			announced.add(orderBook.getId());
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+			final DataOutputStream out = new DataOutputStream(bytes);
+			ReplicationProtocol.writeBook(out, orderBook);
+			final boolean recorded = orderBookProjection.get(orderBook.getId()) != null;
+			out.writeBoolean(recorded);
+			if (recorded) {
+				snapshotService.writeBook(orderBook.getInstrument(), orderBook.getId(),
+						out);
+			}
+			states.add(bytes.toByteArray());
+		}
+		return states;
+	}
+
+	private static byte[] book(OrderBook orderBook) {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+		try {
+			ReplicationProtocol.writeBook(new DataOutputStream(bytes), orderBook);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	// replica, on the follower thread
+	private void apply(byte type, DataInputStream in) throws IOException {
+		switch (type) {
+		case ReplicationProtocol.BOOK:
+			applyBook(ReplicationProtocol.readBook(in));
+			break;
+		case ReplicationProtocol.STATE:
+			final OrderBook orderBook = ReplicationProtocol.readBook(in);
+			caughtUp = false;
+			applyBook(orderBook);
+			if (in.readBoolean()) {
+				sequencerService.call(orderBook.getInstrument(), () -> {
+					snapshotService.readBook(orderBook.getInstrument(), orderBook.getId(),
+							in, orderBook.getStatus() == OrderBook.Status.OPEN);
+					return null;
+				});
+			}
+			break;
+		case ReplicationProtocol.CAUGHT_UP:
+			caughtUp = true;
+			log.info("Replica caught up with the primary");
+			break;
+		case ReplicationProtocol.EVENTS:
+			final byte[] payload = new byte[in.available()];
+			in.readFully(payload);
+			applyEvents(JournalCodec.decode(ByteBuffer.wrap(payload)));
+			break;
+		default:
+			throw new IOException("Unknown frame type " + type);
+		}
+	}
+
+	private void applyBook(OrderBook orderBook) {
+		orderBooks.put(orderBook.getId(), orderBook);
+		if (orderBook.getStatus() == OrderBook.Status.CLOSED) {
+			sequencerService.call(orderBook.getInstrument(), () -> {
+				matchingService.close(orderBook.getId());
+				riskService.closed(orderBook);
+				return null;
+			});
+		}
+		replicaStore.book(orderBook);
+	}
+
+	private void applyEvents(JournalCodec.Record record) {
+		final Map<String, List<OrderHistory>> byInstrument = new LinkedHashMap<>();
+		for (OrderHistory orderHistory : record.getOrderHistories()) {
+			final OrderBook orderBook = orderBooks.get(orderHistory.getOrderBookId());
+			if (orderBook == null) {
+				log.warn("History {} is for unknown book {}", orderHistory.getId(),
+						orderHistory.getOrderBookId());
+				continue;
+			}
+			byInstrument.computeIfAbsent(orderBook.getInstrument(), key -> new ArrayList<>())
+					.add(orderHistory);
+		}
+
+		final Map<Long, Execution> executions = record.getExecutions().stream()
+				.collect(Collectors.toMap(Execution::getId, execution -> execution));
+		final List<OrderHistory> applied = new ArrayList<>();
+		byInstrument.forEach((instrument, orderHistories) -> applied.addAll(sequencerService
+				.call(instrument, () -> applyHistory(orderHistories, executions))));
+		replicaStore.events(record.getExecutions(), applied);
+	}
+
+	// runs on the writer of the instrument, the same way recovery replays history
+	private List<OrderHistory> applyHistory(List<OrderHistory> orderHistories,
+			Map<Long, Execution> executions) {
+		final List<OrderHistory> applied = new ArrayList<>(orderHistories.size());
+		for (OrderHistory orderHistory : orderHistories) {
+			final OrderBookState state = orderBookProjection.get(orderHistory.getOrderBookId());
+			if (state != null && state.getHistoryId() != null
+					&& orderHistory.getId() <= state.getHistoryId()) {
+				continue;
+			}
+
+			final OrderBook orderBook = orderBooks.get(orderHistory.getOrderBookId());
+			orderBookProjection.apply(orderHistory);
+			barService.apply(orderBook, orderHistory);
+			riskService.replayed(orderBook, orderHistory,
+					matchingService.accepted(orderBook, orderHistory), executions);
+			if (orderBook.getStatus() == OrderBook.Status.OPEN) {
+				matchingService.replay(orderBook, orderHistory);
+			}
+			applied.add(orderHistory);
+		}
+		return applied;
+	}
+
+	@PreDestroy
+	public void stop() {
+		if (server != null) {
+			server.stop();
+		}
+		if (client != null && role == Role.REPLICA) {
+			client.stop();
+		}
+		if (replicaStore != null) {
+			replicaStore.stop();
+		}
+	}
+}
@@ -0,0 +1,19 @@
+package com.equity.order.replication;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// sequence is the last frame published on a primary, the last applied on a replica
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReplicationStatus {
+	private ReplicationProperties.Role role;
+	private long sequence;
+	private int replicas;
+	private boolean connected;
+	private boolean caughtUp;
+}
@@ -0,0 +1,20 @@
+package com.equity.order.risk;
+
+import java.math.BigDecimal;
+
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+// limit orders only, a market order has no price to check
+@Component
+@Order(30)
+public class MaxNotionalCheck implements RiskCheck {
+
+	@Override
+	public RiskReason check(RiskOrder order) {
+		final BigDecimal maxNotional = order.getLimits().getMaxNotional();
+		return maxNotional != null && order.getPrice() != null
+				&& order.getPrice().multiply(BigDecimal.valueOf(order.getQuantity()))
+						.compareTo(maxNotional) > 0 ? RiskReason.MAX_NOTIONAL : null;
+	}
+}
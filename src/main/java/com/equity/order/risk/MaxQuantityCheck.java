@@ -0,0 +1,17 @@
+package com.equity.order.risk;
+
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+@Component
+@Order(20)
+public class MaxQuantityCheck implements RiskCheck {
+
+	@Override
+	public RiskReason check(RiskOrder order) {
+		final Integer maxQuantity = order.getLimits().getMaxQuantity();
+		return maxQuantity != null && order.getQuantity() > maxQuantity
+				? RiskReason.MAX_QUANTITY
+				: null;
+	}
+}
@@ -0,0 +1,44 @@
+package com.equity.order.risk;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+// orders per account in each second, every order counts whether it passes or not
+@Component
+@Order(10)
+public class MessageRateCheck implements RiskCheck {
+
+	private final Map<String, Window> windows = new ConcurrentHashMap<>();
+
+	@Override
+	public RiskReason check(RiskOrder order) {
+		final Integer messageRate = order.getLimits().getMessageRate();
+		if (messageRate == null) {
+			return null;
+		}
+
+		Window window = windows.get(order.getAccount());
+		if (window == null) {
+			window = windows.computeIfAbsent(order.getAccount(), account -> new Window());
+		}
+		return window.count(System.currentTimeMillis() / 1000) > messageRate
+				? RiskReason.MESSAGE_RATE
+				: null;
+	}
+
+	private static class Window {
+		private long second;
+		private int count;
+
+		private synchronized int count(long now) {
+			if (now != second) {
+				second = now;
+				count = 0;
+			}
+			return ++count;
+		}
+	}
+}
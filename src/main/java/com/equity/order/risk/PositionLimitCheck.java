@@ -0,0 +1,260 @@
+package com.equity.order.risk;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.stereotype.Component;
+
+import com.equity.order.item.Side;
+
+// net position of an account in an instrument, with its open orders counted as if
+// they all filled, must stay within the limit on either side
+// an order the matcher takes reserves its quantity, fills move it into the position
+// and cancels give it back, orders without side never match and are not counted
+// not one of the request thread checks, it counts what rests on the books so it runs
+// on the writer of the instrument right before the order is matched
+@Component
+public class PositionLimitCheck {
+
+	private final Map<String, Map<String, Exposure>> exposures = new ConcurrentHashMap<>();
+	private final Map<Long, Reservation> reservations = new ConcurrentHashMap<>();
+
+	// an order already counted is not counted again
+	public RiskReason check(RiskOrder order) {
+		final Long positionLimit = order.getLimits().getPositionLimit();
+		if (positionLimit == null || order.getSide() == null
+				|| reservations.containsKey(order.getOrderId())) {
+			return null;
+		}
+
+		final Exposure exposure = exposure(order.getAccount(), order.getInstrument());
+		if (!exposure.reserve(order.getSide(), order.getQuantity(), positionLimit)) {
+			return RiskReason.POSITION_LIMIT;
+		}
+		reservations.put(order.getOrderId(), reservation(exposure, order));
+		return null;
+	}
+
+	// recovery and replicas, an order the matcher took is counted again without a check
+	public void restore(RiskOrder order) {
+		if (order.getLimits().getPositionLimit() == null || order.getSide() == null
+				|| reservations.containsKey(order.getOrderId())) {
+			return;
+		}
+
+		final Exposure exposure = exposure(order.getAccount(), order.getInstrument());
+		exposure.update(order.getSide(), 0, order.getQuantity());
+		reservations.put(order.getOrderId(), reservation(exposure, order));
+	}
+
+	// gives back what is left of the order
+	public void release(Long orderId) {
+		final Reservation reservation = reservations.remove(orderId);
+		if (reservation != null) {
+			reservation.cancel(Integer.MAX_VALUE);
+		}
+	}
+
+	// nothing rests on a closed book, whatever its orders still hold is given back
+	public void closed(Long orderBookId) {
+		reservations.values().removeIf(reservation -> {
+			if (!reservation.orderBookId.equals(orderBookId)) {
+				return false;
+			}
+			reservation.cancel(Integer.MAX_VALUE);
+			return true;
+		});
+	}
+
+	public void filled(Long orderId, int quantity) {
+		final Reservation reservation = orderId != null ? reservations.get(orderId) : null;
+		if (reservation != null && reservation.fill(quantity) == 0) {
+			reservations.remove(orderId);
+		}
+	}
+
+	public void canceled(Long orderId, int quantity) {
+		final Reservation reservation = orderId != null ? reservations.get(orderId) : null;
+		if (reservation != null && reservation.cancel(quantity) == 0) {
+			reservations.remove(orderId);
+		}
+	}
+
+	// the quantity it rests with now, an amendment is not checked against the limit
+	public void amended(Long orderId, int quantity) {
+		final Reservation reservation = reservations.get(orderId);
+		if (reservation != null) {
+			reservation.resize(quantity);
+		}
+	}
+
+	// filled quantity bought minus sold
+	public long position(String account, String instrument) {
+		return exposure(account, instrument).position();
+	}
+
+	// positions of every account in the instrument, then what the orders of the book
+	// still hold, on the writer of the instrument
+	public void writeTo(String instrument, Long orderBookId, DataOutput out)
+			throws IOException {
+		final Map<String, Long> positions = new LinkedHashMap<>();
+		exposures.forEach((account, instruments) -> {
+			final Exposure exposure = instruments.get(instrument);
+			if (exposure != null) {
+				positions.put(account, exposure.position());
+			}
+		});
+		out.writeInt(positions.size());
+		for (Map.Entry<String, Long> position : positions.entrySet()) {
+			out.writeUTF(position.getKey());
+			out.writeLong(position.getValue());
+		}
+
+		final Map<Long, Reservation> ofBook = new LinkedHashMap<>();
+		reservations.forEach((orderId, reservation) -> {
+			if (reservation.orderBookId.equals(orderBookId)) {
+				ofBook.put(orderId, reservation);
+			}
+		});
+		out.writeInt(ofBook.size());
+		for (Map.Entry<Long, Reservation> reservation : ofBook.entrySet()) {
+			out.writeLong(reservation.getKey());
+			out.writeUTF(reservation.getValue().account);
+			out.writeBoolean(reservation.getValue().side == Side.BUY);
+			out.writeInt(reservation.getValue().remaining);
+		}
+	}
+
+	// replaces the positions in the instrument and the reservations of the book, a
+	// closed book holds nothing
+	public void readFrom(String instrument, Long orderBookId, DataInput in, boolean open)
+			throws IOException {
+		final int positions = in.readInt();
+		for (int i = 0; i < positions; i++) {
+			exposure(in.readUTF(), instrument).position(in.readLong());
+		}
+
+		closed(orderBookId);
+		final int ofBook = in.readInt();
+		for (int i = 0; i < ofBook; i++) {
+			final Long orderId = in.readLong();
+			final String account = in.readUTF();
+			final Side side = in.readBoolean() ? Side.BUY : Side.SELL;
+			final int remaining = in.readInt();
+			if (open) {
+				final Exposure exposure = exposure(account, instrument);
+				exposure.update(side, 0, remaining);
+				reservations.put(orderId,
+						new Reservation(exposure, account, orderBookId, side, remaining));
+			}
+		}
+	}
+
+	public void clear() {
+		reservations.clear();
+		exposures.clear();
+	}
+
+	private static Reservation reservation(Exposure exposure, RiskOrder order) {
+		return new Reservation(exposure, order.getAccount(), order.getOrderBookId(),
+				order.getSide(), order.getQuantity());
+	}
+
+	private Exposure exposure(String account, String instrument) {
+		Map<String, Exposure> instruments = exposures.get(account);
+		if (instruments == null) {
+			instruments = exposures.computeIfAbsent(account, key -> new ConcurrentHashMap<>());
+		}
+		Exposure exposure = instruments.get(instrument);
+		if (exposure == null) {
+			exposure = instruments.computeIfAbsent(instrument, key -> new Exposure());
+		}
+		return exposure;
+	}
+
+	private static class Exposure {
+		private long position;
+		private long buying;
+		private long selling;
+
+		private synchronized boolean reserve(Side side, int quantity, long limit) {
+			if (side == Side.BUY) {
+				if (position + buying + quantity > limit) {
+					return false;
+				}
+				buying += quantity;
+			} else {
+				if (selling + quantity - position > limit) {
+					return false;
+				}
+				selling += quantity;
+			}
+			return true;
+		}
+
+		private synchronized void update(Side side, int filled, int open) {
+			if (side == Side.BUY) {
+				position += filled;
+				buying += open;
+			} else {
+				position -= filled;
+				selling += open;
+			}
+		}
+
+		private synchronized long position() {
+			return position;
+		}
+
+		private synchronized void position(long position) {
+			this.position = position;
+		}
+	}
+
+	private static class Reservation {
+		private final Exposure exposure;
+		private final String account;
+		private final Long orderBookId;
+		private final Side side;
+		private int remaining;
+
+		private Reservation(Exposure exposure, String account, Long orderBookId, Side side,
+				int remaining) {
+			this.exposure = exposure;
+			this.account = account;
+			this.orderBookId = orderBookId;
+			this.side = side;
+			this.remaining = remaining;
+		}
+
+		// what is still open after
+		private int fill(int quantity) {
+			synchronized (exposure) {
+				final int filled = Math.min(quantity, remaining);
+				remaining -= filled;
+				exposure.update(side, filled, -filled);
+				return remaining;
+			}
+		}
+
+		private int cancel(int quantity) {
+			synchronized (exposure) {
+				final int canceled = Math.min(quantity, remaining);
+				remaining -= canceled;
+				exposure.update(side, 0, -canceled);
+				return remaining;
+			}
+		}
+
+		private void resize(int quantity) {
+			synchronized (exposure) {
+				exposure.update(side, 0, quantity - remaining);
+				remaining = quantity;
+			}
+		}
+	}
+}
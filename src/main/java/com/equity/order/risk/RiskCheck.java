@@ -0,0 +1,15 @@
+package com.equity.order.risk;
+
+// one pre-trade check, every bean of this type runs in its @Order before an order
+// reaches its book
+// checks run on the request threads, in memory only, anything they count is
+// updated atomically
+public interface RiskCheck {
+
+	// null when the order passes, whatever it counts against the account is taken here
+	RiskReason check(RiskOrder order);
+
+	// gives back what check took, for an order a later check rejected
+	default void release(RiskOrder order) {
+	}
+}
@@ -0,0 +1,36 @@
+package com.equity.order.risk;
+
+import java.math.BigDecimal;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// limits of one account, a missing one is not checked
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RiskLimits {
+
+	// orders per second
+	private Integer messageRate;
+
+	private Integer maxQuantity;
+
+	// price times quantity of a limit order
+	private BigDecimal maxNotional;
+
+	// net position per instrument, counting every open order as if it filled
+	private Long positionLimit;
+
+	// the limits of this one, those of defaults where it has none
+	public RiskLimits orElse(RiskLimits defaults) {
+		return new RiskLimits(
+				messageRate != null ? messageRate : defaults.messageRate,
+				maxQuantity != null ? maxQuantity : defaults.maxQuantity,
+				maxNotional != null ? maxNotional : defaults.maxNotional,
+				positionLimit != null ? positionLimit : defaults.positionLimit);
+	}
+}
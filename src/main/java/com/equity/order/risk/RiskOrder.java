@@ -0,0 +1,26 @@
+package com.equity.order.risk;
+
+import java.math.BigDecimal;
+
+import com.equity.order.item.Side;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// an order item as the checks see it, with the limits of its account
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RiskOrder {
+	private String account;
+	private String instrument;
+	private Long orderBookId;
+	private Long orderId;
+	private Side side;
+	private BigDecimal price;
+	private int quantity;
+	private RiskLimits limits;
+}
@@ -0,0 +1,20 @@
+package com.equity.order.risk;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+
+// pre-trade limits, the same for every account unless it has its own
+@Data
+@ConfigurationProperties("order.risk")
+public class RiskProperties {
+
+	// e.g. order.risk.limits.max-quantity=10000
+	private RiskLimits limits = new RiskLimits();
+
+	// per account, e.g. order.risk.accounts[acme].position-limit=50000
+	private Map<String, RiskLimits> accounts = new HashMap<>();
+}
@@ -0,0 +1,6 @@
+package com.equity.order.risk;
+
+// why an order was rejected before it reached its book
+public enum RiskReason {
+	MESSAGE_RATE, MAX_QUANTITY, MAX_NOTIONAL, POSITION_LIMIT
+}
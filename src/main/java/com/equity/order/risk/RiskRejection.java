@@ -0,0 +1,16 @@
+package com.equity.order.risk;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// an order item that was not added to its book
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RiskRejection {
+	private String location;
+	private RiskReason reason;
+}
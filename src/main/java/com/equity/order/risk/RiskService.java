@@ -0,0 +1,271 @@
+package com.equity.order.risk;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Service;
+
+import com.equity.order.OrderMetrics;
+import com.equity.order.book.OrderBook;
+import com.equity.order.execution.Execution;
+import com.equity.order.history.OrderHistory;
+import com.equity.order.history.OrderHistory.ItemType;
+import com.equity.order.history.OrderHistoryService.OrderHistory.OrderItem;
+import com.equity.order.item.Side;
+
+import io.micrometer.core.instrument.Timer;
+
+// pre-trade stage between the order items and their book, runs every risk check on
+// each new order on the request thread and the position limit on the writer of the
+// book instrument, never touches the database
+// executions attached to closed books are not orders and are not checked
+// the counters are rebuilt with the books, they are in the snapshots and the history
+// replayed after them, or streamed to a replica, counts again what it did live
+@Service
+@EnableConfigurationProperties(RiskProperties.class)
+public class RiskService {
+
+	// orders that come without one
+	public static final String DEFAULT_ACCOUNT = "";
+
+	private final List<RiskCheck> riskChecks;
+	private final PositionLimitCheck positionLimitCheck;
+	private final OrderMetrics orderMetrics;
+	private final RiskLimits limits;
+	private final Map<String, RiskLimits> accounts = new HashMap<>();
+	private final boolean enabled;
+
+	public RiskService(List<RiskCheck> riskChecks, PositionLimitCheck positionLimitCheck,
+			OrderMetrics orderMetrics, RiskProperties riskProperties) {
+		this.riskChecks = riskChecks;
+		this.positionLimitCheck = positionLimitCheck;
+		this.orderMetrics = orderMetrics;
+		this.limits = riskProperties.getLimits();
+		riskProperties.getAccounts().forEach(
+				(account, accountLimits) -> accounts.put(account, accountLimits.orElse(limits)));
+		// nothing to check without any limit
+		this.enabled = !accounts.isEmpty() || !limits.equals(new RiskLimits());
+	}
+
+	// the reason per order item in the same order, null for those that passed
+	// null when all of them passed
+	// items of one whole order go on together or not at all, when one is rejected
+	// whatever the others took is given back
+	public List<RiskReason> check(OrderBook orderBook, List<OrderItem> orderItems,
+			boolean whole) {
+		if (!enabled) {
+			return null;
+		}
+
+		final Timer.Sample sample = orderMetrics.start();
+		List<RiskReason> rejections = null;
+		final List<RiskOrder> passed = new ArrayList<>();
+		for (int i = 0; i < orderItems.size(); i++) {
+			final OrderItem orderItem = orderItems.get(i);
+			final ItemType itemType = ItemType.of(orderItem.getLocation());
+			if (itemType == ItemType.EXECUTION || orderItem.getQuantity() == null) {
+				continue;
+			}
+
+			final RiskOrder order = order(orderBook, orderItem);
+			final RiskReason reason = check(order);
+			if (reason != null) {
+				if (rejections == null) {
+					rejections = new ArrayList<>(Collections.nCopies(orderItems.size(), null));
+				}
+				rejections.set(i, reason);
+				orderMetrics.rejected(reason);
+			} else {
+				passed.add(order);
+			}
+		}
+		if (rejections != null && whole) {
+			passed.forEach(order -> release(order, riskChecks.size()));
+		}
+		orderMetrics.stop(sample, OrderMetrics.RISK);
+		return rejections;
+	}
+
+	// runs on the writer of the book instrument, after check and right before matching
+	// the position limit counts what rests on the books, only orders the matcher takes
+	// reserve, the reason per item is merged into those check gave
+	public List<RiskReason> reserve(OrderBook orderBook, List<OrderItem> orderItems,
+			List<RiskReason> checked, Predicate<OrderItem> matched, boolean whole) {
+		if (!enabled) {
+			return checked;
+		}
+
+		List<RiskReason> rejections = checked;
+		final List<Long> reserved = new ArrayList<>();
+		for (int i = 0; i < orderItems.size(); i++) {
+			final OrderItem orderItem = orderItems.get(i);
+			if (checked != null && checked.get(i) != null
+					|| ItemType.of(orderItem.getLocation()) == ItemType.EXECUTION
+					|| orderItem.getQuantity() == null || !matched.test(orderItem)) {
+				continue;
+			}
+
+			final RiskOrder order = order(orderBook, orderItem);
+			final RiskReason reason = positionLimitCheck.check(order);
+			if (reason != null) {
+				if (rejections == null) {
+					rejections = new ArrayList<>(Collections.nCopies(orderItems.size(), null));
+				}
+				rejections.set(i, reason);
+				orderMetrics.rejected(reason);
+			} else {
+				reserved.add(order.getOrderId());
+			}
+		}
+		if (rejections != null && whole) {
+			reserved.forEach(positionLimitCheck::release);
+		}
+		return rejections;
+	}
+
+	// order items that never made it into the history give back what they reserved
+	public void release(List<OrderItem> orderItems) {
+		orderItems.stream().filter(orderItem -> OrderHistory.isItem(orderItem.getLocation()))
+				.forEach(orderItem -> positionLimitCheck.release(idOf(orderItem)));
+	}
+
+	// runs on the writer of the book instrument once nothing rests on the book anymore
+	public void closed(OrderBook orderBook) {
+		positionLimitCheck.closed(orderBook.getId());
+	}
+
+	// recovery and replicas, on the writer of the book instrument, one entry at a time
+	// in the order they were stored, the way recorded counted them
+	// taken is whether the matcher put a created order on the book, the executions are
+	// those the entries name
+	public void replayed(OrderBook orderBook, OrderHistory orderHistory, boolean taken,
+			Map<Long, Execution> executions) {
+		if (!enabled || orderHistory.getStatus() == null) {
+			return;
+		}
+
+		switch (orderHistory.getStatus()) {
+		case ORDER_CREATED:
+			if (taken) {
+				positionLimitCheck.restore(order(orderBook, orderHistory));
+			}
+			break;
+		case ORDER_CANCELED:
+			positionLimitCheck.canceled(orderHistory.getItemId(), orderHistory.getQuantity());
+			break;
+		case ORDER_AMENDED:
+			positionLimitCheck.amended(orderHistory.getItemId(), orderHistory.getQuantity());
+			break;
+		case EXECUTED:
+			// each side of a trade is an entry of its own, executions added to a closed
+			// book have none and were never counted
+			final Execution execution = executions.get(orderHistory.getItemId());
+			if (execution != null && orderHistory.getSide() != null) {
+				positionLimitCheck.filled(orderHistory.getSide() == Side.BUY
+						? execution.getBuyOrderId()
+						: execution.getSellOrderId(), execution.getQuantity());
+			}
+			break;
+		default:
+			break;
+		}
+	}
+
+	// whether replayed needs the executions at all
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	// the counters behind one book, on the writer of its instrument
+	public void writeTo(String instrument, Long orderBookId, DataOutput out)
+			throws IOException {
+		positionLimitCheck.writeTo(instrument, orderBookId, out);
+	}
+
+	public void readFrom(String instrument, Long orderBookId, DataInput in, boolean open)
+			throws IOException {
+		positionLimitCheck.readFrom(instrument, orderBookId, in, open);
+	}
+
+	public void clear() {
+		positionLimitCheck.clear();
+	}
+
+	// what the stored entries did to the open orders
+	public void recorded(List<Execution> executions, List<OrderHistory> recorded) {
+		if (!enabled) {
+			return;
+		}
+
+		// an amendment sets what rests before its own executions take from it
+		for (OrderHistory orderHistory : recorded) {
+			if (orderHistory.getItemType() == ItemType.EXECUTION) {
+				continue;
+			}
+			if (orderHistory.getStatus() == OrderHistory.Status.ORDER_CANCELED) {
+				positionLimitCheck.canceled(orderHistory.getItemId(), orderHistory.getQuantity());
+			} else if (orderHistory.getStatus() == OrderHistory.Status.ORDER_AMENDED) {
+				positionLimitCheck.amended(orderHistory.getItemId(), orderHistory.getQuantity());
+			}
+		}
+		for (Execution execution : executions) {
+			positionLimitCheck.filled(execution.getBuyOrderId(), execution.getQuantity());
+			positionLimitCheck.filled(execution.getSellOrderId(), execution.getQuantity());
+		}
+	}
+
+	// whatever the checks before the rejecting one took is given back
+	private RiskReason check(RiskOrder order) {
+		for (int i = 0; i < riskChecks.size(); i++) {
+			final RiskReason reason = riskChecks.get(i).check(order);
+			if (reason != null) {
+				release(order, i);
+				return reason;
+			}
+		}
+		return null;
+	}
+
+	// gives back what the first checks took, last one first
+	private void release(RiskOrder order, int checks) {
+		for (int i = checks - 1; i >= 0; i--) {
+			riskChecks.get(i).release(order);
+		}
+	}
+
+	private RiskOrder order(OrderBook orderBook, OrderItem orderItem) {
+		final String account = orderItem.getAccount() != null ? orderItem.getAccount()
+				: DEFAULT_ACCOUNT;
+		return RiskOrder.builder().account(account).instrument(orderBook.getInstrument())
+				.orderBookId(orderBook.getId()).orderId(idOf(orderItem))
+				.side(orderItem.getSide()).price(orderItem.getPrice())
+				.quantity(orderItem.getQuantity()).limits(limits(account)).build();
+	}
+
+	private RiskOrder order(OrderBook orderBook, OrderHistory orderHistory) {
+		final String account = orderHistory.getAccount() != null ? orderHistory.getAccount()
+				: DEFAULT_ACCOUNT;
+		return RiskOrder.builder().account(account).instrument(orderBook.getInstrument())
+				.orderBookId(orderBook.getId()).orderId(orderHistory.getItemId())
+				.side(orderHistory.getSide()).price(orderHistory.getPrice())
+				.quantity(orderHistory.getQuantity()).limits(limits(account)).build();
+	}
+
+	private RiskLimits limits(String account) {
+		final RiskLimits accountLimits = accounts.get(account);
+		return accountLimits != null ? accountLimits : limits;
+	}
+
+	private static Long idOf(OrderItem orderItem) {
+		final String location = orderItem.getLocation();
+		return Long.valueOf(location.substring(location.lastIndexOf('/') + 1));
+	}
+}
@@ -0,0 +1,95 @@
+package com.equity.order.sequencer;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import lombok.extern.log4j.Log4j2;
+
+// single writer for everything that touches one instrument
+// request threads only publish into the ring, the writer thread runs the tasks
+// one after another in publish order
+@Log4j2
+public class InstrumentSequencer implements Runnable {
+
+	private static final long MAX_IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private final String instrument;
+	private final RingBuffer<Slot> ringBuffer;
+	private final Thread writer;
+
+	private volatile boolean running = true;
+
+	public InstrumentSequencer(String instrument, int bufferSize) {
+		this.instrument = instrument;
+		this.ringBuffer = new RingBuffer<>(bufferSize, Slot::new);
+		this.writer = new Thread(this, "sequencer-" + instrument);
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+
+	public <T> CompletableFuture<T> submit(Callable<T> task) {
+		if (!running) {
+			throw new IllegalStateException(instrument + " sequencer is stopped");
+		}
+
+		final CompletableFuture<T> future = new CompletableFuture<>();
+		final long sequence = ringBuffer.claim();
+		final Slot slot = ringBuffer.get(sequence);
+		slot.task = task;
+		slot.future = future;
+		ringBuffer.publish(sequence);
+
+		LockSupport.unpark(writer);
+		return future;
+	}
+
+	public boolean isWriter() {
+		return Thread.currentThread() == writer;
+	}
+
+	public long depth() {
+		return ringBuffer.size();
+	}
+
+	@Override
+	public void run() {
+		long idle = 0;
+		while (running || ringBuffer.size() > 0) {
+			if (ringBuffer.drain(InstrumentSequencer::execute) > 0) {
+				idle = 0;
+			} else {
+				// spin briefly, then back off up to a millisecond
+				idle = Math.min(MAX_IDLE_NANOS, idle == 0 ? 1_000 : idle * 2);
+				LockSupport.parkNanos(idle);
+			}
+		}
+		log.info("Stopped sequencer of {}", instrument);
+	}
+
+	public void stop() {
+		running = false;
+		LockSupport.unpark(writer);
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static void execute(Slot slot) {
+		final Callable task = slot.task;
+		final CompletableFuture future = slot.future;
+		// release references so the ring does not keep results alive
+		slot.task = null;
+		slot.future = null;
+
+		try {
+			future.complete(task.call());
+		} catch (Throwable e) {
+			future.completeExceptionally(e);
+		}
+	}
+
+	private static class Slot {
+		private Callable<?> task;
+		private CompletableFuture<?> future;
+	}
+}
@@ -0,0 +1,77 @@
+package com.equity.order.sequencer;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+// bounded multi producer single consumer ring of preallocated slots
+// producers claim a sequence with a cas, fill the slot and mark it available,
+// the single consumer reads slots strictly in sequence order
+public class RingBuffer<E> {
+
+	private final Object[] slots;
+	private final AtomicLongArray available;
+	private final int mask;
+
+	private final AtomicLong claimed = new AtomicLong();
+	private final AtomicLong consumed = new AtomicLong();
+
+	public RingBuffer(int size, Supplier<E> factory) {
+		if (size <= 0 || Integer.bitCount(size) != 1) {
+			throw new IllegalArgumentException("size must be a power of two");
+		}
+
+		this.slots = new Object[size];
+		this.available = new AtomicLongArray(size);
+		this.mask = size - 1;
+
+		for (int i = 0; i < size; i++) {
+			slots[i] = factory.get();
+			available.set(i, -1);
+		}
+	}
+
+	// waits while the ring is full, the consumer frees slots as it goes
+	public long claim() {
+		while (true) {
+			final long sequence = claimed.get();
+			if (sequence - consumed.get() >= slots.length) {
+				LockSupport.parkNanos(1_000);
+			} else if (claimed.compareAndSet(sequence, sequence + 1)) {
+				return sequence;
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	public E get(long sequence) {
+		return (E) slots[(int) (sequence & mask)];
+	}
+
+	public void publish(long sequence) {
+		available.lazySet((int) (sequence & mask), sequence);
+	}
+
+	// hands every published slot in order to the handler
+	// only ever called from the consumer thread
+	public int drain(Consumer<E> handler) {
+		long next = consumed.get();
+		int count = 0;
+		while (available.get((int) (next & mask)) == next) {
+			handler.accept(get(next));
+			consumed.lazySet(++next);
+			count++;
+		}
+		return count;
+	}
+
+	public long size() {
+		return claimed.get() - consumed.get();
+	}
+
+	public int capacity() {
+		return slots.length;
+	}
+}
@@ -0,0 +1,85 @@
+package com.equity.order.sequencer;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+// one sequencer per instrument, started on first use
+// writes to books of the same instrument are applied in a deterministic order
+// while different instruments proceed in parallel
+// tasks waiting on all writers, and on the busiest one, are gauged under order.sequencer.*
+@Service
+public class SequencerService {
+
+	private final Map<String, InstrumentSequencer> sequencers = new ConcurrentHashMap<>();
+	private final int bufferSize;
+
+	public SequencerService(@Value("${order.sequencer.buffer-size:1024}") int bufferSize,
+			MeterRegistry meterRegistry) {
+		this.bufferSize = bufferSize;
+		Gauge.builder("order.sequencer.queued", sequencers,
+				map -> map.values().stream().mapToLong(InstrumentSequencer::depth).sum())
+				.register(meterRegistry);
+		Gauge.builder("order.sequencer.queued.max", sequencers,
+				map -> map.values().stream().mapToLong(InstrumentSequencer::depth).max()
+						.orElse(0))
+				.register(meterRegistry);
+		Gauge.builder("order.sequencer.instruments", sequencers, Map::size)
+				.register(meterRegistry);
+	}
+
+	public <T> CompletableFuture<T> submit(String instrument, Callable<T> task) {
+		return sequencer(instrument).submit(task);
+	}
+
+	// blocks the caller until the writer has run the task
+	public <T> T call(String instrument, Callable<T> task) {
+		final InstrumentSequencer sequencer = sequencer(instrument);
+		// already on the writer, queueing behind ourselves would never finish
+		if (sequencer.isWriter()) {
+			try {
+				return task.call();
+			} catch (RuntimeException e) {
+				throw e;
+			} catch (Exception e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		try {
+			return sequencer.submit(task).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	public Map<String, InstrumentSequencer> getSequencers() {
+		return sequencers;
+	}
+
+	private InstrumentSequencer sequencer(String instrument) {
+		return sequencers.computeIfAbsent(instrument,
+				key -> new InstrumentSequencer(key, bufferSize));
+	}
+
+	@PreDestroy
+	public void stop() {
+		sequencers.values().forEach(InstrumentSequencer::stop);
+	}
+}
@@ -0,0 +1,17 @@
+package com.equity.order.settlement;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// what a closed book got from the fills, and what was left of its orders
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BookSettlement {
+	private Long orderBookId;
+	private long allocatedQuantity;
+	private long canceledQuantity;
+}
@@ -0,0 +1,20 @@
+package com.equity.order.settlement;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// skipped books were unknown or closed already, unallocated quantity is fills no
+// resting order would take
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class Settlement {
+	private List<BookSettlement> orderBooks;
+	private List<Long> skipped;
+	private long unallocatedQuantity;
+}
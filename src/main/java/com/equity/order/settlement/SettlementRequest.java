@@ -0,0 +1,35 @@
+package com.equity.order.settlement;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import com.equity.order.item.Side;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// books to close by id or by instrument, and the street fills to allocate to them
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SettlementRequest {
+	private List<Long> orderBookIds;
+	private List<String> instruments;
+	private List<Fill> fills;
+
+	// goes to one book, or to the books of an instrument in the order they were opened
+	@Data
+	@Builder
+	@NoArgsConstructor
+	@AllArgsConstructor
+	public static class Fill {
+		private Long orderBookId;
+		private String instrument;
+		private Side side;
+		private BigDecimal price;
+		private Integer quantity;
+	}
+}
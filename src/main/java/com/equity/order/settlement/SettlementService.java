@@ -0,0 +1,258 @@
+package com.equity.order.settlement;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.equity.order.OrderMetrics;
+import com.equity.order.book.OrderBook;
+import com.equity.order.book.OrderBookRepository;
+import com.equity.order.book.OrderBookService;
+import com.equity.order.execution.Execution;
+import com.equity.order.history.OrderHistory;
+import com.equity.order.item.Side;
+import com.equity.order.marketdata.MarketDataService;
+import com.equity.order.matching.MatchingService;
+import com.equity.order.matching.RestingOrder;
+import com.equity.order.replication.ReplicationService;
+import com.equity.order.risk.RiskService;
+import com.equity.order.sequencer.SequencerService;
+
+import lombok.extern.log4j.Log4j2;
+
+// end of day, closes many books at once and settles them
+// each instrument allocates the street fills to the resting orders of its books on its
+// own writer, instruments in parallel, whatever still rests after that is canceled
+// executions and history go out a batch of books per append, on that writer like any
+// other append, and only then are the books closed, so a crash in between leaves them
+// open with nothing resting instead of closed with orders nobody canceled
+@RestController
+@Log4j2
+public class SettlementService {
+
+	private final OrderBookRepository orderBookRepository;
+	private final OrderBookService orderBookService;
+	private final MatchingService matchingService;
+	private final SequencerService sequencerService;
+	private final MarketDataService marketDataService;
+	private final OrderMetrics orderMetrics;
+	private final ReplicationService replicationService;
+	private final RiskService riskService;
+	private final int batchSize;
+
+	public SettlementService(OrderBookRepository orderBookRepository,
+			OrderBookService orderBookService, MatchingService matchingService,
+			SequencerService sequencerService, MarketDataService marketDataService,
+			OrderMetrics orderMetrics, ReplicationService replicationService,
+			RiskService riskService, @Value("${order.settlement.batch-size:100}") int batchSize) {
+		this.orderBookRepository = orderBookRepository;
+		this.orderBookService = orderBookService;
+		this.matchingService = matchingService;
+		this.sequencerService = sequencerService;
+		this.marketDataService = marketDataService;
+		this.orderMetrics = orderMetrics;
+		this.replicationService = replicationService;
+		this.riskService = riskService;
+		this.batchSize = batchSize;
+	}
+
+	@PostMapping(value = "/settlements", consumes = MediaType.APPLICATION_JSON_UTF8_VALUE)
+	public ResponseEntity<Settlement> settle(@RequestBody SettlementRequest request) {
+		final List<SettlementRequest.Fill> fills = request.getFills() != null
+				? request.getFills()
+				: Collections.emptyList();
+		if (!fills.stream().allMatch(SettlementService::valid)) {
+			return ResponseEntity.badRequest().build();
+		}
+
+		return ResponseEntity.ok(settle(request, fills));
+	}
+
+	public Settlement settle(SettlementRequest request,
+			List<SettlementRequest.Fill> fills) {
+		// open books only, in the order they were opened
+		final Map<Long, OrderBook> orderBooks = new TreeMap<>();
+		final List<Long> skipped = new ArrayList<>();
+		if (request.getOrderBookIds() != null) {
+			orderBookRepository.findAllById(request.getOrderBookIds()).forEach(orderBook -> {
+				if (orderBook.getStatus() == OrderBook.Status.OPEN) {
+					orderBooks.put(orderBook.getId(), orderBook);
+				}
+			});
+			request.getOrderBookIds().stream().filter(id -> !orderBooks.containsKey(id))
+					.forEach(skipped::add);
+		}
+		if (request.getInstruments() != null) {
+			for (String instrument : request.getInstruments()) {
+				orderBookRepository
+						.findByInstrumentAndStatus(instrument, OrderBook.Status.OPEN)
+						.forEach(orderBook -> orderBooks.put(orderBook.getId(), orderBook));
+			}
+		}
+
+		log.info("Settling {} books, skipped {}", orderBooks.size(), skipped);
+		final long quantity = fills.stream().mapToLong(SettlementRequest.Fill::getQuantity)
+				.sum();
+		if (orderBooks.isEmpty()) {
+			return Settlement.builder().orderBooks(new ArrayList<>()).skipped(skipped)
+					.unallocatedQuantity(quantity).build();
+		}
+
+		final Map<String, List<OrderBook>> byInstrument = orderBooks.values().stream()
+				.collect(Collectors.groupingBy(OrderBook::getInstrument, LinkedHashMap::new,
+						Collectors.toList()));
+
+		// queued behind any order still being matched on these books
+		final List<CompletableFuture<InstrumentAllocation>> allocations = new ArrayList<>();
+		byInstrument.forEach((instrument, instrumentBooks) -> allocations.add(sequencerService
+				.submit(instrument, () -> settle(instrument, instrumentBooks, fills))));
+
+		final List<BookAllocation> bookAllocations = new ArrayList<>();
+		final List<OrderBook> closed = new ArrayList<>();
+		long allocated = 0;
+		for (CompletableFuture<InstrumentAllocation> allocation : allocations) {
+			bookAllocations.addAll(allocation.join().bookAllocations);
+			closed.addAll(allocation.join().closed);
+			allocated += allocation.join().allocatedQuantity;
+		}
+		closed.forEach(orderBook -> orderMetrics.orderBook(OrderBook.Status.CLOSED));
+		replicationService.books(closed);
+
+		// fills to books outside this settlement are not allocated either
+		return Settlement.builder()
+				.orderBooks(bookAllocations.stream().map(BookAllocation::settlement)
+						.collect(Collectors.toList()))
+				.skipped(skipped).unallocatedQuantity(quantity - allocated).build();
+	}
+
+	// runs on the writer of the instrument, the books are closed once their history is
+	// stored
+	private InstrumentAllocation settle(String instrument, List<OrderBook> orderBooks,
+			List<SettlementRequest.Fill> fills) {
+		final InstrumentAllocation allocation = allocate(instrument, orderBooks, fills);
+		final List<BookAllocation> bookAllocations = allocation.bookAllocations;
+		for (int from = 0; from < bookAllocations.size(); from += batchSize) {
+			record(bookAllocations.subList(from,
+					Math.min(from + batchSize, bookAllocations.size())));
+		}
+
+		orderBooks.forEach(orderBook -> orderBook.setStatus(OrderBook.Status.CLOSED));
+		orderBookRepository.saveAll(orderBooks).forEach(allocation.closed::add);
+		orderBooks.forEach(marketDataService::closed);
+		orderBooks.forEach(riskService::closed);
+		return allocation;
+	}
+
+	// runs on the writer of the instrument
+	private InstrumentAllocation allocate(String instrument, List<OrderBook> orderBooks,
+			List<SettlementRequest.Fill> fills) {
+		final List<BookAllocation> bookAllocations = orderBooks.stream()
+				.map(BookAllocation::new).collect(Collectors.toList());
+		long allocated = 0;
+
+		for (SettlementRequest.Fill fill : fills) {
+			int remaining = fill.getQuantity();
+			for (BookAllocation bookAllocation : bookAllocations) {
+				if (remaining == 0) {
+					break;
+				}
+				if (fill.getOrderBookId() != null
+						? !fill.getOrderBookId().equals(bookAllocation.orderBook.getId())
+						: !instrument.equals(fill.getInstrument())) {
+					continue;
+				}
+
+				for (Execution execution : matchingService.allocate(bookAllocation.orderBook,
+						fill.getSide(), fill.getPrice(), remaining)) {
+					bookAllocation.executions.add(execution);
+					remaining -= execution.getQuantity();
+				}
+			}
+			allocated += fill.getQuantity() - remaining;
+		}
+
+		for (BookAllocation bookAllocation : bookAllocations) {
+			bookAllocation.canceled.addAll(matchingService.drain(bookAllocation.orderBook));
+		}
+		return new InstrumentAllocation(bookAllocations, allocated);
+	}
+
+	// one append for the batch, executions first then their history
+	private void record(List<BookAllocation> bookAllocations) {
+		final List<Execution> executions = bookAllocations.stream()
+				.flatMap(bookAllocation -> bookAllocation.executions.stream())
+				.collect(Collectors.toList());
+
+		// executions allocated from outside the book have only the side of the resting
+		// order they filled
+		orderBookService.store(
+				bookAllocations.stream().map(bookAllocation -> bookAllocation.orderBook)
+						.collect(Collectors.toList()),
+				executions, stored -> {
+					final List<OrderHistory> orderHistories = new ArrayList<>();
+					for (BookAllocation bookAllocation : bookAllocations) {
+						final OrderBook orderBook = bookAllocation.orderBook;
+						for (Execution execution : bookAllocation.executions) {
+							orderHistories.add(OrderHistory.of(orderBook, execution,
+									execution.getBuyOrderId() != null ? Side.BUY : Side.SELL));
+						}
+						for (RestingOrder resting : bookAllocation.canceled) {
+							orderHistories.add(OrderHistory.resting(orderBook, resting.getId(),
+									resting.getSide(), resting.getPrice(), resting.getQuantity(),
+									OrderHistory.Status.ORDER_CANCELED));
+						}
+					}
+					return orderHistories;
+				});
+	}
+
+	private static boolean valid(SettlementRequest.Fill fill) {
+		return fill.getSide() != null && fill.getPrice() != null
+				&& fill.getPrice().signum() > 0 && fill.getQuantity() != null
+				&& fill.getQuantity() > 0
+				&& (fill.getOrderBookId() != null || fill.getInstrument() != null);
+	}
+
+	private static class InstrumentAllocation {
+		private final List<BookAllocation> bookAllocations;
+		private final long allocatedQuantity;
+		private final List<OrderBook> closed = new ArrayList<>();
+
+		private InstrumentAllocation(List<BookAllocation> bookAllocations,
+				long allocatedQuantity) {
+			this.bookAllocations = bookAllocations;
+			this.allocatedQuantity = allocatedQuantity;
+		}
+	}
+
+	private static class BookAllocation {
+		private final OrderBook orderBook;
+		private final List<Execution> executions = new ArrayList<>();
+		private final List<RestingOrder> canceled = new ArrayList<>();
+
+		private BookAllocation(OrderBook orderBook) {
+			this.orderBook = orderBook;
+		}
+
+		private BookSettlement settlement() {
+			return BookSettlement.builder().orderBookId(orderBook.getId())
+					.allocatedQuantity(
+							executions.stream().mapToLong(Execution::getQuantity).sum())
+					.canceledQuantity(
+							canceled.stream().mapToLong(RestingOrder::getQuantity).sum())
+					.build();
+		}
+	}
+}
@@ -0,0 +1,54 @@
+package com.equity.order.shard;
+
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import com.equity.order.OrderIdGenerator;
+
+// instruments split over several nodes, each with its own database
+// a book stays on the node that opened it until it is closed, only books opened
+// after the node list grew go to the new owner of their instrument, so growing the
+// cluster moves no state and loses no event
+@Configuration
+@ConditionalOnProperty(name = "order.shard.enabled", havingValue = "true")
+@EnableConfigurationProperties(ShardProperties.class)
+public class ShardConfiguration {
+
+	@Bean
+	public ShardRing shardRing(ShardProperties properties) {
+		if (properties.getNode() < 0 || properties.getNode() >= properties.getNodes().size()) {
+			throw new IllegalStateException(
+					"order.shard.node " + properties.getNode() + " is not in order.shard.nodes");
+		}
+		return new ShardRing(properties.getNodes().size(), properties.getVirtualNodes());
+	}
+
+	// ids of this node are in its own range
+	@Bean
+	public HibernatePropertiesCustomizer shardIds(ShardProperties properties) {
+		return hibernateProperties -> hibernateProperties.put(OrderIdGenerator.OFFSET,
+				String.valueOf(ShardIds.offsetOf(properties.getNode())));
+	}
+
+	// ahead of everything else, a forwarded request needs nothing from this node
+	// bodies are passed through as bytes on the pooled client, the filter is built
+	// while the web server starts so it can not wait on the converters of the api
+	@Bean
+	public FilterRegistrationBean<ShardRoutingFilter> shardRoutingFilter(
+			ShardProperties properties, ShardRing shardRing, CloseableHttpClient httpClient) {
+		final RestTemplate restTemplate = new RestTemplate(
+				new HttpComponentsClientHttpRequestFactory(httpClient));
+		final FilterRegistrationBean<ShardRoutingFilter> registration = new FilterRegistrationBean<>(
+				new ShardRoutingFilter(properties, shardRing, restTemplate));
+		registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+		return registration;
+	}
+}
@@ -0,0 +1,26 @@
+package com.equity.order.shard;
+
+// ids carry the node that created them in their top bits, so anything addressed by
+// id can be routed without asking anyone
+// each node adds its own offset to its id sequence, ids never collide across nodes
+public final class ShardIds {
+
+	public static final int NODE_SHIFT = 48;
+	// leaves the sign bit alone
+	public static final int MAX_NODES = 1 << (63 - NODE_SHIFT);
+
+	private ShardIds() {
+	}
+
+	public static int nodeOf(long id) {
+		return (int) (id >>> NODE_SHIFT);
+	}
+
+	// added to the sequence of a node, node 0 keeps the ids it always had
+	public static long offsetOf(int node) {
+		if (node < 0 || node >= MAX_NODES) {
+			throw new IllegalArgumentException("No such node " + node);
+		}
+		return (long) node << NODE_SHIFT;
+	}
+}
@@ -0,0 +1,26 @@
+package com.equity.order.shard;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+
+// nodes sharing the instruments, every node is started with the same list
+// nodes are only ever appended, a node keeps its index for as long as it has books
+@Data
+@ConfigurationProperties("order.shard")
+public class ShardProperties {
+
+	private boolean enabled;
+
+	// index of this node in nodes
+	private int node;
+
+	// base url of each node, e.g. order.shard.nodes[1]=http://host-1:8080
+	private List<String> nodes = new ArrayList<>();
+
+	// points per node on the ring, more of them spread instruments more evenly
+	private int virtualNodes = 100;
+}
@@ -0,0 +1,53 @@
+package com.equity.order.shard;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+
+// consistent hash of instruments over the nodes
+// each node is put on the ring at several points, an instrument belongs to the first
+// node point at or after its own hash, so adding a node only takes instruments away
+// from the others and never moves them between the old nodes
+public class ShardRing {
+
+	private final TreeMap<Long, Integer> ring = new TreeMap<>();
+	private final int nodes;
+
+	public ShardRing(int nodes, int virtualNodes) {
+		if (nodes < 1 || virtualNodes < 1) {
+			throw new IllegalArgumentException("A ring needs nodes and points");
+		}
+		this.nodes = nodes;
+		for (int node = 0; node < nodes; node++) {
+			for (int point = 0; point < virtualNodes; point++) {
+				// on a collision the lower node keeps the point, same on every node
+				ring.putIfAbsent(hash("node-" + node + "#" + point), node);
+			}
+		}
+	}
+
+	public int ownerOf(String instrument) {
+		final Map.Entry<Long, Integer> entry = ring.ceilingEntry(hash(instrument));
+		return (entry != null ? entry : ring.firstEntry()).getValue();
+	}
+
+	public int getNodes() {
+		return nodes;
+	}
+
+	// fnv-1a over the utf-8 bytes, then mixed so close keys land far apart
+	// must stay the same across versions, every node has to agree on it
+	static long hash(String key) {
+		long hash = 0xcbf29ce484222325L;
+		for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+			hash ^= b & 0xff;
+			hash *= 0x100000001b3L;
+		}
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+}
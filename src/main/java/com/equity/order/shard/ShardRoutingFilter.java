@@ -0,0 +1,232 @@
+package com.equity.order.shard;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import com.equity.order.book.OrderBookService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.extern.log4j.Log4j2;
+
+// thin routing in front of the api, a request for a book another node owns is
+// forwarded there as is and its answer passed back
+// books are found by the node in their id, new books go to the node owning the
+// instrument on the ring
+// a forwarded request is always served where it lands, so a bad node list can not loop
+// end to end headers go through both ways, hop by hop ones and the framing the http
+// client and the container set themselves do not
+@Log4j2
+public class ShardRoutingFilter extends OncePerRequestFilter {
+
+	public static final String FORWARDED = "X-Order-Shard-Forwarded";
+
+	// anything addressed by the id of a book, or by an id it handed out
+	private static final Pattern BY_ID = Pattern.compile(
+			"^/(?:orderBooks|orderHistories/orderBook|orderIntakes)/(\\d+)(?:/.*)?$");
+	private static final String NEW_BOOK = "/" + OrderBookService.ENTITIES;
+
+	private static final Set<String> HOP_BY_HOP = caseInsensitive(HttpHeaders.CONNECTION,
+			"Keep-Alive", HttpHeaders.PROXY_AUTHENTICATE, HttpHeaders.PROXY_AUTHORIZATION,
+			HttpHeaders.TE, HttpHeaders.TRAILER, HttpHeaders.TRANSFER_ENCODING,
+			HttpHeaders.UPGRADE, HttpHeaders.HOST, HttpHeaders.CONTENT_LENGTH);
+
+	private static final ObjectMapper objectMapper = new ObjectMapper();
+
+	private final ShardProperties properties;
+	private final ShardRing ring;
+	private final RestTemplate restTemplate;
+
+	public ShardRoutingFilter(ShardProperties properties, ShardRing ring,
+			RestTemplate restTemplate) {
+		this.properties = properties;
+		this.ring = ring;
+		this.restTemplate = restTemplate;
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+			FilterChain filterChain) throws ServletException, IOException {
+		if (request.getHeader(FORWARDED) != null) {
+			filterChain.doFilter(request, response);
+			return;
+		}
+
+		final String path = request.getRequestURI()
+				.substring(request.getContextPath().length());
+		final Matcher byId = BY_ID.matcher(path);
+		if (byId.matches()) {
+			route(ShardIds.nodeOf(Long.parseLong(byId.group(1))), path, null, request,
+					response, filterChain);
+		} else if (NEW_BOOK.equals(path) && HttpMethod.POST.matches(request.getMethod())) {
+			// the body is read here to find the instrument, and replayed if it stays
+			final byte[] body = StreamUtils.copyToByteArray(request.getInputStream());
+			route(ownerOf(body), path, body, new BufferedRequest(request, body), response,
+					filterChain);
+		} else {
+			filterChain.doFilter(request, response);
+		}
+	}
+
+	private void route(int node, String path, byte[] body, HttpServletRequest request,
+			HttpServletResponse response, FilterChain filterChain)
+			throws ServletException, IOException {
+		final List<String> nodes = properties.getNodes();
+		if (node == properties.getNode() || node >= nodes.size()) {
+			// ids from before sharding, or from a node no longer listed, stay here
+			filterChain.doFilter(request, response);
+			return;
+		}
+
+		forward(nodes.get(node) + path
+				+ (request.getQueryString() != null ? "?" + request.getQueryString() : ""),
+				body != null ? body : StreamUtils.copyToByteArray(request.getInputStream()),
+				request, response);
+	}
+
+	private void forward(String url, byte[] body, HttpServletRequest request,
+			HttpServletResponse response) throws IOException {
+		log.debug("Forwarding {} {}", request.getMethod(), url);
+
+		final Set<String> asked = hopByHop(
+				Collections.list(request.getHeaders(HttpHeaders.CONNECTION)));
+		final HttpHeaders headers = new HttpHeaders();
+		for (String name : Collections.list(request.getHeaderNames())) {
+			if (!asked.contains(name)) {
+				headers.put(name, Collections.list(request.getHeaders(name)));
+			}
+		}
+		headers.set(FORWARDED, String.valueOf(properties.getNode()));
+
+		ResponseEntity<byte[]> forwarded;
+		try {
+			forwarded = restTemplate.exchange(url, HttpMethod.resolve(request.getMethod()),
+					new HttpEntity<>(body.length > 0 ? body : null, headers), byte[].class);
+		} catch (HttpStatusCodeException e) {
+			forwarded = ResponseEntity.status(e.getRawStatusCode())
+					.headers(e.getResponseHeaders()).body(e.getResponseBodyAsByteArray());
+		} catch (ResourceAccessException e) {
+			log.warn("Could not forward to {}", url, e);
+			response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value());
+			return;
+		}
+
+		response.setStatus(forwarded.getStatusCodeValue());
+		// location points at the owner, so the client can talk to it directly next time
+		final List<String> connection = forwarded.getHeaders().get(HttpHeaders.CONNECTION);
+		final Set<String> answered = hopByHop(
+				connection != null ? connection : Collections.emptyList());
+		forwarded.getHeaders().forEach((name, values) -> {
+			if (!answered.contains(name)) {
+				values.forEach(value -> response.addHeader(name, value));
+			}
+		});
+		if (forwarded.getBody() != null) {
+			response.getOutputStream().write(forwarded.getBody());
+		}
+	}
+
+	// the fixed ones and whatever the connection header names
+	private static Set<String> hopByHop(Iterable<String> connection) {
+		final Set<String> hopByHop = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+		hopByHop.addAll(HOP_BY_HOP);
+		for (String value : connection) {
+			for (String name : value.split(",")) {
+				hopByHop.add(name.trim());
+			}
+		}
+		return hopByHop;
+	}
+
+	private static Set<String> caseInsensitive(String... names) {
+		final Set<String> set = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+		set.addAll(Arrays.asList(names));
+		return set;
+	}
+
+	// a body without an instrument is left to the local node to reject
+	private int ownerOf(byte[] body) {
+		try {
+			final String instrument = objectMapper.readTree(body).path("instrument")
+					.asText(null);
+			return instrument != null ? ring.ownerOf(instrument) : properties.getNode();
+		} catch (IOException e) {
+			return properties.getNode();
+		}
+	}
+
+	private static class BufferedRequest extends HttpServletRequestWrapper {
+		private final byte[] body;
+
+		private BufferedRequest(HttpServletRequest request, byte[] body) {
+			super(request);
+			this.body = body;
+		}
+
+		@Override
+		public ServletInputStream getInputStream() {
+			final ByteArrayInputStream inputStream = new ByteArrayInputStream(body);
+			return new ServletInputStream() {
+				@Override
+				public int read() {
+					return inputStream.read();
+				}
+
+				@Override
+				public int read(byte[] b, int off, int len) {
+					return inputStream.read(b, off, len);
+				}
+
+				@Override
+				public boolean isFinished() {
+					return inputStream.available() == 0;
+				}
+
+				@Override
+				public boolean isReady() {
+					return true;
+				}
+
+				// the whole body is already here, so it is all available at once
+				@Override
+				public void setReadListener(ReadListener readListener) {
+					try {
+						if (!isFinished()) {
+							readListener.onDataAvailable();
+						}
+						if (isFinished()) {
+							readListener.onAllDataRead();
+						}
+					} catch (IOException e) {
+						readListener.onError(e);
+					}
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,389 @@
+package com.equity.order.snapshot;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.equity.order.bar.BarService;
+import com.equity.order.book.OrderBook;
+import com.equity.order.book.OrderBookRepository;
+import com.equity.order.execution.Execution;
+import com.equity.order.execution.ExecutionRepository;
+import com.equity.order.history.OrderBookProjection;
+import com.equity.order.history.OrderBookState;
+import com.equity.order.history.OrderHistory;
+import com.equity.order.history.OrderHistory.ItemType;
+import com.equity.order.history.OrderHistoryRepository;
+import com.equity.order.matching.MatchingService;
+import com.equity.order.matching.OrderMatcher;
+import com.equity.order.risk.RiskService;
+import com.equity.order.sequencer.SequencerService;
+
+import lombok.extern.log4j.Log4j2;
+
+// periodic binary snapshots of the projection, the matcher and the risk counters of
+// every book, each tagged with the last history entry applied to the book, and of the
+// bars of their instruments at the same point
+// on startup the latest readable snapshot is loaded and only the history after each
+// tag is replayed, created orders are matched again and their fills discarded
+// since those are in the history already
+// recovery runs in an early lifecycle phase, before the web server and the gateway
+// take orders, each instrument is replayed on its own writer
+@Service
+@Log4j2
+public class SnapshotService implements SmartLifecycle {
+
+	public static final int PHASE = Integer.MIN_VALUE + 1000;
+
+	private static final int MAGIC = 0x4f42534e;
+	private static final int VERSION = 4;
+	private static final String PREFIX = "snapshot-";
+	private static final String SUFFIX = ".bin";
+	// entries replayed between two lookups of the executions they name
+	private static final int REPLAY_BATCH = 1000;
+
+	private final OrderBookRepository orderBookRepository;
+	private final OrderHistoryRepository orderHistoryRepository;
+	private final OrderBookProjection orderBookProjection;
+	private final MatchingService matchingService;
+	private final SequencerService sequencerService;
+	private final BarService barService;
+	private final RiskService riskService;
+	private final ExecutionRepository executionRepository;
+	private final TransactionTemplate readOnlyTransaction;
+
+	private final boolean enabled;
+	private final Path directory;
+	private final long interval;
+	private final int retain;
+	private volatile boolean running;
+	private final ScheduledExecutorService scheduler = Executors
+			.newSingleThreadScheduledExecutor(runnable -> {
+				final Thread thread = new Thread(runnable, "snapshot-writer");
+				thread.setDaemon(true);
+				return thread;
+			});
+
+	public SnapshotService(OrderBookRepository orderBookRepository,
+			OrderHistoryRepository orderHistoryRepository,
+			OrderBookProjection orderBookProjection, MatchingService matchingService,
+			SequencerService sequencerService, BarService barService, RiskService riskService,
+			ExecutionRepository executionRepository,
+			PlatformTransactionManager transactionManager,
+			@Value("${order.snapshot.enabled:false}") boolean enabled,
+			@Value("${order.snapshot.directory:snapshot}") String directory,
+			@Value("${order.snapshot.interval-ms:60000}") long interval,
+			@Value("${order.snapshot.retain:2}") int retain) {
+		this.orderBookRepository = orderBookRepository;
+		this.orderHistoryRepository = orderHistoryRepository;
+		this.orderBookProjection = orderBookProjection;
+		this.matchingService = matchingService;
+		this.sequencerService = sequencerService;
+		this.barService = barService;
+		this.riskService = riskService;
+		this.executionRepository = executionRepository;
+		this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+		this.readOnlyTransaction.setReadOnly(true);
+		this.enabled = enabled;
+		this.directory = Paths.get(directory);
+		this.interval = interval;
+		this.retain = retain;
+	}
+
+	@Override
+	public void start() {
+		recover();
+		if (enabled) {
+			scheduler.scheduleWithFixedDelay(this::snapshot, interval, interval,
+					TimeUnit.MILLISECONDS);
+		}
+		running = true;
+	}
+
+	@Override
+	public int getPhase() {
+		return PHASE;
+	}
+
+	@Override
+	public boolean isRunning() {
+		return running;
+	}
+
+	// nothing may be appended while recovering
+	public void recover() {
+		final Map<Long, OrderBook> orderBooks = new HashMap<>();
+		orderBookRepository.findAll().forEach(book -> orderBooks.put(book.getId(), book));
+
+		orderBookProjection.clear();
+		matchingService.clear();
+		barService.clear();
+		riskService.clear();
+		final Path snapshot = enabled ? load(orderBooks) : null;
+
+		final Map<String, List<OrderBook>> byInstrument = orderBooks.values().stream()
+				.collect(Collectors.groupingBy(OrderBook::getInstrument));
+		final List<CompletableFuture<Long>> replays = byInstrument.entrySet().stream()
+				.map(instrument -> sequencerService.submit(instrument.getKey(), () -> {
+					long replayed = 0;
+					for (OrderBook orderBook : instrument.getValue()) {
+						replayed += replay(orderBook);
+					}
+					return replayed;
+				})).collect(Collectors.toList());
+
+		long replayed = 0;
+		for (CompletableFuture<Long> replay : replays) {
+			replayed += replay.join();
+		}
+		log.info("Recovered {} order books from {} and {} history entries",
+				orderBooks.size(), snapshot != null ? snapshot : "no snapshot", replayed);
+	}
+
+	// the state of each book is copied on its writer between two appends, the file is
+	// written on the snapshot thread
+	public Path snapshot() {
+		try {
+			final Map<String, List<Long>> byInstrument = new HashMap<>();
+			orderBookRepository.findAllById(orderBookProjection.getOrderBookIds())
+					.forEach(book -> byInstrument
+							.computeIfAbsent(book.getInstrument(), key -> new ArrayList<>())
+							.add(book.getId()));
+
+			final List<CompletableFuture<byte[]>> copies = byInstrument.entrySet().stream()
+					.map(instrument -> sequencerService.submit(instrument.getKey(),
+							() -> copy(instrument.getKey(), instrument.getValue())))
+					.collect(Collectors.toList());
+
+			final List<byte[]> instruments = new ArrayList<>();
+			for (CompletableFuture<byte[]> copy : copies) {
+				instruments.add(copy.join());
+			}
+			return write(instruments);
+		} catch (RuntimeException e) {
+			log.error("Could not write a snapshot", e);
+			return null;
+		}
+	}
+
+	// runs on the writer of the instrument, its bars then each of its books
+	private byte[] copy(String instrument, List<Long> orderBookIds) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+		final DataOutputStream out = new DataOutputStream(bytes);
+		out.writeUTF(instrument);
+		barService.writeTo(instrument, out);
+		out.writeInt(orderBookIds.size());
+		for (Long orderBookId : orderBookIds) {
+			out.writeLong(orderBookId);
+			writeBook(instrument, orderBookId, out);
+		}
+		return bytes.toByteArray();
+	}
+
+	// projection, matcher and risk counters of one book, on its writer
+	public void writeBook(String instrument, Long orderBookId, DataOutput out)
+			throws IOException {
+		orderBookProjection.writeTo(orderBookId, out);
+		final OrderMatcher matcher = matchingService.get(orderBookId);
+		out.writeBoolean(matcher != null);
+		if (matcher != null) {
+			matcher.writeTo(out);
+		}
+		riskService.writeTo(instrument, orderBookId, out);
+	}
+
+	// replaces the state of one book, a closed book does not match or hold any limit
+	public void readBook(String instrument, Long orderBookId, DataInput in, boolean open)
+			throws IOException {
+		orderBookProjection.readFrom(orderBookId, in);
+		final OrderMatcher matcher = in.readBoolean() ? OrderMatcher.readFrom(in) : null;
+		if (matcher != null && open) {
+			matchingService.restore(orderBookId, matcher);
+		}
+		riskService.readFrom(instrument, orderBookId, in, open);
+	}
+
+	private Path write(List<byte[]> instruments) {
+		try {
+			Files.createDirectories(directory);
+			final Path file = directory
+					.resolve(String.format(PREFIX + "%013d" + SUFFIX, System.currentTimeMillis()));
+			final Path temp = directory.resolve(file.getFileName() + ".tmp");
+
+			try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+					StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+				final OutputStream stream = Channels.newOutputStream(channel);
+				final DataOutputStream out = new DataOutputStream(
+						new BufferedOutputStream(stream, 1 << 16));
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(instruments.size());
+				for (byte[] instrument : instruments) {
+					out.write(instrument);
+				}
+				out.flush();
+				channel.force(true);
+			}
+			Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+
+			final List<Path> snapshots = snapshots();
+			for (int i = 0; i < snapshots.size() - retain; i++) {
+				Files.deleteIfExists(snapshots.get(i));
+			}
+
+			log.info("Wrote snapshot of {} instruments to {}", instruments.size(), file);
+			return file;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	// newest first, a snapshot that can not be read is skipped for the one before it
+	private Path load(Map<Long, OrderBook> orderBooks) {
+		final List<Path> snapshots;
+		try {
+			snapshots = snapshots();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		Collections.reverse(snapshots);
+
+		for (Path snapshot : snapshots) {
+			try (InputStream stream = Files.newInputStream(snapshot)) {
+				final DataInputStream in = new DataInputStream(
+						new BufferedInputStream(stream, 1 << 16));
+				if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+					throw new IOException("not a snapshot");
+				}
+
+				final int instruments = in.readInt();
+				for (int i = 0; i < instruments; i++) {
+					final String instrument = in.readUTF();
+					barService.readFrom(instrument, in);
+					final int count = in.readInt();
+					for (int j = 0; j < count; j++) {
+						final Long orderBookId = in.readLong();
+						// a book closed after the snapshot does not match anymore
+						final OrderBook orderBook = orderBooks.get(orderBookId);
+						readBook(instrument, orderBookId, in, orderBook != null
+								&& orderBook.getStatus() == OrderBook.Status.OPEN);
+					}
+				}
+				return snapshot;
+			} catch (IOException | RuntimeException e) {
+				log.warn("Skipping unreadable snapshot {}", snapshot, e);
+				orderBookProjection.clear();
+				matchingService.clear();
+				barService.clear();
+				riskService.clear();
+			}
+		}
+		return null;
+	}
+
+	private long replay(OrderBook orderBook) {
+		final OrderBookState state = orderBookProjection.get(orderBook.getId());
+		final Long after = state != null && state.getHistoryId() != null
+				? state.getHistoryId()
+				: Long.MIN_VALUE;
+		final boolean open = orderBook.getStatus() == OrderBook.Status.OPEN;
+
+		final long replayed = readOnlyTransaction.execute(status -> {
+			try (Stream<OrderHistory> orderHistories = orderHistoryRepository
+					.streamByOrderBookIdAndIdGreaterThanOrderByIdAsc(orderBook.getId(),
+							after)) {
+				final Iterator<OrderHistory> iterator = orderHistories.iterator();
+				final List<OrderHistory> batch = new ArrayList<>(REPLAY_BATCH);
+				long count = 0;
+				while (iterator.hasNext()) {
+					batch.clear();
+					while (iterator.hasNext() && batch.size() < REPLAY_BATCH) {
+						batch.add(iterator.next());
+					}
+					final Map<Long, Execution> executions = executions(batch);
+					for (OrderHistory orderHistory : batch) {
+						orderBookProjection.apply(orderHistory);
+						barService.apply(orderBook, orderHistory);
+						// whether the matcher takes a created order is known before it does
+						riskService.replayed(orderBook, orderHistory,
+								matchingService.accepted(orderBook, orderHistory), executions);
+						if (open) {
+							matchingService.replay(orderBook, orderHistory);
+						}
+					}
+					count += batch.size();
+				}
+				return count;
+			}
+		});
+		if (!open) {
+			riskService.closed(orderBook);
+		}
+		return replayed;
+	}
+
+	// the executions the entries name, only the risk counters need them
+	private Map<Long, Execution> executions(List<OrderHistory> orderHistories) {
+		if (!riskService.isEnabled()) {
+			return Collections.emptyMap();
+		}
+		final List<Long> ids = orderHistories.stream()
+				.filter(orderHistory -> orderHistory.getItemType() == ItemType.EXECUTION)
+				.map(OrderHistory::getItemId).distinct().collect(Collectors.toList());
+		return ids.isEmpty() ? Collections.emptyMap()
+				: executionRepository.findByIdIn(ids).stream()
+						.collect(Collectors.toMap(Execution::getId, execution -> execution));
+	}
+
+	private List<Path> snapshots() throws IOException {
+		if (!Files.isDirectory(directory)) {
+			return new ArrayList<>();
+		}
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.filter(file -> {
+				final String name = file.getFileName().toString();
+				return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+			}).sorted().collect(Collectors.toList());
+		}
+	}
+
+	@Override
+	public void stop() {
+		running = false;
+		scheduler.shutdown();
+	}
+
+}
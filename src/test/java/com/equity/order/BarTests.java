@@ -0,0 +1,150 @@
+package com.equity.order;
+
+import static com.equity.order.OrderFixtures.limit;
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import com.equity.order.bar.Bar;
+import com.equity.order.bar.BarSeries;
+import com.equity.order.bar.BarSpill;
+import com.equity.order.bar.Resolution;
+import com.equity.order.book.OrderBook;
+import com.equity.order.book.OrderBookRepository;
+import com.equity.order.book.OrderBookService;
+import com.equity.order.item.Side;
+
+@RunWith(SpringRunner.class)
+@WebAppConfiguration
+@SpringBootTest
+// OrderTests reads the first history entry, keep ours out of the shared context
+@DirtiesContext
+public class BarTests {
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	@Autowired
+	private WebApplicationContext wac;
+
+	@Autowired
+	private OrderBookRepository orderBookRepository;
+
+	@Autowired
+	private OrderBookService orderBookService;
+
+	private MockMvc mockMvc;
+
+	@Before
+	public void setup() {
+		this.mockMvc = MockMvcBuilders.webAppContextSetup(this.wac).build();
+	}
+
+	@Test
+	public void barsAreQueriedFromTheRollups() throws Exception {
+		final OrderBook orderBook = orderBookRepository
+				.save(OrderBook.builder().instrument("/instruments/bars").build());
+
+		// two trades, 3 at 10.00 then 2 at 11.00
+		orderBookService.addOrderItems(orderBook,
+				Arrays.asList(limit(9401L, Side.BUY, "11.00", 5),
+						limit(9402L, Side.SELL, "10.00", 3),
+						limit(9403L, Side.SELL, "11.00", 2)));
+
+		mockMvc.perform(get("/bars").param("instrument", "/instruments/bars")
+				.param("resolution", "1h")).andExpect(status().isOk())
+				.andExpect(jsonPath("$", hasSize(1)))
+				.andExpect(jsonPath("$[0].open").value(11.00))
+				.andExpect(jsonPath("$[0].high").value(11.00))
+				.andExpect(jsonPath("$[0].low").value(11.00))
+				.andExpect(jsonPath("$[0].volume").value(5))
+				.andExpect(jsonPath("$[0].trades").value(2));
+		mockMvc.perform(get("/bars/vwap").param("instrument", "/instruments/bars"))
+				.andExpect(status().isOk()).andExpect(jsonPath("$.volume").value(5))
+				.andExpect(jsonPath("$.vwap").value(11.00));
+
+		mockMvc.perform(get("/bars").param("instrument", "/instruments/bars")
+				.param("resolution", "5m")).andExpect(status().isBadRequest());
+		mockMvc.perform(get("/bars/vwap").param("instrument", "/instruments/none"))
+				.andExpect(status().isNotFound());
+	}
+
+	@Test
+	public void barsPushedOutOfTheRingAreSpilled() throws Exception {
+		try (BarSpill spill = new BarSpill(folder.newFile("bars").toPath())) {
+			final BarSeries bars = new BarSeries(Resolution.SECOND, 3, spill);
+			for (int second = 0; second < 6; second++) {
+				bars.add(second * 1000L + 10, new BigDecimal(100 + second), 10);
+				bars.add(second * 1000L + 20, new BigDecimal(90 + second), 30);
+			}
+			// its bar already left the ring
+			assertFalse(bars.add(1500L, BigDecimal.ONE, 1));
+			assertEquals(2000L, spill.getLast());
+
+			final List<Bar> all = bars.get(0, Long.MAX_VALUE, 100);
+			assertEquals(6, all.size());
+			for (int second = 0; second < 6; second++) {
+				final Bar bar = all.get(second);
+				assertEquals(second * 1000L, bar.getStart().getTime());
+				assertEquals(new BigDecimal(100 + second), bar.getOpen());
+				assertEquals(new BigDecimal(90 + second), bar.getLow());
+				assertEquals(new BigDecimal(90 + second), bar.getClose());
+				assertEquals(40, bar.getVolume());
+				assertEquals(0, new BigDecimal(92.5 + second).compareTo(bar.getVwap()));
+			}
+
+			// half of it from the spill
+			final List<Bar> range = bars.get(1000L, 4000L, 100);
+			assertEquals(4, range.size());
+			assertEquals(1000L, range.get(0).getStart().getTime());
+			assertEquals(4000L, range.get(3).getStart().getTime());
+
+			// on shutdown all but the newest, which may still trade, go to the spill
+			bars.flush();
+			assertEquals(4000L, spill.getLast());
+			assertEquals(6, bars.get(0, Long.MAX_VALUE, 100).size());
+		}
+	}
+
+	@Test
+	public void barsBeforeAGapAreSpilledInOrder() throws Exception {
+		try (BarSpill spill = new BarSpill(folder.newFile("gap").toPath())) {
+			final BarSeries bars = new BarSeries(Resolution.SECOND, 3, spill);
+			bars.add(0L, new BigDecimal("10"), 1);
+			bars.add(1000L, new BigDecimal("11"), 1);
+			// both leave the window, the second lands on the slot of neither
+			bars.add(4000L, new BigDecimal("12"), 1);
+			bars.add(8000L, new BigDecimal("13"), 1);
+			assertEquals(4000L, spill.getLast());
+
+			final List<Bar> all = bars.get(0, Long.MAX_VALUE, 100);
+			assertEquals(4, all.size());
+			for (int i = 0; i < 4; i++) {
+				assertEquals(new BigDecimal(10 + i), all.get(i).getOpen());
+			}
+			assertEquals(0L, all.get(0).getStart().getTime());
+			assertEquals(8000L, all.get(3).getStart().getTime());
+		}
+	}
+}
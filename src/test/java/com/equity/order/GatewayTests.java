@@ -0,0 +1,207 @@
+package com.equity.order;
+
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.equity.order.book.OrderBook;
+import com.equity.order.book.OrderBookRepository;
+import com.equity.order.book.OrderBookService;
+import com.equity.order.gateway.GatewayProtocol;
+import com.equity.order.gateway.GatewayProtocol.ExecutionReportMessage;
+import com.equity.order.gateway.GatewayServer;
+import com.equity.order.history.OrderHistoryService.OrderHistory.OrderItem;
+import com.equity.order.item.LimitOrder;
+import com.equity.order.item.LimitOrderRepository;
+import com.equity.order.item.Side;
+
+@RunWith(SpringRunner.class)
+// own database, the shared context is still open next to this one
+@SpringBootTest(properties = { "order.gateway.enabled=true", "order.gateway.port=0",
+		"spring.datasource.generate-unique-name=true" })
+// OrderTests reads the first history entry, keep ours out of the shared context
+@DirtiesContext
+public class GatewayTests {
+
+	@Autowired
+	private GatewayServer gatewayServer;
+
+	@Autowired
+	private OrderBookRepository orderBookRepository;
+
+	@Autowired
+	private LimitOrderRepository limitOrderRepository;
+
+	@Autowired
+	private OrderBookService orderBookService;
+
+	private SocketChannel channel;
+
+	@Before
+	public void setup() throws Exception {
+		channel = SocketChannel
+				.open(new InetSocketAddress("localhost", gatewayServer.getPort()));
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		channel.close();
+	}
+
+	@Test
+	public void ordersAreAcknowledgedAndFilled() throws Exception {
+		final OrderBook orderBook = orderBookRepository
+				.save(OrderBook.builder().instrument("/instruments/gateway").build());
+
+		final ByteBuffer request = ByteBuffer.allocate(256);
+		GatewayProtocol.writeNewOrder(request, 1, orderBook.getId(), GatewayProtocol.SELL,
+				GatewayProtocol.LIMIT, 205000, 10);
+		GatewayProtocol.writeNewOrder(request, 2, orderBook.getId(), GatewayProtocol.BUY,
+				GatewayProtocol.MARKET, 0, 4);
+		request.flip();
+		channel.write(request);
+
+		// new, new, the aggressor trade and the resting order trade
+		final List<ByteBuffer> reports = read(4);
+		final ExecutionReportMessage report = new ExecutionReportMessage();
+
+		report.wrap(reports.get(0), 0);
+		assertEquals(1, report.clientOrderId());
+		assertEquals(GatewayProtocol.NEW, report.type());
+		final long restingId = report.orderId();
+		assertEquals(0, new BigDecimal("20.50")
+				.compareTo(limitOrderRepository.findById(restingId).get().getPrice()));
+
+		report.wrap(reports.get(2), 0);
+		assertEquals(2, report.clientOrderId());
+		assertEquals(GatewayProtocol.TRADE, report.type());
+		assertEquals(205000, report.price());
+		assertEquals(0, report.leavesQuantity());
+
+		report.wrap(reports.get(3), 0);
+		assertEquals(1, report.clientOrderId());
+		assertEquals(restingId, report.orderId());
+		assertEquals(GatewayProtocol.TRADE, report.type());
+		assertEquals(4, report.quantity());
+		assertEquals(6, report.leavesQuantity());
+	}
+
+	@Test
+	public void restingOrdersAreCanceledOnce() throws Exception {
+		final OrderBook orderBook = orderBookRepository
+				.save(OrderBook.builder().instrument("/instruments/gateway-cancel").build());
+
+		final ByteBuffer request = ByteBuffer.allocate(64);
+		GatewayProtocol.writeNewOrder(request, 1, orderBook.getId(), GatewayProtocol.BUY,
+				GatewayProtocol.LIMIT, 199900, 10);
+		request.flip();
+		channel.write(request);
+		final long orderId = new ExecutionReportMessage().wrap(read(1).get(0), 0).orderId();
+
+		request.clear();
+		GatewayProtocol.writeCancel(request, 2, orderBook.getId(), orderId);
+		GatewayProtocol.writeCancel(request, 3, orderBook.getId(), orderId);
+		request.flip();
+		channel.write(request);
+
+		final List<ByteBuffer> reports = read(2);
+		final ExecutionReportMessage report = new ExecutionReportMessage();
+
+		report.wrap(reports.get(0), 0);
+		assertEquals(2, report.clientOrderId());
+		assertEquals(GatewayProtocol.CANCELED, report.type());
+		assertEquals(orderId, report.orderId());
+		assertEquals(10, report.quantity());
+		assertEquals(0, report.leavesQuantity());
+
+		report.wrap(reports.get(1), 0);
+		assertEquals(3, report.clientOrderId());
+		assertEquals(GatewayProtocol.REJECTED, report.type());
+		assertEquals(GatewayProtocol.UNKNOWN_ORDER, report.reason());
+	}
+
+	@Test
+	public void restingOrdersAreToldAboutFillsAndCloseFromElsewhere() throws Exception {
+		final OrderBook orderBook = orderBookRepository
+				.save(OrderBook.builder().instrument("/instruments/gateway-passive").build());
+
+		final ByteBuffer request = ByteBuffer.allocate(64);
+		GatewayProtocol.writeNewOrder(request, 1, orderBook.getId(), GatewayProtocol.SELL,
+				GatewayProtocol.LIMIT, 101000, 10);
+		request.flip();
+		channel.write(request);
+		final long orderId = new ExecutionReportMessage().wrap(read(1).get(0), 0).orderId();
+
+		// an order that did not come through the gateway takes some of it
+		final LimitOrder buy = limitOrderRepository.save(LimitOrder.builder().side(Side.BUY)
+				.price(new BigDecimal("10.10")).quantity(3).build());
+		orderBookService.addOrderItems(orderBook,
+				Collections.singletonList(OrderItem.builder()
+						.location("/limitOrders/" + buy.getId()).side(Side.BUY)
+						.price(buy.getPrice()).quantity(buy.getQuantity()).build()));
+		// and the book is closed with the rest on it
+		orderBookService.close(orderBook).join();
+
+		final List<ByteBuffer> reports = read(2);
+		final ExecutionReportMessage report = new ExecutionReportMessage();
+
+		report.wrap(reports.get(0), 0);
+		assertEquals(1, report.clientOrderId());
+		assertEquals(orderId, report.orderId());
+		assertEquals(GatewayProtocol.TRADE, report.type());
+		assertEquals(3, report.quantity());
+		assertEquals(7, report.leavesQuantity());
+
+		report.wrap(reports.get(1), 0);
+		assertEquals(1, report.clientOrderId());
+		assertEquals(GatewayProtocol.CANCELED, report.type());
+		assertEquals(7, report.quantity());
+		assertEquals(0, report.leavesQuantity());
+	}
+
+	@Test
+	public void ordersToUnknownBooksAreRejected() throws Exception {
+		final ByteBuffer request = ByteBuffer.allocate(64);
+		GatewayProtocol.writeNewOrder(request, 7, -1, GatewayProtocol.BUY,
+				GatewayProtocol.LIMIT, 10000, 1);
+		request.flip();
+		channel.write(request);
+
+		final ExecutionReportMessage report = new ExecutionReportMessage().wrap(read(1).get(0),
+				0);
+		assertEquals(7, report.clientOrderId());
+		assertEquals(GatewayProtocol.REJECTED, report.type());
+		assertEquals(GatewayProtocol.UNKNOWN_BOOK, report.reason());
+	}
+
+	private List<ByteBuffer> read(int count) throws Exception {
+		final List<ByteBuffer> reports = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			final ByteBuffer report = ByteBuffer
+					.allocate(GatewayProtocol.EXECUTION_REPORT_LENGTH);
+			while (report.hasRemaining()) {
+				if (channel.read(report) < 0) {
+					throw new IllegalStateException("gateway closed the connection");
+				}
+			}
+			report.flip();
+			reports.add(report);
+		}
+		return reports;
+	}
+}
@@ -0,0 +1,90 @@
+package com.equity.order;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.RestTemplate;
+
+import com.equity.order.book.OrderItemResolver;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = { "order.http.max-total=20", "order.http.max-per-route=5",
+		"order.http.connect-timeout=250ms", "order.http.read-timeout=750ms" })
+// the template gets a mock server bound to it for a while
+@DirtiesContext
+public class HttpClientTests {
+
+	@Autowired
+	private RestTemplate restTemplate;
+
+	@Autowired
+	private CloseableHttpClient httpClient;
+
+	@Autowired
+	private PoolingHttpClientConnectionManager connectionManager;
+
+	@Autowired
+	private OrderItemResolver orderItemResolver;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@Test
+	public void fetchesGoThroughThePool() {
+		final Object requestFactory = ReflectionTestUtils.getField(restTemplate,
+				"requestFactory");
+		assertTrue(requestFactory instanceof HttpComponentsClientHttpRequestFactory);
+		assertSame(httpClient,
+				((HttpComponentsClientHttpRequestFactory) requestFactory).getHttpClient());
+
+		assertEquals(20, connectionManager.getMaxTotal());
+		assertEquals(5, connectionManager.getDefaultMaxPerRoute());
+		assertEquals(20, meterRegistry.get("httpclient.pool.max").gauge().value(), 0);
+		assertEquals(0, meterRegistry.get("httpclient.pool.leased").gauge().value(), 0);
+		meterRegistry.get("httpclient.pool.pending").gauge();
+		meterRegistry.get("httpclient.pool.available").gauge();
+
+		final Object requestConfig = ReflectionTestUtils.getField(httpClient,
+				"defaultConfig");
+		assertEquals(250, ReflectionTestUtils.getField(requestConfig, "connectTimeout"));
+		assertEquals(750, ReflectionTestUtils.getField(requestConfig, "socketTimeout"));
+	}
+
+	@Test
+	public void itemsOfOneCollectionShareTheirUriTag() {
+		final ClientHttpRequestFactory requestFactory = (ClientHttpRequestFactory) ReflectionTestUtils
+				.getField(restTemplate, "requestFactory");
+		final MockRestServiceServer server = MockRestServiceServer.bindTo(restTemplate)
+				.build();
+		for (long id = 9701; id <= 9702; id++) {
+			server.expect(requestTo("http://localhost/limitOrders/" + id))
+					.andRespond(withSuccess("{}", MediaType.APPLICATION_JSON_UTF8));
+		}
+
+		orderItemResolver.get("http://localhost/limitOrders/9701");
+		orderItemResolver.get("http://localhost/limitOrders/9702");
+
+		server.verify();
+		restTemplate.setRequestFactory(requestFactory);
+		assertEquals(2, meterRegistry.get("http.client.requests")
+				.tag("uri", "/limitOrders/{id}").timer().count());
+	}
+}
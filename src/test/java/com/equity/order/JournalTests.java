@@ -0,0 +1,142 @@
+package com.equity.order;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.equity.order.execution.Execution;
+import com.equity.order.history.OrderHistory;
+import com.equity.order.history.OrderHistory.ItemType;
+import com.equity.order.item.Side;
+import com.equity.order.journal.Journal;
+import com.equity.order.journal.JournalCodec;
+import com.equity.order.journal.JournalCodec.Record;
+
+public class JournalTests {
+
+	private static final int SEGMENT_SIZE = 256;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void replaysAppendedRecordsAcrossSegments() throws Exception {
+		final Path directory = folder.getRoot().toPath();
+		final long last;
+		try (Journal journal = open(directory)) {
+			long position = 0;
+			for (int i = 0; i < 20; i++) {
+				position = journal.append(payload(i));
+			}
+			last = journal.commit(position).get(5, TimeUnit.SECONDS);
+		}
+
+		assertTrue(directory.toFile().list().length > 1);
+		try (Journal journal = open(directory)) {
+			assertEquals(last, journal.position());
+			assertEquals(range(20), replay(journal, 0));
+
+			// appends continue after the last record
+			journal.append(payload(20));
+			assertEquals(range(21), replay(journal, 0));
+		}
+	}
+
+	@Test
+	public void replayStopsAtDamagedRecord() throws Exception {
+		final Path directory = folder.getRoot().toPath();
+		final long second;
+		try (Journal journal = open(directory)) {
+			journal.append(payload(0));
+			second = journal.append(payload(1));
+			journal.append(payload(2));
+		}
+
+		// flip a byte in the payload of the third record
+		try (RandomAccessFile file = new RandomAccessFile(
+				directory.resolve("0000000000.journal").toFile(), "rw")) {
+			file.seek(second + 8);
+			file.write(file.read() ^ 0xff);
+		}
+
+		try (Journal journal = open(directory)) {
+			assertEquals(second, journal.position());
+			assertEquals(range(2), replay(journal, 0));
+
+			// the damaged tail is overwritten by the next append
+			journal.append(payload(5));
+			final List<Integer> values = replay(journal, 0);
+			assertEquals(3, values.size());
+			assertEquals(Integer.valueOf(5), values.get(2));
+		}
+	}
+
+	@Test
+	public void replaysFromPosition() throws Exception {
+		try (Journal journal = open(folder.getRoot().toPath())) {
+			final long first = journal.append(payload(0));
+			journal.append(payload(1));
+			journal.append(payload(2));
+
+			assertEquals(range(3).subList(1, 3), replay(journal, first));
+		}
+	}
+
+	@Test
+	public void codecRoundTrip() {
+		final Date now = new Date();
+		final Execution execution = Execution.builder().id(1L).quantity(10)
+				.price(new BigDecimal("12.345")).createdDate(now).orderBookId(7L)
+				.buyOrderId(2L).build();
+		final OrderHistory orderHistory = OrderHistory.builder().id(3L).orderBookId(7L)
+				.itemType(ItemType.LIMIT_ORDER).itemId(2L).side(Side.BUY).quantity(10)
+				.price(new BigDecimal("12.5")).status(OrderHistory.Status.ORDER_CREATED)
+				.createdDate(now).build();
+
+		final Record record = JournalCodec.decode(JournalCodec.encode(
+				Collections.singletonList(execution), Collections.singletonList(orderHistory)));
+
+		assertEquals(execution, record.getExecutions().get(0));
+		assertEquals(orderHistory, record.getOrderHistories().get(0));
+	}
+
+	private static Journal open(Path directory) {
+		return new Journal(directory, SEGMENT_SIZE, 100, TimeUnit.MICROSECONDS);
+	}
+
+	// 40 bytes so a few records fill a segment
+	private static ByteBuffer payload(int value) {
+		final ByteBuffer payload = ByteBuffer.allocate(40);
+		payload.putInt(0, value);
+		return payload;
+	}
+
+	private static List<Integer> replay(Journal journal, long from) throws IOException {
+		final List<Integer> values = new ArrayList<>();
+		journal.replay(from, (position, payload) -> values.add(payload.getInt(0)));
+		return values;
+	}
+
+	private static List<Integer> range(int count) {
+		final List<Integer> values = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			values.add(i);
+		}
+		return values;
+	}
+
+}
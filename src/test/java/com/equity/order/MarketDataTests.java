@@ -0,0 +1,138 @@
+package com.equity.order;
+
+import static com.equity.order.OrderFixtures.expect;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.context.WebApplicationContext;
+
+import com.equity.order.book.OrderBook;
+import com.equity.order.book.OrderBookRepository;
+import com.equity.order.book.OrderBookService.Order;
+import com.equity.order.item.LimitOrder;
+import com.equity.order.item.LimitOrderRepository;
+import com.equity.order.item.MarketOrder;
+import com.equity.order.item.MarketOrderRepository;
+import com.equity.order.item.Side;
+import com.equity.order.marketdata.MarketDataService;
+
+@RunWith(SpringRunner.class)
+@WebAppConfiguration
+@SpringBootTest
+// OrderTests reads the first history entry, keep ours out of the shared context
+@DirtiesContext
+public class MarketDataTests {
+
+	@Autowired
+	private WebApplicationContext wac;
+
+	@Autowired
+	private OrderBookRepository orderBookRepository;
+
+	@Autowired
+	private LimitOrderRepository limitOrderRepository;
+
+	@Autowired
+	private MarketOrderRepository marketOrderRepository;
+
+	@Autowired
+	private MarketDataService marketDataService;
+
+	@Autowired
+	private RestTemplate restTemplate;
+
+	private MockMvc mockMvc;
+	private MockRestServiceServer mockService;
+
+	@Before
+	public void setup() throws Exception {
+		this.mockMvc = MockMvcBuilders.webAppContextSetup(this.wac).build();
+		this.mockService = MockRestServiceServer.bindTo(restTemplate).ignoreExpectOrder(true)
+				.build();
+	}
+
+	@Test
+	public void snapshotIsFollowedByLevelsAndExecutions() throws Exception {
+		final String instrument = "/instruments/market-data";
+		final OrderBook orderBook = orderBookRepository
+				.save(OrderBook.builder().instrument(instrument).build());
+
+		final LimitOrder limitOrder = limitOrderRepository.save(LimitOrder.builder()
+				.side(Side.SELL).price(new BigDecimal("20.50")).quantity(10).build());
+		final MarketOrder marketOrder = marketOrderRepository
+				.save(MarketOrder.builder().side(Side.BUY).quantity(4).build());
+		final String limitOrderUri = "http://localhost/limitOrders/" + limitOrder.getId();
+		final String marketOrderUri = "http://localhost/marketOrders/"
+				+ marketOrder.getId();
+		expect(mockService, mockMvc, limitOrderUri);
+		expect(mockService, mockMvc, marketOrderUri);
+
+		addOrder(orderBook, limitOrderUri);
+
+		final MockHttpServletResponse stream = mockMvc
+				.perform(get("/marketData").param("instrument", instrument))
+				.andExpect(request().asyncStarted()).andReturn().getResponse();
+		// the event name and its data may be flushed apart
+		await(stream, "event:snapshot");
+		await(stream, "\"price\":20.50,\"quantity\":10");
+
+		addOrder(orderBook, marketOrderUri);
+
+		await(stream, "event:level");
+		await(stream, "\"side\":\"SELL\",\"price\":20.50,\"quantity\":6");
+		final String content = stream.getContentAsString();
+		assertTrue(content.contains("event:execution"));
+		assertTrue(content.contains("\"buyOrderId\":" + marketOrder.getId()));
+		assertTrue(content.contains("\"side\":\"SELL\",\"price\":20.50,\"quantity\":6"));
+		// the snapshot comes before anything that happened after it
+		assertTrue(content.indexOf("event:snapshot") < content.indexOf("event:execution"));
+	}
+
+	@Test
+	public void subscribersWithoutBooksGetNothingYet() throws Exception {
+		final String instrument = "/instruments/market-data-empty";
+		mockMvc.perform(get("/marketData").param("instrument", instrument))
+				.andExpect(request().asyncStarted());
+
+		for (int i = 0; i < 500 && marketDataService.getSubscriberCount(instrument) == 0; i++) {
+			Thread.sleep(10);
+		}
+		assertTrue(marketDataService.getSubscriberCount(instrument) == 1);
+	}
+
+	private void addOrder(OrderBook orderBook, String location) throws Exception {
+		mockMvc.perform(put("/orderBooks/" + orderBook.getId() + "/order")
+				.content(Order.builder()
+						.itemList(Arrays.asList(Order.Item.builder().location(location).build()))
+						.build().toJson())
+				.contentType(MediaType.APPLICATION_JSON_UTF8_VALUE))
+				.andExpect(status().isNoContent());
+	}
+
+	private static void await(MockHttpServletResponse stream, String text) throws Exception {
+		for (int i = 0; i < 500 && !stream.getContentAsString().contains(text); i++) {
+			Thread.sleep(10);
+		}
+		assertTrue(stream.getContentAsString(), stream.getContentAsString().contains(text));
+	}
+}
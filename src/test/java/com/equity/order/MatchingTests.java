@@ -0,0 +1,267 @@
+package com.equity.order;
+
+import static com.equity.order.OrderFixtures.expect;
+import static org.junit.Assert.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.context.WebApplicationContext;
+
+import com.equity.order.book.OrderBook;
+import com.equity.order.book.OrderBookRepository;
+import com.equity.order.book.OrderBookService.Order;
+import com.equity.order.execution.Execution;
+import com.equity.order.execution.ExecutionRepository;
+import com.equity.order.item.LimitOrder;
+import com.equity.order.item.LimitOrderRepository;
+import com.equity.order.item.MarketOrder;
+import com.equity.order.item.MarketOrderRepository;
+import com.equity.order.item.Side;
+import com.equity.order.sequencer.SequencerService;
+
+@RunWith(SpringRunner.class)
+@WebAppConfiguration
+@SpringBootTest
+// OrderTests reads the first history entry, keep ours out of the shared context
+@DirtiesContext
+public class MatchingTests {
+
+	@Autowired
+	private WebApplicationContext wac;
+
+	@Autowired
+	private OrderBookRepository orderBookRepository;
+
+	@Autowired
+	private LimitOrderRepository limitOrderRepository;
+
+	@Autowired
+	private MarketOrderRepository marketOrderRepository;
+
+	@Autowired
+	private ExecutionRepository executionRepository;
+
+	@Autowired
+	private RestTemplate restTemplate;
+
+	@Autowired
+	private SequencerService sequencerService;
+
+	private MockMvc mockMvc;
+	private MockRestServiceServer mockService;
+
+	@Before
+	public void setup() throws Exception {
+		this.mockMvc = MockMvcBuilders.webAppContextSetup(this.wac).build();
+		// order items are fetched concurrently
+		this.mockService = MockRestServiceServer.bindTo(restTemplate).ignoreExpectOrder(true)
+				.build();
+	}
+
+	@Test
+	public void marketOrderMatchesRestingLimitOrder() throws Exception {
+		final OrderBook orderBook = orderBookRepository
+				.save(OrderBook.builder().instrument("/instruments/456").build());
+
+		final LimitOrder limitOrder = limitOrderRepository.save(LimitOrder.builder()
+				.side(Side.SELL).price(new BigDecimal("20.50")).quantity(10).build());
+		final MarketOrder marketOrder = marketOrderRepository
+				.save(MarketOrder.builder().side(Side.BUY).quantity(4).build());
+
+		final String limitOrderUri = "http://localhost/limitOrders/" + limitOrder.getId();
+		final String marketOrderUri = "http://localhost/marketOrders/"
+				+ marketOrder.getId();
+
+		expect(mockService, mockMvc, limitOrderUri);
+		expect(mockService, mockMvc, marketOrderUri);
+
+		mockMvc.perform(put("/orderBooks/" + orderBook.getId() + "/order")
+				.content(Order.builder()
+						.itemList(Arrays.asList(
+								Order.Item.builder().location(limitOrderUri).build(),
+								Order.Item.builder().location(marketOrderUri).build()))
+						.build().toJson())
+				.contentType(MediaType.APPLICATION_JSON_UTF8_VALUE)).andDo(print())
+				.andExpect(status().isNoContent());
+
+		mockService.verify();
+
+		final List<Execution> executions = StreamSupport
+				.stream(executionRepository.findAll().spliterator(), false)
+				.filter(execution -> orderBook.getId().equals(execution.getOrderBookId()))
+				.collect(Collectors.toList());
+
+		assertEquals(1, executions.size());
+		assertEquals(Integer.valueOf(4), executions.get(0).getQuantity());
+		assertEquals(0, new BigDecimal("20.50").compareTo(executions.get(0).getPrice()));
+		assertEquals(marketOrder.getId(), executions.get(0).getBuyOrderId());
+		assertEquals(limitOrder.getId(), executions.get(0).getSellOrderId());
+
+		// 6 of the limit order still rest, the market order was filled in full
+		mockMvc.perform(get("/orderBooks/" + orderBook.getId() + "/state")).andDo(print())
+				.andExpect(status().isOk()).andExpect(jsonPath("$.orderedQuantity").value(14))
+				.andExpect(jsonPath("$.executedQuantity").value(4))
+				.andExpect(jsonPath("$.openQuantity").value(6))
+				.andExpect(jsonPath("$.vwap").value(20.5))
+				.andExpect(jsonPath("$.statusCounts.ORDER_CREATED").value(2))
+				.andExpect(jsonPath("$.statusCounts.EXECUTED").value(2));
+	}
+
+	@Test
+	public void unfilledMarketOrderIsCanceled() throws Exception {
+		final OrderBook orderBook = orderBookRepository
+				.save(OrderBook.builder().instrument("/instruments/457").build());
+		final MarketOrder marketOrder = marketOrderRepository
+				.save(MarketOrder.builder().side(Side.SELL).quantity(3).build());
+		final String marketOrderUri = "http://localhost/marketOrders/"
+				+ marketOrder.getId();
+
+		expect(mockService, mockMvc, marketOrderUri);
+
+		mockMvc.perform(put("/orderBooks/" + orderBook.getId() + "/order")
+				.content(Order.builder()
+						.itemList(Arrays.asList(
+								Order.Item.builder().location(marketOrderUri).build()))
+						.build().toJson())
+				.contentType(MediaType.APPLICATION_JSON_UTF8_VALUE))
+				.andExpect(status().isNoContent());
+
+		mockMvc.perform(get("/orderBooks/" + orderBook.getId() + "/state"))
+				.andExpect(status().isOk()).andExpect(jsonPath("$.canceledQuantity").value(3))
+				.andExpect(jsonPath("$.openQuantity").value(0))
+				.andExpect(jsonPath("$.statusCounts.ORDER_CANCELED").value(1));
+	}
+
+	@Test
+	public void limitOrdersOfSameCollectionAreFetchedInOneCall() throws Exception {
+		final OrderBook orderBook = orderBookRepository
+				.save(OrderBook.builder().instrument("/instruments/789").build());
+
+		final LimitOrder sell = limitOrderRepository.save(LimitOrder.builder()
+				.side(Side.SELL).price(new BigDecimal("15.00")).quantity(5).build());
+		final LimitOrder buy = limitOrderRepository.save(LimitOrder.builder()
+				.side(Side.BUY).price(new BigDecimal("15.25")).quantity(5).build());
+
+		final String sellUri = "http://localhost/limitOrders/" + sell.getId();
+		final String buyUri = "http://localhost/limitOrders/" + buy.getId();
+
+		// same item twice is only fetched once
+		expect(mockService, mockMvc, "http://localhost/limitOrders/search/ids?ids="
+				+ sell.getId() + "," + buy.getId());
+
+		mockMvc.perform(put("/orderBooks/" + orderBook.getId() + "/order")
+				.content(Order.builder()
+						.itemList(Arrays.asList(
+								Order.Item.builder().location(sellUri).build(),
+								Order.Item.builder().location(buyUri).build(),
+								Order.Item.builder().location(sellUri).build()))
+						.build().toJson())
+				.contentType(MediaType.APPLICATION_JSON_UTF8_VALUE)).andDo(print())
+				.andExpect(status().isNoContent());
+
+		mockService.verify();
+
+		final List<Execution> executions = StreamSupport
+				.stream(executionRepository.findAll().spliterator(), false)
+				.filter(execution -> orderBook.getId().equals(execution.getOrderBookId()))
+				.collect(Collectors.toList());
+
+		assertEquals(1, executions.size());
+		assertEquals(0, new BigDecimal("15.00").compareTo(executions.get(0).getPrice()));
+	}
+
+	@Test
+	public void restingOrderIsAmendedThenCanceled() throws Exception {
+		final OrderBook orderBook = orderBookRepository
+				.save(OrderBook.builder().instrument("/instruments/458").build());
+		final LimitOrder limitOrder = limitOrderRepository.save(LimitOrder.builder()
+				.side(Side.SELL).price(new BigDecimal("20.50")).quantity(10).build());
+		final String limitOrderUri = "http://localhost/limitOrders/" + limitOrder.getId();
+		final String orderUri = "/orderBooks/" + orderBook.getId() + "/orders/"
+				+ limitOrder.getId();
+
+		expect(mockService, mockMvc, limitOrderUri);
+
+		mockMvc.perform(put("/orderBooks/" + orderBook.getId() + "/order")
+				.content(Order.builder()
+						.itemList(Arrays.asList(
+								Order.Item.builder().location(limitOrderUri).build()))
+						.build().toJson())
+				.contentType(MediaType.APPLICATION_JSON_UTF8_VALUE))
+				.andExpect(status().isNoContent());
+
+		mockMvc.perform(patch(orderUri).content("{\"quantity\":6,\"price\":20.40}")
+				.contentType(MediaType.APPLICATION_JSON_UTF8_VALUE)).andDo(print())
+				.andExpect(status().isNoContent());
+		// quantity only ever goes down
+		mockMvc.perform(patch(orderUri).content("{\"quantity\":8}")
+				.contentType(MediaType.APPLICATION_JSON_UTF8_VALUE))
+				.andExpect(status().isBadRequest());
+
+		mockMvc.perform(delete(orderUri)).andExpect(status().isNoContent());
+		mockMvc.perform(delete(orderUri)).andExpect(status().isNotFound());
+
+		mockMvc.perform(get("/orderBooks/" + orderBook.getId() + "/state")).andDo(print())
+				.andExpect(status().isOk()).andExpect(jsonPath("$.orderedQuantity").value(10))
+				.andExpect(jsonPath("$.canceledQuantity").value(10))
+				.andExpect(jsonPath("$.openQuantity").value(0))
+				.andExpect(jsonPath("$.statusCounts.ORDER_AMENDED").value(1))
+				.andExpect(jsonPath("$.statusCounts.ORDER_CANCELED").value(2));
+	}
+
+	@Test
+	public void restingOrdersAreCanceledWhenBookIsClosed() throws Exception {
+		final OrderBook orderBook = orderBookRepository
+				.save(OrderBook.builder().instrument("/instruments/459").build());
+		final LimitOrder limitOrder = limitOrderRepository.save(LimitOrder.builder()
+				.side(Side.BUY).price(new BigDecimal("19.75")).quantity(7).build());
+		final String limitOrderUri = "http://localhost/limitOrders/" + limitOrder.getId();
+
+		expect(mockService, mockMvc, limitOrderUri);
+
+		mockMvc.perform(put("/orderBooks/" + orderBook.getId() + "/order")
+				.content(Order.builder()
+						.itemList(Arrays.asList(
+								Order.Item.builder().location(limitOrderUri).build()))
+						.build().toJson())
+				.contentType(MediaType.APPLICATION_JSON_UTF8_VALUE))
+				.andExpect(status().isNoContent());
+
+		mockMvc.perform(patch("/orderBooks/" + orderBook.getId())
+				.content("{\"status\":\"CLOSED\"}")
+				.contentType(MediaType.APPLICATION_JSON_UTF8_VALUE))
+				.andExpect(status().is2xxSuccessful());
+		// the close is queued on the writer of the instrument
+		sequencerService.call(orderBook.getInstrument(), () -> null);
+
+		mockMvc.perform(get("/orderBooks/" + orderBook.getId() + "/state")).andDo(print())
+				.andExpect(status().isOk()).andExpect(jsonPath("$.orderedQuantity").value(7))
+				.andExpect(jsonPath("$.canceledQuantity").value(7))
+				.andExpect(jsonPath("$.openQuantity").value(0))
+				.andExpect(jsonPath("$.statusCounts.ORDER_CANCELED").value(1));
+	}
+}
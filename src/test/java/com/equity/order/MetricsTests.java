@@ -0,0 +1,68 @@
+package com.equity.order;
+
+import static com.equity.order.OrderFixtures.limit;
+import static org.hamcrest.Matchers.containsString;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import com.equity.order.book.OrderBook;
+import com.equity.order.book.OrderBookRepository;
+import com.equity.order.book.OrderBookService;
+import com.equity.order.item.Side;
+
+@RunWith(SpringRunner.class)
+@WebAppConfiguration
+@SpringBootTest
+// OrderTests reads the first history entry, keep ours out of the shared context
+@DirtiesContext
+public class MetricsTests {
+
+	@Autowired
+	private WebApplicationContext wac;
+
+	@Autowired
+	private OrderBookRepository orderBookRepository;
+
+	@Autowired
+	private OrderBookService orderBookService;
+
+	private MockMvc mockMvc;
+
+	@Before
+	public void setup() {
+		this.mockMvc = MockMvcBuilders.webAppContextSetup(this.wac).build();
+	}
+
+	@Test
+	public void stagesAndStatusesAreScraped() throws Exception {
+		final OrderBook orderBook = orderBookRepository
+				.save(OrderBook.builder().instrument("/instruments/metrics").build());
+
+		orderBookService.addOrderItems(orderBook, Arrays.asList(
+				limit(9101L, Side.BUY, "10.00", 5), limit(9102L, Side.SELL, "10.00", 3)));
+
+		mockMvc.perform(get("/actuator/prometheus")).andExpect(status().isOk())
+				.andExpect(content()
+						.string(containsString("order_stage_seconds_count{stage=\"match\",}")))
+				.andExpect(content()
+						.string(containsString("order_stage_seconds_bucket{stage=\"store\"")))
+				.andExpect(content().string(
+						containsString("order_history_events_total{status=\"EXECUTED\",}")))
+				.andExpect(content().string(containsString("order_sequencer_queued ")));
+	}
+}
@@ -0,0 +1,42 @@
+package com.equity.order;
+
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.math.BigDecimal;
+
+import org.springframework.http.MediaType;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.test.web.servlet.MockMvc;
+
+import com.equity.order.history.OrderHistoryService.OrderHistory.OrderItem;
+import com.equity.order.item.Side;
+
+// helpers shared by the tests that put orders on a book
+final class OrderFixtures {
+
+	private OrderFixtures() {
+	}
+
+	// the item fetched from uri is answered with what this application serves there
+	static void expect(MockRestServiceServer mockService, MockMvc mockMvc, String uri)
+			throws Exception {
+		mockService.expect(requestTo(uri)).andRespond(withSuccess(
+				mockMvc.perform(get(uri)).andExpect(status().isOk()).andReturn()
+						.getResponse().getContentAsString(),
+				MediaType.APPLICATION_JSON_UTF8));
+	}
+
+	// a limit order as its book sees it, without fetching it
+	static OrderItem limit(Long id, Side side, String price, int quantity) {
+		return limit(id, null, side, price, quantity);
+	}
+
+	static OrderItem limit(Long id, String account, Side side, String price,
+			int quantity) {
+		return OrderItem.builder().location("/limitOrders/" + id).account(account)
+				.side(side).price(new BigDecimal(price)).quantity(quantity).build();
+	}
+}
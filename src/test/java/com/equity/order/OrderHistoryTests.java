@@ -0,0 +1,233 @@
+package com.equity.order;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Before;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.MethodSorters;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import com.equity.order.book.OrderBook;
+import com.equity.order.book.OrderBookRepository;
+import com.equity.order.book.OrderBookService.Order;
+import com.equity.order.history.OrderHistoryRepository;
+import com.equity.order.history.OrderHistoryService;
+import com.equity.order.history.OrderHistoryService.OrderHistory;
+import com.equity.order.item.Side;
+
+@RunWith(SpringRunner.class)
+@WebAppConfiguration
+@SpringBootTest
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+// OrderTests reads the first history entry, keep ours out of the shared context
+// other classes may have written before us so only our own book is counted
+@DirtiesContext
+public class OrderHistoryTests {
+
+	private static final Pattern NEXT = Pattern.compile("<http://localhost([^>]*)>");
+
+	@Autowired
+	private WebApplicationContext wac;
+
+	@Autowired
+	private OrderBookRepository orderBookRepository;
+
+	@Autowired
+	private OrderHistoryRepository orderHistoryRepository;
+
+	private MockMvc mockMvc;
+
+	private static OrderBook orderBook;
+
+	@Before
+	public void setup() {
+		this.mockMvc = MockMvcBuilders.webAppContextSetup(this.wac).build();
+
+		if (orderBook == null) {
+			orderBook = orderBookRepository
+					.save(OrderBook.builder().instrument("/instruments/history").build());
+
+			final List<com.equity.order.history.OrderHistory> orderHistories = new ArrayList<>();
+			for (int i = 0; i < 25; i++) {
+				orderHistories.add(com.equity.order.history.OrderHistory.builder()
+						.orderBookId(orderBook.getId()).orderBookVersion(orderBook.getVersion())
+						.itemType(com.equity.order.history.OrderHistory.ItemType.LIMIT_ORDER)
+						.itemId((long) i).side(Side.BUY).quantity(i + 1).price(new BigDecimal("10.25"))
+						.itemCreatedDate(new Date()).build());
+			}
+			orderHistoryRepository.saveAll(orderHistories);
+		}
+	}
+
+	@Test
+	public void a_pagesFollowNextLink() throws Exception {
+		String page = "/orderHistories?size=10";
+		final List<Integer> sizes = new ArrayList<>();
+		long ours = 0;
+
+		while (page != null) {
+			final MvcResult result = mockMvc.perform(get(page))
+					.andExpect(status().isOk()).andReturn();
+
+			final List<OrderHistory> orderHistories = OrderHistory
+					.fromJsonList(result.getResponse().getContentAsString());
+			sizes.add(orderHistories.size());
+			ours += orderHistories.stream().filter(
+					orderHistory -> orderBook.getId().equals(orderHistory.getOrderBook().getId()))
+					.count();
+
+			final String link = result.getResponse().getHeader(HttpHeaders.LINK);
+			if (link == null) {
+				page = null;
+			} else {
+				final Matcher matcher = NEXT.matcher(link);
+				assertTrue(matcher.find());
+				page = matcher.group(1);
+			}
+		}
+
+		assertEquals(25, ours);
+		assertTrue(sizes.size() >= 3);
+		assertTrue(sizes.get(sizes.size() - 1) < 10);
+	}
+
+	@Test
+	public void b_lastPageHasNoNextLink() throws Exception {
+		final MvcResult result = mockMvc.perform(get("/orderHistories?size=50"))
+				.andExpect(status().isOk()).andReturn();
+
+		assertNull(result.getResponse().getHeader(HttpHeaders.LINK));
+	}
+
+	@Test
+	public void c_streamsOneEntryPerLine() throws Exception {
+		final MvcResult result = mockMvc
+				.perform(get("/orderHistories").accept(OrderHistoryService.NDJSON))
+				.andExpect(request().asyncStarted()).andReturn();
+
+		final String lines = mockMvc.perform(asyncDispatch(result))
+				.andExpect(status().isOk()).andReturn().getResponse()
+				.getContentAsString();
+
+		// every line is a document of its own
+		final List<OrderHistory> ours = new ArrayList<>();
+		for (String line : lines.split("\n")) {
+			final OrderHistory orderHistory = OrderHistory
+					.fromJsonList("[" + line + "]").get(0);
+			if (orderBook.getId().equals(orderHistory.getOrderBook().getId())) {
+				ours.add(orderHistory);
+			}
+		}
+
+		assertEquals(25, ours.size());
+		final OrderHistory first = ours.get(0);
+		assertEquals("http://localhost/limitOrders/0", first.getOrderItem().getLocation());
+		assertNotNull(first.getEntryDate());
+	}
+
+	@Test
+	public void d_historyOfOneBookIsPaged() throws Exception {
+		final MvcResult result = mockMvc
+				.perform(get("/orderHistories/orderBook/" + orderBook.getId() + "?size=20"))
+				.andExpect(status().isOk()).andReturn();
+
+		final List<OrderHistory> orderHistories = OrderHistory
+				.fromJsonList(result.getResponse().getContentAsString());
+		assertEquals(20, orderHistories.size());
+		assertTrue(orderHistories.stream().allMatch(
+				orderHistory -> orderBook.getId().equals(orderHistory.getOrderBook().getId())));
+
+		final Matcher matcher = NEXT
+				.matcher(result.getResponse().getHeader(HttpHeaders.LINK));
+		assertTrue(matcher.find());
+		assertEquals(5, OrderHistory.fromJsonList(mockMvc.perform(get(matcher.group(1)))
+				.andReturn().getResponse().getContentAsString()).size());
+
+		mockMvc.perform(get("/orderHistories/orderBook/-1")).andExpect(status().isNotFound());
+	}
+
+	@Test
+	public void e_historyOfOneItemAndTimeRange() throws Exception {
+		final List<OrderHistory> item = OrderHistory.fromJsonList(
+				mockMvc.perform(get("/orderHistories/limitOrders/7")).andExpect(status().isOk())
+						.andReturn().getResponse().getContentAsString());
+		assertTrue(item.stream().anyMatch(orderHistory -> orderBook.getId()
+				.equals(orderHistory.getOrderBook().getId())
+				&& Integer.valueOf(8).equals(orderHistory.getOrderItem().getQuantity())));
+		assertTrue(item.stream().allMatch(orderHistory -> "http://localhost/limitOrders/7"
+				.equals(orderHistory.getOrderItem().getLocation())));
+
+		// nothing was recorded before the epoch
+		assertEquals(0, OrderHistory.fromJsonList(mockMvc
+				.perform(get("/orderHistories/orderBook/" + orderBook.getId()
+						+ "?to=1970-01-01T00:00:00.000Z"))
+				.andExpect(status().isOk()).andReturn().getResponse().getContentAsString())
+				.size());
+		assertEquals(25, OrderHistory.fromJsonList(mockMvc
+				.perform(get("/orderHistories/orderBook/" + orderBook.getId()
+						+ "?from=1970-01-01T00:00:00.000Z&size=50"))
+				.andExpect(status().isOk()).andReturn().getResponse().getContentAsString())
+				.size());
+	}
+
+	@Test
+	public void f_entriesShowTheBookAsItWasRecorded() throws Exception {
+		final OrderBook closing = orderBookRepository
+				.save(OrderBook.builder().instrument("/instruments/history-closed").build());
+		orderHistoryRepository.save(com.equity.order.history.OrderHistory.resting(closing,
+				9901L, Side.BUY, new BigDecimal("10.25"), 5,
+				com.equity.order.history.OrderHistory.Status.ORDER_CANCELED));
+		closing.setStatus(OrderBook.Status.CLOSED);
+		orderBookRepository.save(closing);
+
+		final List<OrderHistory> orderHistories = OrderHistory.fromJsonList(mockMvc
+				.perform(get("/orderHistories/orderBook/" + closing.getId()))
+				.andExpect(status().isOk()).andReturn().getResponse().getContentAsString());
+		assertEquals(1, orderHistories.size());
+		assertEquals(OrderBook.Status.OPEN, orderHistories.get(0).getOrderBook().getStatus());
+		assertEquals(Long.valueOf(0), orderHistories.get(0).getOrderBook().getVersion());
+	}
+
+	@Test
+	public void g_locationsThatNameNoItemAreRejected() throws Exception {
+		for (String location : new String[] { "http://localhost/limitOrders/7/",
+				"http://localhost/limitOrders/7?projection=full",
+				"http://localhost/instruments/7", "limitOrders" }) {
+			mockMvc.perform(put("/orderBooks/" + orderBook.getId() + "/order")
+					.content(Order.builder()
+							.itemList(Collections
+									.singletonList(Order.Item.builder().location(location).build()))
+							.build().toJson())
+					.contentType(MediaType.APPLICATION_JSON_UTF8))
+					.andExpect(status().isBadRequest());
+		}
+	}
+}
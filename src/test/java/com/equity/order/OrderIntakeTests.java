@@ -0,0 +1,216 @@
+package com.equity.order;
+
+import static com.equity.order.OrderFixtures.expect;
+import static org.junit.Assert.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.context.WebApplicationContext;
+
+import com.equity.order.book.OrderBook;
+import com.equity.order.book.OrderBookRepository;
+import com.equity.order.book.OrderBookService.Order;
+import com.equity.order.intake.OrderIntake;
+import com.equity.order.intake.OrderIntakeRepository;
+import com.equity.order.intake.OrderIntakeService;
+import com.equity.order.item.LimitOrder;
+import com.equity.order.item.LimitOrderRepository;
+import com.equity.order.item.Side;
+import com.equity.order.sequencer.SequencerService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+@RunWith(SpringRunner.class)
+@WebAppConfiguration
+// own database, the shared context is still open next to this one
+@SpringBootTest(properties = { "order.intake.threads=1", "order.intake.queue-size=0",
+		"spring.datasource.generate-unique-name=true" })
+// OrderTests reads the first history entry, keep ours out of the shared context
+@DirtiesContext
+public class OrderIntakeTests {
+
+	@Autowired
+	private WebApplicationContext wac;
+
+	@Autowired
+	private OrderBookRepository orderBookRepository;
+
+	@Autowired
+	private LimitOrderRepository limitOrderRepository;
+
+	@Autowired
+	private OrderIntakeRepository orderIntakeRepository;
+
+	@Autowired
+	private OrderIntakeService orderIntakeService;
+
+	@Autowired
+	private SequencerService sequencerService;
+
+	@Autowired
+	private RestTemplate restTemplate;
+
+	private MockMvc mockMvc;
+	private MockRestServiceServer mockService;
+
+	@Before
+	public void setup() throws Exception {
+		this.mockMvc = MockMvcBuilders.webAppContextSetup(this.wac).build();
+		this.mockService = MockRestServiceServer.bindTo(restTemplate).ignoreExpectOrder(true)
+				.build();
+	}
+
+	@Test
+	public void acceptedOrderCompletesInBackground() throws Exception {
+		final OrderBook orderBook = orderBookRepository
+				.save(OrderBook.builder().instrument("/instruments/intake").build());
+		final String limitOrderUri = limitOrder();
+		expect(mockService, mockMvc, limitOrderUri);
+
+		final Long id = accept(orderBook, limitOrderUri);
+
+		assertEquals(OrderIntake.Status.COMPLETED, await(id));
+		mockMvc.perform(get("/orderIntakes/" + id)).andExpect(status().isOk())
+				.andExpect(jsonPath("$.status").value("COMPLETED"));
+		mockMvc.perform(get("/orderBooks/" + orderBook.getId() + "/state"))
+				.andExpect(jsonPath("$.orderedQuantity").value(5));
+	}
+
+	@Test
+	public void orderToClosedBookIsRejected() throws Exception {
+		final OrderBook orderBook = orderBookRepository
+				.save(OrderBook.builder().instrument("/instruments/intake").build());
+		orderBook.setStatus(OrderBook.Status.CLOSED);
+		orderBookRepository.save(orderBook);
+
+		assertEquals(OrderIntake.Status.REJECTED, await(accept(orderBook, limitOrder())));
+	}
+
+	@Test
+	public void fullQueueAsksToRetry() throws Exception {
+		final OrderBook orderBook = orderBookRepository
+				.save(OrderBook.builder().instrument("/instruments/intake-busy").build());
+		final String limitOrderUri = limitOrder();
+		expect(mockService, mockMvc, limitOrderUri);
+
+		// the only worker waits on the book writer until released
+		final CountDownLatch release = new CountDownLatch(1);
+		sequencerService.submit(orderBook.getInstrument(), () -> {
+			release.await();
+			return null;
+		});
+
+		final Long id = accept(orderBook, limitOrderUri);
+		mockMvc.perform(put("/orderBooks/" + orderBook.getId() + "/order")
+				.header("Prefer", "respond-async").content(order(limitOrderUri))
+				.contentType(MediaType.APPLICATION_JSON_UTF8_VALUE))
+				.andExpect(status().isTooManyRequests())
+				.andExpect(header().string("Retry-After", "1"));
+
+		release.countDown();
+		assertEquals(OrderIntake.Status.COMPLETED, await(id));
+	}
+
+	@Test
+	public void preferenceIsOneOfManyTokens() throws Exception {
+		final OrderBook orderBook = orderBookRepository
+				.save(OrderBook.builder().instrument("/instruments/intake").build());
+		final String asyncUri = limitOrder();
+		final String syncUri = limitOrder();
+		expect(mockService, mockMvc, asyncUri);
+		expect(mockService, mockMvc, syncUri);
+
+		assertEquals(OrderIntake.Status.COMPLETED,
+				await(accept(orderBook, asyncUri, "respond-async, wait=5")));
+
+		// other preferences are booked right away
+		mockMvc.perform(put("/orderBooks/" + orderBook.getId() + "/order")
+				.header("Prefer", "return=minimal").content(order(syncUri))
+				.contentType(MediaType.APPLICATION_JSON_UTF8_VALUE))
+				.andExpect(status().isNoContent());
+		mockMvc.perform(get("/orderBooks/" + orderBook.getId() + "/state"))
+				.andExpect(jsonPath("$.orderedQuantity").value(10));
+	}
+
+	@Test
+	public void runningIntakeIsNotBookedTwice() throws Exception {
+		final OrderBook orderBook = orderBookRepository
+				.save(OrderBook.builder().instrument("/instruments/intake").build());
+		final String limitOrderUri = limitOrder();
+		expect(mockService, mockMvc, limitOrderUri);
+
+		// booked, then the node stopped before the intake was completed
+		mockMvc.perform(put("/orderBooks/" + orderBook.getId() + "/order")
+				.content(order(limitOrderUri))
+				.contentType(MediaType.APPLICATION_JSON_UTF8_VALUE))
+				.andExpect(status().isNoContent());
+		final OrderIntake orderIntake = orderIntakeRepository.save(OrderIntake.builder()
+				.orderBookId(orderBook.getId()).request(order(limitOrderUri))
+				.status(OrderIntake.Status.RUNNING).build());
+
+		orderIntakeService.resume();
+
+		assertEquals(OrderIntake.Status.COMPLETED, await(orderIntake.getId()));
+		mockMvc.perform(get("/orderBooks/" + orderBook.getId() + "/state"))
+				.andExpect(jsonPath("$.orderedQuantity").value(5));
+	}
+
+	private Long accept(OrderBook orderBook, String location) throws Exception {
+		return accept(orderBook, location, "respond-async");
+	}
+
+	private Long accept(OrderBook orderBook, String location, String prefer)
+			throws Exception {
+		final String response = mockMvc
+				.perform(put("/orderBooks/" + orderBook.getId() + "/order")
+						.header("Prefer", prefer).content(order(location))
+						.contentType(MediaType.APPLICATION_JSON_UTF8_VALUE))
+				.andExpect(status().isAccepted()).andExpect(header().exists("Location"))
+				.andReturn().getResponse().getContentAsString();
+		return new ObjectMapper().readTree(response).get("id").asLong();
+	}
+
+	private OrderIntake.Status await(Long id) throws InterruptedException {
+		for (int i = 0; i < 500; i++) {
+			final OrderIntake.Status status = orderIntakeRepository.findById(id).get()
+					.getStatus();
+			if (status != OrderIntake.Status.PENDING
+					&& status != OrderIntake.Status.RUNNING) {
+				return status;
+			}
+			Thread.sleep(10);
+		}
+		return OrderIntake.Status.PENDING;
+	}
+
+	private String limitOrder() {
+		return "http://localhost/limitOrders/" + limitOrderRepository.save(LimitOrder
+				.builder().side(Side.BUY).price(new BigDecimal("9.50")).quantity(5).build())
+				.getId();
+	}
+
+	private static String order(String location) throws Exception {
+		return Order.builder()
+				.itemList(Arrays.asList(Order.Item.builder().location(location).build()))
+				.build().toJson();
+	}
+}
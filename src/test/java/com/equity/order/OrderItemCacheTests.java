@@ -0,0 +1,87 @@
+package com.equity.order;
+
+import static org.junit.Assert.assertEquals;
+import static org.springframework.test.web.client.ExpectedCount.once;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.Collections;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.context.WebApplicationContext;
+
+import com.equity.order.book.OrderBook;
+import com.equity.order.book.OrderBookRepository;
+import com.equity.order.book.OrderBookService.Order;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+@RunWith(SpringRunner.class)
+@WebAppConfiguration
+@SpringBootTest
+// the template gets a mock server bound to it
+@DirtiesContext
+public class OrderItemCacheTests {
+
+	private static final String location = "http://localhost/marketOrders/9801";
+
+	@Autowired
+	private WebApplicationContext wac;
+
+	@Autowired
+	private OrderBookRepository orderBookRepository;
+
+	@Autowired
+	private RestTemplate restTemplate;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@Test
+	public void anItemIsFetchedOnceForAllBooks() throws Exception {
+		final MockMvc mockMvc = MockMvcBuilders.webAppContextSetup(this.wac).build();
+		final MockRestServiceServer server = MockRestServiceServer.bindTo(restTemplate)
+				.build();
+		server.expect(once(), requestTo(location)).andRespond(withSuccess(
+				"{\"quantity\":10,\"createdDate\":\"2019-09-01T10:00:00.000+0000\","
+						+ "\"_links\":{\"self\":{\"href\":\"" + location + "\"}}}",
+				MediaType.APPLICATION_JSON_UTF8));
+
+		final double hits = gets("hit");
+		final double misses = gets("miss");
+		for (String instrument : new String[] { "/instruments/cache-1",
+				"/instruments/cache-2" }) {
+			final OrderBook orderBook = orderBookRepository
+					.save(OrderBook.builder().instrument(instrument).build());
+			mockMvc.perform(put("/orderBooks/" + orderBook.getId() + "/order")
+					.content(Order.builder()
+							.itemList(Collections
+									.singletonList(Order.Item.builder().location(location).build()))
+							.build().toJson())
+					.contentType(MediaType.APPLICATION_JSON_UTF8))
+					.andExpect(status().isNoContent());
+		}
+
+		server.verify();
+		assertEquals(1, gets("miss") - misses, 0);
+		assertEquals(1, gets("hit") - hits, 0);
+	}
+
+	private double gets(String result) {
+		return meterRegistry.get("cache.gets").tag("cache", "orderItems")
+				.tag("result", result).functionCounter().count();
+	}
+}
@@ -0,0 +1,52 @@
+package com.equity.order;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Date;
+
+import org.junit.Test;
+
+import com.equity.order.history.OrderHistoryService.OrderHistory.OrderItem;
+import com.equity.order.history.OrderItemReader;
+import com.equity.order.item.Side;
+
+public class OrderItemReaderTests {
+
+	@Test
+	public void readsHalOrderItem() {
+		final OrderItem orderItem = OrderItemReader.read("{\"quantity\":10,"
+				+ "\"price\":20.10,\"createdDate\":\"2019-08-20T10:15:30.123+0000\","
+				+ "\"side\":\"SELL\",\"tags\":[{\"a\":1}],\"_links\":{\"limitOrder\":"
+				+ "{\"href\":\"http://localhost/limitOrders/1\"},\"self\":"
+				+ "{\"href\":\"http://localhost/limitOrders/1\",\"templated\":false}}}");
+
+		assertEquals("http://localhost/limitOrders/1", orderItem.getLocation());
+		assertEquals(Integer.valueOf(10), orderItem.getQuantity());
+		// no detour through double
+		assertEquals("20.10", orderItem.getPrice().toPlainString());
+		assertEquals(Side.SELL, orderItem.getSide());
+		assertEquals("2019-08-20T10:15:30.123+0000", orderItem.getCreatedDate());
+	}
+
+	@Test
+	public void missingFieldsStayNull() {
+		final OrderItem orderItem = OrderItemReader
+				.read("{\"quantity\":5,\"price\":null,\"side\":null}");
+
+		assertEquals(Integer.valueOf(5), orderItem.getQuantity());
+		assertNull(orderItem.getPrice());
+		assertNull(orderItem.getSide());
+		assertNull(orderItem.getLocation());
+	}
+
+	@Test
+	public void datesRoundTrip() {
+		final Date date = OrderItemReader.parseDate("2019-08-20T10:15:30.123+0000");
+
+		assertEquals(1566296130123L, date.getTime());
+		assertEquals("2019-08-20T10:15:30.123+0000", OrderItemReader.formatDate(date));
+		assertEquals(1566296130123L,
+				OrderItemReader.parseDate("2019-08-20T10:15:30.123Z").getTime());
+	}
+}
@@ -0,0 +1,163 @@
+package com.equity.order;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.math.BigDecimal;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.equity.order.item.Side;
+import com.equity.order.matching.Fills;
+import com.equity.order.matching.MatchOrder;
+import com.equity.order.matching.OrderMatcher;
+import com.equity.order.matching.Prices;
+
+public class OrderMatcherTests {
+
+	private static final int SCALE = 2;
+
+	private OrderMatcher orderMatcher;
+
+	@Before
+	public void setup() {
+		orderMatcher = new OrderMatcher(SCALE);
+	}
+
+	@Test
+	public void limitOrdersRestWhenNotCrossing() {
+		assertTrue(orderMatcher.submit(limit(1L, Side.BUY, "10.00", 5)).isEmpty());
+		assertTrue(orderMatcher.submit(limit(2L, Side.SELL, "10.50", 5)).isEmpty());
+
+		assertEquals(ticks("10"), orderMatcher.bestBid());
+		assertEquals(ticks("10.5"), orderMatcher.bestAsk());
+	}
+
+	@Test
+	public void marketOrderFillsByPriceThenTime() {
+		orderMatcher.submit(limit(1L, Side.SELL, "10.10", 5));
+		orderMatcher.submit(limit(2L, Side.SELL, "10.00", 5));
+		orderMatcher.submit(limit(3L, Side.SELL, "10.00", 5));
+
+		final Fills fills = orderMatcher.submit(market(4L, Side.BUY, 12));
+
+		assertEquals(3, fills.size());
+		assertEquals(2L, fills.sellOrderId(0));
+		assertEquals(3L, fills.sellOrderId(1));
+		assertEquals(1L, fills.sellOrderId(2));
+		assertEquals(2, fills.quantity(2));
+		assertEquals(4L, fills.buyOrderId(2));
+		assertEquals(3, orderMatcher.quantityAt(Side.SELL, ticks("10.10")));
+	}
+
+	@Test
+	public void marketOrderRemainderIsDropped() {
+		orderMatcher.submit(limit(1L, Side.BUY, "9.90", 5));
+
+		assertEquals(1, orderMatcher.submit(market(2L, Side.SELL, 8)).size());
+		assertEquals(OrderMatcher.NO_PRICE, orderMatcher.bestBid());
+		assertEquals(OrderMatcher.NO_PRICE, orderMatcher.bestAsk());
+	}
+
+	@Test
+	public void crossingLimitOrderFillsAtRestingPriceAndRestsRemainder() {
+		orderMatcher.submit(limit(1L, Side.SELL, "10.00", 5));
+
+		final Fills fills = orderMatcher.submit(limit(2L, Side.BUY, "10.20", 8));
+
+		assertEquals(1, fills.size());
+		assertEquals(1000, fills.price(0));
+		assertEquals(3, orderMatcher.quantityAt(Side.BUY, ticks("10.20")));
+		assertEquals(OrderMatcher.NO_PRICE, orderMatcher.bestAsk());
+	}
+
+	@Test
+	public void ordersWithoutSideAreIgnored() {
+		orderMatcher.submit(limit(1L, Side.SELL, "10.00", 5));
+
+		assertTrue(orderMatcher.submit(market(2L, null, 5)).isEmpty());
+		assertEquals(5, orderMatcher.quantityAt(Side.SELL, ticks("10.00")));
+	}
+
+	@Test
+	public void restingOrdersSurviveWriteAndRead() throws Exception {
+		orderMatcher.submit(limit(1L, Side.SELL, "10.10", 5));
+		orderMatcher.submit(limit(2L, Side.SELL, "10.10", 3));
+		orderMatcher.submit(limit(3L, Side.BUY, "9.95", 4));
+
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		orderMatcher.writeTo(new DataOutputStream(bytes));
+		final OrderMatcher read = OrderMatcher
+				.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+		assertEquals(ticks("9.95"), read.bestBid());
+		assertEquals(8, read.quantityAt(Side.SELL, ticks("10.10")));
+
+		// time priority is kept within a level
+		final Fills fills = read.submit(market(4L, Side.BUY, 6));
+		assertEquals(1L, fills.sellOrderId(0));
+		assertEquals(2L, fills.sellOrderId(1));
+	}
+
+	@Test
+	public void cancelKeepsPriorityUntilNothingIsLeft() {
+		orderMatcher.submit(limit(1L, Side.SELL, "10.00", 5));
+		orderMatcher.submit(limit(2L, Side.SELL, "10.00", 5));
+
+		assertEquals(2, orderMatcher.cancel(1L, 2));
+		assertEquals(8, orderMatcher.quantityAt(Side.SELL, ticks("10.00")));
+		assertEquals(1L, orderMatcher.submit(market(3L, Side.BUY, 1)).sellOrderId(0));
+
+		assertEquals(5, orderMatcher.cancel(2L, Integer.MAX_VALUE));
+		assertFalse(orderMatcher.isResting(2L));
+		assertEquals(0, orderMatcher.cancel(2L, Integer.MAX_VALUE));
+		assertEquals(2, orderMatcher.quantityAt(Side.SELL, ticks("10.00")));
+
+		assertEquals(2, orderMatcher.cancel(1L, Integer.MAX_VALUE));
+		assertEquals(OrderMatcher.NO_PRICE, orderMatcher.bestAsk());
+	}
+
+	@Test
+	public void replaceLosesPriorityAndMayTrade() {
+		orderMatcher.submit(limit(1L, Side.SELL, "10.00", 5));
+		orderMatcher.submit(limit(2L, Side.SELL, "10.00", 5));
+		orderMatcher.submit(limit(3L, Side.BUY, "9.90", 4));
+
+		assertTrue(orderMatcher.replace(1L, ticks("10.00"), 0).isEmpty());
+		assertEquals(2L, orderMatcher.submit(market(4L, Side.BUY, 1)).sellOrderId(0));
+
+		final Fills fills = orderMatcher.replace(1L, ticks("9.90"), 0);
+		assertEquals(1, fills.size());
+		assertEquals(3L, fills.buyOrderId(0));
+		assertEquals(4, fills.quantity(0));
+		assertEquals(ticks("9.90"), orderMatcher.priceOf(1L));
+		assertEquals(1, orderMatcher.remainingOf(1L));
+		assertEquals(OrderMatcher.NO_PRICE, orderMatcher.bestBid());
+	}
+
+	@Test
+	public void pricesAreExactTicksOfTheScale() {
+		assertEquals(1005, Prices.toTicks(new BigDecimal("10.050"), SCALE));
+		assertEquals(0, new BigDecimal("10.05").compareTo(Prices.toDecimal(1005, SCALE)));
+		assertFalse(Prices.isTick(new BigDecimal("10.005"), SCALE));
+	}
+
+	private static long ticks(String price) {
+		return Prices.toTicks(new BigDecimal(price), SCALE);
+	}
+
+	private static MatchOrder limit(long id, Side side, String price, int quantity) {
+		return MatchOrder.builder().id(id).side(side).price(ticks(price)).quantity(quantity)
+				.build();
+	}
+
+	private static MatchOrder market(long id, Side side, int quantity) {
+		return MatchOrder.builder().id(id).side(side).market(true).quantity(quantity).build();
+	}
+}
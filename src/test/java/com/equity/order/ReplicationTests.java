@@ -0,0 +1,139 @@
+package com.equity.order;
+
+import static com.equity.order.OrderFixtures.limit;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import com.equity.order.book.OrderBook;
+import com.equity.order.book.OrderBookRepository;
+import com.equity.order.book.OrderBookService;
+import com.equity.order.execution.Execution;
+import com.equity.order.history.OrderBookProjection;
+import com.equity.order.item.Side;
+import com.equity.order.matching.MatchResult;
+import com.equity.order.matching.MatchingService;
+import com.equity.order.replication.ReplicationProperties.Role;
+import com.equity.order.replication.ReplicationService;
+import com.equity.order.replication.ReplicationStatus;
+
+// a primary and a replica on localhost in this jvm, each with its own database
+public class ReplicationTests {
+
+	private final RestTemplate restTemplate = new RestTemplate();
+
+	private ConfigurableApplicationContext primary;
+	private ConfigurableApplicationContext replica;
+
+	@After
+	public void stop() {
+		if (primary != null) {
+			primary.close();
+		}
+		if (replica != null) {
+			replica.close();
+		}
+	}
+
+	@Test
+	public void replicaFollowsAndTakesOverWithWarmBooks() throws Exception {
+		final int replicationPort = freePort();
+		primary = start(freePort(), "--order.replication.role=primary",
+				"--order.replication.port=" + replicationPort, "--order.replication.ack=replica");
+
+		final OrderBook orderBook = primary.getBean(OrderBookRepository.class)
+				.save(OrderBook.builder().instrument("/instruments/replication").build());
+		// before the replica is there, it gets this from its bootstrap
+		primary.getBean(OrderBookService.class).addOrderItems(orderBook,
+				Collections.singletonList(limit(9301L, Side.BUY, "20.00", 10)));
+
+		final int replicaPort = freePort();
+		replica = start(replicaPort, "--order.replication.role=replica",
+				"--order.replication.primary=localhost:" + replicationPort,
+				"--order.replication.port=" + freePort());
+		final ReplicationService replicationService = replica
+				.getBean(ReplicationService.class);
+		for (int i = 0; i < 500 && !replicationService.getStatus().isCaughtUp(); i++) {
+			Thread.sleep(10);
+		}
+		assertTrue(replicationService.getStatus().isCaughtUp());
+
+		// acknowledged by the replica before it returns
+		primary.getBean(OrderBookService.class).addOrderItems(orderBook,
+				Collections.singletonList(limit(9302L, Side.SELL, "20.00", 4)));
+		assertEquals(6, replica.getBean(MatchingService.class).get(orderBook.getId())
+				.remainingOf(9301L));
+		assertEquals(4, replica.getBean(OrderBookProjection.class).get(orderBook.getId())
+				.getExecutedQuantity());
+
+		final HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.APPLICATION_JSON_UTF8);
+		try {
+			restTemplate.postForEntity("http://localhost:" + replicaPort + "/orderBooks",
+					new HttpEntity<>("{\"instrument\":\"/instruments/replica\"}", headers),
+					String.class);
+			fail("A replica takes no writes");
+		} catch (HttpServerErrorException e) {
+			assertEquals(HttpStatus.SERVICE_UNAVAILABLE, e.getStatusCode());
+		}
+
+		primary.close();
+		primary = null;
+		final ReplicationStatus promoted = restTemplate.postForObject(
+				"http://localhost:" + replicaPort + "/replication/promote", null,
+				ReplicationStatus.class);
+		assertEquals(Role.PRIMARY, promoted.getRole());
+
+		// the resting buy is still there without any replay
+		final OrderBook replicated = replica.getBean(OrderBookRepository.class)
+				.findById(orderBook.getId()).get();
+		final List<MatchResult> matchResults = replica.getBean(OrderBookService.class)
+				.addOrderItems(replicated,
+						Collections.singletonList(limit(9303L, Side.SELL, "20.00", 6)));
+		final Execution execution = matchResults.get(0).getExecutions().get(0);
+		assertEquals(Long.valueOf(9301L), execution.getBuyOrderId());
+		assertEquals(Integer.valueOf(6), execution.getQuantity());
+
+		// ids go on after the ones the primary handed out
+		assertTrue(replica.getBean(OrderBookProjection.class).get(orderBook.getId())
+				.getHistoryId() > orderBook.getId());
+		assertEquals(10, replica.getBean(OrderBookProjection.class).get(orderBook.getId())
+				.getExecutedQuantity());
+		assertNotEquals(0, execution.getId().longValue());
+		// and past the orders they referenced, with a block to spare for every entity
+		assertTrue(execution.getId() > 9303L
+				+ OrderIdGenerator.ENTITIES * OrderIdGenerator.BLOCK_SIZE);
+	}
+
+	private static ConfigurableApplicationContext start(int port, String... args) {
+		final String[] all = new String[args.length + 3];
+		all[0] = "--server.port=" + port;
+		all[1] = "--spring.datasource.generate-unique-name=true";
+		all[2] = "--spring.jmx.enabled=false";
+		System.arraycopy(args, 0, all, 3, args.length);
+		return new SpringApplicationBuilder(OrderApplication.class).run(all);
+	}
+
+	private static int freePort() throws IOException {
+		try (ServerSocket socket = new ServerSocket(0)) {
+			return socket.getLocalPort();
+		}
+	}
+}
@@ -0,0 +1,154 @@
+package com.equity.order;
+
+import static com.equity.order.OrderFixtures.limit;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.equity.order.book.OrderBook;
+import com.equity.order.book.OrderBookRepository;
+import com.equity.order.book.OrderBookService;
+import com.equity.order.item.Side;
+import com.equity.order.matching.MatchResult;
+import com.equity.order.matching.MatchingService;
+import com.equity.order.risk.PositionLimitCheck;
+import com.equity.order.risk.RiskReason;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = { "order.risk.accounts[limited].max-quantity=100",
+		"order.risk.accounts[limited].max-notional=1000",
+		"order.risk.accounts[limited].position-limit=50",
+		"order.risk.accounts[throttled].message-rate=2" })
+// OrderTests reads the first history entry, keep ours out of the shared context
+@DirtiesContext
+public class RiskTests {
+
+	@Autowired
+	private OrderBookRepository orderBookRepository;
+
+	@Autowired
+	private OrderBookService orderBookService;
+
+	@Autowired
+	private PositionLimitCheck positionLimitCheck;
+
+	@Autowired
+	private MatchingService matchingService;
+
+	@Test
+	public void ordersOverTheirLimitsNeverReachTheBook() {
+		final OrderBook orderBook = orderBookRepository
+				.save(OrderBook.builder().instrument("/instruments/risk").build());
+
+		final List<MatchResult> matchResults = orderBookService.addOrderItems(orderBook,
+				Arrays.asList(limit(9501L, "limited", Side.BUY, "1.00", 101),
+						limit(9502L, "limited", Side.BUY, "30.00", 40),
+						limit(9503L, "limited", Side.BUY, "10.00", 40),
+						limit(9504L, "limited", Side.BUY, "10.00", 20),
+						limit(9505L, null, Side.BUY, "10.00", 1000)));
+
+		assertEquals(RiskReason.MAX_QUANTITY, matchResults.get(0).getRejected());
+		assertEquals(RiskReason.MAX_NOTIONAL, matchResults.get(1).getRejected());
+		assertNull(matchResults.get(2).getRejected());
+		// 40 already bought if the first one fills
+		assertEquals(RiskReason.POSITION_LIMIT, matchResults.get(3).getRejected());
+		// no limits for the default account
+		assertNull(matchResults.get(4).getRejected());
+
+		// a fill becomes position, a cancel gives the rest back
+		orderBookService.addOrderItems(orderBook, Collections
+				.singletonList(limit(9506L, "other", Side.SELL, "10.00", 1030)));
+		assertEquals(40, positionLimitCheck.position("limited", "/instruments/risk"));
+		assertEquals(RiskReason.POSITION_LIMIT,
+				orderBookService.addOrderItems(orderBook, Collections
+						.singletonList(limit(9507L, "limited", Side.BUY, "10.00", 20)))
+						.get(0).getRejected());
+		assertNull(orderBookService.addOrderItems(orderBook,
+				Collections.singletonList(limit(9508L, "limited", Side.SELL, "10.00", 90)))
+				.get(0).getRejected());
+		orderBookService.cancelOrder(orderBook, 9508L);
+		assertNull(orderBookService.addOrderItems(orderBook,
+				Collections.singletonList(limit(9509L, "limited", Side.BUY, "10.00", 10)))
+				.get(0).getRejected());
+	}
+
+	@Test
+	public void aRejectedItemKeepsTheWholeOrderOffTheBook() {
+		final OrderBook orderBook = orderBookRepository
+				.save(OrderBook.builder().instrument("/instruments/whole").build());
+
+		final List<MatchResult> matchResults = orderBookService.addOrder(orderBook,
+				Arrays.asList(limit(9701L, "limited", Side.BUY, "10.00", 40),
+						limit(9702L, "limited", Side.BUY, "1.00", 101)));
+		assertNull(matchResults.get(0).getRejected());
+		assertEquals(RiskReason.MAX_QUANTITY, matchResults.get(1).getRejected());
+		assertNull(matchingService.resting(orderBook, 9701L));
+		assertEquals(0, orderBookService.getState(orderBook.getId()).getBody()
+				.getOrderedQuantity());
+
+		// the first one gave back what it took
+		assertNull(orderBookService.addOrder(orderBook,
+				Collections.singletonList(limit(9703L, "limited", Side.BUY, "10.00", 50)))
+				.get(0).getRejected());
+	}
+
+	@Test
+	public void onlyOrdersOnTheBookHoldTheLimit() {
+		final OrderBook orderBook = orderBookRepository
+				.save(OrderBook.builder().instrument("/instruments/reserved").build());
+
+		// off the tick grid, recorded but never on the book
+		assertNull(orderBookService.addOrder(orderBook,
+				Collections.singletonList(limit(9801L, "limited", Side.BUY, "10.005", 40)))
+				.get(0).getRejected());
+		assertNull(orderBookService.addOrder(orderBook,
+				Collections.singletonList(limit(9802L, "limited", Side.BUY, "10.00", 50)))
+				.get(0).getRejected());
+		// attached again it is neither matched nor counted twice
+		assertNull(orderBookService.addOrder(orderBook,
+				Collections.singletonList(limit(9802L, "limited", Side.BUY, "10.00", 50)))
+				.get(0).getRejected());
+		assertEquals(50, matchingService.resting(orderBook, 9802L).getQuantity());
+		assertEquals(RiskReason.POSITION_LIMIT,
+				orderBookService.addOrder(orderBook, Collections
+						.singletonList(limit(9803L, "limited", Side.BUY, "10.00", 1)))
+						.get(0).getRejected());
+
+		// closing the book gives it back
+		orderBookService.close(orderBook).join();
+		final OrderBook next = orderBookRepository
+				.save(OrderBook.builder().instrument("/instruments/reserved").build());
+		assertNull(orderBookService.addOrder(next,
+				Collections.singletonList(limit(9804L, "limited", Side.BUY, "10.00", 50)))
+				.get(0).getRejected());
+	}
+
+	@Test
+	public void messagesOverTheRateAreThrottled() {
+		final OrderBook orderBook = orderBookRepository
+				.save(OrderBook.builder().instrument("/instruments/throttled").build());
+
+		// even when a second starts in between
+		final List<MatchResult> matchResults = orderBookService.addOrderItems(orderBook,
+				Arrays.asList(limit(9601L, "throttled", Side.BUY, "1.00", 1),
+						limit(9602L, "throttled", Side.BUY, "1.00", 1),
+						limit(9603L, "throttled", Side.BUY, "1.00", 1),
+						limit(9604L, "throttled", Side.BUY, "1.00", 1),
+						limit(9605L, "throttled", Side.BUY, "1.00", 1)));
+
+		assertNull(matchResults.get(0).getRejected());
+		assertTrue(matchResults.stream().anyMatch(
+				matchResult -> matchResult.getRejected() == RiskReason.MESSAGE_RATE));
+	}
+}
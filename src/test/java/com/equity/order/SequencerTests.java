@@ -0,0 +1,92 @@
+package com.equity.order;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.equity.order.sequencer.InstrumentSequencer;
+import com.equity.order.sequencer.RingBuffer;
+
+public class SequencerTests {
+
+	private InstrumentSequencer sequencer;
+
+	@Before
+	public void setup() {
+		sequencer = new InstrumentSequencer("/instruments/test", 8);
+	}
+
+	@After
+	public void tearDown() {
+		sequencer.stop();
+	}
+
+	@Test
+	public void ringBufferDrainsInPublishOrder() {
+		final RingBuffer<long[]> ringBuffer = new RingBuffer<>(4, () -> new long[1]);
+		for (long value = 0; value < 3; value++) {
+			final long sequence = ringBuffer.claim();
+			ringBuffer.get(sequence)[0] = value;
+			ringBuffer.publish(sequence);
+		}
+
+		final List<Long> drained = new ArrayList<>();
+		assertEquals(3, ringBuffer.drain(slot -> drained.add(slot[0])));
+		assertEquals(0, ringBuffer.size());
+		assertEquals(3, drained.size());
+		assertEquals(Long.valueOf(2), drained.get(2));
+	}
+
+	@Test
+	public void tasksRunOnSingleWriterInOrder() throws Exception {
+		final ExecutorService producers = Executors.newFixedThreadPool(4);
+		final List<Integer> applied = new ArrayList<>();
+		final List<CompletableFuture<String>> futures = new ArrayList<>();
+
+		try {
+			for (int i = 0; i < 1000; i++) {
+				final int value = i;
+				futures.add(CompletableFuture.supplyAsync(() -> value, producers)
+						.thenCompose(v -> sequencer.submit(() -> {
+							// unsynchronized on purpose, only the writer touches it
+							applied.add(v);
+							return Thread.currentThread().getName();
+						})));
+			}
+
+			for (CompletableFuture<String> future : futures) {
+				assertEquals("sequencer-/instruments/test",
+						future.get(5, TimeUnit.SECONDS));
+			}
+		} finally {
+			producers.shutdown();
+		}
+
+		assertEquals(1000, applied.size());
+		assertEquals(1000, applied.stream().distinct().count());
+	}
+
+	@Test
+	public void failingTaskCompletesExceptionally() throws Exception {
+		try {
+			sequencer.submit(() -> {
+				throw new IllegalArgumentException("rejected");
+			}).get(5, TimeUnit.SECONDS);
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof IllegalArgumentException);
+			return;
+		}
+		throw new AssertionError("expected failure");
+	}
+}
@@ -0,0 +1,139 @@
+package com.equity.order;
+
+import static com.equity.order.OrderFixtures.limit;
+import static org.junit.Assert.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import com.equity.order.book.OrderBook;
+import com.equity.order.book.OrderBookRepository;
+import com.equity.order.book.OrderBookService;
+import com.equity.order.execution.Execution;
+import com.equity.order.execution.ExecutionRepository;
+import com.equity.order.history.OrderBookProjection;
+import com.equity.order.history.OrderBookState;
+import com.equity.order.item.Side;
+import com.equity.order.settlement.SettlementRequest;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+@RunWith(SpringRunner.class)
+@WebAppConfiguration
+@SpringBootTest
+// OrderTests reads the first history entry, keep ours out of the shared context
+@DirtiesContext
+public class SettlementTests {
+
+	@Autowired
+	private WebApplicationContext wac;
+
+	@Autowired
+	private OrderBookRepository orderBookRepository;
+
+	@Autowired
+	private OrderBookService orderBookService;
+
+	@Autowired
+	private ExecutionRepository executionRepository;
+
+	@Autowired
+	private OrderBookProjection orderBookProjection;
+
+	private MockMvc mockMvc;
+
+	@Before
+	public void setup() {
+		this.mockMvc = MockMvcBuilders.webAppContextSetup(this.wac).build();
+	}
+
+	@Test
+	public void booksAreClosedAndFillsAllocatedByPriceThenTime() throws Exception {
+		final String instrument = "/instruments/settlement";
+		final OrderBook buys = orderBookRepository
+				.save(OrderBook.builder().instrument(instrument).build());
+		final OrderBook sells = orderBookRepository
+				.save(OrderBook.builder().instrument("/instruments/settlement-2").build());
+
+		orderBookService.addOrderItems(buys, Arrays.asList(
+				limit(9001L, Side.BUY, "20.00", 5), limit(9002L, Side.BUY, "20.50", 10)));
+		orderBookService.addOrderItems(sells,
+				Collections.singletonList(limit(9003L, Side.SELL, "21.00", 4)));
+
+		final SettlementRequest request = SettlementRequest.builder()
+				.instruments(Collections.singletonList(instrument))
+				.orderBookIds(Arrays.asList(sells.getId(), -1L))
+				.fills(Arrays.asList(
+						SettlementRequest.Fill.builder().instrument(instrument).side(Side.BUY)
+								.price(new BigDecimal("20.40")).quantity(12).build(),
+						SettlementRequest.Fill.builder().orderBookId(sells.getId())
+								.side(Side.SELL).price(new BigDecimal("21.10")).quantity(3)
+								.build()))
+				.build();
+
+		mockMvc.perform(post("/settlements")
+				.content(new ObjectMapper().writeValueAsString(request))
+				.contentType(MediaType.APPLICATION_JSON_UTF8_VALUE)).andDo(print())
+				.andExpect(status().isOk()).andExpect(jsonPath("$.skipped[0]").value(-1))
+				// only the better bid takes 20.40
+				.andExpect(jsonPath("$.unallocatedQuantity").value(2))
+				.andExpect(jsonPath("$.orderBooks.length()").value(2));
+
+		assertEquals(OrderBook.Status.CLOSED,
+				orderBookRepository.findById(buys.getId()).get().getStatus());
+		assertEquals(OrderBook.Status.CLOSED,
+				orderBookRepository.findById(sells.getId()).get().getStatus());
+
+		final List<Execution> executions = StreamSupport
+				.stream(executionRepository.findAll().spliterator(), false)
+				.filter(execution -> buys.getId().equals(execution.getOrderBookId()))
+				.collect(Collectors.toList());
+		assertEquals(1, executions.size());
+		assertEquals(Long.valueOf(9002L), executions.get(0).getBuyOrderId());
+		assertEquals(Integer.valueOf(10), executions.get(0).getQuantity());
+		assertEquals(0, new BigDecimal("20.40").compareTo(executions.get(0).getPrice()));
+
+		// nothing is left open once settled
+		final OrderBookState buyState = orderBookProjection.get(buys.getId());
+		assertEquals(5, buyState.getCanceledQuantity());
+		assertEquals(0, buyState.getOpenQuantity());
+		final OrderBookState sellState = orderBookProjection.get(sells.getId());
+		assertEquals(3, sellState.getExecutedQuantity());
+		assertEquals(1, sellState.getCanceledQuantity());
+		assertEquals(0, sellState.getOpenQuantity());
+
+		// an order that saw the book still open is canceled instead of resting on it
+		assertEquals(2, orderBookService.addOrderItems(buys,
+				Collections.singletonList(limit(9004L, Side.BUY, "20.60", 2))).get(0)
+				.getCanceledQuantity());
+		assertEquals(0, orderBookProjection.get(buys.getId()).getOpenQuantity());
+	}
+
+	@Test
+	public void fillsWithoutTargetAreRejected() throws Exception {
+		mockMvc.perform(post("/settlements")
+				.content("{\"fills\":[{\"side\":\"BUY\",\"price\":1,\"quantity\":1}]}")
+				.contentType(MediaType.APPLICATION_JSON_UTF8_VALUE))
+				.andExpect(status().isBadRequest());
+	}
+}
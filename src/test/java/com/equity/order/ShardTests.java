@@ -0,0 +1,152 @@
+package com.equity.order;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.RestTemplate;
+
+import com.equity.order.book.OrderBookRepository;
+import com.equity.order.history.OrderBookState;
+import com.equity.order.shard.ShardIds;
+import com.equity.order.shard.ShardRing;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+// two nodes on localhost in this jvm, each with its own database
+public class ShardTests {
+
+	private static final List<ConfigurableApplicationContext> nodes = new ArrayList<>();
+	private static final List<String> urls = new ArrayList<>();
+	private static final List<Integer> ports = new ArrayList<>();
+
+	private final RestTemplate restTemplate = new RestTemplate();
+
+	@BeforeClass
+	public static void start() throws IOException {
+		for (int node = 0; node < 2; node++) {
+			try (ServerSocket socket = new ServerSocket(0)) {
+				ports.add(socket.getLocalPort());
+				urls.add("http://localhost:" + socket.getLocalPort());
+			}
+		}
+		for (int node = 0; node < 2; node++) {
+			// as arguments, application.properties would win over default properties
+			nodes.add(new SpringApplicationBuilder(OrderApplication.class).run(
+					"--server.port=" + ports.get(node),
+					"--spring.datasource.generate-unique-name=true", "--spring.jmx.enabled=false",
+					"--order.shard.enabled=true", "--order.shard.node=" + node,
+					"--order.shard.nodes[0]=" + urls.get(0),
+					"--order.shard.nodes[1]=" + urls.get(1)));
+		}
+	}
+
+	@AfterClass
+	public static void stop() {
+		nodes.forEach(ConfigurableApplicationContext::close);
+	}
+
+	@Test
+	public void growingTheRingOnlyMovesInstrumentsToTheNewNode() {
+		final ShardRing three = new ShardRing(3, 100);
+		final ShardRing four = new ShardRing(4, 100);
+
+		final int[] owned = new int[4];
+		for (int i = 0; i < 10000; i++) {
+			final String instrument = "/instruments/" + i;
+			final int owner = four.ownerOf(instrument);
+			assertTrue(owner == 3 || owner == three.ownerOf(instrument));
+			owned[owner]++;
+		}
+		for (int count : owned) {
+			assertTrue(count > 1500);
+		}
+	}
+
+	@Test
+	public void booksAreOpenedAndFoundOnTheirOwner() throws Exception {
+		final long id = openOnSecondNode("/instruments/shard-");
+		assertEquals(1, ShardIds.nodeOf(id));
+
+		assertTrue(nodes.get(1).getBean(OrderBookRepository.class).existsById(id));
+		assertFalse(nodes.get(0).getBean(OrderBookRepository.class).existsById(id));
+
+		// asked at the wrong node, answered by the owner
+		final ResponseEntity<OrderBookState> state = restTemplate.getForEntity(
+				urls.get(0) + "/orderBooks/" + id + "/state", OrderBookState.class);
+		assertEquals(HttpStatus.OK, state.getStatusCode());
+		assertEquals(Long.valueOf(id), state.getBody().getOrderBookId());
+	}
+
+	@Test
+	public void asyncOrdersKeepTheirPreferenceOnTheWayToTheOwner() throws Exception {
+		final long id = openOnSecondNode("/instruments/shard-async-");
+		final HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.APPLICATION_JSON_UTF8);
+		final String limitOrder = restTemplate.postForLocation(urls.get(1) + "/limitOrders",
+				new HttpEntity<>("{\"side\":\"BUY\",\"price\":10.00,\"quantity\":3}",
+						headers))
+				.toString();
+
+		headers.set("Prefer", "respond-async");
+		final ResponseEntity<String> accepted = restTemplate.exchange(
+				urls.get(0) + "/orderBooks/" + id + "/order", HttpMethod.PUT,
+				new HttpEntity<>("{\"itemList\":[{\"location\":\"" + limitOrder + "\"}]}",
+						headers),
+				String.class);
+
+		// queued on the owner, which answers where to track it
+		assertEquals(HttpStatus.ACCEPTED, accepted.getStatusCode());
+		final URI location = accepted.getHeaders().getLocation();
+		assertTrue(String.valueOf(location), location.toString().startsWith(urls.get(1)));
+		final long intake = new ObjectMapper().readTree(accepted.getBody()).path("id")
+				.asLong();
+
+		String status = "PENDING";
+		for (int i = 0; i < 500 && ("PENDING".equals(status) || "RUNNING".equals(status)); i++) {
+			Thread.sleep(10);
+			status = new ObjectMapper().readTree(restTemplate
+					.getForObject(urls.get(0) + "/orderIntakes/" + intake, String.class))
+					.path("status").asText();
+		}
+		assertEquals("COMPLETED", status);
+	}
+
+	// an instrument the first node does not own, opened by asking the first node
+	private long openOnSecondNode(String prefix) throws Exception {
+		final ShardRing ring = nodes.get(0).getBean(ShardRing.class);
+		int i = 0;
+		while (ring.ownerOf(prefix + i) != 1) {
+			i++;
+		}
+
+		final HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.APPLICATION_JSON_UTF8);
+		final ResponseEntity<String> created = restTemplate.postForEntity(
+				urls.get(0) + "/orderBooks",
+				new HttpEntity<>("{\"instrument\":\"" + prefix + i + "\"}", headers),
+				String.class);
+
+		assertEquals(HttpStatus.CREATED, created.getStatusCode());
+		final String self = new ObjectMapper().readTree(created.getBody()).path("_links")
+				.path("self").path("href").asText();
+		assertTrue(self, self.startsWith(urls.get(1)));
+		return Long.parseLong(self.substring(self.lastIndexOf('/') + 1));
+	}
+}
@@ -0,0 +1,170 @@
+package com.equity.order;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.util.FileSystemUtils;
+
+import com.equity.order.bar.Bar;
+import com.equity.order.bar.BarService;
+import com.equity.order.bar.Vwap;
+import com.equity.order.book.OrderBook;
+import com.equity.order.book.OrderBookRepository;
+import com.equity.order.history.OrderBookProjection;
+import com.equity.order.history.OrderHistory;
+import com.equity.order.history.OrderHistory.ItemType;
+import com.equity.order.history.OrderHistoryRepository;
+import com.equity.order.item.Side;
+import com.equity.order.matching.MatchingService;
+import com.equity.order.matching.OrderMatcher;
+import com.equity.order.matching.Prices;
+import com.equity.order.risk.PositionLimitCheck;
+import com.equity.order.risk.RiskLimits;
+import com.equity.order.risk.RiskOrder;
+import com.equity.order.risk.RiskReason;
+import com.equity.order.snapshot.SnapshotService;
+
+@RunWith(SpringRunner.class)
+// own database, the shared context is still open next to this one
+@SpringBootTest(properties = { "order.snapshot.enabled=true",
+		"order.snapshot.directory=target/snapshot-tests",
+		"order.snapshot.interval-ms=3600000",
+		"order.risk.accounts[limited].position-limit=50",
+		"spring.datasource.generate-unique-name=true" })
+// OrderTests reads the first history entry, keep ours out of the shared context
+@DirtiesContext
+public class SnapshotTests {
+
+	@Autowired
+	private OrderBookRepository orderBookRepository;
+
+	@Autowired
+	private OrderHistoryRepository orderHistoryRepository;
+
+	@Autowired
+	private OrderBookProjection orderBookProjection;
+
+	@Autowired
+	private MatchingService matchingService;
+
+	@Autowired
+	private SnapshotService snapshotService;
+
+	@Autowired
+	private BarService barService;
+
+	@Autowired
+	private PositionLimitCheck positionLimitCheck;
+
+	@Before
+	public void setup() {
+		FileSystemUtils.deleteRecursively(new File("target/snapshot-tests"));
+	}
+
+	@Test
+	public void recoversFromSnapshotAndHistoryTail() {
+		final OrderBook orderBook = orderBookRepository
+				.save(OrderBook.builder().instrument("/instruments/snapshot").build());
+
+		orderHistoryRepository.save(created(orderBook, 1001L, Side.SELL, 10));
+		snapshotService.recover();
+		assertNotNull(snapshotService.snapshot());
+
+		// after the snapshot, only this one is replayed
+		orderHistoryRepository.save(created(orderBook, 1002L, Side.SELL, 5));
+		snapshotService.recover();
+
+		final OrderMatcher matcher = matchingService.get(orderBook.getId());
+		assertEquals(15, matcher.quantityAt(Side.SELL,
+				Prices.toTicks(new BigDecimal("10.00"), matcher.getScale())));
+		assertEquals(15, orderBookProjection.get(orderBook.getId()).getOrderedQuantity());
+		assertEquals(Long.valueOf(2), orderBookProjection.get(orderBook.getId())
+				.getStatusCounts().get(OrderHistory.Status.ORDER_CREATED));
+	}
+
+	@Test
+	public void closedBooksDoNotMatchAfterRecovery() {
+		final OrderBook orderBook = orderBookRepository
+				.save(OrderBook.builder().instrument("/instruments/snapshot").build());
+		orderHistoryRepository.save(created(orderBook, 1003L, Side.BUY, 10));
+		snapshotService.recover();
+		snapshotService.snapshot();
+
+		orderBook.setStatus(OrderBook.Status.CLOSED);
+		orderBookRepository.save(orderBook);
+		snapshotService.recover();
+
+		assertEquals(null, matchingService.get(orderBook.getId()));
+		assertEquals(10, orderBookProjection.get(orderBook.getId()).getOrderedQuantity());
+	}
+
+	@Test
+	public void barsBeforeTheSnapshotSurviveRecovery() {
+		final OrderBook orderBook = orderBookRepository
+				.save(OrderBook.builder().instrument("/instruments/snapshot-bars").build());
+		orderHistoryRepository.save(executed(orderBook, 1004L, "10.00", 4));
+		snapshotService.recover();
+		assertNotNull(snapshotService.snapshot());
+
+		// the first trade is only in the snapshot, the second only in the history tail
+		orderHistoryRepository.save(executed(orderBook, 1005L, "12.00", 4));
+		snapshotService.recover();
+
+		final Vwap vwap = barService.vwap("/instruments/snapshot-bars").getBody();
+		assertEquals(8, vwap.getVolume());
+		assertEquals(0, new BigDecimal("11.00").compareTo(vwap.getVwap()));
+		final List<Bar> bars = barService.findAll("/instruments/snapshot-bars", "1h", null,
+				null, 10).getBody();
+		assertEquals(8, bars.stream().mapToLong(Bar::getVolume).sum());
+	}
+
+	@Test
+	public void restingOrdersHoldTheirLimitAfterRecovery() {
+		final OrderBook orderBook = orderBookRepository
+				.save(OrderBook.builder().instrument("/instruments/snapshot-risk").build());
+		final OrderHistory first = created(orderBook, 1006L, Side.BUY, 30);
+		first.setAccount("limited");
+		orderHistoryRepository.save(first);
+		snapshotService.recover();
+		assertNotNull(snapshotService.snapshot());
+
+		// one order comes back from the snapshot, the other from the history tail
+		final OrderHistory second = created(orderBook, 1007L, Side.BUY, 20);
+		second.setAccount("limited");
+		orderHistoryRepository.save(second);
+		snapshotService.recover();
+
+		assertEquals(RiskReason.POSITION_LIMIT, positionLimitCheck.check(RiskOrder.builder()
+				.account("limited").instrument("/instruments/snapshot-risk")
+				.orderBookId(orderBook.getId()).orderId(1008L).side(Side.BUY)
+				.price(new BigDecimal("10.00")).quantity(1)
+				.limits(RiskLimits.builder().positionLimit(50L).build()).build()));
+	}
+
+	private static OrderHistory executed(OrderBook orderBook, Long executionId, String price,
+			int quantity) {
+		return OrderHistory.builder().orderBookId(orderBook.getId())
+				.orderBookVersion(orderBook.getVersion()).itemType(ItemType.EXECUTION)
+				.itemId(executionId).quantity(quantity).price(new BigDecimal(price))
+				.status(OrderHistory.Status.EXECUTED).build();
+	}
+
+	private static OrderHistory created(OrderBook orderBook, Long itemId, Side side,
+			int quantity) {
+		return OrderHistory.builder().orderBookId(orderBook.getId())
+				.orderBookVersion(orderBook.getVersion()).itemType(ItemType.LIMIT_ORDER)
+				.itemId(itemId).side(side).quantity(quantity).price(new BigDecimal("10.00"))
+				.build();
+	}
+}